@@ -0,0 +1,104 @@
+package rs.marko.lalic.safe.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rs.marko.lalic.safe.core.Utils;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs JMH benchmarks and writes results as JSON, so they can be kept as baseline. If baseline file is given, score
+ * of every benchmark is compared with baseline score.
+ * <p>
+ * System properties:
+ * <ul>
+ * <li><code>benchmark.result</code> - File where JSON results are written</li>
+ * <li><code>benchmark.baseline</code> - JSON results of previous run, optional</li>
+ * </ul>
+ * Arguments are regular JMH command line arguments.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Hidden construct
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Runs benchmarks
+     *
+     * @param args JMH command line arguments
+     * @throws Exception if benchmarks can't be run or results can't be read
+     */
+    public static void main(String[] args) throws Exception {
+	String result = System.getProperty("benchmark.result", "jmh-result.json");
+	String baseline = System.getProperty("benchmark.baseline", "");
+	Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).resultFormat(ResultFormatType.JSON)
+			.result(result).build();
+	Collection<RunResult> results = new Runner(options).run();
+	System.out.println(Utils.buildString("Results written to ", result));
+	if (!baseline.isEmpty()) {
+	    compare(results, new File(baseline));
+	}
+    }
+
+    /**
+     * Prints change of every benchmark score against baseline
+     *
+     * @param results  Results of current run
+     * @param baseline JSON results of previous run
+     * @throws Exception if baseline can't be read
+     */
+    private static void compare(Collection<RunResult> results, File baseline) throws Exception {
+	Map<String, Double> baselineScores = new TreeMap<>();
+	for (JsonNode benchmark : MAPPER.readTree(baseline)) {
+	    StringBuilder key = new StringBuilder();
+	    Utils.appendToBuffer(key, benchmark.get("benchmark").asText(), " ", benchmark.get("mode").asText(), " ",
+			    benchmark.get("threads").asInt(), "t");
+	    JsonNode params = benchmark.get("params");
+	    if (params != null) {
+		Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+		while (fields.hasNext()) {
+		    Map.Entry<String, JsonNode> param = fields.next();
+		    Utils.appendToBuffer(key, " ", param.getKey(), "=", param.getValue().asText());
+		}
+	    }
+	    baselineScores.put(key.toString(), benchmark.get("primaryMetric").get("score").asDouble());
+	}
+	System.out.println(Utils.buildString("Comparison with baseline ", baseline));
+	for (RunResult result : results) {
+	    StringBuilder key = new StringBuilder();
+	    Utils.appendToBuffer(key, result.getParams().getBenchmark(), " ", result.getParams().getMode().shortLabel(),
+			    " ", result.getParams().getThreads(), "t");
+	    for (String param : result.getParams().getParamsKeys()) {
+		Utils.appendToBuffer(key, " ", param, "=", result.getParams().getParam(param));
+	    }
+	    double score = result.getPrimaryResult().getScore();
+	    Double previous = baselineScores.get(key.toString());
+	    if (previous == null) {
+		System.out.println(String.format("%-90s %14.3f %s (new)", key, score,
+				result.getPrimaryResult().getScoreUnit()));
+	    }
+	    else {
+		System.out.println(String.format("%-90s %14.3f %s (%+.1f%%)", key, score,
+				result.getPrimaryResult().getScoreUnit(), (score - previous) * 100 / previous));
+	    }
+	}
+    }
+}
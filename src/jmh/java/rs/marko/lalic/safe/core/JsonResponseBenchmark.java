@@ -0,0 +1,72 @@
+package rs.marko.lalic.safe.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of generating JSON responses, the way message converter writes them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonResponseBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Page of persons, as returned by person listing
+     */
+    @State(Scope.Benchmark)
+    public static class Page {
+	private ObjectNode page;
+
+	@Param({ "1", "100", "1000" })
+	private int persons;
+
+	@Setup
+	public void setup() {
+	    page = new ObjectMapper().createObjectNode();
+	    ArrayNode array = page.putArray(JsonConstants.FIELD_PERSONS);
+	    for (int i = 0; i < persons; i++) {
+		ObjectNode person = array.addObject();
+		person.put(DBConstants.COMMON_USER_UUID, UUIDGenerator.generateUUID());
+		person.put(DBConstants.USER_EMAIL, Utils.buildString("person", i, "@example.com"));
+		person.put(DBConstants.COMMON_ROLE_ID, "2");
+		person.put(DBConstants.USER_REGISTRED_ON, System.currentTimeMillis());
+		person.put(DBConstants.USER_LAST_LOGIN, System.currentTimeMillis());
+		person.put(DBConstants.USER_DISABLED, false);
+	    }
+	    page.put(JsonConstants.FIELD_CURSOR, Utils.buildString(System.currentTimeMillis(), "_",
+			    UUIDGenerator.generateUUID()));
+	}
+    }
+
+    @Benchmark
+    public byte[] successResponse() throws JsonProcessingException {
+	return mapper.writeValueAsBytes(Utils.generateSuccessResponse());
+    }
+
+    @Benchmark
+    public byte[] errorResponse() throws JsonProcessingException {
+	return mapper.writeValueAsBytes(Utils.generateErrorResponse("Folder not found. UUID: 1234"));
+    }
+
+    @Benchmark
+    public byte[] personsPage(Page page) throws JsonProcessingException {
+	return mapper.writeValueAsBytes(page.page);
+    }
+}
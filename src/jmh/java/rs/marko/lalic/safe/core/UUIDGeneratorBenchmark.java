@@ -0,0 +1,41 @@
+package rs.marko.lalic.safe.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link UUIDGenerator} under growing number of threads
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UUIDGeneratorBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public String generateUUID1Thread() {
+	return UUIDGenerator.generateUUID();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generateUUID4Threads() {
+	return UUIDGenerator.generateUUID();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String generateUUID16Threads() {
+	return UUIDGenerator.generateUUID();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String generateUUID64Threads() {
+	return UUIDGenerator.generateUUID();
+    }
+}
@@ -0,0 +1,49 @@
+package rs.marko.lalic.safe.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link Utils} methods called on every request
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsBenchmark {
+
+    private final String folderUUID = UUIDGenerator.generateUUID();
+    private final String personUUID = UUIDGenerator.generateUUID();
+    private final StringBuilder buffer = new StringBuilder();
+    private final String request = Utils.buildString("{\"folderUUID\":\"", folderUUID,
+		    "\",\"name\":\"report-2017.pdf\",\"size\":1048576,\"checksum\":\"",
+		    "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08\"}");
+
+    @Benchmark
+    public String buildString() {
+	return Utils.buildString("Folder not found. UUID: ", folderUUID, ". Person UUID: ", personUUID);
+    }
+
+    @Benchmark
+    public StringBuilder appendToBuffer() {
+	return Utils.appendToBuffer(true, buffer, "UPDATE USER SET EMAIL=? , PASSWORD=? ", " WHERE ", "USERID", "=? ");
+    }
+
+    @Benchmark
+    public JsonNode parseJson() throws InvalidRequestException {
+	return Utils.parseJson(request);
+    }
+
+    @Benchmark
+    public String getSecurePassword() throws InternalErrorException {
+	return Utils.getSecurePassword("Sup3rS3cretPassw0rd");
+    }
+}
@@ -0,0 +1,82 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import rs.marko.lalic.safe.core.UUIDCodec;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of mapping person row to JSON, with UUIDs stored as strings and as binary values
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PersonMapperBenchmark {
+
+    private PersonService.PersonMapper mapper;
+    private ResultSet row;
+
+    @Param({ "false", "true" })
+    private boolean binary;
+
+    @Setup
+    public void setup() throws Exception {
+	UUIDCodec codec = new UUIDCodec();
+	codec.setBinary(binary);
+	PersonService personService = new PersonService();
+	Field field = PersonService.class.getDeclaredField("uuidCodec");
+	field.setAccessible(true);
+	field.set(personService, codec);
+	mapper = personService.new PersonMapper();
+	String personUUID = UUIDGenerator.generateUUID();
+	long now = System.currentTimeMillis();
+	final Map<String, Object> columns = new HashMap<>();
+	columns.put(DBConstants.COMMON_USER_UUID, binary ? UUIDCodec.toBytes(personUUID) : personUUID);
+	columns.put(DBConstants.USER_EMAIL, "person@example.com");
+	columns.put(DBConstants.COMMON_ROLE_ID, "2");
+	columns.put(DBConstants.USER_REGISTRED_ON, new Timestamp(now));
+	columns.put(DBConstants.USER_LAST_LOGIN, new Timestamp(now));
+	columns.put(DBConstants.USER_DISABLED, Boolean.FALSE);
+	// Row is served from map, so only mapping itself is measured
+	row = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+			new InvocationHandler() {
+			    @Override
+			    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object value = columns.get(args[0]);
+				switch (method.getName()) {
+				case "getDate":
+				    return new Date(((Timestamp) value).getTime());
+				case "getString":
+				    return value.toString();
+				default:
+				    return value;
+				}
+			    }
+			});
+    }
+
+    @Benchmark
+    public ObjectNode mapRow() throws SQLException {
+	return mapper.mapRow(row, 0);
+    }
+}
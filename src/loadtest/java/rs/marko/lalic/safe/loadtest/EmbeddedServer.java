@@ -0,0 +1,147 @@
+package rs.marko.lalic.safe.loadtest;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.h2.tools.RunScript;
+import org.springframework.web.SpringServletContainerInitializer;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.servlet.FrameworkServlet;
+import rs.marko.lalic.safe.configuration.MainConfiguration;
+import rs.marko.lalic.safe.configuration.MainInitializer;
+import rs.marko.lalic.safe.core.Utils;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * Application booted through {@link MainInitializer} in embedded Tomcat, against in memory H2 database in MySQL
+ * mode and temporary root folder. When S3 storage backend is requested without endpoint, in memory stand-in of object
+ * store is started as well.
+ */
+public class EmbeddedServer {
+
+    /**
+     * URL of in memory database, must match <code>database.url</code> of load test properties
+     */
+    public static final String DATABASE_URL = "jdbc:h2:mem:safeupload;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    /**
+     * Name of dispatcher servlet registered by {@link MainInitializer}
+     */
+    private static final String DISPATCHER_SERVLET = "DispatcherServlet";
+    /**
+     * Tomcat instance
+     */
+    private Tomcat tomcat;
+    /**
+     * Application context
+     */
+    private Context context;
+    /**
+     * Object store used when S3 backend is tested without configured endpoint, <code>null</code> otherwise
+     */
+    private S3StandInServer objectStore;
+
+    /**
+     * Method will create database schema and start application
+     *
+     * @param workFolder Folder holding root folder and Tomcat work files
+     * @throws Exception if application can't be started
+     */
+    public void start(File workFolder) throws Exception {
+	createSchema();
+	File rootFolder = new File(workFolder, "root");
+	rootFolder.mkdirs();
+	// System properties take precedence over safe.properties
+	System.setProperty("root.folder.path", rootFolder.getAbsolutePath());
+	if ("S3".equalsIgnoreCase(System.getProperty("storage.backend"))
+			&& System.getProperty("storage.s3.endpoint") == null) {
+	    objectStore = new S3StandInServer();
+	    objectStore.start();
+	    System.setProperty("storage.s3.endpoint", objectStore.getEndpoint());
+	}
+	tomcat = new Tomcat();
+	tomcat.setBaseDir(new File(workFolder, "tomcat").getAbsolutePath());
+	tomcat.setPort(0);
+	tomcat.getConnector().setAttribute("maxThreads", 500);
+	context = tomcat.addContext("", workFolder.getAbsolutePath());
+	context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+			Collections.<Class<?>>singleton(MainInitializer.class));
+	tomcat.start();
+    }
+
+    /**
+     * Method will stop application
+     *
+     * @throws Exception if application can't be stopped
+     */
+    public void stop() throws Exception {
+	tomcat.stop();
+	tomcat.destroy();
+	if (objectStore != null) {
+	    objectStore.stop();
+	}
+    }
+
+    /**
+     * Getter for base URL of application
+     *
+     * @return Base URL
+     */
+    public String getBaseUrl() {
+	return Utils.buildString("http://localhost:", tomcat.getConnector().getLocalPort());
+    }
+
+    /**
+     * Method will get connection pool used by application
+     *
+     * @return Connection pool
+     */
+    public DataSource getDataSource() {
+	WebApplicationContext ctx = WebApplicationContextUtils.getWebApplicationContext(context.getServletContext(),
+			FrameworkServlet.SERVLET_CONTEXT_PREFIX + DISPATCHER_SERVLET);
+	return ctx.getBean(DataSource.class);
+    }
+
+    /**
+     * Method will get value of single column, used for looking up UUIDs API doesn't return
+     *
+     * @param query  Query returning one column
+     * @param params Query parameters
+     * @return Column value, or <code>null</code> if there is no row
+     * @throws SQLException if query fails
+     */
+    public String queryForString(String query, Object... params) throws SQLException {
+	try (Connection connection = DriverManager.getConnection(DATABASE_URL, "sa", "");
+			PreparedStatement ps = connection.prepareStatement(query)) {
+	    for (int i = 0; i < params.length; i++) {
+		ps.setObject(i + 1, params[i]);
+	    }
+	    try (ResultSet rs = ps.executeQuery()) {
+		return rs.next() ? rs.getString(1) : null;
+	    }
+	}
+    }
+
+    /**
+     * Method will create schema from safe-upload.sql
+     *
+     * @throws Exception if schema can't be created
+     */
+    private void createSchema() throws Exception {
+	try (Connection connection = DriverManager.getConnection(DATABASE_URL, "sa", "");
+			InputStreamReader script = new InputStreamReader(
+					MainConfiguration.class.getResourceAsStream("/safe-upload.sql"),
+					StandardCharsets.UTF_8)) {
+	    RunScript.execute(connection, script);
+	}
+    }
+}
@@ -0,0 +1,301 @@
+package rs.marko.lalic.safe.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check of operations on folder subtree when person has sibling folders whose names differ only in case. Database is
+ * switched to case insensitive collation before schema is created, like default collation of MySQL, so subtree
+ * selected by path prefix would pick up sibling as well. Exits with non zero status if any check fails.
+ */
+public class FolderSubtreeCheck {
+
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Token of admin user, must match <code>service.admin.token</code> of load test properties
+     */
+    private static final String TOKEN = "9c8e0cc8-f349-11e4-b9b2-1697f925ec7b";
+    /**
+     * Name of person UUID header
+     */
+    private static final String PERSON_HEADER = "personUUID";
+    /**
+     * Time in milliseconds deletion job is waited for
+     */
+    private static final long DELETE_TIMEOUT = 30000;
+    private static final String FOLDER_PATH_QUERY = Utils.buildString("SELECT ", DBConstants.COMMON_PATH, " FROM ",
+		    DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+    private static final String FILE_PATH_QUERY = Utils.buildString("SELECT ", DBConstants.COMMON_PATH, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+
+    private final EmbeddedServer server = new EmbeddedServer();
+    private final List<String> failures = new ArrayList<>();
+    private CloseableHttpClient client;
+    private int persons;
+
+    /**
+     * Runs check
+     *
+     * @param args Not used
+     * @throws Exception if check can't be run
+     */
+    public static void main(String[] args) throws Exception {
+	FolderSubtreeCheck check = new FolderSubtreeCheck();
+	check.run();
+	for (String failure : check.failures) {
+	    System.err.println(Utils.buildString("FAILED: ", failure));
+	}
+	System.out.println(Utils.buildString("Folder subtree check finished with ", check.failures.size(),
+			" failures."));
+	System.exit(check.failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Method will run all checks against embedded application
+     *
+     * @throws Exception if check can't be run
+     */
+    private void run() throws Exception {
+	File workFolder = Files.createTempDirectory("safe-upload-subtree").toFile();
+	client = HttpClients.createDefault();
+	try {
+	    try (Connection connection = DriverManager.getConnection(EmbeddedServer.DATABASE_URL, "sa", "");
+			    Statement statement = connection.createStatement()) {
+		statement.execute("SET COLLATION ENGLISH STRENGTH PRIMARY");
+	    }
+	    server.start(workFolder);
+	    checkRename();
+	    checkDelete();
+	}
+	finally {
+	    client.close();
+	    server.stop();
+	    FileUtils.deleteQuietly(workFolder);
+	}
+    }
+
+    /**
+     * Method will rename folder and check that its case variant sibling keeps paths of its folders and files
+     *
+     * @throws Exception if request fails
+     */
+    private void checkRename() throws Exception {
+	String personUUID = registerPerson();
+	String[] upper = createSiblingTree(personUUID, "Docs");
+	String[] lower = createSiblingTree(personUUID, "docs");
+	String[] lowerPaths = getPaths(lower);
+	ObjectNode rename = MAPPER.createObjectNode();
+	rename.put(JsonConstants.FIELD_NAME, "Papers");
+	if (!post(Utils.buildString("/api/folder/", upper[0], "/rename"), personUUID, json(rename))) {
+	    failures.add("Rename of folder Docs failed");
+	    return;
+	}
+	String[] upperPaths = getPaths(upper);
+	if (!upperPaths[0].endsWith(Utils.buildString(File.separator, "Papers"))
+			|| !upperPaths[1].startsWith(Utils.buildString(upperPaths[0], File.separator))
+			|| !upperPaths[2].startsWith(Utils.buildString(upperPaths[1], File.separator))) {
+	    failures.add(Utils.buildString("Renamed subtree has wrong paths: ", String.join(", ", upperPaths)));
+	}
+	checkUnchanged("rename", lower, lowerPaths);
+    }
+
+    /**
+     * Method will delete folder and check that its case variant sibling keeps its folders and files
+     *
+     * @throws Exception if request fails
+     */
+    private void checkDelete() throws Exception {
+	String personUUID = registerPerson();
+	String[] upper = createSiblingTree(personUUID, "Docs");
+	String[] lower = createSiblingTree(personUUID, "docs");
+	String[] lowerPaths = getPaths(lower);
+	HttpDelete delete = new HttpDelete(Utils.buildString(server.getBaseUrl(), "/api/folder/", upper[0]));
+	if (execute(delete, personUUID) != 202) {
+	    failures.add("Delete of folder Docs failed");
+	    return;
+	}
+	long end = System.currentTimeMillis() + DELETE_TIMEOUT;
+	while (server.queryForString(FOLDER_PATH_QUERY, upper[0]) != null) {
+	    if (System.currentTimeMillis() > end) {
+		failures.add("Deleted folder Docs wasn't removed in time");
+		return;
+	    }
+	    Thread.sleep(100);
+	}
+	if (server.queryForString(FOLDER_PATH_QUERY, upper[1]) != null
+			|| server.queryForString(FILE_PATH_QUERY, upper[1]) != null) {
+	    failures.add("Subtree of deleted folder Docs wasn't removed");
+	}
+	checkUnchanged("delete", lower, lowerPaths);
+    }
+
+    /**
+     * Method will check that folders and files of subtree keep their paths and files are still on disk
+     *
+     * @param operation Operation done on sibling
+     * @param uuids     UUIDs of folder, its subfolder and file in subfolder
+     * @param paths     Paths before operation
+     * @throws Exception if query fails
+     */
+    private void checkUnchanged(String operation, String[] uuids, String[] paths) throws Exception {
+	String[] current = getPaths(uuids);
+	for (int i = 0; i < paths.length; i++) {
+	    if (!paths[i].equals(current[i])) {
+		failures.add(Utils.buildString("Path of sibling changed by ", operation, ": ", paths[i], " -> ",
+				current[i]));
+	    }
+	}
+	if (current[2] == null || !new File(current[2]).isFile()) {
+	    failures.add(Utils.buildString("File of sibling is missing after ", operation, ": ", paths[2]));
+	}
+    }
+
+    /**
+     * Method will get paths of folder, its subfolder and file in subfolder
+     *
+     * @param uuids UUIDs of folder and subfolder
+     * @return Paths of folder, subfolder and file
+     * @throws Exception if query fails
+     */
+    private String[] getPaths(String[] uuids) throws Exception {
+	return new String[] { server.queryForString(FOLDER_PATH_QUERY, uuids[0]),
+			server.queryForString(FOLDER_PATH_QUERY, uuids[1]),
+			server.queryForString(FILE_PATH_QUERY, uuids[1]) };
+    }
+
+    /**
+     * Method will register new person
+     *
+     * @return UUID of person
+     * @throws Exception if person can't be registered
+     */
+    private String registerPerson() throws Exception {
+	String email = Utils.buildString("subtree", ++persons, "@example.com");
+	ObjectNode person = MAPPER.createObjectNode();
+	person.put(JsonConstants.FIELD_EMAIL, email);
+	person.put(JsonConstants.FIELD_PASSWORD, "LoadTest123#");
+	if (!post("/api/person", null, json(person))) {
+	    throw new IllegalStateException(Utils.buildString("Failed to register person ", email));
+	}
+	return server.queryForString(Utils.buildString("SELECT ", DBConstants.COMMON_USER_UUID, " FROM ",
+			DBConstants.USER_TABLE, " WHERE ", DBConstants.USER_EMAIL, "=?"), email);
+    }
+
+    /**
+     * Method will create folder in root folder of person, with subfolder holding one file
+     *
+     * @param personUUID UUID of person
+     * @param name       Name of folder
+     * @return UUIDs of folder and subfolder
+     * @throws Exception if folders or file can't be created
+     */
+    private String[] createSiblingTree(String personUUID, String name) throws Exception {
+	String folderUUID = createFolder(personUUID, personUUID, name);
+	String subfolderUUID = createFolder(personUUID, Utils.buildString(personUUID, File.separator, name), "sub");
+	ObjectNode object = MAPPER.createObjectNode();
+	object.put(JsonConstants.FIELD_FOLDER_UUID, subfolderUUID);
+	object.put(JsonConstants.FIELD_NAME, "file.txt");
+	HttpEntity entity = MultipartEntityBuilder.create()
+			.addTextBody("object", object.toString(), ContentType.APPLICATION_JSON)
+			.addBinaryBody("file", name.getBytes(StandardCharsets.UTF_8),
+					ContentType.APPLICATION_OCTET_STREAM, "file.txt").build();
+	if (!post("/api/file", personUUID, entity)) {
+	    throw new IllegalStateException(Utils.buildString("Failed to add file to folder ", subfolderUUID));
+	}
+	return new String[] { folderUUID, subfolderUUID };
+    }
+
+    /**
+     * Method will create folder and look up its UUID
+     *
+     * @param personUUID  UUID of person
+     * @param destination Path of parent folder relative to root folder
+     * @param name        Name of folder
+     * @return UUID of folder
+     * @throws Exception if folder can't be created
+     */
+    private String createFolder(String personUUID, String destination, String name) throws Exception {
+	ObjectNode folder = MAPPER.createObjectNode();
+	folder.put(JsonConstants.FIELD_NAME, name);
+	folder.put(JsonConstants.FIELD_DESTINATION, destination);
+	if (!post("/api/folder", personUUID, json(folder))) {
+	    throw new IllegalStateException(Utils.buildString("Failed to create folder ", destination, "/", name));
+	}
+	return server.queryForString(Utils.buildString("SELECT ", DBConstants.COMMON_FOLDER_UUID, " FROM ",
+			DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID, "=? AND CAST(",
+			DBConstants.COMMON_PATH, " AS BINARY)=CAST(? AS BINARY)"), personUUID,
+			Utils.buildString(new File(System.getProperty("root.folder.path"), destination).getPath(),
+					File.separator, name));
+    }
+
+    /**
+     * Method will create JSON request body
+     *
+     * @param node JSON
+     * @return Request body
+     */
+    private HttpEntity json(ObjectNode node) {
+	return new StringEntity(node.toString(), ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Method will send POST request
+     *
+     * @param path       Path of API
+     * @param personUUID UUID of person, sent as header if not <code>null</code>
+     * @param entity     Request body
+     * @return <code>TRUE</code> if request succeeded
+     * @throws Exception if request fails
+     */
+    private boolean post(String path, String personUUID, HttpEntity entity) throws Exception {
+	HttpPost post = new HttpPost(Utils.buildString(server.getBaseUrl(), path));
+	post.setEntity(entity);
+	return execute(post, personUUID) == 200;
+    }
+
+    /**
+     * Method will send request with token and person headers
+     *
+     * @param request    Request
+     * @param personUUID UUID of person, sent as header if not <code>null</code>
+     * @return Status code of response
+     * @throws Exception if request fails
+     */
+    private int execute(HttpRequestBase request, String personUUID) throws Exception {
+	request.setHeader(Event.TOKEN, TOKEN);
+	if (personUUID != null) {
+	    request.setHeader(PERSON_HEADER, personUUID);
+	}
+	HttpResponse response = client.execute(request);
+	EntityUtils.consume(response.getEntity());
+	return response.getStatusLine().getStatusCode();
+    }
+}
@@ -0,0 +1,68 @@
+package rs.marko.lalic.safe.loadtest;
+
+import java.io.InputStream;
+
+/**
+ * Stream of pseudo random content of given length, generated while it is read, so large files don't have to be
+ * kept in memory. Different seeds give different content.
+ */
+public class GeneratedInputStream extends InputStream {
+
+    /**
+     * Number of bytes left
+     */
+    private long remaining;
+    /**
+     * Xorshift state
+     */
+    private long state;
+
+    /**
+     * Construct for generated stream
+     *
+     * @param length Length of content
+     * @param seed   Seed of content
+     */
+    public GeneratedInputStream(long length, long seed) {
+	this.remaining = length;
+	this.state = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    @Override
+    public int read() {
+	if (remaining <= 0) {
+	    return -1;
+	}
+	remaining--;
+	return (int) (next() & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+	if (remaining <= 0) {
+	    return -1;
+	}
+	int count = (int) Math.min(length, remaining);
+	int i = 0;
+	while (i < count) {
+	    long value = next();
+	    for (int j = 0; j < 8 && i < count; j++, i++) {
+		buffer[offset + i] = (byte) (value >>> (j * 8));
+	    }
+	}
+	remaining -= count;
+	return count;
+    }
+
+    /**
+     * Method will advance xorshift state
+     *
+     * @return Next pseudo random value
+     */
+    private long next() {
+	state ^= state << 13;
+	state ^= state >>> 7;
+	state ^= state << 17;
+	return state;
+    }
+}
@@ -0,0 +1,369 @@
+package rs.marko.lalic.safe.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.InputStreamBody;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upload load test. Boots application in embedded Tomcat against in memory database, registers one person and
+ * folder per worker through API, then every worker uploads files of configured size mix, and creates folders, as
+ * fast as it can. After warmup, throughput, latency percentiles and connection pool usage are measured.
+ * <p>
+ * System properties:
+ * <ul>
+ * <li><code>loadtest.threads</code> - Number of concurrent workers</li>
+ * <li><code>loadtest.duration</code> - Measured time in seconds</li>
+ * <li><code>loadtest.warmup</code> - Warmup time in seconds</li>
+ * <li><code>loadtest.sizes</code> - File size mix, as comma separated <code>size:weight</code> pairs</li>
+ * <li><code>loadtest.folder.ratio</code> - Folders created per 100 operations</li>
+ * <li><code>loadtest.result</code> - File where JSON report is written</li>
+ * </ul>
+ */
+public class LoadTestRunner {
+
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Token of admin user, must match <code>service.admin.token</code> of load test properties
+     */
+    private static final String TOKEN = "9c8e0cc8-f349-11e4-b9b2-1697f925ec7b";
+    /**
+     * Name of person UUID header
+     */
+    private static final String PERSON_HEADER = "personUUID";
+    private static final String OPERATION_REGISTER_PERSON = "registerPerson";
+    private static final String OPERATION_CREATE_FOLDER = "createFolder";
+    private static final String OPERATION_ADD_FILE = "addFile";
+    /**
+     * Percentiles in report
+     */
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+    private final int threads = Integer.getInteger("loadtest.threads", 16);
+    private final int duration = Integer.getInteger("loadtest.duration", 60);
+    private final int warmup = Integer.getInteger("loadtest.warmup", 10);
+    private final int folderRatio = Integer.getInteger("loadtest.folder.ratio", 5);
+    private final String result = System.getProperty("loadtest.result", "loadtest-result.json");
+    private final long[] sizes;
+    private final int[] cumulativeWeights;
+    private final AtomicLong sequence = new AtomicLong();
+    private final EmbeddedServer server = new EmbeddedServer();
+    private CloseableHttpClient client;
+    /**
+     * Statistics of operations, replaced when warmup ends
+     */
+    private volatile Map<String, OperationStats> stats = new TreeMap<>();
+
+    /**
+     * Construct for load test runner
+     */
+    private LoadTestRunner() {
+	String[] mix = System.getProperty("loadtest.sizes", "4096:60,262144:30,4194304:9,33554432:1").split(",");
+	sizes = new long[mix.length];
+	cumulativeWeights = new int[mix.length];
+	int total = 0;
+	for (int i = 0; i < mix.length; i++) {
+	    String[] entry = mix[i].trim().split(":");
+	    sizes[i] = Long.parseLong(entry[0]);
+	    total += entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+	    cumulativeWeights[i] = total;
+	}
+    }
+
+    /**
+     * Runs load test
+     *
+     * @param args Not used
+     * @throws Exception if load test can't be run
+     */
+    public static void main(String[] args) throws Exception {
+	new LoadTestRunner().run();
+	System.exit(0);
+    }
+
+    /**
+     * Method will run load test
+     *
+     * @throws Exception if load test can't be run
+     */
+    private void run() throws Exception {
+	File workFolder = Files.createTempDirectory("safe-upload-loadtest").toFile();
+	client = HttpClients.custom().setMaxConnTotal(threads * 2).setMaxConnPerRoute(threads * 2).build();
+	ExecutorService workers = Executors.newFixedThreadPool(threads);
+	ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+	try {
+	    server.start(workFolder);
+	    List<String[]> targets = new ArrayList<>();
+	    for (int i = 0; i < threads; i++) {
+		targets.add(setupWorker(i));
+	    }
+	    System.out.println(Utils.buildString("Started ", threads, " workers. Warmup ", warmup, " s, measuring ",
+			    duration, " s."));
+	    long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+	    final long end = warmupEnd + TimeUnit.SECONDS.toNanos(duration);
+	    List<Future<?>> futures = new ArrayList<>();
+	    for (final String[] target : targets) {
+		futures.add(workers.submit(new Runnable() {
+		    @Override
+		    public void run() {
+			work(target[0], target[1], end);
+		    }
+		}));
+	    }
+	    TimeUnit.NANOSECONDS.sleep(warmupEnd - System.nanoTime());
+	    stats = new TreeMap<>();
+	    PoolMonitor poolMonitor = new PoolMonitor(server.getDataSource());
+	    sampler.scheduleAtFixedRate(poolMonitor, 0, 50, TimeUnit.MILLISECONDS);
+	    long measureStart = System.nanoTime();
+	    for (Future<?> future : futures) {
+		future.get();
+	    }
+	    double seconds = (System.nanoTime() - measureStart) / 1e9;
+	    sampler.shutdownNow();
+	    report(seconds, poolMonitor);
+	}
+	finally {
+	    workers.shutdownNow();
+	    sampler.shutdownNow();
+	    client.close();
+	    server.stop();
+	    FileUtils.deleteQuietly(workFolder);
+	}
+    }
+
+    /**
+     * Method will register person and create folder for worker
+     *
+     * @param worker Index of worker
+     * @return UUID of person and UUID of folder
+     * @throws Exception if setup fails
+     */
+    private String[] setupWorker(int worker) throws Exception {
+	String email = Utils.buildString("loadtest", worker, "@example.com");
+	ObjectNode person = MAPPER.createObjectNode();
+	person.put(JsonConstants.FIELD_EMAIL, email);
+	person.put(JsonConstants.FIELD_PASSWORD, "LoadTest123#");
+	if (!post("/api/person", null, new StringEntity(person.toString(), ContentType.APPLICATION_JSON),
+			OPERATION_REGISTER_PERSON, 0)) {
+	    throw new IllegalStateException(Utils.buildString("Failed to register person ", email));
+	}
+	String personUUID = server.queryForString(Utils.buildString("SELECT ", DBConstants.COMMON_USER_UUID, " FROM ",
+			DBConstants.USER_TABLE, " WHERE ", DBConstants.USER_EMAIL, "=?"), email);
+	if (!createFolder(personUUID, "uploads")) {
+	    throw new IllegalStateException(Utils.buildString("Failed to create folder for person ", personUUID));
+	}
+	String folderUUID = server.queryForString(Utils.buildString("SELECT ", DBConstants.COMMON_FOLDER_UUID, " FROM ",
+			DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID, "=? AND ",
+			DBConstants.COMMON_NAME, "=?"), personUUID, "uploads");
+	return new String[] { personUUID, folderUUID };
+    }
+
+    /**
+     * Method will upload files and create folders until end time
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of folder where files are uploaded
+     * @param end        End time, in {@link System#nanoTime()}
+     */
+    private void work(String personUUID, String folderUUID, long end) {
+	Random random = new Random();
+	while (System.nanoTime() < end) {
+	    try {
+		if (random.nextInt(100) < folderRatio) {
+		    createFolder(personUUID, Utils.buildString("folder-", sequence.incrementAndGet()));
+		}
+		else {
+		    addFile(personUUID, folderUUID, pickSize(random));
+		}
+	    }
+	    catch (Exception e) {
+		System.err.println(Utils.buildString("Request failed: ", e.getMessage()));
+	    }
+	}
+    }
+
+    /**
+     * Method will create folder in root folder of person
+     *
+     * @param personUUID UUID of person
+     * @param name       Name of folder
+     * @return <code>TRUE</code> if folder was created
+     * @throws Exception if request fails
+     */
+    private boolean createFolder(String personUUID, String name) throws Exception {
+	ObjectNode folder = MAPPER.createObjectNode();
+	folder.put(JsonConstants.FIELD_NAME, name);
+	folder.put(JsonConstants.FIELD_DESTINATION, personUUID);
+	return post("/api/folder", personUUID, new StringEntity(folder.toString(), ContentType.APPLICATION_JSON),
+			OPERATION_CREATE_FOLDER, 0);
+    }
+
+    /**
+     * Method will upload file of given size
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of folder
+     * @param size       Size of file
+     * @return <code>TRUE</code> if file was added
+     * @throws Exception if request fails
+     */
+    private boolean addFile(String personUUID, String folderUUID, long size) throws Exception {
+	long id = sequence.incrementAndGet();
+	String name = Utils.buildString("file-", id, ".bin");
+	ObjectNode object = MAPPER.createObjectNode();
+	object.put(JsonConstants.FIELD_FOLDER_UUID, folderUUID);
+	object.put(JsonConstants.FIELD_NAME, name);
+	HttpEntity entity = MultipartEntityBuilder.create()
+			.addTextBody("object", object.toString(), ContentType.APPLICATION_JSON)
+			.addPart("file", new InputStreamBody(new GeneratedInputStream(size, id),
+					ContentType.APPLICATION_OCTET_STREAM, name)).build();
+	return post("/api/file", personUUID, entity, OPERATION_ADD_FILE, size);
+    }
+
+    /**
+     * Method will send POST request and record its latency
+     *
+     * @param path       Path of API
+     * @param personUUID UUID of person, sent as header if not <code>null</code>
+     * @param entity     Request body
+     * @param operation  Operation recorded
+     * @param size       Number of uploaded bytes
+     * @return <code>TRUE</code> if request succeeded
+     * @throws Exception if request fails
+     */
+    private boolean post(String path, String personUUID, HttpEntity entity, String operation, long size)
+		    throws Exception {
+	HttpPost post = new HttpPost(Utils.buildString(server.getBaseUrl(), path));
+	post.setHeader(Event.TOKEN, TOKEN);
+	if (personUUID != null) {
+	    post.setHeader(PERSON_HEADER, personUUID);
+	}
+	post.setEntity(entity);
+	long start = System.nanoTime();
+	boolean success = false;
+	try {
+	    HttpResponse response = client.execute(post);
+	    EntityUtils.consume(response.getEntity());
+	    success = response.getStatusLine().getStatusCode() == 200;
+	    return success;
+	}
+	finally {
+	    getStats(operation).record(System.nanoTime() - start, size, success);
+	}
+    }
+
+    /**
+     * Method will pick file size from configured mix
+     *
+     * @param random Random generator
+     * @return File size
+     */
+    private long pickSize(Random random) {
+	int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+	for (int i = 0; i < sizes.length; i++) {
+	    if (pick < cumulativeWeights[i]) {
+		return sizes[i];
+	    }
+	}
+	return sizes[sizes.length - 1];
+    }
+
+    /**
+     * Method will get statistics of operation, creating them if needed
+     *
+     * @param operation Operation
+     * @return Statistics of operation
+     */
+    private OperationStats getStats(String operation) {
+	Map<String, OperationStats> current = stats;
+	synchronized (current) {
+	    OperationStats operationStats = current.get(operation);
+	    if (operationStats == null) {
+		operationStats = new OperationStats();
+		current.put(operation, operationStats);
+	    }
+	    return operationStats;
+	}
+    }
+
+    /**
+     * Method will print report and write it as JSON
+     *
+     * @param seconds     Measured time in seconds
+     * @param poolMonitor Connection pool samples
+     * @throws Exception if report can't be written
+     */
+    private void report(double seconds, PoolMonitor poolMonitor) throws Exception {
+	ObjectNode report = MAPPER.createObjectNode();
+	report.put("threads", threads);
+	report.put("seconds", seconds);
+	report.put("sizes", System.getProperty("loadtest.sizes"));
+	ObjectNode operations = report.putObject("operations");
+	System.out.println(String.format("%-16s %8s %7s %10s %10s %10s %10s %10s", "operation", "count", "errors",
+			"ops/s", "MB/s", "p50 ms", "p99 ms", "p999 ms"));
+	Map<String, OperationStats> measured = stats;
+	synchronized (measured) {
+	    for (Map.Entry<String, OperationStats> entry : measured.entrySet()) {
+		OperationStats operationStats = entry.getValue();
+		double[] percentiles = operationStats.getPercentiles(PERCENTILES);
+		double throughput = operationStats.getCount() / seconds;
+		double megabytes = operationStats.getBytes() / seconds / (1024 * 1024);
+		System.out.println(String.format("%-16s %8d %7d %10.1f %10.2f %10.2f %10.2f %10.2f", entry.getKey(),
+				operationStats.getCount(), operationStats.getErrors(), throughput, megabytes,
+				percentiles[0], percentiles[1], percentiles[2]));
+		ObjectNode operation = operations.putObject(entry.getKey());
+		operation.put("count", operationStats.getCount());
+		operation.put("errors", operationStats.getErrors());
+		operation.put("throughput", throughput);
+		operation.put("megabytesPerSecond", megabytes);
+		operation.put("p50", percentiles[0]);
+		operation.put("p99", percentiles[1]);
+		operation.put("p999", percentiles[2]);
+	    }
+	}
+	System.out.println(String.format(
+			"Connection pool: size %d, mean active %.1f, max active %d, saturated %.1f%% of time, "
+					+ "mean waiting %.1f, max waiting %d", poolMonitor.getPoolSize(),
+			poolMonitor.getMeanActive(), poolMonitor.getMaxActive(), poolMonitor.getSaturation(),
+			poolMonitor.getMeanWaiting(), poolMonitor.getMaxWaiting()));
+	ObjectNode pool = report.putObject("connectionPool");
+	pool.put("size", poolMonitor.getPoolSize());
+	pool.put("meanActive", poolMonitor.getMeanActive());
+	pool.put("maxActive", poolMonitor.getMaxActive());
+	pool.put("saturation", poolMonitor.getSaturation());
+	pool.put("meanWaiting", poolMonitor.getMeanWaiting());
+	pool.put("maxWaiting", poolMonitor.getMaxWaiting());
+	MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(result), report);
+	System.out.println(Utils.buildString("Report written to ", result));
+    }
+}
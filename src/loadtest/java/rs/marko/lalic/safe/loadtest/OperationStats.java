@@ -0,0 +1,90 @@
+package rs.marko.lalic.safe.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies, errors and transferred bytes of one operation type
+ */
+public class OperationStats {
+
+    /**
+     * Recorded latencies in nanoseconds
+     */
+    private long[] latencies = new long[1024];
+    /**
+     * Number of recorded latencies
+     */
+    private int count;
+    /**
+     * Number of failed operations
+     */
+    private int errors;
+    /**
+     * Number of uploaded bytes
+     */
+    private long bytes;
+
+    /**
+     * Method will record one operation
+     *
+     * @param latency Latency in nanoseconds
+     * @param size    Number of uploaded bytes
+     * @param success <code>TRUE</code> if operation succeeded
+     */
+    public synchronized void record(long latency, long size, boolean success) {
+	if (count == latencies.length) {
+	    latencies = Arrays.copyOf(latencies, count * 2);
+	}
+	latencies[count++] = latency;
+	if (success) {
+	    bytes += size;
+	}
+	else {
+	    errors++;
+	}
+    }
+
+    /**
+     * Getter for count
+     *
+     * @return Number of operations
+     */
+    public synchronized int getCount() {
+	return count;
+    }
+
+    /**
+     * Getter for errors
+     *
+     * @return Number of failed operations
+     */
+    public synchronized int getErrors() {
+	return errors;
+    }
+
+    /**
+     * Getter for bytes
+     *
+     * @return Number of uploaded bytes
+     */
+    public synchronized long getBytes() {
+	return bytes;
+    }
+
+    /**
+     * Method will calculate latency percentiles
+     *
+     * @param percentiles Percentiles, between 0 and 100
+     * @return Latencies in milliseconds, in same order as percentiles
+     */
+    public synchronized double[] getPercentiles(double... percentiles) {
+	long[] sorted = Arrays.copyOf(latencies, count);
+	Arrays.sort(sorted);
+	double[] result = new double[percentiles.length];
+	for (int i = 0; i < percentiles.length && count > 0; i++) {
+	    int index = (int) Math.ceil(percentiles[i] / 100 * count) - 1;
+	    result[i] = sorted[Math.max(0, Math.min(count - 1, index))] / 1000000.0;
+	}
+	return result;
+    }
+}
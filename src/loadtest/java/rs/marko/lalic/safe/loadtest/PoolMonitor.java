@@ -0,0 +1,115 @@
+package rs.marko.lalic.safe.loadtest;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+
+/**
+ * Samples connection pool, to show how close it is to saturation
+ */
+public class PoolMonitor implements Runnable {
+
+    /**
+     * Connection pool
+     */
+    private final DataSource dataSource;
+    /**
+     * Number of samples
+     */
+    private long samples;
+    /**
+     * Sum of active connections over all samples
+     */
+    private long activeSum;
+    /**
+     * Maximum of active connections
+     */
+    private int maxActive;
+    /**
+     * Number of samples with all connections in use
+     */
+    private long saturatedSamples;
+    /**
+     * Sum of threads waiting for connection over all samples
+     */
+    private long waitingSum;
+    /**
+     * Maximum of threads waiting for connection
+     */
+    private int maxWaiting;
+
+    /**
+     * Construct for pool monitor
+     *
+     * @param dataSource Connection pool
+     */
+    public PoolMonitor(DataSource dataSource) {
+	this.dataSource = dataSource;
+    }
+
+    @Override
+    public synchronized void run() {
+	int active = dataSource.getActive();
+	int waiting = dataSource.getWaitCount();
+	samples++;
+	activeSum += active;
+	waitingSum += waiting;
+	maxActive = Math.max(maxActive, active);
+	maxWaiting = Math.max(maxWaiting, waiting);
+	if (active >= dataSource.getMaxActive()) {
+	    saturatedSamples++;
+	}
+    }
+
+    /**
+     * Getter for pool size
+     *
+     * @return Maximum number of connections in pool
+     */
+    public int getPoolSize() {
+	return dataSource.getMaxActive();
+    }
+
+    /**
+     * Getter for mean active connections
+     *
+     * @return Mean number of active connections
+     */
+    public synchronized double getMeanActive() {
+	return samples == 0 ? 0 : (double) activeSum / samples;
+    }
+
+    /**
+     * Getter for max active connections
+     *
+     * @return Maximum number of active connections
+     */
+    public synchronized int getMaxActive() {
+	return maxActive;
+    }
+
+    /**
+     * Getter for saturation
+     *
+     * @return Percent of samples with all connections in use
+     */
+    public synchronized double getSaturation() {
+	return samples == 0 ? 0 : saturatedSamples * 100.0 / samples;
+    }
+
+    /**
+     * Getter for mean waiting threads
+     *
+     * @return Mean number of threads waiting for connection
+     */
+    public synchronized double getMeanWaiting() {
+	return samples == 0 ? 0 : (double) waitingSum / samples;
+    }
+
+    /**
+     * Getter for max waiting threads
+     *
+     * @return Maximum number of threads waiting for connection
+     */
+    public synchronized int getMaxWaiting() {
+	return maxWaiting;
+    }
+}
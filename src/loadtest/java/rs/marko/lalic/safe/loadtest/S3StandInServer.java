@@ -0,0 +1,280 @@
+package rs.marko.lalic.safe.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal S3 compatible object store keeping objects in memory, so S3 storage backend can be load tested without
+ * external service. Supports requests used by backend: put, ranged get, head, delete, list of version 2 and multipart
+ * upload. Signatures are not verified.
+ */
+public class S3StandInServer {
+
+    /**
+     * Pattern of byte range requested by client
+     */
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    /**
+     * Objects mapped by bucket and key, in key order
+     */
+    private final ConcurrentNavigableMap<String, StoredContent> objects = new ConcurrentSkipListMap<>();
+    /**
+     * Parts of multipart uploads in progress, mapped by upload ID and part number
+     */
+    private final Map<String, TreeMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    /**
+     * HTTP server
+     */
+    private HttpServer server;
+
+    /**
+     * Method will start server on free port
+     *
+     * @throws IOException if server can't be started
+     */
+    public void start() throws IOException {
+	server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	server.setExecutor(Executors.newCachedThreadPool());
+	server.createContext("/", new ObjectHandler());
+	server.start();
+    }
+
+    /**
+     * Method will stop server
+     */
+    public void stop() {
+	server.stop(0);
+    }
+
+    /**
+     * Getter for endpoint URL
+     *
+     * @return Endpoint URL
+     */
+    public String getEndpoint() {
+	return Utils.buildString("http://localhost:", server.getAddress().getPort());
+    }
+
+    /**
+     * Handler of all requests, dispatched by method and query parameters
+     */
+    private class ObjectHandler implements HttpHandler {
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+	    try {
+		String path = exchange.getRequestURI().getPath().substring(1);
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		String method = exchange.getRequestMethod();
+		// Body is always read to its end, otherwise server closes connection instead of keeping it alive
+		byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+		if (!path.contains("/")) {
+		    list(exchange, path, query);
+		}
+		else if ("POST".equals(method) && query.containsKey("uploads")) {
+		    String uploadId = UUIDGenerator.generateUUID();
+		    uploads.put(uploadId, new TreeMap<Integer, byte[]>());
+		    send(exchange, 200, Utils.buildString("<InitiateMultipartUploadResult><UploadId>", uploadId,
+				    "</UploadId></InitiateMultipartUploadResult>"));
+		}
+		else if ("PUT".equals(method) && query.containsKey("uploadId")) {
+		    TreeMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+		    synchronized (parts) {
+			parts.put(Integer.valueOf(query.get("partNumber")), body);
+		    }
+		    exchange.getResponseHeaders().set("ETag", Utils.buildString("\"", query.get("partNumber"), "\""));
+		    send(exchange, 200, "");
+		}
+		else if ("POST".equals(method) && query.containsKey("uploadId")) {
+		    TreeMap<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+		    ByteArrayOutputStream content = new ByteArrayOutputStream();
+		    synchronized (parts) {
+			for (byte[] part : parts.values()) {
+			    content.write(part);
+			}
+		    }
+		    objects.put(path, new StoredContent(content.toByteArray()));
+		    send(exchange, 200, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>");
+		}
+		else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+		    uploads.remove(query.get("uploadId"));
+		    send(exchange, 204, null);
+		}
+		else if ("PUT".equals(method)) {
+		    objects.put(path, new StoredContent(body));
+		    send(exchange, 200, "");
+		}
+		else if ("DELETE".equals(method)) {
+		    objects.remove(path);
+		    send(exchange, 204, null);
+		}
+		else {
+		    get(exchange, path, "HEAD".equals(method));
+		}
+	    }
+	    finally {
+		exchange.close();
+	    }
+	}
+
+	/**
+	 * Method will send object, or requested range of it
+	 *
+	 * @param exchange HTTP exchange
+	 * @param path     Bucket and key of object
+	 * @param head     Flag if only headers are sent
+	 * @throws IOException if response can't be sent
+	 */
+	private void get(HttpExchange exchange, String path, boolean head) throws IOException {
+	    StoredContent object = objects.get(path);
+	    if (object == null) {
+		send(exchange, 404, head ? null : "<Error><Code>NoSuchKey</Code></Error>");
+		return;
+	    }
+	    exchange.getResponseHeaders().set("Last-Modified", object.lastModified);
+	    if (head) {
+		exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.content.length));
+		exchange.sendResponseHeaders(200, -1);
+		return;
+	    }
+	    String range = exchange.getRequestHeaders().getFirst("Range");
+	    Matcher matcher = range == null ? null : RANGE.matcher(range);
+	    if (matcher == null || !matcher.matches()) {
+		exchange.sendResponseHeaders(200, object.content.length);
+		exchange.getResponseBody().write(object.content);
+		return;
+	    }
+	    int start = Integer.parseInt(matcher.group(1));
+	    int end = Math.min(Integer.parseInt(matcher.group(2)), object.content.length - 1);
+	    exchange.getResponseHeaders().set("Content-Range",
+			    Utils.buildString("bytes ", start, "-", end, "/", object.content.length));
+	    exchange.sendResponseHeaders(206, end - start + 1);
+	    exchange.getResponseBody().write(object.content, start, end - start + 1);
+	}
+
+	/**
+	 * Method will send page of objects in bucket
+	 *
+	 * @param exchange HTTP exchange
+	 * @param bucket   Name of bucket
+	 * @param query    Query parameters
+	 * @throws IOException if response can't be sent
+	 */
+	private void list(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+	    String prefix = Utils.buildString(bucket, "/", query.containsKey("prefix") ? query.get("prefix") : "");
+	    String startAfter = query.containsKey("start-after") ?
+			    Utils.buildString(bucket, "/", query.get("start-after")) :
+			    null;
+	    int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : 1000;
+	    Map<String, StoredContent> tail = startAfter != null && startAfter.compareTo(prefix) >= 0 ?
+			    objects.tailMap(startAfter, false) :
+			    objects.tailMap(prefix, true);
+	    StringBuilder result = new StringBuilder("<ListBucketResult>");
+	    int count = 0;
+	    boolean truncated = false;
+	    for (Map.Entry<String, StoredContent> entry : tail.entrySet()) {
+		if (!entry.getKey().startsWith(prefix)) {
+		    break;
+		}
+		if (count == maxKeys) {
+		    truncated = true;
+		    break;
+		}
+		result.append("<Contents><Key>").append(entry.getKey().substring(bucket.length() + 1))
+				.append("</Key><Size>").append(entry.getValue().content.length)
+				.append("</Size><LastModified>").append(entry.getValue().created)
+				.append("</LastModified></Contents>");
+		count++;
+	    }
+	    result.append("<IsTruncated>").append(truncated).append("</IsTruncated></ListBucketResult>");
+	    send(exchange, 200, result.toString());
+	}
+
+	/**
+	 * Method will send response with text body
+	 *
+	 * @param exchange HTTP exchange
+	 * @param status   Status code
+	 * @param body     Body of response, or <code>null</code> for response without body
+	 * @throws IOException if response can't be sent
+	 */
+	private void send(HttpExchange exchange, int status, String body) throws IOException {
+	    if (body == null) {
+		exchange.sendResponseHeaders(status, -1);
+		return;
+	    }
+	    byte[] content = body.getBytes(StandardCharsets.UTF_8);
+	    exchange.getResponseHeaders().set("Content-Type", "application/xml");
+	    if (content.length == 0) {
+		exchange.sendResponseHeaders(status, -1);
+		return;
+	    }
+	    exchange.sendResponseHeaders(status, content.length);
+	    exchange.getResponseBody().write(content);
+	}
+
+	/**
+	 * Method will parse query parameters
+	 *
+	 * @param rawQuery Encoded query, or <code>null</code>
+	 * @return Decoded parameters
+	 * @throws IOException if parameter can't be decoded
+	 */
+	private Map<String, String> parseQuery(String rawQuery) throws IOException {
+	    Map<String, String> query = new HashMap<>();
+	    if (rawQuery == null) {
+		return query;
+	    }
+	    for (String parameter : rawQuery.split("&")) {
+		int equals = parameter.indexOf('=');
+		String name = equals < 0 ? parameter : parameter.substring(0, equals);
+		String value = equals < 0 ? "" : parameter.substring(equals + 1);
+		query.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+	    }
+	    return query;
+	}
+    }
+
+    /**
+     * Content of object with its modification time
+     */
+    private static class StoredContent {
+	private final byte[] content;
+	private final String created;
+	private final String lastModified;
+
+	/**
+	 * Construct for stored content
+	 *
+	 * @param content Content of object
+	 */
+	public StoredContent(byte[] content) {
+	    this.content = content;
+	    Instant now = Instant.now();
+	    this.created = now.toString();
+	    this.lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(now.atZone(ZoneOffset.UTC));
+	}
+    }
+}
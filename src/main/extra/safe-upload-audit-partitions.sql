@@ -0,0 +1,32 @@
+/*==============================================================*/
+/* Partitioning of AUDIT table by time, one partition per month */
+/* Audit range queries read only partitions of requested range, */
+/* and old records are removed by dropping whole partition:     */
+/*                                                              */
+/*   alter table AUDIT drop partition P202601;                  */
+/*                                                              */
+/* New month is split from last partition before it starts:     */
+/*                                                              */
+/*   alter table AUDIT reorganize partition PFUTURE into (      */
+/*      partition P202701 values less than                      */
+/*         (unix_timestamp('2027-02-01 00:00:00')),             */
+/*      partition PFUTURE values less than maxvalue);           */
+/*==============================================================*/
+
+
+alter table AUDIT partition by range (unix_timestamp(CREATEDON))
+(
+   partition P202601 values less than (unix_timestamp('2026-02-01 00:00:00')),
+   partition P202602 values less than (unix_timestamp('2026-03-01 00:00:00')),
+   partition P202603 values less than (unix_timestamp('2026-04-01 00:00:00')),
+   partition P202604 values less than (unix_timestamp('2026-05-01 00:00:00')),
+   partition P202605 values less than (unix_timestamp('2026-06-01 00:00:00')),
+   partition P202606 values less than (unix_timestamp('2026-07-01 00:00:00')),
+   partition P202607 values less than (unix_timestamp('2026-08-01 00:00:00')),
+   partition P202608 values less than (unix_timestamp('2026-09-01 00:00:00')),
+   partition P202609 values less than (unix_timestamp('2026-10-01 00:00:00')),
+   partition P202610 values less than (unix_timestamp('2026-11-01 00:00:00')),
+   partition P202611 values less than (unix_timestamp('2026-12-01 00:00:00')),
+   partition P202612 values less than (unix_timestamp('2027-01-01 00:00:00')),
+   partition PFUTURE values less than maxvalue
+);
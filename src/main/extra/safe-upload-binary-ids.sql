@@ -0,0 +1,86 @@
+/*==============================================================*/
+/* Migration of UUID keys to binary(16)                         */
+/* Used together with database.uuid.binary=true. Time fields of */
+/* UUIDs are swapped to the front, so values sort by time.      */
+/*==============================================================*/
+
+
+alter table FILE drop foreign key FK_RELATIONSHIP_6;
+
+alter table FILE drop foreign key FK_RELATIONSHIP_7;
+
+alter table FILECUSTOMPROPERTY drop foreign key FK_RELATIONSHIP_4;
+
+alter table FOLDER drop foreign key FK_RELATIONSHIP_2;
+
+alter table FOLDER drop foreign key FK_RELATIONSHIP_3;
+
+alter table SHARED drop foreign key FK_RELATIONSHIP_8;
+
+alter table SHARED drop foreign key FK_RELATIONSHIP_9;
+
+/*==============================================================*/
+/* Columns are first made binary, so bytes are kept as they     */
+/* are, then converted, then shrunk to 16 bytes                 */
+/*==============================================================*/
+alter table FILE modify FILEID varbinary(36) not null, modify USERID varbinary(36), modify FOLDERID varbinary(36);
+
+alter table FILECUSTOMPROPERTY modify FILEID varbinary(36) not null;
+
+alter table FOLDER modify FOLDERID varbinary(36) not null, modify USERID varbinary(36),
+      modify FOL_FOLDERID varbinary(36);
+
+alter table SHARED modify USERID varbinary(36) not null, modify FOLDERID varbinary(36) not null;
+
+alter table USER modify USERID varbinary(36) not null;
+
+update FILE set
+      FILEID = unhex(concat(substr(FILEID, 15, 4), substr(FILEID, 10, 4), substr(FILEID, 1, 8), substr(FILEID, 20, 4), substr(FILEID, 25))),
+      USERID = unhex(concat(substr(USERID, 15, 4), substr(USERID, 10, 4), substr(USERID, 1, 8), substr(USERID, 20, 4), substr(USERID, 25))),
+      FOLDERID = unhex(concat(substr(FOLDERID, 15, 4), substr(FOLDERID, 10, 4), substr(FOLDERID, 1, 8), substr(FOLDERID, 20, 4), substr(FOLDERID, 25)));
+
+update FILECUSTOMPROPERTY set
+      FILEID = unhex(concat(substr(FILEID, 15, 4), substr(FILEID, 10, 4), substr(FILEID, 1, 8), substr(FILEID, 20, 4), substr(FILEID, 25)));
+
+update FOLDER set
+      FOLDERID = unhex(concat(substr(FOLDERID, 15, 4), substr(FOLDERID, 10, 4), substr(FOLDERID, 1, 8), substr(FOLDERID, 20, 4), substr(FOLDERID, 25))),
+      USERID = unhex(concat(substr(USERID, 15, 4), substr(USERID, 10, 4), substr(USERID, 1, 8), substr(USERID, 20, 4), substr(USERID, 25))),
+      FOL_FOLDERID = unhex(concat(substr(FOL_FOLDERID, 15, 4), substr(FOL_FOLDERID, 10, 4), substr(FOL_FOLDERID, 1, 8), substr(FOL_FOLDERID, 20, 4), substr(FOL_FOLDERID, 25)));
+
+update SHARED set
+      USERID = unhex(concat(substr(USERID, 15, 4), substr(USERID, 10, 4), substr(USERID, 1, 8), substr(USERID, 20, 4), substr(USERID, 25))),
+      FOLDERID = unhex(concat(substr(FOLDERID, 15, 4), substr(FOLDERID, 10, 4), substr(FOLDERID, 1, 8), substr(FOLDERID, 20, 4), substr(FOLDERID, 25)));
+
+update USER set
+      USERID = unhex(concat(substr(USERID, 15, 4), substr(USERID, 10, 4), substr(USERID, 1, 8), substr(USERID, 20, 4), substr(USERID, 25)));
+
+alter table FILE modify FILEID binary(16) not null, modify USERID binary(16), modify FOLDERID binary(16);
+
+alter table FILECUSTOMPROPERTY modify FILEID binary(16) not null;
+
+alter table FOLDER modify FOLDERID binary(16) not null, modify USERID binary(16), modify FOL_FOLDERID binary(16);
+
+alter table SHARED modify USERID binary(16) not null, modify FOLDERID binary(16) not null;
+
+alter table USER modify USERID binary(16) not null;
+
+alter table FILE add constraint FK_RELATIONSHIP_6 foreign key (USERID)
+      references USER (USERID) on delete restrict on update restrict;
+
+alter table FILE add constraint FK_RELATIONSHIP_7 foreign key (FOLDERID)
+      references FOLDER (FOLDERID) on delete restrict on update restrict;
+
+alter table FILECUSTOMPROPERTY add constraint FK_RELATIONSHIP_4 foreign key (FILEID)
+      references FILE (FILEID) on delete restrict on update restrict;
+
+alter table FOLDER add constraint FK_RELATIONSHIP_2 foreign key (USERID)
+      references USER (USERID) on delete restrict on update restrict;
+
+alter table FOLDER add constraint FK_RELATIONSHIP_3 foreign key (FOL_FOLDERID)
+      references FOLDER (FOLDERID) on delete restrict on update restrict;
+
+alter table SHARED add constraint FK_RELATIONSHIP_8 foreign key (USERID)
+      references USER (USERID) on delete restrict on update restrict;
+
+alter table SHARED add constraint FK_RELATIONSHIP_9 foreign key (FOLDERID)
+      references FOLDER (FOLDERID) on delete restrict on update restrict;
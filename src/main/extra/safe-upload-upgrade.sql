@@ -0,0 +1,121 @@
+/*==============================================================*/
+/* Upgrade of existing database to current schema               */
+/* Adds tables, columns and indexes which safe-upload.sql       */
+/* creates on new databases, and keeps existing data. Every     */
+/* step is skipped when its object already exists, so script    */
+/* can be run again after it was interrupted. Order of scripts  */
+/* on existing database:                                        */
+/*                                                              */
+/*   1. stop application                                        */
+/*   2. safe-upload-upgrade.sql                                 */
+/*   3. safe-upload-binary-ids.sql, only when                   */
+/*      database.uuid.binary=true is turned on                  */
+/*   4. safe-upload-audit-partitions.sql, optional              */
+/*   5. start application, then start migration of mirrored     */
+/*      files with POST /api/storage/migration once             */
+/*      storage.layout=HASHED is configured                     */
+/*                                                              */
+/* Unique index IDX_FILE_FOLDER_NAME can't be created while two */
+/* files of the same folder have the same name. Such files are  */
+/* listed with:                                                 */
+/*                                                              */
+/*   select FOLDERID, NAME, count(*) from FILE                  */
+/*      group by FOLDERID, NAME having count(*) > 1;            */
+/*==============================================================*/
+
+
+/*==============================================================*/
+/* Table: AUDIT                                                 */
+/*==============================================================*/
+create table if not exists AUDIT
+(
+   AUDITID              bigint not null auto_increment,
+   CREATEDON            timestamp not null,
+   EVENT                varchar(64) not null,
+   USERID               varchar(36),
+   STATUS               int not null,
+   LATENCY              bigint not null,
+   primary key (AUDITID, CREATEDON),
+   index IDX_AUDIT_CREATEDON (CREATEDON, AUDITID)
+);
+
+/*==============================================================*/
+/* Table: CONTENTBLOB                                           */
+/*==============================================================*/
+create table if not exists CONTENTBLOB
+(
+   CHECKSUM             char(64) not null,
+   SIZE                 decimal,
+   REFCOUNT             int not null,
+   CREATEDON            timestamp not null,
+   primary key (CHECKSUM),
+   index IDX_CONTENTBLOB_REFCOUNT (REFCOUNT)
+);
+
+/*==============================================================*/
+/* Columns of FILE. Rows without layout are files stored in     */
+/* mirrored layout, before layouts were introduced.             */
+/*==============================================================*/
+set @stmt = (select if(count(*) = 0, 'alter table FILE add CHECKSUM char(64) after SIZE', 'do 0')
+   from information_schema.COLUMNS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FILE' and COLUMN_NAME = 'CHECKSUM');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+set @stmt = (select if(count(*) = 0, 'alter table FILE add LAYOUT varchar(16) after CHECKSUM', 'do 0')
+   from information_schema.COLUMNS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FILE' and COLUMN_NAME = 'LAYOUT');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+set @stmt = (select if(count(*) = 0, 'alter table FILE add VOLUMEID varchar(36) after LAYOUT', 'do 0')
+   from information_schema.COLUMNS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FILE' and COLUMN_NAME = 'VOLUMEID');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+update FILE set LAYOUT = 'MIRROR' where LAYOUT is null;
+
+/*==============================================================*/
+/* Columns of FOLDER. Existing folders are not deleted.         */
+/*==============================================================*/
+set @stmt = (select if(count(*) = 0, 'alter table FOLDER add DELETEDON timestamp null after DESCRIPTION', 'do 0')
+   from information_schema.COLUMNS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FOLDER' and COLUMN_NAME = 'DELETEDON');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+/*==============================================================*/
+/* Indexes                                                      */
+/*==============================================================*/
+set @stmt = (select if(count(*) = 0, 'create unique index IDX_FILE_FOLDER_NAME on FILE (FOLDERID, NAME)', 'do 0')
+   from information_schema.STATISTICS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FILE' and INDEX_NAME = 'IDX_FILE_FOLDER_NAME');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+set @stmt = (select if(count(*) = 0, 'create index IDX_FOLDER_USERID on FOLDER (USERID)', 'do 0')
+   from information_schema.STATISTICS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FOLDER' and INDEX_NAME = 'IDX_FOLDER_USERID');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+set @stmt = (select if(count(*) = 0, 'create index IDX_FOLDER_DELETEDON on FOLDER (DELETEDON)', 'do 0')
+   from information_schema.STATISTICS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'FOLDER' and INDEX_NAME = 'IDX_FOLDER_DELETEDON');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
+
+set @stmt = (select if(count(*) = 0, 'create index IDX_USER_REGISTREDON on USER (REGISTREDON, USERID)', 'do 0')
+   from information_schema.STATISTICS
+   where TABLE_SCHEMA = database() and TABLE_NAME = 'USER' and INDEX_NAME = 'IDX_USER_REGISTREDON');
+prepare upgrade from @stmt;
+execute upgrade;
+deallocate prepare upgrade;
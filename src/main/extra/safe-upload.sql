@@ -1,9 +1,14 @@
 /*==============================================================*/
 /* DBMS name:      MySQL 5.0                                    */
 /* Created on:     4/19/2017 10:28:00 AM                        */
+/* Existing databases are upgraded with safe-upload-upgrade.sql */
 /*==============================================================*/
 
 
+drop table if exists AUDIT;
+
+drop table if exists CONTENTBLOB;
+
 drop table if exists CUSTOMPROPERTY;
 
 drop table if exists FILE;
@@ -18,6 +23,40 @@ drop table if exists SHARED;
 
 drop table if exists USER;
 
+/*==============================================================*/
+/* Table: AUDIT                                                 */
+/* USERID keeps person UUID as sent with request, so it is not  */
+/* converted by safe-upload-binary-ids.sql. Key holds CREATEDON */
+/* so table can be partitioned by time, see                     */
+/* safe-upload-audit-partitions.sql                             */
+/*==============================================================*/
+create table AUDIT
+(
+   AUDITID              bigint not null auto_increment,
+   CREATEDON            timestamp not null,
+   EVENT                varchar(64) not null,
+   USERID               varchar(36),
+   STATUS               int not null,
+   LATENCY              bigint not null,
+   primary key (AUDITID, CREATEDON)
+);
+
+create index IDX_AUDIT_CREATEDON on AUDIT (CREATEDON, AUDITID);
+
+/*==============================================================*/
+/* Table: CONTENTBLOB                                           */
+/*==============================================================*/
+create table CONTENTBLOB
+(
+   CHECKSUM             char(64) not null,
+   SIZE                 decimal,
+   REFCOUNT             int not null,
+   CREATEDON            timestamp not null,
+   primary key (CHECKSUM)
+);
+
+create index IDX_CONTENTBLOB_REFCOUNT on CONTENTBLOB (REFCOUNT);
+
 /*==============================================================*/
 /* Table: CUSTOMPROPERTY                                        */
 /*==============================================================*/
@@ -42,11 +81,16 @@ create table FILE
    PATH                 text not null,
    TYPE                 varchar(128),
    SIZE                 decimal,
+   CHECKSUM             char(64),
+   LAYOUT               varchar(16),
+   VOLUMEID             varchar(36),
    CREATEDON            timestamp not null,
    DESCRIPTION          varchar(4096),
    primary key (FILEID)
 );
 
+create unique index IDX_FILE_FOLDER_NAME on FILE (FOLDERID, NAME);
+
 /*==============================================================*/
 /* Table: FILECUSTOMPROPERTY                                    */
 /*==============================================================*/
@@ -69,9 +113,14 @@ create table FOLDER
    PATH                 text not null,
    CREATEDON            timestamp not null,
    DESCRIPTION          varchar(4096),
+   DELETEDON            timestamp null,
    primary key (FOLDERID)
 );
 
+create index IDX_FOLDER_USERID on FOLDER (USERID);
+
+create index IDX_FOLDER_DELETEDON on FOLDER (DELETEDON);
+
 /*==============================================================*/
 /* Table: ROLE                                                  */
 /*==============================================================*/
@@ -112,6 +161,8 @@ create table USER
    primary key (USERID)
 );
 
+create index IDX_USER_REGISTREDON on USER (REGISTREDON, USERID);
+
 alter table FILE add constraint FK_RELATIONSHIP_6 foreign key (USERID)
       references USER (USERID) on delete restrict on update restrict;
 
@@ -9,22 +9,40 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import rs.marko.lalic.safe.core.UUIDCodec;
+import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.audit.AuditInterceptor;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.metrics.MonitoredDataSource;
 import rs.marko.lalic.safe.core.processors.file.AddFileProcessor;
+import rs.marko.lalic.safe.core.processors.file.DownloadFileProcessor;
+import rs.marko.lalic.safe.core.processors.file.UploadSessionProcessor;
 import rs.marko.lalic.safe.core.processors.folder.CreateFolderProcessor;
+import rs.marko.lalic.safe.core.processors.folder.DownloadFolderProcessor;
+import rs.marko.lalic.safe.core.processors.folder.MoveFolderProcessor;
 import rs.marko.lalic.safe.core.processors.person.RegisterPersonProcessor;
 import rs.marko.lalic.safe.core.security.SecurityInterceptor;
 import rs.marko.lalic.safe.core.services.*;
+import rs.marko.lalic.safe.core.storage.LocalStorageBackend;
+import rs.marko.lalic.safe.core.storage.MemoryStorageBackend;
+import rs.marko.lalic.safe.core.storage.S3StorageBackend;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+import rs.marko.lalic.safe.core.storage.StorageBackendType;
 import org.apache.tomcat.jdbc.pool.DataSource;
 
+import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 @EnableWebMvc
+@EnableScheduling
 @ComponentScan(basePackages = "rs.marko.lalic.safe")
 @PropertySource(value = "classpath:safe.properties")
 public class MainConfiguration extends WebMvcConfigurerAdapter {
@@ -63,11 +81,13 @@ public class MainConfiguration extends WebMvcConfigurerAdapter {
     public CommonsMultipartResolver createMultipartResolver() {
 	CommonsMultipartResolver resolver = new CommonsMultipartResolver();
 	resolver.setDefaultEncoding("UTF-8");
+	// Parts are resolved only on access, so file uploads can be streamed directly from the request
+	resolver.setResolveLazily(true);
 	return resolver;
     }
 
     @Bean(name = "dataSource", destroyMethod = "close")
-    public DataSource dataSource(@Value("${database.driver.class.name}") String driverClassName,
+    public MonitoredDataSource dataSource(@Value("${database.driver.class.name}") String driverClassName,
 		    @Value("${database.url}") String url, @Value("${database.username}") String username,
 		    @Value("${database.password}") String password,
 		    @Value("${database.pool.min.active}") int initialSize,
@@ -83,7 +103,7 @@ public class MainConfiguration extends WebMvcConfigurerAdapter {
 		    @Value("${database.eviction.time}") int timeBetweenEvictionRunsMillis,
 		    @Value("${database.eviction.idle}") int minEvictableIdleTimeMillis,
 		    @Value("StatementCache(prepared=true,callable=true,max=10000)") String jdbcInterceptors) {
-	DataSource dataSource = new DataSource();
+	MonitoredDataSource dataSource = new MonitoredDataSource();
 	dataSource.setDriverClassName(driverClassName);
 	dataSource.setUrl(url);
 	dataSource.setUsername(username);
@@ -132,16 +152,23 @@ public class MainConfiguration extends WebMvcConfigurerAdapter {
 	return ps;
     }
 
-    @Bean(name = "queryService")
-    public QueryService queryService() {
-	return QueryService.getInstance();
+    @Bean(name = "queryService", initMethod = "init")
+    public QueryService queryService(@Value("${database.batch.size}") int batchSize,
+		    @Value("${database.stream.fetch.size}") int streamFetchSize,
+		    @Value("${database.slow.query.threshold}") long slowQueryThreshold) {
+	QueryService qs = QueryService.getInstance();
+	qs.setBatchSize(batchSize);
+	qs.setStreamFetchSize(streamFetchSize);
+	qs.setSlowQueryThreshold(slowQueryThreshold);
+	return qs;
     }
 
     @Bean(name = "fileSystemService")
-    public FileSystemService fileSystemService(@Value("${root.folder.path}") String rootFolderPath)
-		    throws InternalErrorException {
+    public FileSystemService fileSystemService(@Value("${root.folder.path}") String rootFolderPath,
+		    @Value("${storage.layout}") String layout) throws InternalErrorException {
 	FileSystemService fss = new FileSystemService();
 	fss.setRootFolder(rootFolderPath);
+	fss.setLayout(layout);
 	return fss;
     }
 
@@ -160,13 +187,159 @@ public class MainConfiguration extends WebMvcConfigurerAdapter {
 	return new CreateFolderProcessor();
     }
 
+    @Bean(name = "moveFolderProcessor")
+    public MoveFolderProcessor moveFolderProcessor() {
+	return new MoveFolderProcessor();
+    }
+
+    @Bean(name = "downloadFolderProcessor")
+    public DownloadFolderProcessor downloadFolderProcessor() {
+	return new DownloadFolderProcessor();
+    }
+
+    @Bean(name = "prefetchExecutor")
+    public ThreadPoolTaskExecutor prefetchExecutor(@Value("${download.prefetch.threads}") int threads) {
+	ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+	executor.setCorePoolSize(threads);
+	executor.setMaxPoolSize(threads);
+	executor.setQueueCapacity(threads * 4);
+	executor.setThreadNamePrefix("prefetch-");
+	// When all readers are busy, file is read on request thread instead of failing download
+	executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+	return executor;
+    }
+
     @Bean(name = "addFileProcessor")
     public AddFileProcessor addFileProcessor() {
 	return new AddFileProcessor();
     }
 
+    @Bean(name = "downloadFileProcessor")
+    public DownloadFileProcessor downloadFileProcessor() {
+	return new DownloadFileProcessor();
+    }
+
     @Bean(name = "dBFileService")
     public DBFileService dBFileService() {
 	return new DBFileService();
     }
+
+    @Bean(name = "uploadSessionService")
+    public UploadSessionService uploadSessionService(@Value("${upload.session.expiry}") long sessionExpiry) {
+	UploadSessionService uss = new UploadSessionService();
+	uss.setSessionExpiry(sessionExpiry);
+	return uss;
+    }
+
+    @Bean(name = "uploadSessionProcessor")
+    public UploadSessionProcessor uploadSessionProcessor() {
+	return new UploadSessionProcessor();
+    }
+
+    @Bean(name = "contentStoreService")
+    public ContentStoreService contentStoreService() {
+	return new ContentStoreService();
+    }
+
+    @Bean(name = "storageBackend")
+    public StorageBackend storageBackend(@Value("${root.folder.path}") String rootFolderPath,
+		    @Value("${storage.backend}") String backend, @Value("${storage.layout}") String layout,
+		    @Value("${storage.s3.endpoint}") String endpoint, @Value("${storage.s3.region}") String region,
+		    @Value("${storage.s3.bucket}") String bucket, @Value("${storage.s3.access.key}") String accessKey,
+		    @Value("${storage.s3.secret.key}") String secretKey, @Value("${storage.s3.part.size}") int partSize)
+		    throws InternalErrorException {
+	StorageBackendType type = StorageBackendType.fromValue(backend);
+	if (type != StorageBackendType.LOCAL && StorageLayout.fromValue(layout) != StorageLayout.HASHED) {
+	    throw new InternalErrorException(Utils.buildString("Storage backend ", type,
+			    " requires hashed storage layout. Check configuration."));
+	}
+	if (type == StorageBackendType.MEMORY) {
+	    return new MemoryStorageBackend();
+	}
+	if (type == StorageBackendType.S3) {
+	    S3StorageBackend s3sb = new S3StorageBackend(endpoint, region, bucket, accessKey, secretKey);
+	    s3sb.setPartSize(partSize);
+	    return s3sb;
+	}
+	return new LocalStorageBackend(new File(rootFolderPath));
+    }
+
+    @Bean(name = "volumePoolService", initMethod = "init")
+    public VolumePoolService volumePoolService(@Value("${storage.volumes}") String volumePaths,
+		    @Value("${storage.volume.min.free}") long minFreeSpace) {
+	VolumePoolService vps = new VolumePoolService();
+	vps.setVolumePaths(volumePaths);
+	vps.setMinFreeSpace(minFreeSpace);
+	return vps;
+    }
+
+    @Bean(name = "uploadJournalService", initMethod = "recover")
+    public UploadJournalService uploadJournalService() {
+	return new UploadJournalService();
+    }
+
+    @Bean(name = "storageMigrationService", destroyMethod = "stop")
+    public StorageMigrationService storageMigrationService(@Value("${storage.migration.threads}") int threads) {
+	StorageMigrationService sms = new StorageMigrationService();
+	sms.setThreads(threads);
+	return sms;
+    }
+
+    @Bean(name = "reconciliationService", destroyMethod = "stop")
+    public ReconciliationService reconciliationService(@Value("${storage.reconcile.threads}") int threads,
+		    @Value("${storage.reconcile.io.rate}") long ioRate,
+		    @Value("${storage.reconcile.grace}") long grace) {
+	ReconciliationService rs = new ReconciliationService();
+	rs.setThreads(threads);
+	rs.setIoRate(ioRate);
+	rs.setGrace(grace);
+	return rs;
+    }
+
+    @Bean(name = "quotaService", destroyMethod = "flush")
+    public QuotaService quotaService(@Value("${quota.default.max.space}") long defaultMaxSpace) {
+	QuotaService qs = new QuotaService();
+	qs.setDefaultMaxSpace(defaultMaxSpace);
+	return qs;
+    }
+
+    @Bean(name = "folderDeletionService", initMethod = "init", destroyMethod = "stop")
+    public FolderDeletionService folderDeletionService(@Value("${storage.delete.threads}") int threads,
+		    @Value("${storage.delete.io.rate}") long ioRate,
+		    @Value("${storage.delete.batch.size}") int batchSize) {
+	FolderDeletionService fds = new FolderDeletionService();
+	fds.setThreads(threads);
+	fds.setIoRate(ioRate);
+	fds.setBatchSize(batchSize);
+	return fds;
+    }
+
+    @Bean(name = "auditService", initMethod = "init", destroyMethod = "stop")
+    public AuditService auditService(@Value("${audit.buffer.size}") int bufferSize,
+		    @Value("${audit.batch.size}") int batchSize, @Value("${audit.flush.interval}") long flushInterval) {
+	AuditService as = new AuditService();
+	as.setBufferSize(bufferSize);
+	as.setBatchSize(batchSize);
+	as.setFlushInterval(flushInterval);
+	return as;
+    }
+
+    @Bean(name = "metricsService")
+    public MetricsService metricsService() {
+	return new MetricsService();
+    }
+
+    @Bean(name = "folderCacheService")
+    public FolderCacheService folderCacheService(@Value("${folder.cache.size}") int maxSize) {
+	FolderCacheService fcs = new FolderCacheService();
+	fcs.setMaxSize(maxSize);
+	return fcs;
+    }
+
+    @Bean(name = "uuidCodec")
+    public UUIDCodec uuidCodec(@Value("${database.uuid.binary}") boolean binary) {
+	UUIDCodec uc = new UUIDCodec();
+	uc.setBinary(binary);
+	return uc;
+    }
 }
\ No newline at end of file
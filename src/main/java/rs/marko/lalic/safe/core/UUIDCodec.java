@@ -0,0 +1,113 @@
+package rs.marko.lalic.safe.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Converts UUIDs between API and database representation. UUIDs are kept as 36 character strings by default, or as
+ * 16 byte binary values if binary mode is enabled. Binary values have time fields of time based UUIDs swapped to
+ * the front (high, mid, low), so values generated later sort later and inserts land at the end of the index.
+ */
+public class UUIDCodec {
+
+    /**
+     * Flag if UUIDs are stored as binary values
+     */
+    private boolean binary;
+
+    /**
+     * Empty construct
+     */
+    public UUIDCodec() {
+    }
+
+    /**
+     * Setter for binary mode
+     *
+     * @param binary <code>TRUE</code> if UUIDs are stored as 16 byte binary values
+     */
+    public void setBinary(boolean binary) {
+	this.binary = binary;
+    }
+
+    /**
+     * Getter for binary mode
+     *
+     * @return <code>TRUE</code> if UUIDs are stored as 16 byte binary values
+     */
+    public boolean isBinary() {
+	return binary;
+    }
+
+    /**
+     * Method will convert UUID to value used as query parameter
+     *
+     * @param uuid UUID string, may be <code>null</code>
+     * @return UUID string, or 16 byte value in binary mode
+     */
+    public Object toDatabase(String uuid) {
+	if (!binary || uuid == null) {
+	    return uuid;
+	}
+	return toBytes(uuid);
+    }
+
+    /**
+     * Method will read UUID column of current row
+     *
+     * @param rs     Result set
+     * @param column Name of column
+     * @return UUID string, or <code>null</code> if column is null
+     * @throws SQLException thrown if column can't be read
+     */
+    public String fromDatabase(ResultSet rs, String column) throws SQLException {
+	if (!binary) {
+	    return rs.getString(column);
+	}
+	byte[] bytes = rs.getBytes(column);
+	return bytes == null ? null : fromBytes(bytes);
+    }
+
+    /**
+     * Method will convert UUID string to 16 byte value with time fields swapped to the front
+     *
+     * @param uuid UUID string
+     * @return 16 byte value
+     * @throws IllegalArgumentException thrown if string is not valid UUID
+     */
+    public static byte[] toBytes(String uuid) {
+	UUID parsed = UUID.fromString(uuid);
+	long msb = parsed.getMostSignificantBits();
+	long lsb = parsed.getLeastSignificantBits();
+	// time_low(32) | time_mid(16) | version + time_hi(16) -> version + time_hi | time_mid | time_low
+	long swapped = (msb << 48) | ((msb << 16) & 0x0000FFFF00000000L) | (msb >>> 32);
+	byte[] bytes = new byte[16];
+	for (int i = 0; i < 8; i++) {
+	    bytes[i] = (byte) (swapped >>> (56 - i * 8));
+	    bytes[i + 8] = (byte) (lsb >>> (56 - i * 8));
+	}
+	return bytes;
+    }
+
+    /**
+     * Method will convert 16 byte value with swapped time fields back to UUID string
+     *
+     * @param bytes 16 byte value
+     * @return UUID string
+     * @throws IllegalArgumentException thrown if value is not 16 bytes long
+     */
+    public static String fromBytes(byte[] bytes) {
+	if (bytes.length != 16) {
+	    throw new IllegalArgumentException(Utils.buildString("Invalid binary UUID length: ", bytes.length));
+	}
+	long swapped = 0;
+	long lsb = 0;
+	for (int i = 0; i < 8; i++) {
+	    swapped = (swapped << 8) | (bytes[i] & 0xFF);
+	    lsb = (lsb << 8) | (bytes[i + 8] & 0xFF);
+	}
+	long msb = (swapped << 32) | ((swapped >>> 16) & 0x00000000FFFF0000L) | (swapped >>> 48);
+	return new UUID(msb, lsb).toString();
+    }
+}
@@ -1,27 +1,94 @@
 package rs.marko.lalic.safe.core;
 
 import com.fasterxml.uuid.EthernetAddress;
-import com.fasterxml.uuid.Generators;
-import com.fasterxml.uuid.impl.TimeBasedGenerator;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * UUID Generator Util
+ * UUID Generator Util. Generates time based (version 1) UUIDs without locking. State is striped, every stripe has
+ * its own clock sequence and its own last timestamp, which is advanced with compare and set, so UUIDs are unique
+ * and ordered by time, and threads only contend when they hit the same stripe.
  * 
  * @author Marko Lalic
  */
 public class UUIDGenerator {
 
-    private static volatile EthernetAddress NIC = EthernetAddress.fromInterface();
+    /**
+     * Number of stripes, must be power of two
+     */
+    private static final int STRIPES = 16;
+    /**
+     * Offset between UUID epoch (1582-10-15) and Unix epoch, in 100 nanosecond intervals
+     */
+    private static final long EPOCH_OFFSET = 0x01B21DD213814000L;
+    /**
+     * Padding between stripes, in array elements, so every stripe is on its own cache line
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Address of network interface, used as node of UUIDs
+     */
+    private static final EthernetAddress NIC = resolveNodeAddress();
+
+    /**
+     * Least significant bits of UUIDs for every stripe, holding variant, clock sequence and node
+     */
+    private static final long[] LSB = new long[STRIPES];
+    /**
+     * Last timestamp for every stripe
+     */
+    private static final AtomicLongArray LAST_TIMESTAMPS = new AtomicLongArray(STRIPES * PADDING);
 
-    private static volatile TimeBasedGenerator UUID_GENERATOR = Generators.timeBasedGenerator(NIC);
+    static {
+	// Random clock sequence base protects against clock moving backwards between restarts, stripe index in
+	// lower bits keeps stripes apart
+	int clockSequence = new SecureRandom().nextInt(1 << 14) & ~(STRIPES - 1);
+	long node = NIC.toLong();
+	for (int i = 0; i < STRIPES; i++) {
+	    LSB[i] = 0x8000000000000000L | ((long) (clockSequence | i) << 48) | node;
+	}
+    }
 
     /**
      * Generates UUID
      * 
      * @return UUID UUID String
      */
-    public static synchronized String generateUUID() {
-	return UUID_GENERATOR.generate().toString();
+    public static String generateUUID() {
+	return generate().toString();
+    }
+
+    /**
+     * Generates UUID
+     *
+     * @return UUID
+     */
+    public static UUID generate() {
+	int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+	int slot = stripe * PADDING;
+	long now = System.currentTimeMillis() * 10000 + EPOCH_OFFSET;
+	long last;
+	long timestamp;
+	do {
+	    last = LAST_TIMESTAMPS.get(slot);
+	    // Several UUIDs in same millisecond, or clock moved backwards, use next 100ns interval
+	    timestamp = now > last ? now : last + 1;
+	}
+	while (!LAST_TIMESTAMPS.compareAndSet(slot, last, timestamp));
+	long msb = (timestamp << 32) | ((timestamp >>> 16) & 0xFFFF0000L) | 0x1000L | ((timestamp >>> 48) & 0x0FFFL);
+	return new UUID(msb, LSB[stripe]);
     }
 
+    /**
+     * Method will resolve address of network interface, or random multicast address if there is none
+     *
+     * @return Node address
+     */
+    private static EthernetAddress resolveNodeAddress() {
+	EthernetAddress address = EthernetAddress.fromInterface();
+	return address != null ? address : EthernetAddress.constructMulticastAddress();
+    }
 }
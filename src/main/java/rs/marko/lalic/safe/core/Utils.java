@@ -4,11 +4,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.web.multipart.MultipartFile;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -36,6 +34,10 @@ public class Utils {
     public static final Pattern VALID_PASS_REGEX = Pattern
 		    .compile("^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=])(?=\\S+$).{8,}$",
 				    Pattern.CASE_INSENSITIVE);
+    /**
+     * Digits used for hexadecimal encoding
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     /**
      * For hashing password
      */
@@ -214,25 +216,18 @@ public class Utils {
     }
 
     /**
-     * Extracts content of {@link MultipartFile} and transfers it to temporary file, using
-     * {@link File#createTempFile(String, String)}
+     * Converts byte array into lower case hexadecimal string
      *
-     * @param mpFile Multipart file
-     * @return New temporary file
-     * @throws InternalErrorException Thrown in case file transfer fails
+     * @param bytes Bytes to convert
+     * @return Hexadecimal representation of bytes
      */
-    public static File createTempFile(MultipartFile mpFile) throws InternalErrorException {
-	File temp = null;
-	try {
-	    temp = File.createTempFile(mpFile.getOriginalFilename(), String.valueOf(System.currentTimeMillis()));
-	    mpFile.transferTo(temp);
-	    return temp;
-	}
-	catch (Exception e) {
-	    String err = Utils.buildString("Failed to copy request file to temp file [", temp, "]. Message: ",
-			    e.getMessage());
-	    throw new InternalErrorException(err, e);
+    public static String toHex(byte[] bytes) {
+	char[] hex = new char[bytes.length * 2];
+	for (int i = 0; i < bytes.length; i++) {
+	    hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+	    hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
 	}
+	return new String(hex);
     }
 
     /**
@@ -247,12 +242,7 @@ public class Utils {
 	try {
 	    MessageDigest md = MessageDigest.getInstance("SHA-512");
 	    md.update("bv5PehSMfV11Cd".getBytes("UTF-8")); // TODO: Load from property
-	    byte[] bytes = md.digest(password.getBytes("UTF-8"));
-	    StringBuilder sb = new StringBuilder();
-	    for (int i = 0; i < bytes.length; i++) {
-		sb.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
-	    }
-	    generatedPassword = sb.toString();
+	    generatedPassword = toHex(md.digest(password.getBytes("UTF-8")));
 	}
 	catch (Exception e) {
 	    throw new InternalErrorException(
@@ -1,17 +1,24 @@
 package rs.marko.lalic.safe.core.audit;
 
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
-import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.services.AuditService;
+import rs.marko.lalic.safe.core.services.MetricsService;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Interceptor for Audit Events
+ * Interceptor for Audit Events. Request thread only records latency of finished request in {@link MetricsService} and
+ * publishes its record to {@link AuditService}, which never wait, and records are written to audit table by its own
+ * thread.
  */
 public class AuditInterceptor extends HandlerInterceptorAdapter {
 
@@ -19,6 +26,25 @@ public class AuditInterceptor extends HandlerInterceptorAdapter {
      * Class logger
      */
     private static final Logger LOGGER = Logger.getLogger(AuditInterceptor.class);
+    /**
+     * Event name cached for handler methods which are not audited
+     */
+    private static final String NOT_AUDITED = "";
+    /**
+     * AuditService instance
+     */
+    @Autowired
+    private AuditService auditService;
+    /**
+     * MetricsService instance
+     */
+    @Autowired
+    private MetricsService metricsService;
+    /**
+     * Event names of handler methods, resolved on first request. Handler method instances are created per request,
+     * so cache is keyed by their method.
+     */
+    private final ConcurrentMap<Method, String> events = new ConcurrentHashMap<>();
 
     /**
      * Empty constructor
@@ -33,15 +59,11 @@ public class AuditInterceptor extends HandlerInterceptorAdapter {
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
 		    throws Exception {
 	try {
-	    HandlerMethod hm = (HandlerMethod) handler;
-	    Method method = hm.getMethod();
-	    if (method.isAnnotationPresent(Auditable.class)) {
-		long start = System.currentTimeMillis();
-		String event = method.getAnnotation(Auditable.class).value();
-		request.setAttribute(Event.EVENT_TYPE, event);
-		request.setAttribute(Event.START, start);
-		if (LOGGER.isInfoEnabled()) {
-		    LOGGER.info(Utils.buildString("START - ", event, ". StartTime [", start, "]"));
+	    if (handler instanceof HandlerMethod) {
+		String event = getEvent(((HandlerMethod) handler).getMethod());
+		if (event != null) {
+		    request.setAttribute(Event.EVENT_TYPE, event);
+		    request.setAttribute(Event.START, System.nanoTime());
 		}
 	    }
 	}
@@ -58,15 +80,13 @@ public class AuditInterceptor extends HandlerInterceptorAdapter {
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
 		    throws Exception {
 	try {
-	    HandlerMethod hm = (HandlerMethod) handler;
-	    Method method = hm.getMethod();
-	    if (method.isAnnotationPresent(Auditable.class)) {
-		long start = (long) request.getAttribute(Event.START);
-		String event = method.getAnnotation(Auditable.class).value();
-		long execTime = System.currentTimeMillis() - start;
-		if (LOGGER.isInfoEnabled()) {
-		    LOGGER.info(Utils.buildString("END - ", event, ". ExecTime [", execTime, " ms]"));
-		}
+	    String event = (String) request.getAttribute(Event.EVENT_TYPE);
+	    if (event != null) {
+		long latency = System.nanoTime() - (long) request.getAttribute(Event.START);
+		int status = response.getStatus();
+		metricsService.record(event, status, latency);
+		auditService.publish(new AuditRecord(System.currentTimeMillis(), event,
+				request.getHeader(Event.PERSON_UUID), status, TimeUnit.NANOSECONDS.toMillis(latency)));
 	    }
 	}
 	catch (Exception e) {
@@ -74,4 +94,20 @@ public class AuditInterceptor extends HandlerInterceptorAdapter {
 	}
 	super.afterCompletion(request, response, handler, ex);
     }
+
+    /**
+     * Method will get event name of handler method, resolving its annotation only on first request
+     *
+     * @param method Handler method
+     * @return Event name, or <code>null</code> if method is not audited
+     */
+    private String getEvent(Method method) {
+	String event = events.get(method);
+	if (event == null) {
+	    Auditable auditable = method.getAnnotation(Auditable.class);
+	    event = auditable != null ? auditable.value() : NOT_AUDITED;
+	    events.put(method, event);
+	}
+	return event.isEmpty() ? null : event;
+    }
 }
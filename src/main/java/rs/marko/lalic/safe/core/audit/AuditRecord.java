@@ -0,0 +1,90 @@
+package rs.marko.lalic.safe.core.audit;
+
+/**
+ * One audited request, published by request thread into {@link AuditRingBuffer} and written to audit table later
+ */
+public class AuditRecord {
+
+    /**
+     * Time when request finished in milliseconds
+     */
+    private final long createdOn;
+    /**
+     * Event name from {@link Auditable}
+     */
+    private final String event;
+    /**
+     * UUID of person as sent in request header, <code>null</code> if it wasn't sent
+     */
+    private final String personUUID;
+    /**
+     * HTTP status of response
+     */
+    private final int status;
+    /**
+     * Time in milliseconds request took
+     */
+    private final long latency;
+
+    /**
+     * Construct for audit record
+     *
+     * @param createdOn  Time when request finished in milliseconds
+     * @param event      Event name
+     * @param personUUID UUID of person, may be <code>null</code>
+     * @param status     HTTP status of response
+     * @param latency    Time in milliseconds request took
+     */
+    public AuditRecord(long createdOn, String event, String personUUID, int status, long latency) {
+	this.createdOn = createdOn;
+	this.event = event;
+	this.personUUID = personUUID;
+	this.status = status;
+	this.latency = latency;
+    }
+
+    /**
+     * Getter for time when request finished
+     *
+     * @return Time in milliseconds
+     */
+    public long getCreatedOn() {
+	return createdOn;
+    }
+
+    /**
+     * Getter for event name
+     *
+     * @return Event name
+     */
+    public String getEvent() {
+	return event;
+    }
+
+    /**
+     * Getter for person UUID
+     *
+     * @return UUID of person, may be <code>null</code>
+     */
+    public String getPersonUUID() {
+	return personUUID;
+    }
+
+    /**
+     * Getter for response status
+     *
+     * @return HTTP status of response
+     */
+    public int getStatus() {
+	return status;
+    }
+
+    /**
+     * Getter for latency
+     *
+     * @return Time in milliseconds request took
+     */
+    public long getLatency() {
+	return latency;
+    }
+}
@@ -0,0 +1,128 @@
+package rs.marko.lalic.safe.core.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free ring buffer of audit records, with many producers and single consumer. Every slot has sequence
+ * telling if it is free for producer at given position or holds record for consumer, so producers only race for
+ * position with one compare and set, and never wait for each other or for consumer. When buffer is full, record is
+ * dropped and counted, so request thread is never blocked by slow audit store.
+ */
+public class AuditRingBuffer {
+
+    /**
+     * Records in slots, <code>null</code> in free slots
+     */
+    private final AtomicReferenceArray<AuditRecord> records;
+    /**
+     * Sequence of every slot. Slot is free for producer at position equal to sequence, and holds record for consumer
+     * at position one less than sequence.
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * Mask of slot index, capacity is power of two
+     */
+    private final int mask;
+    /**
+     * Position of next record written by producers
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Number of records dropped because buffer was full
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Position of next record read by consumer, used by consumer thread only
+     */
+    private long head;
+
+    /**
+     * Construct for ring buffer
+     *
+     * @param capacity Minimum number of records buffer holds, rounded up to power of two
+     */
+    public AuditRingBuffer(int capacity) {
+	int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+	records = new AtomicReferenceArray<>(size);
+	sequences = new AtomicLongArray(size);
+	for (int i = 0; i < size; i++) {
+	    sequences.set(i, i);
+	}
+	mask = size - 1;
+    }
+
+    /**
+     * Method will add record to buffer without waiting. Safe to call from any thread.
+     *
+     * @param record Audit record
+     * @return <code>TRUE</code> if record was added, <code>FALSE</code> if buffer is full and record was dropped
+     */
+    public boolean offer(AuditRecord record) {
+	long position = tail.get();
+	while (true) {
+	    int index = (int) (position & mask);
+	    long difference = sequences.get(index) - position;
+	    if (difference == 0) {
+		if (tail.compareAndSet(position, position + 1)) {
+		    records.lazySet(index, record);
+		    sequences.lazySet(index, position + 1);
+		    return true;
+		}
+		position = tail.get();
+	    }
+	    else if (difference < 0) {
+		// Slot still holds record from previous round, which consumer didn't take yet
+		dropped.incrementAndGet();
+		return false;
+	    }
+	    else {
+		position = tail.get();
+	    }
+	}
+    }
+
+    /**
+     * Method will move available records to list. Must be called from consumer thread only.
+     *
+     * @param batch Target list
+     * @param max   Maximum number of records moved
+     * @return Number of records moved
+     */
+    public int drainTo(List<AuditRecord> batch, int max) {
+	int count = 0;
+	while (count < max) {
+	    int index = (int) (head & mask);
+	    if (sequences.get(index) != head + 1) {
+		break;
+	    }
+	    batch.add(records.get(index));
+	    records.lazySet(index, null);
+	    // Slot becomes free for producer of the same index in next round
+	    sequences.lazySet(index, head + mask + 1);
+	    head++;
+	    count++;
+	}
+	return count;
+    }
+
+    /**
+     * Getter for capacity
+     *
+     * @return Number of records buffer holds
+     */
+    public int getCapacity() {
+	return mask + 1;
+    }
+
+    /**
+     * Getter for dropped records
+     *
+     * @return Number of records dropped because buffer was full
+     */
+    public long getDropped() {
+	return dropped.get();
+    }
+}
@@ -21,14 +21,20 @@ public class DBConstants {
     public static final String USER_REGISTRED_ON = "REGISTREDON";
     public static final String USER_LAST_LOGIN = "LASTLOGIN";
     public static final String USER_DISABLED = "DISABLED";
+    public static final String USER_MAX_SPACE = "MAXSPACE";
+    public static final String USER_SPACE_OCCUPIED = "SPACEOCCUPIED";
 
     public static final String FOLDER_TABLE = "FOLDER";
     public static final String FOLDER_FOL_FOLDER_ID = "FOL_FOLDERID";
+    public static final String FOLDER_DELETED_ON = "DELETEDON";
 
     public static final String FILE_TABLE = "FILE";
     public static final String FILE_FILE_UUID = "FILEID";
     public static final String FILE_TYPE = "TYPE";
     public static final String FILE_SIZE = "SIZE";
+    public static final String FILE_CHECKSUM = "CHECKSUM";
+    public static final String FILE_LAYOUT = "LAYOUT";
+    public static final String FILE_VOLUME_ID = "VOLUMEID";
 
     public static final String ROLE_TABLE = "ROLE";
 
@@ -42,6 +48,17 @@ public class DBConstants {
 
     public static final String FILE_CUSTOM_PROPERTY_TABLE = "FILECUSTOMPROPERTY";
 
+    public static final String BLOB_TABLE = "CONTENTBLOB";
+    public static final String BLOB_CHECKSUM = "CHECKSUM";
+    public static final String BLOB_SIZE = "SIZE";
+    public static final String BLOB_REFERENCE_COUNT = "REFCOUNT";
+
+    public static final String AUDIT_TABLE = "AUDIT";
+    public static final String AUDIT_AUDIT_ID = "AUDITID";
+    public static final String AUDIT_EVENT = "EVENT";
+    public static final String AUDIT_STATUS = "STATUS";
+    public static final String AUDIT_LATENCY = "LATENCY";
+
     /**
      * Private empty construct so that constants class cant be instanced
      */
@@ -10,13 +10,32 @@ public class Event {
     public static final String START = "start";
     public static final String END = "end";
     public static final String TOKEN = "token";
+    public static final String PERSON_UUID = "personUUID";
 
     public static final String EVENT_GET_PERSONS = "GetPersons";
+    public static final String EVENT_STREAM_PERSONS = "StreamPersons";
     public static final String EVENT_GET_PERSON = "GetPerson";
     public static final String EVENT_ADD_PERSON = "AddPerson";
     public static final String EVENT_UPDATE_PERSON = "UpdatePerson";
     public static final String EVENT_CREATE_FOLDER = "CreateFolder";
+    public static final String EVENT_RENAME_FOLDER = "RenameFolder";
+    public static final String EVENT_MOVE_FOLDER = "MoveFolder";
     public static final String EVENT_ADD_FILE = "AddFile";
+    public static final String EVENT_CREATE_UPLOAD = "CreateUpload";
+    public static final String EVENT_UPLOAD_CHUNK = "UploadChunk";
+    public static final String EVENT_GET_UPLOAD = "GetUpload";
+    public static final String EVENT_COMMIT_UPLOAD = "CommitUpload";
+    public static final String EVENT_ABORT_UPLOAD = "AbortUpload";
+    public static final String EVENT_DOWNLOAD_FILE = "DownloadFile";
+    public static final String EVENT_DOWNLOAD_FOLDER = "DownloadFolder";
+    public static final String EVENT_START_MIGRATION = "StartMigration";
+    public static final String EVENT_GET_MIGRATION = "GetMigration";
+    public static final String EVENT_GET_VOLUMES = "GetVolumes";
+    public static final String EVENT_START_RECONCILIATION = "StartReconciliation";
+    public static final String EVENT_GET_RECONCILIATION = "GetReconciliation";
+    public static final String EVENT_DELETE_FOLDER = "DeleteFolder";
+    public static final String EVENT_GET_FOLDER_DELETION = "GetFolderDeletion";
+    public static final String EVENT_GET_AUDIT = "GetAudit";
 
     /**
      * Private empty construct so that constants class cant be instanced
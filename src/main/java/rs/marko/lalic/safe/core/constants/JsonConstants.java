@@ -12,6 +12,47 @@ public class JsonConstants {
     public static final String FIELD_NAME = "name";
     public static final String FIELD_DESTINATION = "destination";
     public static final String FIELD_FOLDER_UUID = "folderUUID";
+    public static final String FIELD_SIZE = "size";
+    public static final String FIELD_UPLOAD_UUID = "uploadUUID";
+    public static final String FIELD_RANGES = "ranges";
+    public static final String FIELD_START = "start";
+    public static final String FIELD_END = "end";
+    public static final String FIELD_RECEIVED = "received";
+    public static final String FIELD_COMPLETE = "complete";
+    public static final String FIELD_CHECKSUM = "checksum";
+    public static final String FIELD_PERSONS = "persons";
+    public static final String FIELD_CURSOR = "cursor";
+    public static final String FIELD_RUNNING = "running";
+    public static final String FIELD_MIGRATED = "migrated";
+    public static final String FIELD_FAILED = "failed";
+    public static final String FIELD_STARTED_ON = "startedOn";
+    public static final String FIELD_FINISHED_ON = "finishedOn";
+    public static final String FIELD_VOLUMES = "volumes";
+    public static final String FIELD_VOLUME_ID = "volumeId";
+    public static final String FIELD_PATH = "path";
+    public static final String FIELD_HEALTHY = "healthy";
+    public static final String FIELD_USABLE_SPACE = "usableSpace";
+    public static final String FIELD_TOTAL_SPACE = "totalSpace";
+    public static final String FIELD_FILL = "fill";
+    public static final String FIELD_ACTIVE_WRITES = "activeWrites";
+    public static final String FIELD_REPAIR = "repair";
+    public static final String FIELD_SCANNED_ENTRIES = "scannedEntries";
+    public static final String FIELD_SCANNED_ROWS = "scannedRows";
+    public static final String FIELD_ORPHANS = "orphans";
+    public static final String FIELD_MISSING = "missing";
+    public static final String FIELD_REPAIRED = "repaired";
+    public static final String FIELD_RECLAIMED_BYTES = "reclaimedBytes";
+    public static final String FIELD_ISSUES = "issues";
+    public static final String FIELD_TYPE = "type";
+    public static final String FIELD_JOB_ID = "jobId";
+    public static final String FIELD_STATUS = "status";
+    public static final String FIELD_MESSAGE = "message";
+    public static final String FIELD_TOTAL_FILES = "totalFiles";
+    public static final String FIELD_DELETED_FILES = "deletedFiles";
+    public static final String FIELD_TOTAL_FOLDERS = "totalFolders";
+    public static final String FIELD_DELETED_FOLDERS = "deletedFolders";
+    public static final String FIELD_RECORDS = "records";
+    public static final String FIELD_DROPPED = "dropped";
 
 
     /**
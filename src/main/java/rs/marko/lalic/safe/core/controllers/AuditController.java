@@ -0,0 +1,67 @@
+package rs.marko.lalic.safe.core.controllers;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.audit.Auditable;
+import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.services.AuditService;
+
+/**
+ * AuditController used for reading audit records
+ *
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/audit")
+public class AuditController {
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(AuditController.class);
+    /**
+     * AuditService instance
+     */
+    @Autowired
+    private AuditService auditService;
+
+    /**
+     * API for getting one page of audit records in time range
+     *
+     * @param from       Start of range in milliseconds, inclusive
+     * @param to         End of range in milliseconds, exclusive, current time if not given
+     * @param event      Event name, optional
+     * @param personUUID UUID of person, optional
+     * @param cursor     Cursor of page, returned with previous page
+     * @param limit      Maximum number of records in page
+     * @return JSON with records, cursor of next page and number of records which were not stored
+     */
+    @Auditable(value = Event.EVENT_GET_AUDIT)
+    @RequestMapping(method = RequestMethod.GET, produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getRecords(@RequestParam long from, @RequestParam(required = false) Long to,
+		    @RequestParam(required = false) String event, @RequestParam(required = false) String personUUID,
+		    @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit) {
+	try {
+	    return new ResponseEntity<>(auditService.getRecords(from, to, event, personUUID, cursor, limit),
+			    HttpStatus.OK);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.BAD_REQUEST);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+    }
+}
@@ -1,21 +1,34 @@
 package rs.marko.lalic.safe.core.controllers;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.audit.Auditable;
 import rs.marko.lalic.safe.core.constants.Event;
 import rs.marko.lalic.safe.core.exceptions.BaseException;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.exceptions.QuotaExceededException;
 import rs.marko.lalic.safe.core.processors.file.AddFileProcessor;
+import rs.marko.lalic.safe.core.processors.file.DownloadFileProcessor;
+import rs.marko.lalic.safe.core.requests.FileRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
+import rs.marko.lalic.safe.core.services.QuotaReservation;
+import rs.marko.lalic.safe.core.services.QuotaService;
 
-import java.io.File;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * FileController
@@ -29,26 +42,75 @@ public class FileController {
      * Class logger
      */
     private static final Logger LOGGER = Logger.getLogger(FileController.class);
+    /**
+     * Name of multipart field holding request JSON
+     */
+    private static final String PART_OBJECT = "object";
+    /**
+     * Name of multipart field holding file content
+     */
+    private static final String PART_FILE = "file";
     /**
      * AddFileProcessor instance
      */
     @Autowired
     private AddFileProcessor addFileProcessor;
+    /**
+     * DownloadFileProcessor instance
+     */
+    @Autowired
+    private DownloadFileProcessor downloadFileProcessor;
+    /**
+     * QuotaService instance
+     */
+    @Autowired
+    private QuotaService quotaService;
 
     /**
-     * API for adding file to folder
+     * API for adding file to folder. Multipart request is parsed as a stream, so file content is written directly
+     * to its final location without being spooled to temporary file. Part <code>object</code> must be sent before
+     * part <code>file</code>. Declared length of request is reserved in quota of person before request body is read,
+     * so upload over quota is rejected without receiving it.
      *
-     * @param object     JSON from multipart request
-     * @param file       File from multipart request
+     * @param request    Multipart request
      * @param personUUID UUID of person
      * @return success JSON
      */
     @Auditable(value = Event.EVENT_ADD_FILE)
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<?> addFile(@RequestParam(value = "object") String object,
-		    @RequestParam(value = "file") MultipartFile file, @RequestHeader String personUUID) {
+    public ResponseEntity<?> addFile(HttpServletRequest request, @RequestHeader String personUUID) {
+	QuotaReservation reservation = null;
 	try {
-	    addFileProcessor.process(Utils.createTempFile(file), (ObjectNode) Utils.parseJson(object), personUUID);
+	    if (!ServletFileUpload.isMultipartContent(request)) {
+		throw new InvalidRequestException("Multipart request expected.");
+	    }
+	    reservation = quotaService.reserve(personUUID, request.getContentLengthLong());
+	    FileItemIterator iterator = new ServletFileUpload().getItemIterator(request);
+	    FileRequest object = null;
+	    boolean fileProcessed = false;
+	    while (iterator.hasNext() && !fileProcessed) {
+		FileItemStream item = iterator.next();
+		InputStream stream = item.openStream();
+		if (PART_OBJECT.equals(item.getFieldName())) {
+		    object = RequestReader.read(stream, new FileRequest());
+		}
+		else if (PART_FILE.equals(item.getFieldName())) {
+		    if (object == null) {
+			throw new InvalidRequestException(Utils.buildString("Part [", PART_OBJECT,
+					"] must be sent before part [", PART_FILE, "]."));
+		    }
+		    addFileProcessor.process(stream, object, personUUID, reservation);
+		    fileProcessed = true;
+		}
+	    }
+	    if (!fileProcessed) {
+		throw new InvalidRequestException(Utils.buildString("Required part [", PART_FILE, "] is missing."));
+	    }
+	}
+	catch (QuotaExceededException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()),
+			    HttpStatus.PAYLOAD_TOO_LARGE);
 	}
 	catch (InvalidRequestException e) {
 	    LOGGER.error(e.getMessage(), e);
@@ -58,7 +120,61 @@ public class FileController {
 	    LOGGER.error(e.getMessage(), e);
 	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
 	}
+	catch (FileUploadException | IOException e) {
+	    String err = Utils.buildString("Failed to read multipart request. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.BAD_REQUEST);
+	}
+	finally {
+	    // Released only if file wasn't added, otherwise reservation is already committed
+	    quotaService.release(reservation);
+	}
 	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
     }
 
+    /**
+     * API for downloading file. Supports <code>Range</code> requests, including multiple ranges, and conditional
+     * requests by <code>If-None-Match</code>, <code>If-Modified-Since</code> and <code>If-Range</code>.
+     *
+     * @param fileUUID   UUID of file
+     * @param personUUID UUID of person
+     * @param request    HTTP request
+     * @param response   HTTP response
+     * @throws IOException if error response can't be written
+     */
+    @Auditable(value = Event.EVENT_DOWNLOAD_FILE)
+    @RequestMapping(method = { RequestMethod.GET, RequestMethod.HEAD }, value = "/{fileUUID}")
+    public void downloadFile(@PathVariable String fileUUID, @RequestHeader String personUUID,
+		    HttpServletRequest request, HttpServletResponse response) throws IOException {
+	try {
+	    downloadFileProcessor.process(fileUUID, personUUID, request, response);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    writeErrorResponse(response, HttpStatus.NOT_FOUND, e.getMessage());
+	}
+	catch (BaseException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    writeErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+	}
+    }
+
+    /**
+     * Method will write error JSON to response, if response is not committed yet
+     *
+     * @param response HTTP response
+     * @param status   HTTP status
+     * @param message  Error message
+     * @throws IOException if error response can't be written
+     */
+    private void writeErrorResponse(HttpServletResponse response, HttpStatus status, String message)
+		    throws IOException {
+	if (!response.isCommitted()) {
+	    response.reset();
+	    response.setContentType("application/json;charset=utf-8");
+	    response.setStatus(status.value());
+	    response.getOutputStream().write(Utils.generateErrorResponse(message).toString()
+			    .getBytes(StandardCharsets.UTF_8));
+	}
+    }
 }
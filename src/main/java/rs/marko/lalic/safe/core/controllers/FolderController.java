@@ -1,6 +1,5 @@
 package rs.marko.lalic.safe.core.controllers;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -9,9 +8,21 @@ import org.springframework.web.bind.annotation.*;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.audit.Auditable;
 import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
 import rs.marko.lalic.safe.core.processors.folder.CreateFolderProcessor;
+import rs.marko.lalic.safe.core.processors.folder.DownloadFolderProcessor;
+import rs.marko.lalic.safe.core.processors.folder.MoveFolderProcessor;
+import rs.marko.lalic.safe.core.requests.FolderRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
+import rs.marko.lalic.safe.core.services.FolderDeletionService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * FileController
@@ -30,18 +41,103 @@ public class FolderController {
      */
     @Autowired
     private CreateFolderProcessor createFolderProcessor;
+    /**
+     * DownloadFolderProcessor instance
+     */
+    @Autowired
+    private DownloadFolderProcessor downloadFolderProcessor;
+    /**
+     * MoveFolderProcessor instance
+     */
+    @Autowired
+    private MoveFolderProcessor moveFolderProcessor;
+    /**
+     * FolderDeletionService instance
+     */
+    @Autowired
+    private FolderDeletionService folderDeletionService;
 
     /**
      * API for creating folder
      * @param personUUID UUID of person from header
-     * @param body JSON body
+     * @param body Stream of JSON body
      * @return success JSON
      */
     @Auditable(value = Event.EVENT_CREATE_FOLDER)
     @RequestMapping(method = RequestMethod.POST, consumes = "application/json;charset=utf-8", produces = "application/json;charset=utf-8")
-    public ResponseEntity<?> createFolder(@RequestHeader String personUUID, @RequestBody String body) {
+    public ResponseEntity<?> createFolder(@RequestHeader String personUUID, InputStream body) {
+	try {
+	    createFolderProcessor.process(RequestReader.read(body, new FolderRequest()), personUUID);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.BAD_REQUEST);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
+    }
+
+    /**
+     * API for renaming folder. Folder keeps its content, only paths of its subtree change.
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person from header
+     * @param body Stream of JSON body with new name
+     * @return success JSON
+     */
+    @Auditable(value = Event.EVENT_RENAME_FOLDER)
+    @RequestMapping(method = RequestMethod.POST, value = "/{folderUUID}/rename",
+		    consumes = "application/json;charset=utf-8", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> renameFolder(@PathVariable String folderUUID, @RequestHeader String personUUID,
+		    InputStream body) {
+	try {
+	    moveFolderProcessor.rename(folderUUID, RequestReader.read(body, new FolderRequest()), personUUID);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.NOT_FOUND);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.BAD_REQUEST);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
+    }
+
+    /**
+     * API for moving folder with all its content under another folder
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person from header
+     * @param body Stream of JSON body with destination path and optional new name
+     * @return success JSON
+     */
+    @Auditable(value = Event.EVENT_MOVE_FOLDER)
+    @RequestMapping(method = RequestMethod.POST, value = "/{folderUUID}/move",
+		    consumes = "application/json;charset=utf-8", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> moveFolder(@PathVariable String folderUUID, @RequestHeader String personUUID,
+		    InputStream body) {
 	try {
-	    createFolderProcessor.process((ObjectNode) Utils.parseJson(body), personUUID);
+	    moveFolderProcessor.move(folderUUID, RequestReader.read(body, new FolderRequest()), personUUID);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.NOT_FOUND);
 	}
 	catch (InvalidRequestException e) {
 	    LOGGER.error(e.getMessage(), e);
@@ -59,4 +155,104 @@ public class FolderController {
 	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
     }
 
+    /**
+     * API for deleting folder with all its content. Folder disappears at once, its content is removed by background
+     * job whose status can be followed.
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person from header
+     * @return JSON status of deletion job
+     */
+    @Auditable(value = Event.EVENT_DELETE_FOLDER)
+    @RequestMapping(method = RequestMethod.DELETE, value = "/{folderUUID}", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> deleteFolder(@PathVariable String folderUUID, @RequestHeader String personUUID) {
+	try {
+	    return new ResponseEntity<>(folderDeletionService.delete(folderUUID, personUUID), HttpStatus.ACCEPTED);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.NOT_FOUND);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.BAD_REQUEST);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+    }
+
+    /**
+     * API for getting status of folder deletion
+     * @param jobId ID of deletion job
+     * @param personUUID UUID of person from header
+     * @return JSON status of deletion job
+     */
+    @Auditable(value = Event.EVENT_GET_FOLDER_DELETION)
+    @RequestMapping(method = RequestMethod.GET, value = "/deletions/{jobId}",
+		    produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getFolderDeletion(@PathVariable String jobId, @RequestHeader String personUUID) {
+	try {
+	    return new ResponseEntity<>(folderDeletionService.getJob(jobId, personUUID), HttpStatus.OK);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.NOT_FOUND);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+    }
+
+    /**
+     * API for downloading folder with all its subfolders as ZIP archive. Archive is streamed while it is built, if
+     * error happens after response is committed, response is cut short.
+     *
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person from header
+     * @param response   HTTP response
+     * @throws IOException if error response can't be written
+     */
+    @Auditable(value = Event.EVENT_DOWNLOAD_FOLDER)
+    @RequestMapping(method = RequestMethod.GET, value = "/{folderUUID}/zip")
+    public void downloadFolder(@PathVariable String folderUUID, @RequestHeader String personUUID,
+		    HttpServletResponse response) throws IOException {
+	try {
+	    downloadFolderProcessor.process(folderUUID, personUUID, response);
+	}
+	catch (ObjectNotFoundException e) {
+	    LOGGER.error(e.getMessage());
+	    writeErrorResponse(response, HttpStatus.NOT_FOUND, e.getMessage());
+	}
+	catch (BaseException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    writeErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+	}
+    }
+
+    /**
+     * Method will write error JSON to response, if response is not committed yet
+     *
+     * @param response HTTP response
+     * @param status   HTTP status
+     * @param message  Error message
+     * @throws IOException if error response can't be written
+     */
+    private void writeErrorResponse(HttpServletResponse response, HttpStatus status, String message)
+		    throws IOException {
+	if (!response.isCommitted()) {
+	    response.reset();
+	    response.setContentType("application/json;charset=utf-8");
+	    response.setStatus(status.value());
+	    response.getOutputStream().write(Utils.generateErrorResponse(message).toString()
+			    .getBytes(StandardCharsets.UTF_8));
+	}
+    }
 }
@@ -0,0 +1,46 @@
+package rs.marko.lalic.safe.core.controllers;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.metrics.PrometheusWriter;
+import rs.marko.lalic.safe.core.services.MetricsService;
+
+/**
+ * MetricsController exposing metrics in Prometheus text format
+ *
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(MetricsController.class);
+    /**
+     * MetricsService instance
+     */
+    @Autowired
+    private MetricsService metricsService;
+
+    /**
+     * API for getting metrics. Not audited, so scraping doesn't show up in request metrics.
+     *
+     * @return Metrics text
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = PrometheusWriter.CONTENT_TYPE)
+    public ResponseEntity<?> getMetrics() {
+	try {
+	    return new ResponseEntity<>(metricsService.getMetrics(), HttpStatus.OK);
+	}
+	catch (Exception e) {
+	    String err = Utils.buildString("Unknown error occurred. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(err, HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+    }
+}
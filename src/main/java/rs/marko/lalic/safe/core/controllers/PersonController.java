@@ -1,6 +1,5 @@
 package rs.marko.lalic.safe.core.controllers;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -13,8 +12,15 @@ import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
 import rs.marko.lalic.safe.core.processors.person.RegisterPersonProcessor;
+import rs.marko.lalic.safe.core.requests.PersonRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
 import rs.marko.lalic.safe.core.services.PersonService;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
 /**
  * FileController
  *
@@ -41,14 +47,14 @@ public class PersonController {
     /**
      * API for adding new person
      *
-     * @param body JSON body
+     * @param body Stream of JSON body
      * @return success JSON
      */
     @Auditable(value = Event.EVENT_ADD_PERSON)
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<?> addPerson(@RequestBody String body) {
+    public ResponseEntity<?> addPerson(InputStream body) {
 	try {
-	    registerPersonProcessor.process((ObjectNode) Utils.parseJson(body));
+	    registerPersonProcessor.process(RequestReader.read(body, new PersonRequest()));
 	}
 	catch (InvalidRequestException e) {
 	    LOGGER.error(e.getMessage(), e);
@@ -69,15 +75,15 @@ public class PersonController {
     /**
      * API for updating person
      *
-     * @param body       JSON from request
+     * @param body       Stream of JSON body
      * @param personUUID UUID of person from url
      * @return success JSON
      */
     @Auditable(value = Event.EVENT_UPDATE_PERSON)
     @RequestMapping(method = RequestMethod.PUT, value = "/{personUUID}")
-    public ResponseEntity<?> updatePerson(@RequestBody String body, @RequestParam String personUUID) {
+    public ResponseEntity<?> updatePerson(InputStream body, @RequestParam String personUUID) {
 	try {
-	    personService.updatePerson((ObjectNode) Utils.parseJson(body), personUUID);
+	    personService.updatePerson(RequestReader.read(body, new PersonRequest()), personUUID);
 	}
 	catch (InvalidRequestException e) {
 	    LOGGER.error(e.getMessage(), e);
@@ -96,15 +102,22 @@ public class PersonController {
     }
 
     /**
-     * API for getting persons
+     * API for getting one page of persons
      *
-     * @return JSON with persons data
+     * @param cursor Cursor of page, returned with previous page
+     * @param limit  Maximum number of persons in page
+     * @return JSON with persons data and cursor of next page
      */
     @Auditable(value = Event.EVENT_GET_PERSONS)
     @RequestMapping(method = RequestMethod.GET)
-    public ResponseEntity<?> getPersons() {
+    public ResponseEntity<?> getPersons(@RequestParam(required = false) String cursor,
+		    @RequestParam(required = false) Integer limit) {
 	try {
-	    return new ResponseEntity<>(personService.getPersons(), HttpStatus.OK);
+	    return new ResponseEntity<>(personService.getPersons(cursor, limit), HttpStatus.OK);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.BAD_REQUEST);
 	}
 	catch (InternalErrorException e) {
 	    LOGGER.error(e.getMessage(), e);
@@ -117,6 +130,32 @@ public class PersonController {
 	}
     }
 
+    /**
+     * API for streaming all persons as JSON array. Persons are written as they are read from database, so response
+     * size is not limited by memory. If error happens after response is committed, response is cut short.
+     *
+     * @param response HTTP response
+     * @throws IOException if error response can't be written
+     */
+    @Auditable(value = Event.EVENT_STREAM_PERSONS)
+    @RequestMapping(method = RequestMethod.GET, value = "/stream")
+    public void streamPersons(HttpServletResponse response) throws IOException {
+	response.setContentType("application/json;charset=utf-8");
+	try {
+	    personService.streamPersons(response.getOutputStream());
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(e.getMessage(), e);
+	    if (!response.isCommitted()) {
+		response.reset();
+		response.setContentType("application/json;charset=utf-8");
+		response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+		response.getOutputStream().write(Utils.generateErrorResponse(e.getMessage()).toString()
+				.getBytes(StandardCharsets.UTF_8));
+	    }
+	}
+    }
+
     /**
      * Api for getting person
      *
@@ -0,0 +1,115 @@
+package rs.marko.lalic.safe.core.controllers;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.audit.Auditable;
+import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.services.ReconciliationService;
+import rs.marko.lalic.safe.core.services.StorageMigrationService;
+import rs.marko.lalic.safe.core.services.VolumePoolService;
+
+/**
+ * StorageController used for storage maintenance
+ *
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/storage")
+public class StorageController {
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(StorageController.class);
+    /**
+     * StorageMigrationService instance
+     */
+    @Autowired
+    private StorageMigrationService storageMigrationService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * ReconciliationService instance
+     */
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    /**
+     * API for starting online migration of mirrored files to hashed layout
+     *
+     * @param threads Number of worker threads, optional
+     * @return JSON with migration status
+     */
+    @Auditable(value = Event.EVENT_START_MIGRATION)
+    @RequestMapping(method = RequestMethod.POST, value = "/migration", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> startMigration(@RequestParam(required = false) Integer threads) {
+	try {
+	    return new ResponseEntity<>(storageMigrationService.start(threads), HttpStatus.OK);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.CONFLICT);
+	}
+    }
+
+    /**
+     * API for getting status of last migration
+     *
+     * @return JSON with migration status
+     */
+    @Auditable(value = Event.EVENT_GET_MIGRATION)
+    @RequestMapping(method = RequestMethod.GET, value = "/migration", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getMigration() {
+	return new ResponseEntity<>(storageMigrationService.getStatus(), HttpStatus.OK);
+    }
+
+    /**
+     * API for starting reconciliation of storage with database
+     *
+     * @param repair Flag if found orphans and missing folders should be repaired, by default they are only reported
+     * @return JSON with reconciliation status
+     */
+    @Auditable(value = Event.EVENT_START_RECONCILIATION)
+    @RequestMapping(method = RequestMethod.POST, value = "/reconciliation",
+		    produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> startReconciliation(
+		    @RequestParam(required = false, defaultValue = "false") boolean repair) {
+	try {
+	    return new ResponseEntity<>(reconciliationService.start(repair), HttpStatus.OK);
+	}
+	catch (InvalidRequestException e) {
+	    LOGGER.error(e.getMessage());
+	    return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), HttpStatus.CONFLICT);
+	}
+    }
+
+    /**
+     * API for getting status and found issues of last reconciliation
+     *
+     * @return JSON with reconciliation status
+     */
+    @Auditable(value = Event.EVENT_GET_RECONCILIATION)
+    @RequestMapping(method = RequestMethod.GET, value = "/reconciliation",
+		    produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getReconciliation() {
+	return new ResponseEntity<>(reconciliationService.getStatus(), HttpStatus.OK);
+    }
+
+    /**
+     * API for getting health, free space and number of writes in progress of storage volumes
+     *
+     * @return JSON with volumes
+     */
+    @Auditable(value = Event.EVENT_GET_VOLUMES)
+    @RequestMapping(method = RequestMethod.GET, value = "/volumes", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getVolumes() {
+	return new ResponseEntity<>(volumePoolService.getStatus(), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,166 @@
+package rs.marko.lalic.safe.core.controllers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.audit.Auditable;
+import rs.marko.lalic.safe.core.constants.Event;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.exceptions.QuotaExceededException;
+import rs.marko.lalic.safe.core.exceptions.UnauthorizedException;
+import rs.marko.lalic.safe.core.processors.file.UploadSessionProcessor;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * UploadController used for resumable uploads
+ *
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/upload")
+public class UploadController {
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(UploadController.class);
+    /**
+     * UploadSessionProcessor instance
+     */
+    @Autowired
+    private UploadSessionProcessor uploadSessionProcessor;
+
+    /**
+     * API for creating upload session
+     *
+     * @param personUUID UUID of person from header
+     * @param body       JSON body
+     * @return JSON with upload session status
+     */
+    @Auditable(value = Event.EVENT_CREATE_UPLOAD)
+    @RequestMapping(method = RequestMethod.POST, consumes = "application/json;charset=utf-8", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> createUpload(@RequestHeader String personUUID, @RequestBody String body) {
+	try {
+	    return new ResponseEntity<>(uploadSessionProcessor.createSession((ObjectNode) Utils.parseJson(body),
+			    personUUID), HttpStatus.OK);
+	}
+	catch (BaseException e) {
+	    return generateErrorResponse(e);
+	}
+    }
+
+    /**
+     * API for uploading chunk at given offset. Request body is raw chunk content.
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person from header
+     * @param offset     Offset of chunk
+     * @param request    Request holding chunk content
+     * @return JSON with upload session status
+     */
+    @Auditable(value = Event.EVENT_UPLOAD_CHUNK)
+    @RequestMapping(method = RequestMethod.PUT, value = "/{uploadUUID}", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadUUID, @RequestHeader String personUUID,
+		    @RequestParam long offset, HttpServletRequest request) {
+	try {
+	    return new ResponseEntity<>(
+			    uploadSessionProcessor.uploadChunk(uploadUUID, personUUID, offset, request.getInputStream()),
+			    HttpStatus.OK);
+	}
+	catch (BaseException e) {
+	    return generateErrorResponse(e);
+	}
+	catch (IOException e) {
+	    String err = Utils.buildString("Failed to read chunk. Reason: ", e.getMessage());
+	    LOGGER.error(err, e);
+	    return new ResponseEntity<>(Utils.generateErrorResponse(err), HttpStatus.BAD_REQUEST);
+	}
+    }
+
+    /**
+     * API for getting upload session status with received ranges
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person from header
+     * @return JSON with upload session status
+     */
+    @Auditable(value = Event.EVENT_GET_UPLOAD)
+    @RequestMapping(method = RequestMethod.GET, value = "/{uploadUUID}", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> getUpload(@PathVariable String uploadUUID, @RequestHeader String personUUID) {
+	try {
+	    return new ResponseEntity<>(uploadSessionProcessor.getStatus(uploadUUID, personUUID), HttpStatus.OK);
+	}
+	catch (BaseException e) {
+	    return generateErrorResponse(e);
+	}
+    }
+
+    /**
+     * API for committing upload session
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person from header
+     * @return success JSON
+     */
+    @Auditable(value = Event.EVENT_COMMIT_UPLOAD)
+    @RequestMapping(method = RequestMethod.POST, value = "/{uploadUUID}/commit", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> commitUpload(@PathVariable String uploadUUID, @RequestHeader String personUUID) {
+	try {
+	    uploadSessionProcessor.commit(uploadUUID, personUUID);
+	}
+	catch (BaseException e) {
+	    return generateErrorResponse(e);
+	}
+	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
+    }
+
+    /**
+     * API for aborting upload session
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person from header
+     * @return success JSON
+     */
+    @Auditable(value = Event.EVENT_ABORT_UPLOAD)
+    @RequestMapping(method = RequestMethod.DELETE, value = "/{uploadUUID}", produces = "application/json;charset=utf-8")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadUUID, @RequestHeader String personUUID) {
+	try {
+	    uploadSessionProcessor.abort(uploadUUID, personUUID);
+	}
+	catch (BaseException e) {
+	    return generateErrorResponse(e);
+	}
+	return new ResponseEntity<>(Utils.generateSuccessResponse(), HttpStatus.OK);
+    }
+
+    /**
+     * Method will log exception and map it to error response with matching HTTP status
+     *
+     * @param e Exception
+     * @return Error response
+     */
+    private ResponseEntity<?> generateErrorResponse(BaseException e) {
+	LOGGER.error(e.getMessage(), e);
+	HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
+	if (e instanceof InvalidRequestException) {
+	    status = HttpStatus.BAD_REQUEST;
+	}
+	else if (e instanceof ObjectNotFoundException) {
+	    status = HttpStatus.NOT_FOUND;
+	}
+	else if (e instanceof UnauthorizedException) {
+	    status = HttpStatus.FORBIDDEN;
+	}
+	else if (e instanceof QuotaExceededException) {
+	    status = HttpStatus.PAYLOAD_TOO_LARGE;
+	}
+	return new ResponseEntity<>(Utils.generateErrorResponse(e.getMessage()), status);
+    }
+}
@@ -0,0 +1,83 @@
+package rs.marko.lalic.safe.core.exceptions;
+
+/**
+ * Exception used when operation would exceed storage quota of person
+ *
+ * @author Marko Lalic
+ */
+public class QuotaExceededException extends BaseException implements ErrorCode {
+
+    /**
+     * Default constructor
+     */
+    public QuotaExceededException() {
+    }
+
+    /**
+     * Initializes exception and sets message using specified message string.
+     *
+     * @param message Error message.
+     */
+    public QuotaExceededException(String message) {
+	super(message);
+    }
+
+    /**
+     * Initializes exception and sets cause.
+     *
+     * @param cause Cause error
+     */
+    public QuotaExceededException(Throwable cause) {
+	super(cause);
+    }
+
+    /**
+     * Initializes exception and sets the error code
+     *
+     * @param code Error code.
+     */
+    public QuotaExceededException(long code) {
+	super(code);
+    }
+
+    /**
+     * Initializes exception and sets message using specified message string, and error code
+     *
+     * @param message Error message.
+     * @param code    Error code.
+     */
+    public QuotaExceededException(String message, long code) {
+	super(message, code);
+    }
+
+    /**
+     * Initializes exception and sets message and cause.
+     *
+     * @param message Error message
+     * @param e       Throwable
+     */
+    public QuotaExceededException(String message, Throwable e) {
+	super(message, e);
+    }
+
+    /**
+     * Initializes exception and cause, and error code
+     *
+     * @param e    Throwable
+     * @param code Error code.
+     */
+    public QuotaExceededException(Throwable e, long code) {
+	super(e, code);
+    }
+
+    /**
+     * Initializes exception and sets message, cause and error code.
+     *
+     * @param message Error message
+     * @param e       Throwable
+     * @param code    Error code.
+     */
+    public QuotaExceededException(String message, Throwable e, long code) {
+	super(message, e, code);
+    }
+}
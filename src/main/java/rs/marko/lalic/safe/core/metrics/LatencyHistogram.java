@@ -0,0 +1,202 @@
+package rs.marko.lalic.safe.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in nanoseconds, with buckets laid out like HdrHistogram. Every power of two range
+ * is split into same number of linear sub buckets, so relative error is the same for microseconds and for minutes,
+ * and recording is one index calculation and one atomic increment.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of value kept in bucket index, relative error is below <code>2^-(bits-1)</code>
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    /**
+     * Number of values counted exactly, and sub buckets in first power of two range
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Highest tracked value, about 18 minutes. Higher values are counted as highest value.
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    /**
+     * Number of buckets
+     */
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    /**
+     * Number of values in every bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    /**
+     * Number of recorded values
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Sum of recorded values
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * Highest recorded value
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Method will record value. Safe to call from any thread.
+     *
+     * @param value Latency in nanoseconds, negative value is recorded as <code>0</code>
+     */
+    public void record(long value) {
+	long tracked = Math.min(Math.max(value, 0), MAX_VALUE);
+	counts.incrementAndGet(index(tracked));
+	count.increment();
+	sum.add(tracked);
+	long current = max.get();
+	while (tracked > current && !max.compareAndSet(current, tracked)) {
+	    current = max.get();
+	}
+    }
+
+    /**
+     * Getter for number of recorded values
+     *
+     * @return Number of values
+     */
+    public long getCount() {
+	return count.sum();
+    }
+
+    /**
+     * Getter for sum of recorded values
+     *
+     * @return Sum in nanoseconds
+     */
+    public long getSum() {
+	return sum.sum();
+    }
+
+    /**
+     * Getter for highest recorded value
+     *
+     * @return Highest value in nanoseconds
+     */
+    public long getMax() {
+	return max.get();
+    }
+
+    /**
+     * Method will copy counts of buckets. Values recorded while copying may be only partly included.
+     *
+     * @return Snapshot of histogram
+     */
+    public Snapshot snapshot() {
+	long[] copy = new long[BUCKET_COUNT];
+	for (int i = 0; i < BUCKET_COUNT; i++) {
+	    copy[i] = counts.get(i);
+	}
+	return new Snapshot(copy);
+    }
+
+    /**
+     * Method will calculate bucket of value
+     *
+     * @param value Value between <code>0</code> and {@link #MAX_VALUE}
+     * @return Bucket index
+     */
+    private static int index(long value) {
+	if (value < SUB_BUCKET_COUNT) {
+	    return (int) value;
+	}
+	// Shift keeps highest SUB_BUCKET_BITS bits of value, so every power of two range gets half of sub buckets
+	int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+	return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * Method will calculate highest value counted in bucket
+     *
+     * @param index Bucket index
+     * @return Highest value of bucket
+     */
+    private static long highestValue(int index) {
+	if (index < SUB_BUCKET_COUNT) {
+	    return index;
+	}
+	int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+	long subBucket = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+	return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Counts of buckets at one moment, used for quantiles over time window
+     */
+    public static class Snapshot {
+	private final long[] counts;
+	private final long total;
+
+	/**
+	 * Construct for snapshot
+	 *
+	 * @param counts Number of values in every bucket
+	 */
+	private Snapshot(long[] counts) {
+	    long sum = 0;
+	    for (long bucket : counts) {
+		sum += bucket;
+	    }
+	    this.counts = counts;
+	    this.total = sum;
+	}
+
+	/**
+	 * Getter for number of values
+	 *
+	 * @return Number of values in snapshot
+	 */
+	public long getTotal() {
+	    return total;
+	}
+
+	/**
+	 * Method will subtract older snapshot of the same histogram, leaving values recorded between snapshots
+	 *
+	 * @param older Older snapshot, may be <code>null</code>
+	 * @return Snapshot of values recorded after older snapshot
+	 */
+	public Snapshot minus(Snapshot older) {
+	    if (older == null) {
+		return this;
+	    }
+	    long[] difference = new long[counts.length];
+	    for (int i = 0; i < counts.length; i++) {
+		difference[i] = Math.max(counts[i] - older.counts[i], 0);
+	    }
+	    return new Snapshot(difference);
+	}
+
+	/**
+	 * Method will find value below which given part of values fall
+	 *
+	 * @param quantile Part of values, between <code>0</code> and <code>1</code>
+	 * @return Highest value of bucket holding quantile in nanoseconds, <code>0</code> if snapshot is empty
+	 */
+	public long getValueAtQuantile(double quantile) {
+	    if (total == 0) {
+		return 0;
+	    }
+	    long target = Math.max((long) Math.ceil(quantile * total), 1);
+	    long seen = 0;
+	    for (int i = 0; i < counts.length; i++) {
+		seen += counts[i];
+		if (seen >= target) {
+		    return highestValue(i);
+		}
+	    }
+	    return MAX_VALUE;
+	}
+    }
+}
@@ -0,0 +1,111 @@
+package rs.marko.lalic.safe.core.metrics;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import rs.marko.lalic.safe.core.services.MetricsService;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool which times every connection borrow. Pool reports only current state, so time threads wait for
+ * connection when pool is exhausted is measured here, together with borrows which failed or timed out.
+ */
+public class MonitoredDataSource extends DataSource {
+
+    /**
+     * Name of connection acquire latency metric
+     */
+    private static final String ACQUIRE_DURATION = "safe_pool_acquire_duration_seconds";
+    /**
+     * Name of connection acquire throughput metric
+     */
+    private static final String ACQUIRE_THROUGHPUT = "safe_pool_acquire_throughput";
+    /**
+     * Name of failed connection acquire metric
+     */
+    private static final String ACQUIRE_ERRORS = "safe_pool_acquire_errors_total";
+    /**
+     * Name of pool connections metric
+     */
+    private static final String POOL_CONNECTIONS = "safe_pool_connections";
+    /**
+     * Name of pool waiting threads metric
+     */
+    private static final String POOL_WAITING = "safe_pool_waiting_threads";
+
+    /**
+     * Latency of connection borrows
+     */
+    private final TimedSeries acquire = new TimedSeries();
+    /**
+     * Number of borrows which failed
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Empty construct
+     */
+    public MonitoredDataSource() {
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+	long start = System.nanoTime();
+	try {
+	    Connection connection = super.getConnection();
+	    acquire.record(System.nanoTime() - start);
+	    return connection;
+	}
+	catch (SQLException | RuntimeException e) {
+	    errors.increment();
+	    throw e;
+	}
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+	long start = System.nanoTime();
+	try {
+	    Connection connection = super.getConnection(username, password);
+	    acquire.record(System.nanoTime() - start);
+	    return connection;
+	}
+	catch (SQLException | RuntimeException e) {
+	    errors.increment();
+	    throw e;
+	}
+    }
+
+    /**
+     * Method will start new time window of acquire latency
+     *
+     * @param now Current time in {@link System#nanoTime()} units
+     */
+    public void rotate(long now) {
+	acquire.rotate(now);
+    }
+
+    /**
+     * Method will write acquire latency and current state of pool
+     *
+     * @param writer Metrics writer
+     * @param now    Current time in {@link System#nanoTime()} units
+     */
+    public void writeMetrics(PrometheusWriter writer, long now) {
+	TimedSeries.Sample sample = acquire.sample(now);
+	writer.header(ACQUIRE_DURATION, "summary", "Time waited for connection from pool");
+	writer.summary(ACQUIRE_DURATION, acquire, sample, MetricsService.QUANTILES);
+	writer.header(ACQUIRE_THROUGHPUT, "gauge", "Connections borrowed per second in last time window");
+	writer.sample(ACQUIRE_THROUGHPUT, sample.getRate());
+	writer.header(ACQUIRE_ERRORS, "counter", "Connection borrows which failed or timed out");
+	writer.sample(ACQUIRE_ERRORS, errors.sum());
+	writer.header(POOL_CONNECTIONS, "gauge", "Connections of pool by state");
+	writer.sample(POOL_CONNECTIONS, getActive(), "state", "active");
+	writer.sample(POOL_CONNECTIONS, getIdle(), "state", "idle");
+	writer.sample(POOL_CONNECTIONS, getSize(), "state", "open");
+	writer.sample(POOL_CONNECTIONS, getMaxActive(), "state", "max");
+	writer.header(POOL_WAITING, "gauge", "Threads waiting for connection from pool");
+	writer.sample(POOL_WAITING, getWaitCount());
+    }
+}
@@ -0,0 +1,115 @@
+package rs.marko.lalic.safe.core.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Writer of metrics in Prometheus text exposition format
+ */
+public class PrometheusWriter {
+
+    /**
+     * Content type of Prometheus text format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * Number of nanoseconds in second, metrics report time in seconds
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Output text
+     */
+    private final StringBuilder out = new StringBuilder();
+
+    /**
+     * Method will write help and type lines of metric
+     *
+     * @param name Metric name
+     * @param type Metric type, like <code>counter</code>, <code>gauge</code> or <code>summary</code>
+     * @param help Description of metric
+     */
+    public void header(String name, String type, String help) {
+	out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+	out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Method will write one sample
+     *
+     * @param name   Metric name
+     * @param value  Sample value
+     * @param labels Label names and values, in pairs
+     */
+    public void sample(String name, double value, String... labels) {
+	out.append(name);
+	if (labels.length > 0) {
+	    out.append('{');
+	    for (int i = 0; i + 1 < labels.length; i += 2) {
+		if (i > 0) {
+		    out.append(',');
+		}
+		out.append(labels[i]).append("=\"");
+		appendEscaped(labels[i + 1]);
+		out.append('"');
+	    }
+	    out.append('}');
+	}
+	out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Method will write quantiles of window, and count and sum since start, of latency series
+     *
+     * @param name      Metric name
+     * @param series    Latency series
+     * @param sample    Values of current window of series
+     * @param quantiles Reported quantiles
+     * @param labels    Label names and values, in pairs
+     */
+    public void summary(String name, TimedSeries series, TimedSeries.Sample sample, double[] quantiles,
+		    String... labels) {
+	String[] quantileLabels = Arrays.copyOf(labels, labels.length + 2);
+	quantileLabels[labels.length] = "quantile";
+	for (double quantile : quantiles) {
+	    quantileLabels[labels.length + 1] = String.valueOf(quantile);
+	    sample(name, toSeconds(sample.getValueAtQuantile(quantile)), quantileLabels);
+	}
+	sample(name + "_sum", toSeconds(series.getHistogram().getSum()), labels);
+	sample(name + "_count", series.getHistogram().getCount(), labels);
+    }
+
+    /**
+     * Method will convert nanoseconds to seconds
+     *
+     * @param nanos Time in nanoseconds
+     * @return Time in seconds
+     */
+    public static double toSeconds(long nanos) {
+	return nanos / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Method will append label value, escaping characters which end value or line
+     *
+     * @param value Label value
+     */
+    private void appendEscaped(String value) {
+	for (int i = 0; i < value.length(); i++) {
+	    char c = value.charAt(i);
+	    if (c == '\\' || c == '"') {
+		out.append('\\').append(c);
+	    }
+	    else if (c == '\n') {
+		out.append("\\n");
+	    }
+	    else {
+		out.append(c);
+	    }
+	}
+    }
+
+    @Override
+    public String toString() {
+	return out.toString();
+    }
+}
@@ -0,0 +1,274 @@
+package rs.marko.lalic.safe.core.metrics;
+
+import org.apache.log4j.Logger;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.services.MetricsService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Timing, row counts and error counts of database statements, kept per statement fingerprint. Fingerprint is
+ * statement with literals replaced by placeholders, placeholder lists collapsed and whitespace normalised, so
+ * statements built per call with different values or list lengths fall into the same series. Fingerprint of every
+ * distinct statement string is computed once. Named statements are labelled with their ID instead of fingerprint.
+ * Statements slower than threshold are logged with fingerprint and types of bind parameters only, so values never
+ * reach the log.
+ */
+public class QueryStatistics {
+
+    /**
+     * Class logger, can be routed to its own appender as slow query log
+     */
+    private static final Logger LOGGER = Logger.getLogger(QueryStatistics.class);
+    /**
+     * Maximum number of fingerprints kept, statements with new fingerprints are counted under {@link #OTHER}
+     */
+    private static final int MAX_FINGERPRINTS = 500;
+    /**
+     * Maximum number of statement strings mapped to their fingerprint
+     */
+    private static final int MAX_STATEMENTS = 5000;
+    /**
+     * Fingerprint of statements over limit
+     */
+    private static final String OTHER = "other";
+    /**
+     * Quoted string literal
+     */
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    /**
+     * Numeric literal which is not part of identifier
+     */
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    /**
+     * List of two or more placeholders, like values of <code>IN</code> clause
+     */
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    /**
+     * Any whitespace
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    /**
+     * Name of statement latency metric
+     */
+    private static final String QUERY_DURATION = "safe_query_duration_seconds";
+    /**
+     * Name of statement throughput metric
+     */
+    private static final String QUERY_THROUGHPUT = "safe_query_throughput";
+    /**
+     * Name of statement rows metric
+     */
+    private static final String QUERY_ROWS = "safe_query_rows_total";
+    /**
+     * Name of statement errors metric
+     */
+    private static final String QUERY_ERRORS = "safe_query_errors_total";
+
+    /**
+     * Series mapped by statement string
+     */
+    private final ConcurrentMap<String, QuerySeries> byStatement = new ConcurrentHashMap<>();
+    /**
+     * Series mapped by fingerprint
+     */
+    private final ConcurrentMap<String, QuerySeries> byFingerprint = new ConcurrentHashMap<>();
+    /**
+     * Time in nanoseconds after statement is logged as slow, <code>0</code> if slow statements are not logged
+     */
+    private volatile long slowQueryThreshold;
+
+    /**
+     * Empty construct
+     */
+    public QueryStatistics() {
+    }
+
+    /**
+     * Setter for slow query threshold
+     *
+     * @param slowQueryThreshold Time in milliseconds after statement is logged as slow, <code>0</code> to disable
+     */
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+	this.slowQueryThreshold = TimeUnit.MILLISECONDS.toNanos(Math.max(slowQueryThreshold, 0));
+    }
+
+    /**
+     * Method will label statement with given name instead of its fingerprint
+     *
+     * @param name      Stable name of statement
+     * @param statement SQL statement
+     */
+    public void register(String name, String statement) {
+	QuerySeries series = new QuerySeries(name);
+	QuerySeries existing = byFingerprint.putIfAbsent(name, series);
+	byStatement.put(statement, existing == null ? series : existing);
+    }
+
+    /**
+     * Method will record finished statement. Safe to call from any thread.
+     *
+     * @param statement  Executed statement
+     * @param start      Time when statement started, in {@link System#nanoTime()} units
+     * @param rows       Number of rows read or changed
+     * @param failed     Flag if statement failed
+     * @param parameters Bind parameters, as list or array, or list of arrays for batch, may be <code>null</code>
+     */
+    public void record(String statement, long start, long rows, boolean failed, Object parameters) {
+	long latency = System.nanoTime() - start;
+	QuerySeries series = getSeries(statement);
+	series.record(latency);
+	series.rows.add(rows);
+	if (failed) {
+	    series.errors.increment();
+	}
+	long threshold = slowQueryThreshold;
+	if (threshold > 0 && latency >= threshold) {
+	    LOGGER.warn(Utils.buildString("Slow query. Time: ", TimeUnit.NANOSECONDS.toMillis(latency), " ms. Rows: ",
+			    rows, ". Failed: ", failed, ". Query [", series.fingerprint, "]. Parameters: ",
+			    describeParameters(parameters)));
+	}
+    }
+
+    /**
+     * Method will start new time window of all series
+     *
+     * @param now Current time in {@link System#nanoTime()} units
+     */
+    public void rotate(long now) {
+	for (QuerySeries series : byFingerprint.values()) {
+	    series.rotate(now);
+	}
+    }
+
+    /**
+     * Method will write metrics of all series
+     *
+     * @param writer Metrics writer
+     * @param now    Current time in {@link System#nanoTime()} units
+     */
+    public void writeMetrics(PrometheusWriter writer, long now) {
+	Map<String, QuerySeries> sorted = new TreeMap<>(byFingerprint);
+	Map<String, TimedSeries.Sample> samples = new TreeMap<>();
+	for (Map.Entry<String, QuerySeries> entry : sorted.entrySet()) {
+	    samples.put(entry.getKey(), entry.getValue().sample(now));
+	}
+	writer.header(QUERY_DURATION, "summary", "Latency of database statements by fingerprint");
+	for (Map.Entry<String, QuerySeries> entry : sorted.entrySet()) {
+	    writer.summary(QUERY_DURATION, entry.getValue(), samples.get(entry.getKey()), MetricsService.QUANTILES,
+			    "query", entry.getKey());
+	}
+	writer.header(QUERY_THROUGHPUT, "gauge", "Database statements per second in last time window");
+	for (Map.Entry<String, QuerySeries> entry : sorted.entrySet()) {
+	    writer.sample(QUERY_THROUGHPUT, samples.get(entry.getKey()).getRate(), "query", entry.getKey());
+	}
+	writer.header(QUERY_ROWS, "counter", "Rows read or changed by database statements");
+	for (Map.Entry<String, QuerySeries> entry : sorted.entrySet()) {
+	    writer.sample(QUERY_ROWS, entry.getValue().rows.sum(), "query", entry.getKey());
+	}
+	writer.header(QUERY_ERRORS, "counter", "Failed database statements");
+	for (Map.Entry<String, QuerySeries> entry : sorted.entrySet()) {
+	    writer.sample(QUERY_ERRORS, entry.getValue().errors.sum(), "query", entry.getKey());
+	}
+    }
+
+    /**
+     * Method will build fingerprint of statement
+     *
+     * @param statement SQL statement
+     * @return Statement with literals replaced by placeholders and placeholder lists collapsed
+     */
+    public static String fingerprint(String statement) {
+	String fingerprint = STRING_LITERAL.matcher(statement).replaceAll("?");
+	fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+	fingerprint = PLACEHOLDER_LIST.matcher(fingerprint).replaceAll("(?+)");
+	return WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+    }
+
+    /**
+     * Method will get series of statement, creating it on first use
+     *
+     * @param statement SQL statement
+     * @return Series of statement fingerprint
+     */
+    private QuerySeries getSeries(String statement) {
+	QuerySeries series = byStatement.get(statement);
+	if (series != null) {
+	    return series;
+	}
+	String fingerprint = fingerprint(statement);
+	series = byFingerprint.get(fingerprint);
+	if (series == null) {
+	    if (byFingerprint.size() >= MAX_FINGERPRINTS) {
+		fingerprint = OTHER;
+	    }
+	    QuerySeries created = new QuerySeries(fingerprint);
+	    series = byFingerprint.putIfAbsent(fingerprint, created);
+	    if (series == null) {
+		series = created;
+	    }
+	}
+	if (byStatement.size() < MAX_STATEMENTS) {
+	    byStatement.putIfAbsent(statement, series);
+	}
+	return series;
+    }
+
+    /**
+     * Method will describe bind parameters by their types, without values
+     *
+     * @param parameters Bind parameters, as list or array, or list of arrays for batch, may be <code>null</code>
+     * @return Description of parameters
+     */
+    private static String describeParameters(Object parameters) {
+	if (parameters instanceof List && !((List<?>) parameters).isEmpty()
+			&& ((List<?>) parameters).get(0) instanceof Object[]) {
+	    List<?> rows = (List<?>) parameters;
+	    return Utils.buildString(rows.size(), " rows of ", describeParameters(rows.get(0)));
+	}
+	Object[] values;
+	if (parameters instanceof List) {
+	    values = ((List<?>) parameters).toArray();
+	}
+	else if (parameters instanceof Object[]) {
+	    values = (Object[]) parameters;
+	}
+	else if (parameters instanceof Map) {
+	    values = ((Map<?, ?>) parameters).values().toArray();
+	}
+	else {
+	    return "[]";
+	}
+	StringBuilder description = new StringBuilder("[");
+	for (int i = 0; i < values.length; i++) {
+	    Utils.appendToBuffer(description, i == 0 ? "" : ", ",
+			    values[i] == null ? "null" : values[i].getClass().getSimpleName());
+	}
+	return description.append(']').toString();
+    }
+
+    /**
+     * Latency series of one fingerprint with its row and error counts
+     */
+    private static class QuerySeries extends TimedSeries {
+	private final String fingerprint;
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	/**
+	 * Construct for query series
+	 *
+	 * @param fingerprint Statement fingerprint
+	 */
+	private QuerySeries(String fingerprint) {
+	    this.fingerprint = fingerprint;
+	}
+    }
+}
@@ -0,0 +1,135 @@
+package rs.marko.lalic.safe.core.metrics;
+
+/**
+ * Latency histogram with sliding time window. Snapshots taken at last two rotations bound window, so quantiles and
+ * throughput cover one to two rotation intervals, while count, sum and max are totals since start.
+ */
+public class TimedSeries {
+
+    /**
+     * Shortest time window used for throughput, so new series don't report huge rate
+     */
+    private static final double MIN_WINDOW_SECONDS = 1;
+
+    /**
+     * Histogram of all recorded values
+     */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    /**
+     * Start of current window
+     */
+    private volatile Window older;
+    /**
+     * Start of next window
+     */
+    private volatile Window newer;
+
+    /**
+     * Construct for series, first window starts when series is created
+     */
+    public TimedSeries() {
+	older = new Window(null, System.nanoTime());
+	newer = older;
+    }
+
+    /**
+     * Method will record value. Safe to call from any thread.
+     *
+     * @param latency Latency in nanoseconds
+     */
+    public void record(long latency) {
+	histogram.record(latency);
+    }
+
+    /**
+     * Getter for histogram of all recorded values
+     *
+     * @return Histogram
+     */
+    public LatencyHistogram getHistogram() {
+	return histogram;
+    }
+
+    /**
+     * Method will move window start to previous rotation
+     *
+     * @param now Current time in {@link System#nanoTime()} units
+     */
+    public void rotate(long now) {
+	older = newer;
+	newer = new Window(histogram.snapshot(), now);
+    }
+
+    /**
+     * Method will read values recorded in current window
+     *
+     * @param now Current time in {@link System#nanoTime()} units
+     * @return Values of window
+     */
+    public Sample sample(long now) {
+	Window start = older;
+	double seconds = Math.max(PrometheusWriter.toSeconds(now - start.time), MIN_WINDOW_SECONDS);
+	return new Sample(histogram.snapshot().minus(start.snapshot), seconds, histogram.getMax());
+    }
+
+    /**
+     * Snapshot of histogram taken at rotation, <code>null</code> snapshot if window starts at creation of series
+     */
+    private static class Window {
+	private final LatencyHistogram.Snapshot snapshot;
+	private final long time;
+
+	/**
+	 * Construct for window start
+	 *
+	 * @param snapshot Snapshot of histogram
+	 * @param time     Time of snapshot in {@link System#nanoTime()} units
+	 */
+	private Window(LatencyHistogram.Snapshot snapshot, long time) {
+	    this.snapshot = snapshot;
+	    this.time = time;
+	}
+    }
+
+    /**
+     * Values recorded in current window
+     */
+    public static class Sample {
+	private final LatencyHistogram.Snapshot window;
+	private final double seconds;
+	private final long max;
+
+	/**
+	 * Construct for sample
+	 *
+	 * @param window  Snapshot of values in window
+	 * @param seconds Length of window in seconds
+	 * @param max     Highest value since start in nanoseconds
+	 */
+	private Sample(LatencyHistogram.Snapshot window, double seconds, long max) {
+	    this.window = window;
+	    this.seconds = seconds;
+	    this.max = max;
+	}
+
+	/**
+	 * Method will find value below which given part of values in window fall
+	 *
+	 * @param quantile Part of values, between <code>0</code> and <code>1</code>
+	 * @return Value in nanoseconds
+	 */
+	public long getValueAtQuantile(double quantile) {
+	    // Bucket bound may be above any recorded value
+	    return Math.min(window.getValueAtQuantile(quantile), max);
+	}
+
+	/**
+	 * Getter for throughput
+	 *
+	 * @return Number of values per second in window
+	 */
+	public double getRate() {
+	    return window.getTotal() / seconds;
+	}
+    }
+}
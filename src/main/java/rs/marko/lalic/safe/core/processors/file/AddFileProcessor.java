@@ -6,15 +6,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.UUIDGenerator;
 import rs.marko.lalic.safe.core.Utils;
-import rs.marko.lalic.safe.core.constants.JsonConstants;
 import rs.marko.lalic.safe.core.exceptions.BaseException;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.requests.FileRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
+import rs.marko.lalic.safe.core.services.ContentStoreService;
 import rs.marko.lalic.safe.core.services.DBFileService;
 import rs.marko.lalic.safe.core.services.FileSystemService;
+import rs.marko.lalic.safe.core.services.QuotaReservation;
+import rs.marko.lalic.safe.core.services.QuotaService;
+import rs.marko.lalic.safe.core.services.StorageLayout;
+import rs.marko.lalic.safe.core.services.StoredFile;
+import rs.marko.lalic.safe.core.services.UploadJournalService;
+import rs.marko.lalic.safe.core.services.Volume;
+import rs.marko.lalic.safe.core.services.VolumePoolService;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+import rs.marko.lalic.safe.core.storage.StoredObject;
 
 import java.io.File;
+import java.io.InputStream;
 
 /**
  * This processor is used for adding files to file system
@@ -41,68 +54,270 @@ public class AddFileProcessor {
      */
     @Autowired
     private DBFileService dBFileService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+    /**
+     * UploadJournalService instance
+     */
+    @Autowired
+    private UploadJournalService uploadJournalService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * QuotaService instance
+     */
+    @Autowired
+    private QuotaService quotaService;
 
     /**
-     * Method will validate received data and execute transaction for adding file
-     * @param file File
+     * Method will validate received data and add file. Content is first staged without holding any database
+     * resources, then short metadata transaction is executed, and at the end staged file is moved to its final
+     * location with atomic rename. In hashed layout content is stored directly as object of storage backend.
+     * Quota reservation is committed with actual size once file is added, caller releases it otherwise.
+     * @param content Content of file
      * @param request Request JSON
      * @param personUUID UUID of person
+     * @param reservation Space reserved for upload
      * @throws InvalidRequestException if JSON is invalid
      * @throws InternalErrorException is some internal error happens
      */
-    public void process(File file, ObjectNode request, String personUUID)
+    public void process(InputStream content, ObjectNode request, String personUUID, QuotaReservation reservation)
+		    throws BaseException {
+	process(content, RequestReader.read(request, new FileRequest()), personUUID, reservation);
+    }
+
+    /**
+     * Method will store content of new file and record it in database
+     * @param content Content of file
+     * @param request Request with folder, name and optional checksum of file
+     * @param personUUID UUID of person
+     * @param reservation Space reserved for upload
+     * @throws InvalidRequestException if request is invalid
+     * @throws InternalErrorException is some internal error happens
+     */
+    public void process(InputStream content, FileRequest request, String personUUID, QuotaReservation reservation)
 		    throws BaseException {
 	if (LOGGER.isDebugEnabled()) {
-	    LOGGER.debug(Utils.buildString("Adding file. JSON: ", request.toString()));
+	    LOGGER.debug(Utils.buildString("Adding file. Request: ", request));
 	}
-	if (!request.has(JsonConstants.FIELD_FOLDER_UUID) || !request.has(JsonConstants.FIELD_NAME)) {
+	if (request.getFolderUUID() == null || request.getName() == null) {
 	    throw new InvalidRequestException(
-			    Utils.buildString("Error occurred while trying to save file. Invalid json: ",
-					    request.toString()));
+			    Utils.buildString("Error occurred while trying to save file. Invalid json: ", request));
+	}
+	String folderUUID = request.getFolderUUID();
+	String name = request.getName();
+	String checksum = request.getChecksum();
+	String folderPath = dBFileService.getFolderPath(folderUUID, personUUID);
+	StorageLayout layout = fileSystemService.getLayout();
+	String fileUUID = UUIDGenerator.generateUUID();
+	if (layout == StorageLayout.MIRROR) {
+	    // Fails fast, before any content is received
+	    fileSystemService.getNewFileInFolder(folderPath, name);
+	}
+	if (layout == StorageLayout.HASHED) {
+	    commitObject(fileUUID, volumePoolService.select(), content, null, name, folderUUID, folderPath,
+			    personUUID, reservation);
+	    return;
+	}
+	String stagingName = UploadJournalService.getStagingName(fileUUID);
+	StoredFile storedFile;
+	if (layout == StorageLayout.CONTENT) {
+	    storedFile = contentStoreService.stage(content, checksum, fileSystemService.getStagingFile(stagingName));
+	}
+	else {
+	    storedFile = fileSystemService.writeFile(fileSystemService.getStagingFile(stagingName), content);
+	}
+	commit(fileUUID, storedFile, name, folderUUID, folderPath, personUUID, layout, reservation);
+    }
+
+    /**
+     * Method will add already received file, for example completed upload session, to folder. Checksum is
+     * calculated before transaction is started, and file is moved to its final location with atomic rename. In hashed
+     * layout file is stored as object on volume chosen when upload started, and staged file is removed.
+     * @param stagedFile Completely received file
+     * @param volume Volume chosen for file in hashed layout, <code>null</code> otherwise
+     * @param name Name of file
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person
+     * @param reservation Space reserved for upload
+     * @throws BaseException if some error happens
+     */
+    public void processStagedFile(File stagedFile, Volume volume, String name, String folderUUID,
+		    String personUUID, QuotaReservation reservation) throws BaseException {
+	String folderPath = dBFileService.getFolderPath(folderUUID, personUUID);
+	StoredFile storedFile = fileSystemService.describeFile(stagedFile);
+	StorageLayout layout = fileSystemService.getLayout();
+	if (layout == StorageLayout.HASHED) {
+	    commitObject(UUIDGenerator.generateUUID(), volume, null, storedFile, name, folderUUID, folderPath,
+			    personUUID, reservation);
+	    if (!stagedFile.delete()) {
+		LOGGER.warn(Utils.buildString("Failed to remove staged file. Path: ", stagedFile));
+	    }
+	    return;
+	}
+	commit(UUIDGenerator.generateUUID(), storedFile, name, folderUUID, folderPath, personUUID, layout,
+			reservation);
+    }
+
+    /**
+     * Method will commit staged file. Intent is written to journal, metadata transaction is executed, and staged
+     * file is moved to its final location. If transaction fails, staged file is removed.
+     * @param fileUUID UUID of file
+     * @param storedFile Staged file
+     * @param name Name of file
+     * @param folderUUID UUID of folder
+     * @param folderPath Path of folder
+     * @param personUUID UUID of person
+     * @param layout Storage layout
+     * @param reservation Space reserved for upload
+     * @throws BaseException if some error happens
+     */
+    private void commit(String fileUUID, StoredFile storedFile, String name, String folderUUID, String folderPath,
+		    String personUUID, StorageLayout layout, QuotaReservation reservation) throws BaseException {
+	File intentFile = null;
+	File target;
+	try {
+	    if (layout == StorageLayout.CONTENT) {
+		target = contentStoreService.getBlobFile(storedFile.getChecksum());
+	    }
+	    else {
+		target = fileSystemService.getNewFileInFolder(folderPath, name);
+	    }
+	    intentFile = uploadJournalService.writeIntent(fileUUID, storedFile, target, layout);
+	    transactionTemplate.execute(
+			    new AddFileTransaction(fileUUID, name, storedFile, folderUUID, folderPath, personUUID,
+					    layout, null));
+	}
+	catch (BaseException e) {
+	    uploadJournalService.discard(intentFile, storedFile, layout);
+	    throw e;
+	}
+	catch (RuntimeException e) {
+	    uploadJournalService.discard(intentFile, storedFile, layout);
+	    if (e.getCause() instanceof BaseException) {
+		throw (BaseException) e.getCause();
+	    }
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to add file. File UUID: ", fileUUID, ". Message: ",
+					    e.getMessage()), e);
+	}
+	quotaService.commit(reservation, storedFile.getSize());
+	uploadJournalService.complete(intentFile, storedFile, target, layout);
+    }
+
+    /**
+     * Method will store content as object of hashed layout and commit it. Intent is written to journal before object
+     * is stored, so object is removed if upload is interrupted before metadata transaction is committed.
+     * @param fileUUID UUID of file
+     * @param volume Volume chosen for file
+     * @param content Content to store, or <code>null</code> if staged file is stored
+     * @param stagedFile Staged file with its size and checksum, or <code>null</code> if content is stored
+     * @param name Name of file
+     * @param folderUUID UUID of folder
+     * @param folderPath Path of folder
+     * @param personUUID UUID of person
+     * @param reservation Space reserved for upload
+     * @throws BaseException if some error happens
+     */
+    private void commitObject(String fileUUID, Volume volume, InputStream content, StoredFile stagedFile,
+		    String name, String folderUUID, String folderPath, String personUUID, QuotaReservation reservation)
+		    throws BaseException {
+	StorageBackend backend = volume.getBackend();
+	String key = fileSystemService.getHashedKey(fileUUID);
+	File intentFile = uploadJournalService.writeObjectIntent(fileUUID, volume.getVolumeId(), key);
+	StoredFile storedFile;
+	volume.beginWrite();
+	try {
+	    if (stagedFile == null) {
+		StoredObject object = backend.put(key, content);
+		storedFile = new StoredFile(backend.getLocalFile(key), object.getSize(), object.getChecksum());
+	    }
+	    else {
+		backend.putFile(key, stagedFile.getFile());
+		storedFile = new StoredFile(backend.getLocalFile(key), stagedFile.getSize(), stagedFile.getChecksum());
+	    }
+	}
+	catch (InternalErrorException e) {
+	    volumePoolService.reportFailure(volume, e);
+	    uploadJournalService.discardObject(intentFile, volume, key);
+	    throw e;
+	}
+	finally {
+	    volume.endWrite();
 	}
-	String folderUUID = request.get(JsonConstants.FIELD_FOLDER_UUID).asText();
-	String name = request.get(JsonConstants.FIELD_NAME).asText();
 	try {
-	    transactionTemplate.execute(new AddFileTransaction(name, file, folderUUID, personUUID));
+	    transactionTemplate.execute(
+			    new AddFileTransaction(fileUUID, name, storedFile, folderUUID, folderPath, personUUID,
+					    StorageLayout.HASHED, volume.getVolumeId()));
 	}
 	catch (RuntimeException e) {
-	    throw (BaseException) e.getCause();
+	    uploadJournalService.discardObject(intentFile, volume, key);
+	    if (e.getCause() instanceof BaseException) {
+		throw (BaseException) e.getCause();
+	    }
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to add file. File UUID: ", fileUUID, ". Volume: ",
+					    volume.getVolumeId(), ". Message: ", e.getMessage()), e);
 	}
+	quotaService.commit(reservation, storedFile.getSize());
+	uploadJournalService.completeObject(intentFile);
     }
 
     /**
-     * Transaction for adding file
+     * Transaction for adding file metadata
      */
     private class AddFileTransaction implements TransactionCallback {
+	String fileUUID;
 	String name;
-	File file;
+	StoredFile storedFile;
 	String folderUUID;
+	String folderPath;
 	String personUUID;
+	StorageLayout layout;
+	String volumeId;
 
 	/**
 	 * Transaction construct
+	 * @param fileUUID UUID of file
 	 * @param name Name of file
-	 * @param file File
+	 * @param storedFile Staged file with its size and checksum
 	 * @param folderUUID UUID of folder
+	 * @param folderPath Path of folder
 	 * @param personUUID UUID of person
+	 * @param layout Storage layout
+	 * @param volumeId ID of volume in hashed layout, <code>null</code> otherwise
 	 */
-	public AddFileTransaction(String name, File file, String folderUUID, String personUUID) {
+	public AddFileTransaction(String fileUUID, String name, StoredFile storedFile, String folderUUID,
+			String folderPath, String personUUID, StorageLayout layout, String volumeId) {
+	    this.fileUUID = fileUUID;
 	    this.name = name;
-	    this.file = file;
+	    this.storedFile = storedFile;
 	    this.folderUUID = folderUUID;
+	    this.folderPath = folderPath;
 	    this.personUUID = personUUID;
+	    this.layout = layout;
+	    this.volumeId = volumeId;
 	}
 
 	/**
-	 * This method will add file metadata in database and also in file system
+	 * This method will add file metadata in database, and reference to blob in content layout
 	 * @param status
 	 * @return
 	 */
 	@Override
 	public Object doInTransaction(TransactionStatus status) {
 	    try {
-		String destinationPath = dBFileService.addFileDB(name, folderUUID, personUUID);
-		fileSystemService.addFileToFolder(destinationPath, file, name);
+		dBFileService.addFileDB(fileUUID, name, folderUUID, personUUID, folderPath, storedFile, layout,
+				volumeId);
+		if (layout == StorageLayout.CONTENT) {
+		    contentStoreService.addReference(storedFile);
+		}
 	    }
 	    catch (BaseException e) {
 		status.setRollbackOnly();
@@ -0,0 +1,159 @@
+package rs.marko.lalic.safe.core.processors.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Byte range of file, as requested by HTTP <code>Range</code> header
+ */
+class ByteRange {
+
+    /**
+     * Unit of byte ranges
+     */
+    private static final String BYTES_UNIT = "bytes=";
+    /**
+     * Comparator ordering ranges by their start
+     */
+    private static final Comparator<ByteRange> START_ORDER = new Comparator<ByteRange>() {
+	@Override
+	public int compare(ByteRange first, ByteRange second) {
+	    return Long.compare(first.start, second.start);
+	}
+    };
+    /**
+     * First byte of range
+     */
+    private final long start;
+    /**
+     * Last byte of range, inclusive
+     */
+    private final long end;
+
+    /**
+     * Construct for byte range
+     *
+     * @param start First byte of range
+     * @param end   Last byte of range, inclusive
+     */
+    ByteRange(long start, long end) {
+	this.start = start;
+	this.end = end;
+    }
+
+    /**
+     * Method will parse <code>Range</code> header against file of given length. Satisfiable ranges are ordered, and
+     * overlapping or adjacent ranges are merged, so same bytes are never sent twice.
+     *
+     * @param header Value of <code>Range</code> header
+     * @param length Length of file
+     * @return Satisfiable ranges, empty if none of ranges can be satisfied, or <code>null</code> if header is not
+     * valid and should be ignored
+     */
+    static List<ByteRange> parse(String header, long length) {
+	if (header == null || !header.startsWith(BYTES_UNIT)) {
+	    return null;
+	}
+	List<ByteRange> ranges = new ArrayList<>();
+	for (String spec : header.substring(BYTES_UNIT.length()).split(",")) {
+	    spec = spec.trim();
+	    int dash = spec.indexOf('-');
+	    if (dash < 0) {
+		return null;
+	    }
+	    try {
+		long start;
+		long end;
+		if (dash == 0) {
+		    long suffix = Long.parseLong(spec.substring(1));
+		    if (suffix <= 0) {
+			continue;
+		    }
+		    start = Math.max(0, length - suffix);
+		    end = length - 1;
+		}
+		else {
+		    start = Long.parseLong(spec.substring(0, dash));
+		    long last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+		    if (start < 0 || last < start) {
+			return null;
+		    }
+		    end = Math.min(last, length - 1);
+		}
+		if (start < length) {
+		    ranges.add(new ByteRange(start, end));
+		}
+	    }
+	    catch (NumberFormatException e) {
+		return null;
+	    }
+	}
+	return merge(ranges);
+    }
+
+    /**
+     * Method will order ranges and merge those that overlap or are adjacent
+     *
+     * @param ranges Ranges to merge
+     * @return Merged ranges
+     */
+    private static List<ByteRange> merge(List<ByteRange> ranges) {
+	if (ranges.size() < 2) {
+	    return ranges;
+	}
+	Collections.sort(ranges, START_ORDER);
+	List<ByteRange> merged = new ArrayList<>();
+	ByteRange current = ranges.get(0);
+	for (int i = 1; i < ranges.size(); i++) {
+	    ByteRange next = ranges.get(i);
+	    if (next.start <= current.end + 1) {
+		current = new ByteRange(current.start, Math.max(current.end, next.end));
+	    }
+	    else {
+		merged.add(current);
+		current = next;
+	    }
+	}
+	merged.add(current);
+	return merged;
+    }
+
+    /**
+     * Getter for start
+     *
+     * @return First byte of range
+     */
+    long getStart() {
+	return start;
+    }
+
+    /**
+     * Getter for end
+     *
+     * @return Last byte of range, inclusive
+     */
+    long getEnd() {
+	return end;
+    }
+
+    /**
+     * Method will return number of bytes in range
+     *
+     * @return Length of range
+     */
+    long getLength() {
+	return end - start + 1;
+    }
+
+    /**
+     * Method will format range as value of <code>Content-Range</code> header
+     *
+     * @param length Length of file
+     * @return Content range
+     */
+    String toContentRange(long length) {
+	return "bytes " + start + "-" + end + "/" + length;
+    }
+}
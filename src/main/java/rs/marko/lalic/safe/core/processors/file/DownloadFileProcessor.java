@@ -0,0 +1,358 @@
+package rs.marko.lalic.safe.core.processors.file;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Autowired;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.services.ContentStoreService;
+import rs.marko.lalic.safe.core.services.DBFileService;
+import rs.marko.lalic.safe.core.services.FileContent;
+import rs.marko.lalic.safe.core.services.FileRecord;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Processor used for downloading files. Supports single and multiple byte ranges, and conditional requests by
+ * <code>ETag</code> and <code>Last-Modified</code>. Single range is handed over to container sendfile when it is
+ * supported, so it is sent without passing through the application. Multiple ranges, and single ranges when sendfile
+ * is not available, are copied from file channel to response through one buffer reused for all parts. Content kept
+ * by remote storage backend is streamed.
+ */
+public class DownloadFileProcessor {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(DownloadFileProcessor.class);
+    /**
+     * Request attribute set by Tomcat when connector supports sendfile
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    /**
+     * Request attribute holding path of file sent with sendfile
+     */
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    /**
+     * Request attribute holding first byte sent with sendfile
+     */
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    /**
+     * Request attribute holding end of bytes sent with sendfile, exclusive
+     */
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    /**
+     * Smallest response sent with sendfile, smaller ones are cheaper to write directly
+     */
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+    /**
+     * Maximum number of ranges served in one response, requests with more ranges get whole file
+     */
+    private static final int MAX_RANGES = 32;
+    /**
+     * Content type of files and of parts of multipart response
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    /**
+     * Line separator of multipart response
+     */
+    private static final String CRLF = "\r\n";
+    /**
+     * Content type detector, uses only file name
+     */
+    private static final Tika TIKA = new Tika();
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+
+    /**
+     * Method will write file, or requested ranges of it, to response. Response is not written if request is
+     * answered with not modified status.
+     *
+     * @param fileUUID   UUID of file
+     * @param personUUID UUID of person
+     * @param request    HTTP request
+     * @param response   HTTP response
+     * @throws BaseException thrown if file is not found or its content is missing
+     * @throws IOException   thrown if content can't be written to response
+     */
+    public void process(String fileUUID, String personUUID, HttpServletRequest request, HttpServletResponse response)
+		    throws BaseException, IOException {
+	FileRecord record = dBFileService.getFileDB(fileUUID, personUUID);
+	// Files stay in database until deletion of their folder reaches them, but are hidden as soon as it starts
+	dBFileService.getFolderPath(record.getFolderUUID(), personUUID);
+	FileContent content = contentStoreService.getContent(record);
+	long length = content.getLength();
+	// Files are never modified in place, so time when file was added is its last modification
+	long lastModified = record.getCreatedOn().getTime() / 1000 * 1000;
+	String eTag = record.getChecksum() != null ?
+			Utils.buildString("\"", record.getChecksum(), "\"") :
+			Utils.buildString("W/\"", Long.toHexString(length), "-", Long.toHexString(lastModified), "\"");
+	response.setHeader("ETag", eTag);
+	response.setDateHeader("Last-Modified", lastModified);
+	response.setHeader("Accept-Ranges", "bytes");
+	if (isNotModified(request, eTag, lastModified)) {
+	    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	    return;
+	}
+	List<ByteRange> ranges = null;
+	if (isRangeValid(request, eTag, lastModified)) {
+	    ranges = ByteRange.parse(request.getHeader("Range"), length);
+	    if (ranges != null && ranges.isEmpty()) {
+		response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+		response.setHeader("Content-Range", Utils.buildString("bytes */", length));
+		return;
+	    }
+	    if (ranges != null && ranges.size() > MAX_RANGES) {
+		ranges = null;
+	    }
+	}
+	String contentType = TIKA.detect(record.getName());
+	response.setHeader("Content-Disposition", getContentDisposition(record.getName()));
+	boolean head = "HEAD".equals(request.getMethod());
+	if (ranges == null || ranges.size() == 1) {
+	    ByteRange range = ranges == null ? new ByteRange(0, length - 1) : ranges.get(0);
+	    if (ranges != null) {
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setHeader("Content-Range", range.toContentRange(length));
+	    }
+	    response.setContentType(contentType);
+	    response.setHeader("Content-Length", String.valueOf(range.getLength()));
+	    if (!head && range.getLength() > 0) {
+		sendRange(content, range, request, response);
+	    }
+	    return;
+	}
+	String boundary = Utils.buildString("RANGE_", fileUUID, "_", Long.toHexString(System.nanoTime()));
+	String[] partHeaders = new String[ranges.size()];
+	long contentLength = 0;
+	for (int i = 0; i < ranges.size(); i++) {
+	    partHeaders[i] = Utils.buildString(CRLF, "--", boundary, CRLF, "Content-Type: ", contentType, CRLF,
+			    "Content-Range: ", ranges.get(i).toContentRange(length), CRLF, CRLF);
+	    contentLength += partHeaders[i].length() + ranges.get(i).getLength();
+	}
+	String closing = Utils.buildString(CRLF, "--", boundary, "--", CRLF);
+	contentLength += closing.length();
+	response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+	response.setContentType(Utils.buildString("multipart/byteranges; boundary=", boundary));
+	response.setHeader("Content-Length", String.valueOf(contentLength));
+	if (head) {
+	    return;
+	}
+	if (content.getFile() == null) {
+	    for (int i = 0; i < ranges.size(); i++) {
+		response.getOutputStream().write(partHeaders[i].getBytes(StandardCharsets.US_ASCII));
+		copy(content, ranges.get(i), response);
+	    }
+	    response.getOutputStream().write(closing.getBytes(StandardCharsets.US_ASCII));
+	    return;
+	}
+	FileChannel channel = FileChannel.open(content.getFile().toPath(), StandardOpenOption.READ);
+	try {
+	    ByteBuffer buffer = ByteBuffer.allocate(FileSystemService.BUFFER_SIZE);
+	    for (int i = 0; i < ranges.size(); i++) {
+		response.getOutputStream().write(partHeaders[i].getBytes(StandardCharsets.US_ASCII));
+		transfer(channel, ranges.get(i), response.getOutputStream(), buffer);
+	    }
+	    response.getOutputStream().write(closing.getBytes(StandardCharsets.US_ASCII));
+	}
+	finally {
+	    channel.close();
+	}
+    }
+
+    /**
+     * Method will send one range of file. If container supports sendfile, file is handed over to it and sent after
+     * request processing ends, otherwise it is copied from file channel to response. Content kept by remote
+     * backend is streamed.
+     *
+     * @param content  File content
+     * @param range    Range to send
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @throws IOException thrown if content can't be written to response
+     */
+    private void sendRange(FileContent content, ByteRange range, HttpServletRequest request,
+		    HttpServletResponse response) throws IOException {
+	File file = content.getFile();
+	if (file == null) {
+	    copy(content, range, response);
+	    return;
+	}
+	if (range.getLength() >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+	    request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+	    request.setAttribute(SENDFILE_START, range.getStart());
+	    request.setAttribute(SENDFILE_END, range.getEnd() + 1);
+	    return;
+	}
+	FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	try {
+	    ByteBuffer buffer = ByteBuffer.allocate(FileSystemService.BUFFER_SIZE);
+	    transfer(channel, range, response.getOutputStream(), buffer);
+	}
+	finally {
+	    channel.close();
+	}
+    }
+
+    /**
+     * Method will copy range of file channel to output stream with positional reads into given buffer
+     *
+     * @param channel File channel
+     * @param range   Range to copy
+     * @param out     Output stream
+     * @param buffer  Heap buffer used for copying, reused between ranges
+     * @throws IOException thrown if copy fails, or file is shorter than expected
+     */
+    private void transfer(FileChannel channel, ByteRange range, OutputStream out, ByteBuffer buffer)
+		    throws IOException {
+	long position = range.getStart();
+	long end = range.getEnd() + 1;
+	while (position < end) {
+	    buffer.clear();
+	    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+	    int read = channel.read(buffer, position);
+	    if (read < 0) {
+		throw new IOException(Utils.buildString("File ended before range was sent. Position: ", position));
+	    }
+	    out.write(buffer.array(), 0, read);
+	    position += read;
+	}
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Range sent. Start: ", range.getStart(), ". Length: ", range.getLength()));
+	}
+    }
+
+    /**
+     * Method will copy range of content kept by remote backend to response
+     *
+     * @param content  File content
+     * @param range    Range to copy
+     * @param response HTTP response
+     * @throws IOException thrown if copy fails, or content is shorter than expected
+     */
+    private void copy(FileContent content, ByteRange range, HttpServletResponse response) throws IOException {
+	InputStream in = content.open(range.getStart(), range.getLength());
+	try {
+	    long copied = IOUtils.copyLarge(in, response.getOutputStream());
+	    if (copied < range.getLength()) {
+		throw new IOException(Utils.buildString("Content ended before range was sent. Position: ",
+				range.getStart() + copied));
+	    }
+	}
+	finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Method will check conditional headers. <code>If-None-Match</code> takes precedence over
+     * <code>If-Modified-Since</code>.
+     *
+     * @param request      HTTP request
+     * @param eTag         Entity tag of file
+     * @param lastModified Last modification time of file
+     * @return <code>TRUE</code> if client already has current file
+     */
+    private boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+	String ifNoneMatch = request.getHeader("If-None-Match");
+	if (ifNoneMatch != null) {
+	    return matchesETag(ifNoneMatch, eTag);
+	}
+	long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+	return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * Method will check if <code>Range</code> header should be applied. If <code>If-Range</code> is sent, ranges
+     * are applied only if file didn't change.
+     *
+     * @param request      HTTP request
+     * @param eTag         Entity tag of file
+     * @param lastModified Last modification time of file
+     * @return <code>TRUE</code> if ranges should be applied
+     */
+    private boolean isRangeValid(HttpServletRequest request, String eTag, long lastModified) {
+	String ifRange = request.getHeader("If-Range");
+	if (ifRange == null) {
+	    return true;
+	}
+	if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+	    // Weak tags can't be used for ranges
+	    return !eTag.startsWith("W/") && ifRange.equals(eTag);
+	}
+	return getDateHeader(request, "If-Range") == lastModified;
+    }
+
+    /**
+     * Method will check if entity tag matches any of listed tags. Tags are compared weakly.
+     *
+     * @param header Comma separated list of entity tags, or <code>*</code>
+     * @param eTag   Entity tag of file
+     * @return <code>TRUE</code> if tag matches
+     */
+    private boolean matchesETag(String header, String eTag) {
+	String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+	for (String tag : header.split(",")) {
+	    tag = tag.trim();
+	    if ("*".equals(tag) || opaqueTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Method will read date header, ignoring malformed values
+     *
+     * @param request HTTP request
+     * @param name    Name of header
+     * @return Time in milliseconds, or <code>-1</code> if header is missing or malformed
+     */
+    private long getDateHeader(HttpServletRequest request, String name) {
+	try {
+	    return request.getDateHeader(name);
+	}
+	catch (IllegalArgumentException e) {
+	    return -1;
+	}
+    }
+
+    /**
+     * Method will build <code>Content-Disposition</code> header, with ASCII fallback and UTF-8 encoded name
+     *
+     * @param name Name of file
+     * @return Header value
+     */
+    private String getContentDisposition(String name) {
+	String fallback = name.replaceAll("[^\\x20-\\x7E]|[\"\\\\]", "_");
+	try {
+	    String encoded = URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+	    return Utils.buildString("attachment; filename=\"", fallback, "\"; filename*=UTF-8''", encoded);
+	}
+	catch (UnsupportedEncodingException e) {
+	    return Utils.buildString("attachment; filename=\"", fallback, "\"");
+	}
+    }
+}
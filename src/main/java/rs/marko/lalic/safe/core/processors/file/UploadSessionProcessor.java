@@ -0,0 +1,196 @@
+package rs.marko.lalic.safe.core.processors.file;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.QuotaExceededException;
+import rs.marko.lalic.safe.core.services.DBFileService;
+import rs.marko.lalic.safe.core.services.QuotaReservation;
+import rs.marko.lalic.safe.core.services.QuotaService;
+import rs.marko.lalic.safe.core.services.UploadSession;
+import rs.marko.lalic.safe.core.services.UploadSessionService;
+
+import java.io.InputStream;
+
+/**
+ * Processor used for resumable uploads. Upload session is created first, then chunks are sent at their offsets in
+ * any order, and at the end upload is committed, which adds file to folder.
+ */
+public class UploadSessionProcessor {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(UploadSessionProcessor.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * UploadSessionService instance
+     */
+    @Autowired
+    private UploadSessionService uploadSessionService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * AddFileProcessor instance
+     */
+    @Autowired
+    private AddFileProcessor addFileProcessor;
+    /**
+     * QuotaService instance
+     */
+    @Autowired
+    private QuotaService quotaService;
+
+    /**
+     * Method will validate received data and create upload session. Declared size is reserved in quota of person
+     * before staging file is allocated.
+     *
+     * @param request    Request JSON
+     * @param personUUID UUID of person
+     * @return JSON with upload session status
+     * @throws InvalidRequestException thrown if JSON is invalid
+     * @throws QuotaExceededException  thrown if file doesn't fit into quota of person
+     * @throws BaseException           thrown if folder is not found or some internal error happens
+     */
+    public ObjectNode createSession(ObjectNode request, String personUUID) throws BaseException {
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Creating upload session. JSON: ", request.toString()));
+	}
+	if (!request.has(JsonConstants.FIELD_FOLDER_UUID) || !request.has(JsonConstants.FIELD_NAME)
+			|| !request.has(JsonConstants.FIELD_SIZE) || !request.get(JsonConstants.FIELD_SIZE).canConvertToLong()
+			|| request.get(JsonConstants.FIELD_SIZE).asLong() < 0) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Error occurred while trying to create upload session. Invalid json: ",
+					    request.toString()));
+	}
+	String folderUUID = request.get(JsonConstants.FIELD_FOLDER_UUID).asText();
+	// Fails fast if folder doesn't exist, before staging file is allocated
+	dBFileService.getFolderPath(folderUUID, personUUID);
+	long size = request.get(JsonConstants.FIELD_SIZE).asLong();
+	QuotaReservation reservation = quotaService.reserve(personUUID, size);
+	UploadSession session;
+	try {
+	    session = uploadSessionService.createSession(personUUID, folderUUID,
+			    request.get(JsonConstants.FIELD_NAME).asText(), size, reservation);
+	}
+	catch (InternalErrorException e) {
+	    quotaService.release(reservation);
+	    throw e;
+	}
+	return generateStatus(session);
+    }
+
+    /**
+     * Method will write chunk of upload at given offset
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person
+     * @param offset     Offset of chunk
+     * @param content    Chunk content
+     * @return JSON with upload session status
+     * @throws BaseException thrown if session is not found, chunk is invalid or writing fails
+     */
+    public ObjectNode uploadChunk(String uploadUUID, String personUUID, long offset, InputStream content)
+		    throws BaseException {
+	UploadSession session = uploadSessionService.getSession(uploadUUID, personUUID);
+	long written = uploadSessionService.writeChunk(session, offset, content);
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Chunk written. Upload: ", uploadUUID, ". Offset: ", offset,
+			    ". Length: ", written));
+	}
+	return generateStatus(session);
+    }
+
+    /**
+     * Method will return status of upload session
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person
+     * @return JSON with upload session status
+     * @throws BaseException thrown if session is not found
+     */
+    public ObjectNode getStatus(String uploadUUID, String personUUID) throws BaseException {
+	return generateStatus(uploadSessionService.getSession(uploadUUID, personUUID));
+    }
+
+    /**
+     * Method will commit upload session and add received file to folder. If commit fails, staging file is
+     * removed. Concurrent or repeated commits of the same session are rejected, and never abort commit in progress.
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if not all chunks are received, or session is not open
+     * @throws BaseException           thrown if session is not found or some internal error happens
+     */
+    public void commit(String uploadUUID, String personUUID) throws BaseException {
+	UploadSession session = uploadSessionService.getSession(uploadUUID, personUUID);
+	uploadSessionService.beginCommit(session);
+	try {
+	    uploadSessionService.closeSession(session);
+	    addFileProcessor.processStagedFile(session.getStagingFile(), session.getVolume(), session.getName(),
+			    session.getFolderUUID(), personUUID, session.getReservation());
+	    uploadSessionService.completeCommit(session);
+	}
+	catch (BaseException e) {
+	    uploadSessionService.abortCommit(session);
+	    throw e;
+	}
+	catch (RuntimeException e) {
+	    uploadSessionService.abortCommit(session);
+	    throw new InternalErrorException(
+			    Utils.buildString("Unknown error occurred while committing upload. UUID: ", uploadUUID,
+					    ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will abort upload session and remove received data
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if session is being written or committed
+     * @throws BaseException           thrown if session is not found
+     */
+    public void abort(String uploadUUID, String personUUID) throws BaseException {
+	UploadSession session = uploadSessionService.getSession(uploadUUID, personUUID);
+	if (!uploadSessionService.abortSession(session)) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Upload session can't be aborted while it is written, committed or ",
+					    "aborted. UUID: ", uploadUUID, ". State: ", session.getState()));
+	}
+    }
+
+    /**
+     * Method for generating upload session status JSON
+     *
+     * @param session Upload session
+     * @return Status JSON
+     */
+    private ObjectNode generateStatus(UploadSession session) {
+	ObjectNode status = MAPPER.createObjectNode();
+	status.put(JsonConstants.FIELD_UPLOAD_UUID, session.getUploadUUID());
+	status.put(JsonConstants.FIELD_SIZE, session.getSize());
+	status.put(JsonConstants.FIELD_RECEIVED, session.getReceived());
+	status.put(JsonConstants.FIELD_COMPLETE, session.isComplete());
+	ArrayNode ranges = status.putArray(JsonConstants.FIELD_RANGES);
+	for (long[] range : session.getRanges()) {
+	    ObjectNode rangeNode = ranges.addObject();
+	    rangeNode.put(JsonConstants.FIELD_START, range[0]);
+	    rangeNode.put(JsonConstants.FIELD_END, range[1]);
+	}
+	return status;
+    }
+}
@@ -7,12 +7,15 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import rs.marko.lalic.safe.core.Utils;
-import rs.marko.lalic.safe.core.constants.JsonConstants;
 import rs.marko.lalic.safe.core.exceptions.BaseException;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.requests.FolderRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
 import rs.marko.lalic.safe.core.services.DBFolderService;
 import rs.marko.lalic.safe.core.services.FileSystemService;
+import rs.marko.lalic.safe.core.services.FolderCacheService;
+import rs.marko.lalic.safe.core.services.FolderNode;
 
 import java.io.File;
 
@@ -39,6 +42,12 @@ public class CreateFolderProcessor {
     @Autowired
     private DBFolderService dBFolderService;
 
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+
     /**
      * TransactionTemplate instance
      */
@@ -54,18 +63,31 @@ public class CreateFolderProcessor {
      * @throws InternalErrorException  thrown if some internal error happens
      */
     public void process(ObjectNode request, String personUUID) throws BaseException {
+	process(RequestReader.read(request, new FolderRequest()), personUUID);
+    }
+
+    /**
+     * Method will validate received data and execute transaction for creating folder
+     *
+     * @param request    Request with name and destination of folder
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if request doesn't contain required fields
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public void process(FolderRequest request, String personUUID) throws BaseException {
 	if (LOGGER.isDebugEnabled()) {
-	    LOGGER.debug(Utils.buildString("Registering person. JSON: ", request.toString()));
+	    LOGGER.debug(Utils.buildString("Creating folder. Request: ", request));
 	}
-	if (!request.has(JsonConstants.FIELD_NAME) || !request.has(JsonConstants.FIELD_DESTINATION)) {
+	if (request.getName() == null || request.getDestination() == null) {
 	    throw new InvalidRequestException(
-			    Utils.buildString("Invalid JSON from request, required fields missing. JSON: ",
-					    request.toString()));
+			    Utils.buildString("Invalid JSON from request, required fields missing. JSON: ", request));
 	}
-	String name = request.get(JsonConstants.FIELD_NAME).asText();
-	String destination = request.get(JsonConstants.FIELD_DESTINATION).asText();
+	String name = request.getName();
+	String destination = request.getDestination();
 	try {
-	    transactionTemplate.execute(new CreateFolderTransaction(destination, name, personUUID));
+	    FolderNode folder = (FolderNode) transactionTemplate
+			    .execute(new CreateFolderTransaction(destination, name, personUUID));
+	    folderCacheService.addFolder(personUUID, folder);
 	}
 	catch (RuntimeException e) {
 	    throw (BaseException) e.getCause();
@@ -97,15 +119,15 @@ public class CreateFolderProcessor {
 	 * Method will insert folder metadata in database and create it in file system
 	 *
 	 * @param status
-	 * @return
+	 * @return Created folder
 	 */
 	@Override
 	public Object doInTransaction(TransactionStatus status) {
 	    try {
 		destination = Utils.buildString(fileSystemService.getRootFolder(), File.separator, destination);
-		dBFolderService.createFolderDB(destination, personUUID, folderName, false);
+		FolderNode folder = dBFolderService.createFolderDB(destination, personUUID, folderName, false);
 		fileSystemService.createFolder(destination, folderName);
-		return null;
+		return folder;
 	    }
 	    catch (BaseException e) {
 		status.setRollbackOnly();
@@ -0,0 +1,377 @@
+package rs.marko.lalic.safe.core.processors.folder;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.services.ContentStoreService;
+import rs.marko.lalic.safe.core.services.DBFileService;
+import rs.marko.lalic.safe.core.services.FileContent;
+import rs.marko.lalic.safe.core.services.FileRecord;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+import rs.marko.lalic.safe.core.services.FolderCacheService;
+import rs.marko.lalic.safe.core.services.FolderNode;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Processor used for downloading folder with all its subfolders as ZIP archive. Archive is written directly to
+ * response while folder tree is walked, so nothing is built on disk and first bytes are sent right away. Files of
+ * already compressed types are stored, others are deflated. While one file is written, next one is read on
+ * background thread, which calculates checksum needed for stored entries and brings file into page cache. Beginning
+ * of file kept by remote storage backend is read into memory instead.
+ */
+public class DownloadFolderProcessor {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(DownloadFolderProcessor.class);
+    /**
+     * Extensions of already compressed file types, which are stored without compression
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList("7z", "aac", "apk", "avi",
+		    "bz2", "docx", "epub", "flac", "gif", "gz", "heic", "jar", "jpeg", "jpg", "lz4", "m4a", "m4v", "mkv",
+		    "mov", "mp3", "mp4", "odp", "ods", "odt", "ogg", "png", "pptx", "rar", "tgz", "war", "webm", "webp",
+		    "xlsx", "xz", "zip", "zst"));
+    /**
+     * Number of bytes of deflated file read ahead, so reading large file doesn't evict previous one from page cache
+     */
+    private static final long PREFETCH_LIMIT = 8 * 1024 * 1024;
+    /**
+     * Number of bytes of file kept by remote backend read ahead into memory, smaller files are stored uncompressed
+     * when of compressed type, since their checksum is known before entry is written
+     */
+    private static final int REMOTE_PREFETCH_LIMIT = 1024 * 1024;
+    /**
+     * Separator of ZIP entry names
+     */
+    private static final String ENTRY_SEPARATOR = "/";
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+    /**
+     * Executor reading next file while current one is written
+     */
+    @Autowired
+    private AsyncTaskExecutor prefetchExecutor;
+
+    /**
+     * Method will write ZIP archive of folder and all its subfolders to response
+     *
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person
+     * @param response   HTTP response
+     * @throws BaseException thrown if folder is not found or files can't be listed
+     * @throws IOException   thrown if archive can't be written to response
+     */
+    public void process(String folderUUID, String personUUID, HttpServletResponse response)
+		    throws BaseException, IOException {
+	List<FolderNode> subtree = folderCacheService.getSubtree(personUUID, folderUUID);
+	response.setContentType("application/zip");
+	response.setHeader("Content-Disposition", getContentDisposition(subtree.get(0).getName()));
+	ZipOutputStream zip = new ZipOutputStream(
+			new BufferedOutputStream(response.getOutputStream(), FileSystemService.BUFFER_SIZE));
+	Map<String, String> entryNames = new HashMap<>();
+	Prefetch pending = null;
+	int files = 0;
+	try {
+	    for (FolderNode folder : subtree) {
+		String parentName = entryNames.get(folder.getParentUUID());
+		String entryName = Utils.buildString(parentName == null ? "" : parentName, folder.getName(),
+				ENTRY_SEPARATOR);
+		entryNames.put(folder.getFolderUUID(), entryName);
+		zip.putNextEntry(createDirectoryEntry(entryName));
+		zip.closeEntry();
+		if (parentName == null) {
+		    // Root entry is sent at once, so time to first byte doesn't depend on folder size
+		    zip.flush();
+		    response.flushBuffer();
+		}
+		for (FileRecord record : dBFileService.getFilesInFolderDB(folder.getFolderUUID(), personUUID)) {
+		    Prefetch next = prefetch(Utils.buildString(entryName, record.getName()), record);
+		    if (next == null) {
+			continue;
+		    }
+		    if (pending != null) {
+			writeFile(zip, pending);
+			files++;
+		    }
+		    pending = next;
+		}
+	    }
+	    if (pending != null) {
+		writeFile(zip, pending);
+		files++;
+		pending = null;
+	    }
+	    zip.finish();
+	    zip.flush();
+	}
+	finally {
+	    if (pending != null) {
+		pending.future.cancel(true);
+	    }
+	}
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Folder archive sent. UUID: ", folderUUID, ". Folders: ", subtree.size(),
+			    ". Files: ", files));
+	}
+    }
+
+    /**
+     * Method will start reading file on background thread. Beginning of file kept by remote backend is read into
+     * memory, so it is not requested twice.
+     *
+     * @param entryName Name of ZIP entry
+     * @param record    File record
+     * @return Prefetch of file, or <code>null</code> if content of file is missing and file is left out of archive
+     */
+    private Prefetch prefetch(String entryName, FileRecord record) {
+	FileContent content;
+	try {
+	    content = contentStoreService.getContent(record);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(Utils.buildString("File is left out of archive. Message: ", e.getMessage()));
+	    return null;
+	}
+	boolean remote = content.getFile() == null;
+	boolean stored = isCompressed(record.getName()) && (!remote || content.getLength() <= REMOTE_PREFETCH_LIMIT);
+	long limit = Math.min(remote ? REMOTE_PREFETCH_LIMIT : stored ? Long.MAX_VALUE : PREFETCH_LIMIT,
+			content.getLength());
+	return new Prefetch(entryName, record, content, stored,
+			prefetchExecutor.submit(new PrefetchTask(content, limit, remote)));
+    }
+
+    /**
+     * Method will write file as ZIP entry. If file can't be read, it is left out of archive.
+     *
+     * @param zip      ZIP stream
+     * @param prefetch Prefetch of file
+     * @throws IOException thrown if writing to response fails
+     */
+    private void writeFile(ZipOutputStream zip, Prefetch prefetch) throws IOException {
+	PrefetchResult result;
+	try {
+	    result = prefetch.future.get();
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while reading file for archive.", e);
+	}
+	catch (ExecutionException e) {
+	    LOGGER.error(Utils.buildString("Failed to read file for archive, file is left out. UUID: ",
+			    prefetch.record.getFileUUID(), ". Path: ", prefetch.content, ". Message: ",
+			    e.getCause().getMessage()), e.getCause());
+	    return;
+	}
+	ZipEntry entry = new ZipEntry(prefetch.entryName);
+	entry.setTime(prefetch.record.getCreatedOn().getTime());
+	long size = prefetch.content.getLength();
+	if (prefetch.stored) {
+	    entry.setMethod(ZipEntry.STORED);
+	    entry.setSize(size);
+	    entry.setCompressedSize(size);
+	    entry.setCrc(result.crc);
+	}
+	InputStream in;
+	if (result.head == null) {
+	    in = prefetch.content.open(0, size);
+	}
+	else if (result.head.length >= size) {
+	    in = new ByteArrayInputStream(result.head);
+	}
+	else {
+	    in = new SequenceInputStream(new ByteArrayInputStream(result.head),
+			    prefetch.content.open(result.head.length, size - result.head.length));
+	}
+	try {
+	    zip.putNextEntry(entry);
+	    IOUtils.copyLarge(in, zip, new byte[FileSystemService.BUFFER_SIZE]);
+	    zip.closeEntry();
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    /**
+     * Method will create empty stored entry for folder
+     *
+     * @param entryName Name of entry, ending with separator
+     * @return Folder entry
+     */
+    private ZipEntry createDirectoryEntry(String entryName) {
+	ZipEntry entry = new ZipEntry(entryName);
+	entry.setMethod(ZipEntry.STORED);
+	entry.setSize(0);
+	entry.setCompressedSize(0);
+	entry.setCrc(0);
+	return entry;
+    }
+
+    /**
+     * Method will check if file is of already compressed type, by its extension
+     *
+     * @param name Name of file
+     * @return <code>TRUE</code> if file is already compressed
+     */
+    private boolean isCompressed(String name) {
+	int dot = name.lastIndexOf('.');
+	return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    /**
+     * Method will build <code>Content-Disposition</code> header for archive of folder
+     *
+     * @param name Name of folder
+     * @return Header value
+     */
+    private String getContentDisposition(String name) {
+	String fallback = name.replaceAll("[^\\x20-\\x7E]|[\"\\\\]", "_");
+	try {
+	    String encoded = URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+	    return Utils.buildString("attachment; filename=\"", fallback, ".zip\"; filename*=UTF-8''", encoded, ".zip");
+	}
+	catch (UnsupportedEncodingException e) {
+	    return Utils.buildString("attachment; filename=\"", fallback, ".zip\"");
+	}
+    }
+
+    /**
+     * File whose reading was started on background thread
+     */
+    private static class Prefetch {
+	private final String entryName;
+	private final FileRecord record;
+	private final FileContent content;
+	private final boolean stored;
+	private final Future<PrefetchResult> future;
+
+	/**
+	 * Construct for prefetch
+	 *
+	 * @param entryName Name of ZIP entry
+	 * @param record    File record
+	 * @param content   Content of file
+	 * @param stored    Flag if entry is stored without compression
+	 * @param future    Result of reading
+	 */
+	public Prefetch(String entryName, FileRecord record, FileContent content, boolean stored,
+			Future<PrefetchResult> future) {
+	    this.entryName = entryName;
+	    this.record = record;
+	    this.content = content;
+	    this.stored = stored;
+	    this.future = future;
+	}
+    }
+
+    /**
+     * Result of reading beginning of file
+     */
+    private static class PrefetchResult {
+	private final long crc;
+	private final byte[] head;
+
+	/**
+	 * Construct for prefetch result
+	 *
+	 * @param crc  CRC-32 of read bytes
+	 * @param head Read bytes, or <code>null</code> if they were not kept
+	 */
+	public PrefetchResult(long crc, byte[] head) {
+	    this.crc = crc;
+	    this.head = head;
+	}
+    }
+
+    /**
+     * Task reading beginning of file, up to given limit, and calculating CRC-32 of read bytes
+     */
+    private static class PrefetchTask implements Callable<PrefetchResult> {
+	private final FileContent content;
+	private final long limit;
+	private final boolean keep;
+
+	/**
+	 * Construct for prefetch task
+	 *
+	 * @param content Content to read
+	 * @param limit   Maximum number of bytes to read
+	 * @param keep    Flag if read bytes are kept in memory
+	 */
+	public PrefetchTask(FileContent content, long limit, boolean keep) {
+	    this.content = content;
+	    this.limit = limit;
+	    this.keep = keep;
+	}
+
+	/**
+	 * Method will read file and calculate checksum
+	 *
+	 * @return CRC-32 of read bytes, which is checksum of whole file if it wasn't longer than limit, with read bytes
+	 * if they are kept
+	 * @throws IOException thrown if file can't be read
+	 */
+	@Override
+	public PrefetchResult call() throws IOException {
+	    CRC32 crc = new CRC32();
+	    byte[] buffer = new byte[FileSystemService.BUFFER_SIZE];
+	    ByteArrayOutputStream head = keep ? new ByteArrayOutputStream((int) limit) : null;
+	    InputStream in = content.open(0, limit);
+	    try {
+		long remaining = limit;
+		int read;
+		while (remaining > 0 && !Thread.currentThread().isInterrupted()
+				&& (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+		    crc.update(buffer, 0, read);
+		    if (head != null) {
+			head.write(buffer, 0, read);
+		    }
+		    remaining -= read;
+		}
+		return new PrefetchResult(crc.getValue(), head == null ? null : head.toByteArray());
+	    }
+	    finally {
+		IOUtils.closeQuietly(in);
+	    }
+	}
+    }
+}
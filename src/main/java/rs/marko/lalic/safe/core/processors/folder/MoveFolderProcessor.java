@@ -0,0 +1,280 @@
+package rs.marko.lalic.safe.core.processors.folder;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.requests.FolderRequest;
+import rs.marko.lalic.safe.core.services.DBFileService;
+import rs.marko.lalic.safe.core.services.DBFolderService;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+import rs.marko.lalic.safe.core.services.FolderCacheService;
+import rs.marko.lalic.safe.core.services.FolderNode;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Processor is used for renaming folder and moving it under another folder. Descendant folders are taken from folder
+ * tree, and paths of their rows and of rows of their files are rewritten by UUID in JDBC batches in one transaction.
+ * Folder is moved on disk with single atomic rename, so time needed doesn't grow with number of round trips to file
+ * system.
+ */
+public class MoveFolderProcessor {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(MoveFolderProcessor.class);
+
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+
+    /**
+     * DBFolderService instance
+     */
+    @Autowired
+    private DBFolderService dBFolderService;
+
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+
+    /**
+     * TransactionTemplate instance
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Method will rename folder, keeping it under same parent
+     *
+     * @param folderUUID UUID of folder
+     * @param request    Request holding new name
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if request doesn't contain name, or name is invalid or taken
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public void rename(String folderUUID, FolderRequest request, String personUUID) throws BaseException {
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Renaming folder. Folder UUID: ", folderUUID, ". Request: ", request));
+	}
+	if (request.getName() == null) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Invalid JSON from request, required fields missing. JSON: ", request));
+	}
+	FolderNode folder = folderCacheService.getFolder(personUUID, folderUUID);
+	if (folder.getParentUUID() == null) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Root folder of person can't be renamed. Folder UUID: ", folderUUID));
+	}
+	FolderNode parent = folderCacheService.getFolder(personUUID, folder.getParentUUID());
+	move(folder, parent, request.getName(), personUUID);
+    }
+
+    /**
+     * Method will move folder under another folder, optionally renaming it
+     *
+     * @param folderUUID UUID of folder
+     * @param request    Request holding destination path and optional new name
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if request doesn't contain destination, or destination is invalid
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public void move(String folderUUID, FolderRequest request, String personUUID) throws BaseException {
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Moving folder. Folder UUID: ", folderUUID, ". Request: ", request));
+	}
+	if (request.getDestination() == null) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Invalid JSON from request, required fields missing. JSON: ", request));
+	}
+	FolderNode folder = folderCacheService.getFolder(personUUID, folderUUID);
+	if (folder.getParentUUID() == null) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Root folder of person can't be moved. Folder UUID: ", folderUUID));
+	}
+	String destination = Utils.buildString(fileSystemService.getRootFolder(), File.separator,
+			request.getDestination());
+	FolderNode parent;
+	try {
+	    parent = folderCacheService.getFolderByPath(personUUID, destination);
+	}
+	catch (ObjectNotFoundException e) {
+	    throw new InvalidRequestException(Utils.buildString("Destination folder invalid. Path: ", destination), e);
+	}
+	String name = request.getName() != null ? request.getName() : folder.getName();
+	move(folder, parent, name, personUUID);
+    }
+
+    /**
+     * Method will validate move and execute transaction moving folder, then update folder cache
+     *
+     * @param folder     Folder to move
+     * @param parent     New parent folder
+     * @param name       New name of folder
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if name is invalid or taken, or folder would be moved into itself
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    private void move(FolderNode folder, FolderNode parent, String name, String personUUID) throws BaseException {
+	if (name.isEmpty() || ".".equals(name) || "..".equals(name) || name.indexOf('/') >= 0
+			|| name.indexOf('\\') >= 0) {
+	    throw new InvalidRequestException(Utils.buildString("Invalid folder name: [", name, "]"));
+	}
+	if (parent.getFolderUUID().equals(folder.getFolderUUID()) || parent.getPath()
+			.startsWith(Utils.buildString(folder.getPath(), File.separator))) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Folder can't be moved into itself. Folder UUID: ",
+					    folder.getFolderUUID(), ". Destination: ", parent.getPath()));
+	}
+	String newPath = Utils.buildString(parent.getPath(), File.separator, name);
+	if (newPath.equals(folder.getPath())) {
+	    return;
+	}
+	if (folderExists(personUUID, newPath)) {
+	    throw new InvalidRequestException(Utils.buildString("Folder already exists. Path: ", newPath));
+	}
+	MoveFolderTransaction transaction = new MoveFolderTransaction(folder, parent.getFolderUUID(), name, newPath,
+			folderCacheService.getSubtree(personUUID, folder.getFolderUUID()), personUUID);
+	try {
+	    FolderNode moved = (FolderNode) transactionTemplate.execute(transaction);
+	    folderCacheService.moveFolder(personUUID, moved);
+	}
+	catch (RuntimeException e) {
+	    transaction.undoMoveOnDisk();
+	    if (e.getCause() instanceof BaseException) {
+		throw (BaseException) e.getCause();
+	    }
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to move folder. Folder UUID: ", folder.getFolderUUID(),
+					    ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will check if person has folder at given path
+     *
+     * @param personUUID UUID of person
+     * @param path       Path of folder
+     * @return <code>TRUE</code> if folder exists
+     * @throws InternalErrorException thrown if folder tree can't be loaded
+     */
+    private boolean folderExists(String personUUID, String path) throws InternalErrorException {
+	try {
+	    folderCacheService.getFolderByPath(personUUID, path);
+	    return true;
+	}
+	catch (ObjectNotFoundException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Transaction for moving folder
+     */
+    private class MoveFolderTransaction implements TransactionCallback {
+	private FolderNode folder;
+	private String parentUUID;
+	private String name;
+	private String newPath;
+	private List<FolderNode> subtree;
+	private String personUUID;
+	private boolean movedOnDisk;
+
+	/**
+	 * Construct for move folder transaction
+	 *
+	 * @param folder     Folder to move
+	 * @param parentUUID UUID of new parent folder
+	 * @param name       New name of folder
+	 * @param newPath    New path of folder
+	 * @param subtree    Folder with its descendants from folder tree, starting with folder
+	 * @param personUUID UUID of person
+	 */
+	public MoveFolderTransaction(FolderNode folder, String parentUUID, String name, String newPath,
+			List<FolderNode> subtree, String personUUID) {
+	    this.folder = folder;
+	    this.parentUUID = parentUUID;
+	    this.name = name;
+	    this.newPath = newPath;
+	    this.subtree = subtree;
+	    this.personUUID = personUUID;
+	}
+
+	/**
+	 * Method will rewrite paths of folder and its descendants in database, and move folder on disk. Folder is
+	 * moved last, so failure on disk rolls back database changes.
+	 *
+	 * @param status
+	 * @return Moved folder
+	 */
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		int folders = dBFolderService.moveFolderDB(folder.getFolderUUID(), parentUUID, name,
+				folder.getPath(), newPath, subtree, personUUID);
+		int files = dBFileService.moveFilesDB(subtree, folder.getPath(), newPath);
+		// In hashed layout folder exists on disk only if it still holds files stored in mirrored layout
+		File source = new File(folder.getPath());
+		if (source.isDirectory()) {
+		    fileSystemService.moveFolder(source, new File(newPath));
+		    movedOnDisk = true;
+		}
+		if (LOGGER.isDebugEnabled()) {
+		    LOGGER.debug(Utils.buildString("Folder moved. Folder UUID: ", folder.getFolderUUID(), ". Path: ",
+				    newPath, ". Descendant folders: ", folders, ". Files: ", files));
+		}
+		return new FolderNode(folder.getFolderUUID(), parentUUID, name, newPath);
+	    }
+	    catch (BaseException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	    catch (Exception e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(new InternalErrorException(
+				Utils.buildString("Unknown error occurred while moving folder. Folder UUID: [",
+						folder.getFolderUUID(), "]. Person UUID: [", personUUID,
+						"]. Destination: [", newPath, "]. Message: ", e.getMessage())));
+	    }
+	}
+
+	/**
+	 * Method will move folder back to its previous location on disk, if it was moved but transaction failed
+	 * to commit
+	 */
+	public void undoMoveOnDisk() {
+	    if (!movedOnDisk) {
+		return;
+	    }
+	    try {
+		fileSystemService.moveFolder(new File(newPath), new File(folder.getPath()));
+		movedOnDisk = false;
+	    }
+	    catch (BaseException e) {
+		LOGGER.error(Utils.buildString("Failed to move folder back after failed transaction. Path: ", newPath,
+				". Previous path: ", folder.getPath(), ". Message: ", e.getMessage()), e);
+	    }
+	}
+    }
+}
@@ -13,8 +13,12 @@ import rs.marko.lalic.safe.core.exceptions.BaseException;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
+import rs.marko.lalic.safe.core.requests.PersonRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
 import rs.marko.lalic.safe.core.services.DBFolderService;
 import rs.marko.lalic.safe.core.services.FileSystemService;
+import rs.marko.lalic.safe.core.services.FolderCacheService;
+import rs.marko.lalic.safe.core.services.FolderNode;
 import rs.marko.lalic.safe.core.services.PersonService;
 import rs.marko.lalic.safe.core.services.QueryService;
 
@@ -48,6 +52,11 @@ public class RegisterPersonProcessor {
      */
     @Autowired
     private DBFolderService dbFolderService;
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
     /**
      * TransactionTemplate instance
      */
@@ -60,11 +69,22 @@ public class RegisterPersonProcessor {
      * @throws BaseException thrown if some internal error happens
      */
     public void process(ObjectNode request) throws BaseException {
+	process(RequestReader.read(request, new PersonRequest()));
+    }
+
+    /**
+     * Method will execute transaction for registering person
+     * @param request Request with email and password of person
+     * @throws BaseException thrown if some internal error happens
+     */
+    public void process(PersonRequest request) throws BaseException {
 	if (LOGGER.isDebugEnabled()) {
-	    LOGGER.debug(Utils.buildString("Registering person. JSON: ", request.toString()));
+	    LOGGER.debug(Utils.buildString("Registering person. Request: ", request));
 	}
 	try {
-	    transactionTemplate.execute(new RegisterPersonTransaction(request));
+	    FolderNode rootFolder = (FolderNode) transactionTemplate.execute(new RegisterPersonTransaction(request));
+	    // Name of root folder is UUID of person
+	    folderCacheService.addFolder(rootFolder.getName(), rootFolder);
 	}
 	catch (RuntimeException e) {
 	    throw (BaseException) e.getCause();
@@ -75,9 +95,9 @@ public class RegisterPersonProcessor {
      * Transaction for registering person
      */
     private class RegisterPersonTransaction implements TransactionCallback {
-	private ObjectNode request;
+	private PersonRequest request;
 
-	public RegisterPersonTransaction(ObjectNode request) {
+	public RegisterPersonTransaction(PersonRequest request) {
 	    this.request = request;
 	}
 
@@ -85,16 +105,17 @@ public class RegisterPersonProcessor {
 	 * Transaction will record person metadata in database and create root folder for person
 	 *
 	 * @param status
-	 * @return
+	 * @return Created root folder
 	 */
 	@Override
 	public Object doInTransaction(TransactionStatus status) {
 	    try {
 		String personUUID = personService.addPerson(request);
-		dbFolderService.createFolderDB(fileSystemService.getRootFolder().getAbsolutePath(), personUUID,
-				personUUID, true);
+		FolderNode rootFolder = dbFolderService
+				.createFolderDB(fileSystemService.getRootFolder().getAbsolutePath(), personUUID, personUUID,
+						true);
 		fileSystemService.createFolder(fileSystemService.getRootFolder(), personUUID);
-		return null;
+		return rootFolder;
 	    }
 	    catch (BaseException e) {
 		status.setRollbackOnly();
@@ -103,8 +124,8 @@ public class RegisterPersonProcessor {
 	    catch (Exception e) {
 		status.setRollbackOnly();
 		throw new RuntimeException(new InternalErrorException(
-				Utils.buildString("Unknown error occurred while person register. JSON: ",
-						request.toString(), ". Message: ", e.getMessage())));
+				Utils.buildString("Unknown error occurred while person register. Request: ", request,
+						". Message: ", e.getMessage())));
 	    }
 	}
     }
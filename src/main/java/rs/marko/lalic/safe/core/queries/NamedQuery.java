@@ -0,0 +1,100 @@
+package rs.marko.lalic.safe.core.queries;
+
+/**
+ * Statement declared once with stable ID, number of placeholders, parameter binder and row mapper. Statement text
+ * never changes, so it is prepared once per pooled connection and then reused from statement cache, and ID is used
+ * as label of its metrics.
+ *
+ * @param <P> Type of parameters
+ * @param <R> Type of result row
+ */
+public final class NamedQuery<P, R> {
+
+    /**
+     * Stable ID of query
+     */
+    private final String id;
+    /**
+     * SQL statement
+     */
+    private final String sql;
+    /**
+     * Number of placeholders in statement
+     */
+    private final int parameterCount;
+    /**
+     * Binder of parameters
+     */
+    private final ParameterBinder<P> binder;
+    /**
+     * Mapper of result rows
+     */
+    private final ResultMapper<R> mapper;
+
+    /**
+     * Construct for named query
+     *
+     * @param id             Stable ID of query
+     * @param sql            SQL statement
+     * @param parameterCount Number of placeholders in statement
+     * @param binder         Binder of parameters
+     * @param mapper         Mapper of result rows
+     */
+    public NamedQuery(String id, String sql, int parameterCount, ParameterBinder<P> binder, ResultMapper<R> mapper) {
+	this.id = id;
+	this.sql = sql;
+	this.parameterCount = parameterCount;
+	this.binder = binder;
+	this.mapper = mapper;
+    }
+
+    /**
+     * Getter for ID
+     *
+     * @return Stable ID of query
+     */
+    public String getId() {
+	return id;
+    }
+
+    /**
+     * Getter for SQL
+     *
+     * @return SQL statement
+     */
+    public String getSql() {
+	return sql;
+    }
+
+    /**
+     * Getter for parameter count
+     *
+     * @return Number of placeholders in statement
+     */
+    public int getParameterCount() {
+	return parameterCount;
+    }
+
+    /**
+     * Getter for binder
+     *
+     * @return Binder of parameters
+     */
+    public ParameterBinder<P> getBinder() {
+	return binder;
+    }
+
+    /**
+     * Getter for mapper
+     *
+     * @return Mapper of result rows
+     */
+    public ResultMapper<R> getMapper() {
+	return mapper;
+    }
+
+    @Override
+    public String toString() {
+	return id;
+    }
+}
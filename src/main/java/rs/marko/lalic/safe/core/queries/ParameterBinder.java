@@ -0,0 +1,24 @@
+package rs.marko.lalic.safe.core.queries;
+
+import rs.marko.lalic.safe.core.UUIDCodec;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binder of typed parameters to placeholders of {@link NamedQuery} statement
+ *
+ * @param <P> Type of parameters
+ */
+public interface ParameterBinder<P> {
+
+    /**
+     * Method will set every placeholder of statement
+     *
+     * @param ps         Prepared statement
+     * @param parameters Parameters of query
+     * @param codec      Codec used for UUID columns
+     * @throws SQLException thrown if parameter can't be set
+     */
+    void bind(PreparedStatement ps, P parameters, UUIDCodec codec) throws SQLException;
+}
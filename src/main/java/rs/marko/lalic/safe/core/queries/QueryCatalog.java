@@ -0,0 +1,119 @@
+package rs.marko.lalic.safe.core.queries;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import rs.marko.lalic.safe.core.UUIDCodec;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.services.FolderNode;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Catalog of named queries used on hot request paths. Every query is declared here once, and all of them are
+ * validated against database schema when application starts.
+ */
+public final class QueryCatalog {
+
+    /**
+     * Binder of single UUID parameter
+     */
+    public static final ParameterBinder<String> UUID_BINDER = new ParameterBinder<String>() {
+	@Override
+	public void bind(PreparedStatement ps, String uuid, UUIDCodec codec) throws SQLException {
+	    ps.setObject(1, codec.toDatabase(uuid));
+	}
+    };
+    /**
+     * Binder of single string parameter
+     */
+    public static final ParameterBinder<String> STRING_BINDER = new ParameterBinder<String>() {
+	@Override
+	public void bind(PreparedStatement ps, String value, UUIDCodec codec) throws SQLException {
+	    ps.setString(1, value);
+	}
+    };
+    /**
+     * Mapper of person row, with the same fields as returned by person API
+     */
+    public static final ResultMapper<ObjectNode> PERSON_MAPPER = new ResultMapper<ObjectNode>() {
+	@Override
+	public ObjectNode map(ResultSet rs, UUIDCodec codec) throws SQLException {
+	    ObjectNode person = JsonNodeFactory.instance.objectNode();
+	    person.put(DBConstants.COMMON_USER_UUID, codec.fromDatabase(rs, DBConstants.COMMON_USER_UUID));
+	    person.put(DBConstants.USER_EMAIL, rs.getString(DBConstants.USER_EMAIL));
+	    person.put(DBConstants.COMMON_ROLE_ID, rs.getString(DBConstants.COMMON_ROLE_ID));
+	    person.put(DBConstants.USER_REGISTRED_ON, rs.getDate(DBConstants.USER_REGISTRED_ON).getTime());
+	    person.put(DBConstants.USER_LAST_LOGIN, rs.getDate(DBConstants.USER_LAST_LOGIN).getTime());
+	    person.put(DBConstants.USER_DISABLED, rs.getBoolean(DBConstants.USER_DISABLED));
+	    return person;
+	}
+    };
+
+    /**
+     * Person with given UUID
+     */
+    public static final NamedQuery<String, ObjectNode> PERSON_BY_UUID = new NamedQuery<>("person.byUUID",
+		    Utils.buildString("SELECT * FROM ", DBConstants.USER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID,
+				    "=?"), 1, UUID_BINDER, PERSON_MAPPER);
+    /**
+     * UUID of person registered with given email
+     */
+    public static final NamedQuery<String, String> PERSON_UUID_BY_EMAIL = new NamedQuery<>("person.uuidByEmail",
+		    Utils.buildString("SELECT ", DBConstants.COMMON_USER_UUID, " FROM ", DBConstants.USER_TABLE,
+				    " WHERE ", DBConstants.USER_EMAIL, "=?"), 1, STRING_BINDER,
+		    new ResultMapper<String>() {
+			@Override
+			public String map(ResultSet rs, UUIDCodec codec) throws SQLException {
+			    return codec.fromDatabase(rs, DBConstants.COMMON_USER_UUID);
+			}
+		    });
+    /**
+     * UUID of file with given UUID, used for checking if file row exists
+     */
+    public static final NamedQuery<String, String> FILE_UUID_BY_UUID = new NamedQuery<>("file.uuidByUUID",
+		    Utils.buildString("SELECT ", DBConstants.FILE_FILE_UUID, " FROM ", DBConstants.FILE_TABLE,
+				    " WHERE ", DBConstants.FILE_FILE_UUID, "=?"), 1, UUID_BINDER,
+		    new ResultMapper<String>() {
+			@Override
+			public String map(ResultSet rs, UUIDCodec codec) throws SQLException {
+			    return codec.fromDatabase(rs, DBConstants.FILE_FILE_UUID);
+			}
+		    });
+    /**
+     * All folders of person, except folders marked as deleted. Used to load folder tree which resolves folder paths
+     * and folders by name.
+     */
+    public static final NamedQuery<String, FolderNode> FOLDERS_BY_PERSON = new NamedQuery<>("folder.byPerson",
+		    Utils.buildString("SELECT ", DBConstants.COMMON_FOLDER_UUID, ", ", DBConstants.FOLDER_FOL_FOLDER_ID,
+				    ", ", DBConstants.COMMON_NAME, ", ", DBConstants.COMMON_PATH, " FROM ",
+				    DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID, "=? AND ",
+				    DBConstants.FOLDER_DELETED_ON, " IS NULL"), 1, UUID_BINDER,
+		    new ResultMapper<FolderNode>() {
+			@Override
+			public FolderNode map(ResultSet rs, UUIDCodec codec) throws SQLException {
+			    return new FolderNode(codec.fromDatabase(rs, DBConstants.COMMON_FOLDER_UUID),
+					    codec.fromDatabase(rs, DBConstants.FOLDER_FOL_FOLDER_ID),
+					    rs.getString(DBConstants.COMMON_NAME),
+					    rs.getString(DBConstants.COMMON_PATH));
+			}
+		    });
+
+    /**
+     * All declared queries
+     */
+    public static final List<NamedQuery<?, ?>> QUERIES = Collections.unmodifiableList(
+		    Arrays.<NamedQuery<?, ?>>asList(PERSON_BY_UUID, PERSON_UUID_BY_EMAIL, FILE_UUID_BY_UUID,
+				    FOLDERS_BY_PERSON));
+
+    /**
+     * Hidden constructor
+     */
+    private QueryCatalog() {
+    }
+}
@@ -0,0 +1,24 @@
+package rs.marko.lalic.safe.core.queries;
+
+import rs.marko.lalic.safe.core.UUIDCodec;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapper of one result row of {@link NamedQuery} to typed result
+ *
+ * @param <R> Type of result
+ */
+public interface ResultMapper<R> {
+
+    /**
+     * Method will map current row
+     *
+     * @param rs    Result set positioned on row
+     * @param codec Codec used for UUID columns
+     * @return Mapped row
+     * @throws SQLException thrown if row can't be read
+     */
+    R map(ResultSet rs, UUIDCodec codec) throws SQLException;
+}
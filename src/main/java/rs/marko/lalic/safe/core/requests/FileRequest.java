@@ -0,0 +1,76 @@
+package rs.marko.lalic.safe.core.requests;
+
+import com.fasterxml.jackson.core.JsonParser;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.io.IOException;
+
+/**
+ * Request body describing file being added. Fields not sent are <code>null</code>.
+ */
+public class FileRequest implements JsonRequest {
+
+    /**
+     * UUID of folder
+     */
+    private String folderUUID;
+    /**
+     * Name of file
+     */
+    private String name;
+    /**
+     * Expected checksum of content
+     */
+    private String checksum;
+
+    @Override
+    public boolean readField(String name, JsonParser parser) throws InvalidRequestException, IOException {
+	if (JsonConstants.FIELD_FOLDER_UUID.equals(name)) {
+	    folderUUID = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_NAME.equals(name)) {
+	    this.name = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_CHECKSUM.equals(name)) {
+	    checksum = RequestReader.readText(name, parser);
+	}
+	else {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Getter for folder UUID
+     *
+     * @return UUID of folder
+     */
+    public String getFolderUUID() {
+	return folderUUID;
+    }
+
+    /**
+     * Getter for name
+     *
+     * @return Name of file
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Getter for checksum
+     *
+     * @return Expected checksum of content, <code>null</code> if not sent
+     */
+    public String getChecksum() {
+	return checksum;
+    }
+
+    @Override
+    public String toString() {
+	return Utils.buildString("{folderUUID: ", folderUUID, ", name: ", name, ", checksum: ", checksum, "}");
+    }
+}
@@ -0,0 +1,60 @@
+package rs.marko.lalic.safe.core.requests;
+
+import com.fasterxml.jackson.core.JsonParser;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.io.IOException;
+
+/**
+ * Request body for creating, renaming and moving folder. Fields not sent are <code>null</code>.
+ */
+public class FolderRequest implements JsonRequest {
+
+    /**
+     * Name of folder
+     */
+    private String name;
+    /**
+     * Path of parent folder, relative to root folder
+     */
+    private String destination;
+
+    @Override
+    public boolean readField(String name, JsonParser parser) throws InvalidRequestException, IOException {
+	if (JsonConstants.FIELD_NAME.equals(name)) {
+	    this.name = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_DESTINATION.equals(name)) {
+	    destination = RequestReader.readText(name, parser);
+	}
+	else {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Getter for name
+     *
+     * @return Name of folder
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Getter for destination
+     *
+     * @return Path of parent folder, relative to root folder
+     */
+    public String getDestination() {
+	return destination;
+    }
+
+    @Override
+    public String toString() {
+	return Utils.buildString("{name: ", name, ", destination: ", destination, "}");
+    }
+}
@@ -0,0 +1,23 @@
+package rs.marko.lalic.safe.core.requests;
+
+import com.fasterxml.jackson.core.JsonParser;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.io.IOException;
+
+/**
+ * Typed request body, filled field by field by {@link RequestReader}
+ */
+public interface JsonRequest {
+
+    /**
+     * Method will read value of field, with parser positioned on value token
+     *
+     * @param name   Field name
+     * @param parser JSON parser
+     * @return <code>FALSE</code> if field is unknown and its value should be skipped
+     * @throws InvalidRequestException thrown if value has wrong type
+     * @throws IOException             thrown if value can't be read
+     */
+    boolean readField(String name, JsonParser parser) throws InvalidRequestException, IOException;
+}
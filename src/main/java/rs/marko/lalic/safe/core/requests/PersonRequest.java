@@ -0,0 +1,94 @@
+package rs.marko.lalic.safe.core.requests;
+
+import com.fasterxml.jackson.core.JsonParser;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.io.IOException;
+
+/**
+ * Request body for registering and updating person. Fields not sent are <code>null</code>.
+ */
+public class PersonRequest implements JsonRequest {
+
+    /**
+     * Email of person
+     */
+    private String email;
+    /**
+     * Password of person
+     */
+    private String password;
+    /**
+     * Role of person
+     */
+    private String role;
+    /**
+     * Flag if person is disabled
+     */
+    private Boolean disabled;
+
+    @Override
+    public boolean readField(String name, JsonParser parser) throws InvalidRequestException, IOException {
+	if (JsonConstants.FIELD_EMAIL.equals(name)) {
+	    email = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_PASSWORD.equals(name)) {
+	    password = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_ROLE.equals(name)) {
+	    role = RequestReader.readText(name, parser);
+	}
+	else if (JsonConstants.FIELD_IS_DISABLED.equals(name)) {
+	    disabled = RequestReader.readBoolean(name, parser);
+	}
+	else {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Getter for email
+     *
+     * @return Email of person
+     */
+    public String getEmail() {
+	return email;
+    }
+
+    /**
+     * Getter for password
+     *
+     * @return Password of person
+     */
+    public String getPassword() {
+	return password;
+    }
+
+    /**
+     * Getter for role
+     *
+     * @return Role of person
+     */
+    public String getRole() {
+	return role;
+    }
+
+    /**
+     * Getter for disabled flag
+     *
+     * @return Flag if person is disabled
+     */
+    public Boolean getDisabled() {
+	return disabled;
+    }
+
+    @Override
+    public String toString() {
+	// Password is never written to log
+	return Utils.buildString("{email: ", email, ", password: ", password == null ? null : "***", ", role: ", role,
+			", isDisabled: ", disabled, "}");
+    }
+}
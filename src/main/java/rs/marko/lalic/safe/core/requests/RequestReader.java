@@ -0,0 +1,154 @@
+package rs.marko.lalic.safe.core.requests;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader of typed request bodies. Body is read token by token straight from request stream, without building String
+ * or tree of the whole body, and reading stops at first token which is not valid for request.
+ */
+public final class RequestReader {
+
+    /**
+     * Factory of JSON parsers, thread safe
+     */
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Hidden constructor
+     */
+    private RequestReader() {
+    }
+
+    /**
+     * Method will read request from JSON stream
+     *
+     * @param in      Request body
+     * @param request Request to be filled
+     * @return Filled request
+     * @throws InvalidRequestException thrown if body is empty, malformed or is not valid request
+     */
+    public static <T extends JsonRequest> T read(InputStream in, T request) throws InvalidRequestException {
+	if (in == null) {
+	    throw new InvalidRequestException("Request body is missing.");
+	}
+	try (JsonParser parser = FACTORY.createParser(in)) {
+	    return read(parser, request);
+	}
+	catch (IOException e) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Failed to parse JSON request. Reason [", e.getMessage(), "]"), e);
+	}
+    }
+
+    /**
+     * Method will read request from already parsed JSON, used by callers which still work with JSON tree
+     *
+     * @param json    Request JSON
+     * @param request Request to be filled
+     * @return Filled request
+     * @throws InvalidRequestException thrown if JSON is not valid request
+     */
+    public static <T extends JsonRequest> T read(JsonNode json, T request) throws InvalidRequestException {
+	if (json == null) {
+	    throw new InvalidRequestException("Request body is missing.");
+	}
+	try (JsonParser parser = json.traverse()) {
+	    return read(parser, request);
+	}
+	catch (IOException e) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Failed to read JSON request. Reason [", e.getMessage(), "]"), e);
+	}
+    }
+
+    /**
+     * Method will read text value. Numbers and booleans are read as their text, like {@link JsonNode#asText()}.
+     *
+     * @param name   Field name
+     * @param parser Parser positioned on value
+     * @return Text, or <code>null</code> for JSON null
+     * @throws InvalidRequestException thrown if value is object or array
+     * @throws IOException             thrown if value can't be read
+     */
+    public static String readText(String name, JsonParser parser) throws InvalidRequestException, IOException {
+	JsonToken token = parser.getCurrentToken();
+	if (token == JsonToken.VALUE_NULL) {
+	    return null;
+	}
+	if (!token.isScalarValue()) {
+	    throw invalidType(name, "text", parser);
+	}
+	return parser.getText();
+    }
+
+    /**
+     * Method will read boolean value
+     *
+     * @param name   Field name
+     * @param parser Parser positioned on value
+     * @return Boolean, or <code>null</code> for JSON null
+     * @throws InvalidRequestException thrown if value is not boolean
+     * @throws IOException             thrown if value can't be read
+     */
+    public static Boolean readBoolean(String name, JsonParser parser) throws InvalidRequestException, IOException {
+	JsonToken token = parser.getCurrentToken();
+	if (token == JsonToken.VALUE_NULL) {
+	    return null;
+	}
+	if (!token.isBoolean()) {
+	    throw invalidType(name, "boolean", parser);
+	}
+	return parser.getBooleanValue();
+    }
+
+    /**
+     * Method will read fields of top level object into request, skipping unknown fields
+     *
+     * @param parser  JSON parser
+     * @param request Request to be filled
+     * @return Filled request
+     * @throws InvalidRequestException thrown if JSON is not object or field has wrong type
+     * @throws IOException             thrown if JSON can't be read
+     */
+    private static <T extends JsonRequest> T read(JsonParser parser, T request)
+		    throws InvalidRequestException, IOException {
+	JsonToken token = parser.nextToken();
+	if (token == null) {
+	    throw new InvalidRequestException("Request body is empty.");
+	}
+	if (token != JsonToken.START_OBJECT) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("JSON object expected, found [", token, "]"));
+	}
+	// Parser reports object which is not closed, so loop ends only on end of object
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String name = parser.getCurrentName();
+	    parser.nextToken();
+	    if (!request.readField(name, parser)) {
+		parser.skipChildren();
+	    }
+	}
+	return request;
+    }
+
+    /**
+     * Method will build exception for value of wrong type
+     *
+     * @param name     Field name
+     * @param expected Expected type
+     * @param parser   Parser positioned on value
+     * @return Exception
+     */
+    private static InvalidRequestException invalidType(String name, String expected, JsonParser parser) {
+	return new InvalidRequestException(Utils.buildString("Invalid JSON request, field [", name, "] must be ",
+			expected, ". Found [", parser.getCurrentToken(), "]"));
+    }
+}
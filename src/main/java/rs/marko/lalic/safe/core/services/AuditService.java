@@ -0,0 +1,420 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.audit.AuditRecord;
+import rs.marko.lalic.safe.core.audit.AuditRingBuffer;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit store of requests. Request threads only publish records into bounded lock free ring buffer, and single writer
+ * thread takes them out in batches and inserts every batch into <code>AUDIT</code> table with one JDBC batch. Records
+ * published while buffer is full are dropped and counted, so audit never slows down or blocks requests. Table is
+ * ordered and queried by time, so on MySQL it can be partitioned by time with
+ * <code>safe-upload-audit-partitions.sql</code>.
+ */
+public class AuditService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(AuditService.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Default number of records buffer holds
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    /**
+     * Default number of records inserted in one batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /**
+     * Number of records returned in one page if limit is not given
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Maximum number of records returned in one page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Maximum length of event name column
+     */
+    private static final int MAX_EVENT_LENGTH = 64;
+    /**
+     * Maximum length of person UUID column
+     */
+    private static final int MAX_UUID_LENGTH = 36;
+    /**
+     * Time in milliseconds writer waits for remaining records on stop
+     */
+    private static final long STOP_TIMEOUT = 10000;
+    /**
+     * Separator between time and ID in page cursor
+     */
+    private static final char CURSOR_SEPARATOR = '_';
+    /**
+     * Columns set when record is inserted
+     */
+    private static final String[] INSERT_COLUMNS = { DBConstants.COMMON_CREATED_ON, DBConstants.AUDIT_EVENT,
+		    DBConstants.COMMON_USER_UUID, DBConstants.AUDIT_STATUS, DBConstants.AUDIT_LATENCY };
+    /**
+     * Query selecting records in time range, filters and keyset of page are appended
+     */
+    private static final String SELECT_QUERY = Utils.buildString("SELECT ", DBConstants.AUDIT_AUDIT_ID, ", ",
+		    DBConstants.COMMON_CREATED_ON, ", ", DBConstants.AUDIT_EVENT, ", ", DBConstants.COMMON_USER_UUID,
+		    ", ", DBConstants.AUDIT_STATUS, ", ", DBConstants.AUDIT_LATENCY, " FROM ", DBConstants.AUDIT_TABLE,
+		    " WHERE ", DBConstants.COMMON_CREATED_ON, " >= ? AND ", DBConstants.COMMON_CREATED_ON, " < ?");
+    /**
+     * Ordering of records, matching keyset of page cursor
+     */
+    private static final String ORDER_BY = Utils.buildString(" ORDER BY ", DBConstants.COMMON_CREATED_ON, ", ",
+		    DBConstants.AUDIT_AUDIT_ID, " LIMIT ?");
+
+    /**
+     * QueryService instance
+     */
+    @Autowired
+    private QueryService queryService;
+    /**
+     * TransactionTemplate instance
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    /**
+     * Number of records buffer holds
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    /**
+     * Number of records inserted in one batch
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Time in milliseconds writer waits when buffer is drained
+     */
+    private long flushInterval;
+    /**
+     * Buffer of published records
+     */
+    private volatile AuditRingBuffer buffer;
+    /**
+     * Thread writing records to database
+     */
+    private volatile Thread writerThread;
+    /**
+     * Flag cleared when writer should write remaining records and stop
+     */
+    private volatile boolean running;
+    /**
+     * Number of records lost because their batch couldn't be inserted
+     */
+    private final AtomicLong lost = new AtomicLong();
+    /**
+     * Number of dropped records already reported in log, used by writer thread only
+     */
+    private long reportedDropped;
+
+    /**
+     * Empty construct
+     */
+    public AuditService() {
+    }
+
+    /**
+     * Setter for buffer size
+     *
+     * @param bufferSize Number of records buffer holds, rounded up to power of two
+     */
+    public void setBufferSize(int bufferSize) {
+	this.bufferSize = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * Setter for batch size
+     *
+     * @param batchSize Number of records inserted in one batch
+     */
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Setter for flush interval
+     *
+     * @param flushInterval Time in milliseconds writer waits when buffer is drained
+     */
+    public void setFlushInterval(long flushInterval) {
+	this.flushInterval = Math.max(flushInterval, 1);
+    }
+
+    /**
+     * Method will create buffer and start writer thread
+     */
+    public synchronized void init() {
+	buffer = new AuditRingBuffer(bufferSize);
+	running = true;
+	writerThread = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		write();
+	    }
+	}, "audit-writer");
+	writerThread.setDaemon(true);
+	writerThread.start();
+	LOGGER.info(Utils.buildString("Audit writer started. Buffer: ", buffer.getCapacity(), ". Batch: ", batchSize,
+			". Flush interval: ", flushInterval, " ms"));
+    }
+
+    /**
+     * Method will stop writer thread, once records published so far are written
+     */
+    public synchronized void stop() {
+	if (writerThread == null) {
+	    return;
+	}
+	running = false;
+	LockSupport.unpark(writerThread);
+	try {
+	    writerThread.join(STOP_TIMEOUT);
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	writerThread = null;
+    }
+
+    /**
+     * Method will publish record without waiting. If buffer is full, record is dropped and writer is woken up.
+     *
+     * @param record Audit record
+     * @return <code>TRUE</code> if record was published, <code>FALSE</code> if it was dropped
+     */
+    public boolean publish(AuditRecord record) {
+	AuditRingBuffer current = buffer;
+	if (current == null) {
+	    return false;
+	}
+	if (current.offer(record)) {
+	    return true;
+	}
+	// Writer may be waiting for flush interval, so it is woken up to free buffer
+	LockSupport.unpark(writerThread);
+	return false;
+    }
+
+    /**
+     * Method will get one page of records in time range, ordered by time. Page is located by keyset of last returned
+     * record, so only rows of requested range are read.
+     *
+     * @param from       Start of range in milliseconds, inclusive
+     * @param to         End of range in milliseconds, exclusive, or <code>null</code> for now
+     * @param event      Event name, or <code>null</code> for all events
+     * @param personUUID UUID of person, or <code>null</code> for all persons
+     * @param cursor     Cursor returned with previous page, or <code>null</code> for first page
+     * @param limit      Maximum number of records in page, or <code>null</code> for default
+     * @return JSON with records, cursor of next page if there may be more records, and number of records which were
+     * dropped or lost since start
+     * @throws InvalidRequestException thrown if range, cursor or limit is invalid
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public ObjectNode getRecords(long from, Long to, String event, String personUUID, String cursor, Integer limit)
+		    throws InvalidRequestException, InternalErrorException {
+	int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+	if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Invalid page limit [", limit, "]. Maximum: ", MAX_PAGE_SIZE));
+	}
+	long end = to == null ? System.currentTimeMillis() : to;
+	if (from < 0 || end < from) {
+	    throw new InvalidRequestException(Utils.buildString("Invalid time range [", from, " - ", to, "]"));
+	}
+	StringBuilder query = new StringBuilder(SELECT_QUERY);
+	List<Object> params = Utils.getParametersList(new Timestamp(from), new Timestamp(end));
+	if (!StringUtils.isEmpty(event)) {
+	    Utils.appendToBuffer(query, " AND ", DBConstants.AUDIT_EVENT, "=?");
+	    params.add(event);
+	}
+	if (!StringUtils.isEmpty(personUUID)) {
+	    Utils.appendToBuffer(query, " AND ", DBConstants.COMMON_USER_UUID, "=?");
+	    params.add(personUUID);
+	}
+	if (!StringUtils.isEmpty(cursor)) {
+	    int separator = cursor.indexOf(CURSOR_SEPARATOR);
+	    Timestamp createdOn;
+	    long auditId;
+	    try {
+		createdOn = new Timestamp(Long.parseLong(cursor.substring(0, Math.max(separator, 0))));
+		auditId = Long.parseLong(cursor.substring(separator + 1));
+	    }
+	    catch (NumberFormatException e) {
+		throw new InvalidRequestException(Utils.buildString("Invalid page cursor [", cursor, "]"), e);
+	    }
+	    Utils.appendToBuffer(query, " AND (", DBConstants.COMMON_CREATED_ON, " > ? OR (",
+			    DBConstants.COMMON_CREATED_ON, " = ? AND ", DBConstants.AUDIT_AUDIT_ID, " > ?))");
+	    params.add(createdOn);
+	    params.add(createdOn);
+	    params.add(auditId);
+	}
+	query.append(ORDER_BY);
+	params.add(pageSize);
+	AuditMapper mapper = new AuditMapper();
+	List<ObjectNode> records = queryService.executeQueryAndReturnJsonList(query.toString(), params, mapper);
+	ObjectNode page = MAPPER.createObjectNode();
+	page.putArray(JsonConstants.FIELD_RECORDS).addAll(records);
+	if (records.size() == pageSize) {
+	    page.put(JsonConstants.FIELD_CURSOR,
+			    Utils.buildString(mapper.lastCreatedOn.getTime(), CURSOR_SEPARATOR, mapper.lastAuditId));
+	}
+	page.put(JsonConstants.FIELD_DROPPED, getDropped());
+	return page;
+    }
+
+    /**
+     * Method will return number of records which were not stored
+     *
+     * @return Number of records dropped because buffer was full or lost because their batch couldn't be inserted
+     */
+    public long getDropped() {
+	AuditRingBuffer current = buffer;
+	return (current != null ? current.getDropped() : 0) + lost.get();
+    }
+
+    /**
+     * Method will take records from buffer and insert them in batches, until service is stopped. Writer waits for
+     * flush interval only when buffer is drained, so under load batches are written back to back.
+     */
+    private void write() {
+	List<AuditRecord> batch = new ArrayList<>(batchSize);
+	long wait = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+	while (true) {
+	    // Flag is read before draining, so records published before stop are written by last pass
+	    boolean stopping = !running;
+	    int count = buffer.drainTo(batch, batchSize);
+	    if (count > 0) {
+		insert(batch);
+		batch.clear();
+	    }
+	    reportDropped();
+	    if (count < batchSize) {
+		if (stopping) {
+		    break;
+		}
+		LockSupport.parkNanos(this, wait);
+	    }
+	}
+	LOGGER.info(Utils.buildString("Audit writer stopped. Dropped records: ", getDropped()));
+    }
+
+    /**
+     * Method will insert batch of records in one transaction. Batch which can't be inserted is logged and counted as
+     * lost, so failing database doesn't fill buffer.
+     *
+     * @param batch Records to insert
+     */
+    private void insert(List<AuditRecord> batch) {
+	List<Object[]> rows = new ArrayList<>(batch.size());
+	for (AuditRecord record : batch) {
+	    rows.add(new Object[] { new Timestamp(record.getCreatedOn()),
+			    StringUtils.left(record.getEvent(), MAX_EVENT_LENGTH),
+			    StringUtils.left(record.getPersonUUID(), MAX_UUID_LENGTH), record.getStatus(),
+			    record.getLatency() });
+	}
+	try {
+	    transactionTemplate.execute(new InsertTransaction(rows));
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Audit records written. Records: ", rows.size()));
+	    }
+	}
+	catch (RuntimeException e) {
+	    lost.addAndGet(rows.size());
+	    LOGGER.error(Utils.buildString("Failed to write audit records. Records: ", rows.size(), ". Message: ",
+			    e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will log records dropped since last report, so request threads never log themselves
+     */
+    private void reportDropped() {
+	long dropped = buffer.getDropped();
+	if (dropped > reportedDropped) {
+	    LOGGER.warn(Utils.buildString("Audit buffer full, records dropped: ", dropped - reportedDropped,
+			    ". Total: ", dropped));
+	    reportedDropped = dropped;
+	}
+    }
+
+    /**
+     * {@link RowMapper} implementation for audit records. Keeps key of last mapped row, which is used as cursor of
+     * next page.
+     */
+    private static class AuditMapper implements RowMapper<ObjectNode> {
+	private Timestamp lastCreatedOn;
+	private long lastAuditId;
+
+	@Override
+	public ObjectNode mapRow(ResultSet rs, int i) throws SQLException {
+	    lastCreatedOn = rs.getTimestamp(DBConstants.COMMON_CREATED_ON);
+	    lastAuditId = rs.getLong(DBConstants.AUDIT_AUDIT_ID);
+	    ObjectNode record = MAPPER.createObjectNode();
+	    record.put(DBConstants.AUDIT_AUDIT_ID, lastAuditId);
+	    record.put(DBConstants.COMMON_CREATED_ON, lastCreatedOn.getTime());
+	    record.put(DBConstants.AUDIT_EVENT, rs.getString(DBConstants.AUDIT_EVENT));
+	    record.put(DBConstants.COMMON_USER_UUID, rs.getString(DBConstants.COMMON_USER_UUID));
+	    record.put(DBConstants.AUDIT_STATUS, rs.getInt(DBConstants.AUDIT_STATUS));
+	    record.put(DBConstants.AUDIT_LATENCY, rs.getLong(DBConstants.AUDIT_LATENCY));
+	    return record;
+	}
+    }
+
+    /**
+     * Transaction inserting batch of audit records
+     */
+    private class InsertTransaction implements TransactionCallback {
+	private List<Object[]> rows;
+
+	/**
+	 * Construct for insert transaction
+	 *
+	 * @param rows Values of every record, in order of insert columns
+	 */
+	public InsertTransaction(List<Object[]> rows) {
+	    this.rows = rows;
+	}
+
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		queryService.insertRecords(DBConstants.AUDIT_TABLE, INSERT_COLUMNS, rows);
+		return null;
+	    }
+	    catch (BaseException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+}
@@ -0,0 +1,388 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+import rs.marko.lalic.safe.core.storage.StoredObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressable blob store. Every distinct content is kept once, under its SHA-256 checksum in two level
+ * fan-out folder, and file rows reference it by checksum. Number of references is kept in database, and blobs
+ * without references are removed by periodic garbage collection.
+ */
+public class ContentStoreService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(ContentStoreService.class);
+    /**
+     * Name of folder, inside root folder, where blobs are kept
+     */
+    public static final String BLOBS_FOLDER = ".blobs";
+    /**
+     * Pattern of hex encoded SHA-256 checksum, which is also name of blob file
+     */
+    public static final Pattern CHECKSUM = Pattern.compile("[0-9a-f]{64}");
+    /**
+     * Maximum number of blobs removed in one garbage collection pass
+     */
+    private static final int GC_BATCH_SIZE = 1000;
+    /**
+     * Query adding reference to blob, creating blob row if it doesn't exist
+     */
+    private static final String ADD_REFERENCE_QUERY = Utils.buildString("INSERT INTO ", DBConstants.BLOB_TABLE, " (",
+		    DBConstants.BLOB_CHECKSUM, ", ", DBConstants.BLOB_SIZE, ", ", DBConstants.BLOB_REFERENCE_COUNT, ", ",
+		    DBConstants.COMMON_CREATED_ON, ") VALUES (?, ?, 1, ?) ON DUPLICATE KEY UPDATE ",
+		    DBConstants.BLOB_REFERENCE_COUNT, " = ", DBConstants.BLOB_REFERENCE_COUNT, " + 1");
+    /**
+     * Query releasing reference to blob
+     */
+    private static final String RELEASE_REFERENCE_QUERY = Utils.buildString("UPDATE ", DBConstants.BLOB_TABLE,
+		    " SET ", DBConstants.BLOB_REFERENCE_COUNT, " = ", DBConstants.BLOB_REFERENCE_COUNT, " - 1 WHERE ",
+		    DBConstants.BLOB_CHECKSUM, " = ?");
+    /**
+     * Query selecting blobs without references
+     */
+    private static final String UNREFERENCED_QUERY = Utils.buildString("SELECT ", DBConstants.BLOB_CHECKSUM,
+		    " FROM ", DBConstants.BLOB_TABLE, " WHERE ", DBConstants.BLOB_REFERENCE_COUNT, " <= 0 LIMIT ",
+		    GC_BATCH_SIZE);
+    /**
+     * Query removing blob row if it is still without references
+     */
+    private static final String REMOVE_UNREFERENCED_QUERY = Utils.buildString("DELETE FROM ",
+		    DBConstants.BLOB_TABLE, " WHERE ", DBConstants.BLOB_CHECKSUM, " = ? AND ",
+		    DBConstants.BLOB_REFERENCE_COUNT, " <= 0");
+    /**
+     * Columns set when blob found on disk without row is registered
+     */
+    private static final String[] ADOPT_COLUMNS = { DBConstants.BLOB_CHECKSUM, DBConstants.BLOB_SIZE,
+		    DBConstants.BLOB_REFERENCE_COUNT, DBConstants.COMMON_CREATED_ON };
+    /**
+     * Query selecting batch of blob checksums, in checksum order
+     */
+    private static final String GET_CHECKSUMS_QUERY = Utils.buildString("SELECT ", DBConstants.BLOB_CHECKSUM,
+		    " FROM ", DBConstants.BLOB_TABLE, " WHERE ", DBConstants.BLOB_CHECKSUM, " > ? ORDER BY ",
+		    DBConstants.BLOB_CHECKSUM, " LIMIT ?");
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * QueryService instance
+     */
+    @Autowired
+    private QueryService queryService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * TransactionTemplate instance
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Empty construct
+     */
+    public ContentStoreService() {
+    }
+
+    /**
+     * Method will get blob file for given checksum
+     *
+     * @param checksum Hex encoded SHA-256 checksum
+     * @return Blob file, which may not exist
+     */
+    public File getBlobFile(String checksum) {
+	File blobs = new File(fileSystemService.getRootFolder(), BLOBS_FOLDER);
+	File fanOut = new File(new File(blobs, checksum.substring(0, 2)), checksum.substring(2, 4));
+	return new File(fanOut, checksum);
+    }
+
+    /**
+     * Method will get content of given file, which is its blob for content addressed files, its object on its volume
+     * for hashed layout, or file at its path otherwise
+     *
+     * @param record File record
+     * @return Content of file
+     * @throws InternalErrorException thrown if volume of file is not configured, or content is missing
+     */
+    public FileContent getContent(FileRecord record) throws InternalErrorException {
+	File file;
+	if (record.getLayout() == StorageLayout.CONTENT) {
+	    file = getBlobFile(record.getChecksum());
+	}
+	else if (record.getLayout() == StorageLayout.HASHED) {
+	    StorageBackend backend = volumePoolService.getVolume(record.getVolumeId()).getBackend();
+	    String key = fileSystemService.getHashedKey(record.getFileUUID());
+	    file = backend.getLocalFile(key);
+	    if (file == null) {
+		StoredObject object = backend.stat(key);
+		if (object == null) {
+		    throw new InternalErrorException(Utils.buildString("Content of file is missing. File UUID: ",
+				    record.getFileUUID(), ". Location: ", backend.getLocation(), "/", key));
+		}
+		return new FileContent(backend, key, object.getSize());
+	    }
+	}
+	else {
+	    file = new File(record.getPath());
+	}
+	if (!file.isFile()) {
+	    throw new InternalErrorException(Utils.buildString("Content of file is missing. File UUID: ",
+			    record.getFileUUID(), ". Path: ", file));
+	}
+	return new FileContent(file);
+    }
+
+    /**
+     * Method will stage content in blob store. If client declared checksum of content, and blob with that checksum
+     * already exists, content is only read and verified, without being written to disk.
+     *
+     * @param content          Content to stage
+     * @param expectedChecksum Checksum declared by client, or <code>null</code>
+     * @param stagingFile      File where content is staged
+     * @return Staged file with its size and checksum
+     * @throws InvalidRequestException thrown if declared checksum is not hex encoded SHA-256 checksum, or content
+     *                                 doesn't match it
+     * @throws InternalErrorException  thrown if writing fails
+     */
+    public StoredFile stage(InputStream content, String expectedChecksum, File stagingFile)
+		    throws InvalidRequestException, InternalErrorException {
+	if (expectedChecksum != null) {
+	    String checksum = expectedChecksum.toLowerCase();
+	    if (!CHECKSUM.matcher(checksum).matches()) {
+		throw new InvalidRequestException(
+				Utils.buildString("Declared checksum is not hex encoded SHA-256 checksum: ",
+						expectedChecksum));
+	    }
+	    File blob = getBlobFile(checksum);
+	    if (blob.isFile()) {
+		StoredFile verified = verify(blob, content);
+		if (!verified.getChecksum().equals(checksum)) {
+		    throw new InvalidRequestException(
+				    Utils.buildString("Content doesn't match declared checksum. Declared: ",
+						    expectedChecksum, ". Received: ", verified.getChecksum()));
+		}
+		return verified;
+	    }
+	}
+	return fileSystemService.writeFile(stagingFile, content);
+    }
+
+    /**
+     * Method will add reference to blob of stored file. Must be called inside transaction. Reference row stays
+     * locked until transaction ends, so garbage collection can't remove blob in the meantime. If content was only
+     * verified against existing blob, blob is checked again while row is locked.
+     *
+     * @param storedFile Staged file, or existing blob if content was only verified
+     * @throws InternalErrorException thrown if verified blob was removed in the meantime
+     */
+    public void addReference(StoredFile storedFile) throws InternalErrorException {
+	queryService.executeDatabaseUpdate(ADD_REFERENCE_QUERY,
+			Utils.getParametersList(storedFile.getChecksum(), storedFile.getSize(), new Date()));
+	File blob = getBlobFile(storedFile.getChecksum());
+	if (storedFile.getFile().equals(blob) && !blob.isFile()) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Blob was removed while upload was in progress. Checksum: ",
+					    storedFile.getChecksum()));
+	}
+    }
+
+    /**
+     * Method will store staged file as blob with given checksum. If blob already exists, staged copy is removed.
+     * Should be called after reference to blob is committed.
+     *
+     * @param stagedFile Staged file
+     * @param checksum   Hex encoded SHA-256 checksum of content
+     * @throws InternalErrorException thrown if blob can't be stored
+     */
+    public void storeBlob(File stagedFile, String checksum) throws InternalErrorException {
+	File blob = getBlobFile(checksum);
+	if (stagedFile.equals(blob)) {
+	    return;
+	}
+	if (blob.isFile()) {
+	    if (stagedFile.exists() && !stagedFile.delete()) {
+		LOGGER.warn(Utils.buildString("Failed to remove staged file. Path: ", stagedFile));
+	    }
+	    return;
+	}
+	fileSystemService.moveFile(stagedFile, blob);
+    }
+
+    /**
+     * Method will release one reference to blob. Blob is removed by garbage collection once it has no references.
+     *
+     * @param checksum Hex encoded SHA-256 checksum
+     * @throws InternalErrorException thrown if update fails
+     */
+    public void releaseReference(String checksum) throws InternalErrorException {
+	queryService.executeDatabaseUpdate(RELEASE_REFERENCE_QUERY, Utils.getParametersList(checksum));
+    }
+
+    /**
+     * Method will remove staged file which is no longer needed
+     *
+     * @param storedFile Staged file
+     */
+    public void removeStaged(StoredFile storedFile) {
+	if (storedFile != null && !storedFile.getFile().equals(getBlobFile(storedFile.getChecksum()))
+			&& storedFile.getFile().exists() && !storedFile.getFile().delete()) {
+	    LOGGER.warn(Utils.buildString("Failed to remove staged file. Path: ", storedFile.getFile()));
+	}
+    }
+
+    /**
+     * Method will get batch of checksums of blobs known to database
+     *
+     * @param afterChecksum Last checksum of previous batch, or <code>null</code> for first batch
+     * @param limit         Maximum number of checksums
+     * @return Checksums, in ascending order
+     * @throws InternalErrorException thrown if query fails
+     */
+    public List<String> getChecksums(String afterChecksum, int limit) throws InternalErrorException {
+	return queryService.executeQueryAndReturnList(GET_CHECKSUMS_QUERY,
+			Utils.getParametersList(afterChecksum == null ? "" : afterChecksum, limit), String.class);
+    }
+
+    /**
+     * Method will register blob file which has no row as blob without references, so garbage collection removes it
+     * under same row lock which protects blobs from concurrent uploads of same content
+     *
+     * @param checksum Hex encoded SHA-256 checksum
+     * @param size     Size of blob in bytes
+     * @return <code>TRUE</code> if blob was registered, <code>FALSE</code> if row was created in the meantime
+     * @throws InternalErrorException thrown if insert fails
+     */
+    public boolean adoptBlob(String checksum, long size) throws InternalErrorException {
+	try {
+	    queryService.insertRecord(DBConstants.BLOB_TABLE, ADOPT_COLUMNS, checksum, size, 0, new Date());
+	    return true;
+	}
+	catch (ObjectExistsException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Method will remove blobs without references. Each blob is removed in its own transaction, and file is deleted
+     * while row is still locked, so concurrent upload of same content waits and then stores it again.
+     */
+    @Scheduled(fixedDelayString = "${storage.gc.interval}")
+    public void collectGarbage() {
+	try {
+	    List<String> checksums = queryService.executeQueryAndReturnList(UNREFERENCED_QUERY, String.class);
+	    int removed = 0;
+	    for (String checksum : checksums) {
+		Boolean result = (Boolean) transactionTemplate.execute(new RemoveBlobTransaction(checksum));
+		if (Boolean.TRUE.equals(result)) {
+		    removed++;
+		}
+	    }
+	    if (removed > 0 && LOGGER.isInfoEnabled()) {
+		LOGGER.info(Utils.buildString("Blob garbage collection removed ", removed, " blobs."));
+	    }
+	}
+	catch (BaseException e) {
+	    LOGGER.error(Utils.buildString("Blob garbage collection failed. Message: ", e.getMessage()), e);
+	}
+	catch (RuntimeException e) {
+	    LOGGER.error(Utils.buildString("Blob garbage collection failed. Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will read content and calculate its size and checksum without writing it
+     *
+     * @param blob    Existing blob which content should match
+     * @param content Content to read
+     * @return Existing blob with size and checksum of received content
+     * @throws InternalErrorException thrown if reading fails
+     */
+    private StoredFile verify(File blob, InputStream content) throws InternalErrorException {
+	MessageDigest digest = fileSystemService.createDigest();
+	byte[] buffer = new byte[FileSystemService.BUFFER_SIZE];
+	long size = 0;
+	try {
+	    int read;
+	    while ((read = content.read(buffer)) != -1) {
+		digest.update(buffer, 0, read);
+		size += read;
+	    }
+	    return new StoredFile(blob, size, Utils.toHex(digest.digest()));
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to read content. Read bytes: ", size, ". Message: ", e.getMessage()),
+			    e);
+	}
+    }
+
+    /**
+     * Transaction removing one blob without references
+     */
+    private class RemoveBlobTransaction implements TransactionCallback {
+	private String checksum;
+
+	/**
+	 * Construct for remove blob transaction
+	 *
+	 * @param checksum Checksum of blob
+	 */
+	public RemoveBlobTransaction(String checksum) {
+	    this.checksum = checksum;
+	}
+
+	/**
+	 * Method will remove blob row, and blob file if row was removed
+	 *
+	 * @param status
+	 * @return <code>TRUE</code> if blob was removed
+	 */
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		int rows = queryService.executeDatabaseUpdate(REMOVE_UNREFERENCED_QUERY,
+				Utils.getParametersList(checksum));
+		if (rows == 0) {
+		    return false;
+		}
+		File blob = getBlobFile(checksum);
+		if (blob.exists() && !blob.delete()) {
+		    status.setRollbackOnly();
+		    LOGGER.warn(Utils.buildString("Failed to remove blob. Path: ", blob));
+		    return false;
+		}
+		return true;
+	    }
+	    catch (InternalErrorException e) {
+		status.setRollbackOnly();
+		LOGGER.error(e.getMessage(), e);
+		return false;
+	    }
+	}
+    }
+}
@@ -1,17 +1,22 @@
 package rs.marko.lalic.safe.core.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import rs.marko.lalic.safe.core.UUIDGenerator;
+import org.springframework.jdbc.core.RowMapper;
+import rs.marko.lalic.safe.core.UUIDCodec;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.constants.DBConstants;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
 import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.queries.QueryCatalog;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * Service used for file databased operations
@@ -19,11 +24,116 @@ import java.util.Map;
  */
 public class DBFileService {
 
+    /**
+     * Columns set when file is added
+     */
+    private static final String[] INSERT_COLUMNS = { DBConstants.FILE_FILE_UUID, DBConstants.COMMON_USER_UUID,
+		    DBConstants.COMMON_FOLDER_UUID, DBConstants.COMMON_NAME, DBConstants.COMMON_PATH,
+		    DBConstants.FILE_SIZE, DBConstants.FILE_CHECKSUM, DBConstants.FILE_LAYOUT,
+		    DBConstants.FILE_VOLUME_ID, DBConstants.COMMON_CREATED_ON };
+    /**
+     * Columns read into file record
+     */
+    private static final String SELECT_COLUMNS = Utils.buildString(DBConstants.FILE_FILE_UUID, ", ",
+		    DBConstants.COMMON_FOLDER_UUID, ", ", DBConstants.COMMON_NAME, ", ", DBConstants.COMMON_PATH, ", ",
+		    DBConstants.FILE_SIZE, ", ", DBConstants.FILE_CHECKSUM, ", ", DBConstants.FILE_LAYOUT, ", ",
+		    DBConstants.FILE_VOLUME_ID, ", ", DBConstants.COMMON_CREATED_ON);
+    /**
+     * Query selecting file owned by person
+     */
+    private static final String GET_FILE_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.FILE_FILE_UUID, "=? AND ",
+		    DBConstants.COMMON_USER_UUID, "=?");
+    /**
+     * Query selecting files of folder owned by person, ordered by name
+     */
+    private static final String GET_FOLDER_FILES_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=? AND ",
+		    DBConstants.COMMON_USER_UUID, "=? ORDER BY ", DBConstants.COMMON_NAME);
+    /**
+     * Query selecting batch of mirrored files, ordered by UUID. Files stored before layouts were introduced have no
+     * layout and are mirrored as well.
+     */
+    private static final String GET_MIRRORED_FILES_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE (", DBConstants.FILE_LAYOUT, "=? OR ", DBConstants.FILE_LAYOUT,
+		    " IS NULL) AND ", DBConstants.FILE_FILE_UUID, ">? ORDER BY ", DBConstants.FILE_FILE_UUID,
+		    " LIMIT ?");
+    /**
+     * Query selecting batch of all files, ordered by UUID
+     */
+    private static final String GET_FILES_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.FILE_FILE_UUID, ">? ORDER BY ",
+		    DBConstants.FILE_FILE_UUID, " LIMIT ?");
+    /**
+     * Query selecting mirrored file by folder and name
+     */
+    private static final String GET_MIRRORED_FILE_QUERY = Utils.buildString("SELECT ", DBConstants.FILE_FILE_UUID,
+		    " FROM ", DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=? AND ",
+		    DBConstants.COMMON_NAME, "=? AND (", DBConstants.FILE_LAYOUT, "=? OR ", DBConstants.FILE_LAYOUT,
+		    " IS NULL)");
+    /**
+     * Query replacing path prefix of all files of folder
+     */
+    private static final String MOVE_FILES_QUERY = Utils.buildString("UPDATE ", DBConstants.FILE_TABLE, " SET ",
+		    DBConstants.COMMON_PATH, "=CONCAT(?, SUBSTRING(", DBConstants.COMMON_PATH,
+		    ", CHAR_LENGTH(?) + 1)) WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+    /**
+     * Start of query selecting batch of files of folders, list of folder UUIDs and limit are appended
+     */
+    private static final String GET_FILES_IN_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, " IN (");
+    /**
+     * Start of query counting files of folders, list of folder UUIDs and closing bracket are appended
+     */
+    private static final String COUNT_FILES_IN_QUERY = Utils.buildString("SELECT COUNT(*) FROM ",
+		    DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, " IN (");
+    /**
+     * Query removing custom properties of file
+     */
+    private static final String DELETE_FILE_PROPERTIES_QUERY = Utils.buildString("DELETE FROM ",
+		    DBConstants.FILE_CUSTOM_PROPERTY_TABLE, " WHERE ", DBConstants.FILE_FILE_UUID, "=?");
+    /**
+     * Query removing file
+     */
+    private static final String DELETE_FILE_QUERY = Utils.buildString("DELETE FROM ", DBConstants.FILE_TABLE,
+		    " WHERE ", DBConstants.FILE_FILE_UUID, "=?");
+    /**
+     * Query changing layout of mirrored file
+     */
+    private static final String UPDATE_MIRRORED_LAYOUT_QUERY = Utils.buildString("UPDATE ", DBConstants.FILE_TABLE,
+		    " SET ", DBConstants.FILE_LAYOUT, "=?, ", DBConstants.FILE_VOLUME_ID, "=? WHERE ",
+		    DBConstants.FILE_FILE_UUID, "=? AND (", DBConstants.FILE_LAYOUT, "=? OR ", DBConstants.FILE_LAYOUT,
+		    " IS NULL)");
+    /**
+     * Mapper for file rows
+     */
+    private final RowMapper<FileRecord> fileMapper = new RowMapper<FileRecord>() {
+	@Override
+	public FileRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
+	    return new FileRecord(uuidCodec.fromDatabase(rs, DBConstants.FILE_FILE_UUID),
+			    uuidCodec.fromDatabase(rs, DBConstants.COMMON_FOLDER_UUID), rs.getString(DBConstants.COMMON_NAME),
+			    rs.getString(DBConstants.COMMON_PATH), rs.getLong(DBConstants.FILE_SIZE),
+			    rs.getString(DBConstants.FILE_CHECKSUM),
+			    StorageLayout.fromValue(rs.getString(DBConstants.FILE_LAYOUT)),
+			    rs.getString(DBConstants.FILE_VOLUME_ID), rs.getTimestamp(DBConstants.COMMON_CREATED_ON));
+	}
+    };
+
     /**
      * QueryService instance
      */
     @Autowired
     private QueryService queryService;
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+    /**
+     * UUIDCodec instance
+     */
+    @Autowired
+    private UUIDCodec uuidCodec;
 
     /**
      * Empty construct
@@ -33,45 +143,237 @@ public class DBFileService {
 
     /**
      * Method will add file in database
+     * @param fileUUID UUID of file
      * @param fileName File name
      * @param folderUUID UUID of folder
      * @param personUUID UUID of person
-     * @return Folder path where file is will be saved
+     * @param folderPath Path of folder where file is saved
+     * @param storedFile Stored file holding size and checksum of content
+     * @param layout Layout in which content is stored
+     * @param volumeId ID of volume holding file in hashed layout, <code>null</code> otherwise
+     * @throws InvalidRequestException thrown if file with same name already exists in folder
      * @throws InternalErrorException
-     * @throws ObjectNotFoundException
-     */
-    public String addFileDB(String fileName, String folderUUID, String personUUID)
-		    throws InternalErrorException, ObjectNotFoundException {
-	String folderPath = getFolderPath(folderUUID, personUUID);
-	Map<String, Object> params = new HashMap<>();
-	String fileId = UUIDGenerator.generateUUID();
-	params.put(DBConstants.COMMON_USER_UUID, personUUID);
-	params.put(DBConstants.FILE_FILE_UUID, fileId);
-	params.put(DBConstants.COMMON_CREATED_ON, new Date());
-	params.put(DBConstants.COMMON_PATH, Utils.buildString(folderPath, File.separator, fileName));
-	params.put(DBConstants.COMMON_NAME, fileName);
-	params.put(DBConstants.COMMON_FOLDER_UUID, folderUUID);
+     */
+    public void addFileDB(String fileUUID, String fileName, String folderUUID, String personUUID, String folderPath,
+		    StoredFile storedFile, StorageLayout layout, String volumeId)
+		    throws InvalidRequestException, InternalErrorException {
 	try {
-	    queryService.insertRecordInDatabase(params, DBConstants.FILE_TABLE);
-	    return folderPath;
+	    queryService.insertRecord(DBConstants.FILE_TABLE, INSERT_COLUMNS, uuidCodec.toDatabase(fileUUID),
+			    uuidCodec.toDatabase(personUUID), uuidCodec.toDatabase(folderUUID), fileName,
+			    Utils.buildString(folderPath, File.separator, fileName), storedFile.getSize(),
+			    storedFile.getChecksum(), layout.name(), volumeId, new Date());
 	}
 	catch (ObjectExistsException e) {
-	    throw new InternalErrorException(e);
+	    throw new InvalidRequestException(
+			    Utils.buildString("File already exists. Folder UUID: ", folderUUID, ". Name: [", fileName, "]"),
+			    e);
+	}
+    }
+
+    /**
+     * Method will check if file row exists
+     * @param fileUUID UUID of file
+     * @return <code>TRUE</code> if file row exists
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public boolean fileExists(String fileUUID) throws InternalErrorException {
+	try {
+	    queryService.executeNamedQueryForObject(QueryCatalog.FILE_UUID_BY_UUID, fileUUID);
+	    return true;
+	}
+	catch (ObjectNotFoundException e) {
+	    return false;
 	}
     }
 
     /**
-     * Method will get folder path for given UUID
+     * Method will get file owned by person
+     * @param fileUUID UUID of file
+     * @param personUUID UUID of person
+     * @return File record
+     * @throws ObjectNotFoundException thrown if file doesn't exist or is owned by another person
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public FileRecord getFileDB(String fileUUID, String personUUID)
+		    throws ObjectNotFoundException, InternalErrorException {
+	try {
+	    return queryService.executeQueryAndReturnObject(GET_FILE_QUERY,
+			    Utils.getParametersList(uuidCodec.toDatabase(fileUUID), uuidCodec.toDatabase(personUUID)),
+			    fileMapper);
+	}
+	catch (ObjectNotFoundException e) {
+	    throw new ObjectNotFoundException(Utils.buildString("File not found. UUID: ", fileUUID), e);
+	}
+    }
+
+    /**
+     * Method will get files of folder owned by person
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person
+     * @return Files of folder, ordered by name
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FileRecord> getFilesInFolderDB(String folderUUID, String personUUID) throws InternalErrorException {
+	return queryService.executeQueryAndReturnList(GET_FOLDER_FILES_QUERY,
+			Utils.getParametersList(uuidCodec.toDatabase(folderUUID), uuidCodec.toDatabase(personUUID)),
+			fileMapper);
+    }
+
+    /**
+     * Method will get next batch of mirrored files of all persons
+     * @param afterFileUUID UUID of last file of previous batch, or <code>null</code> for first batch
+     * @param limit Maximum number of files
+     * @return Mirrored files, ordered by UUID
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FileRecord> getMirroredFilesDB(String afterFileUUID, int limit) throws InternalErrorException {
+	Object after = afterFileUUID == null ? (uuidCodec.isBinary() ? new byte[0] : "") :
+			uuidCodec.toDatabase(afterFileUUID);
+	return queryService.executeQueryAndReturnList(GET_MIRRORED_FILES_QUERY,
+			Utils.getParametersList(StorageLayout.MIRROR.name(), after, limit), fileMapper);
+    }
+
+    /**
+     * Method will get batch of all files, used for walking whole table without holding it in memory
+     * @param afterFileUUID UUID of last file of previous batch, or <code>null</code> for first batch
+     * @param limit Maximum number of files
+     * @return Files, ordered by UUID
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FileRecord> getFilesDB(String afterFileUUID, int limit) throws InternalErrorException {
+	Object after = afterFileUUID == null ? (uuidCodec.isBinary() ? new byte[0] : "") :
+			uuidCodec.toDatabase(afterFileUUID);
+	return queryService.executeQueryAndReturnList(GET_FILES_QUERY, Utils.getParametersList(after, limit),
+			fileMapper);
+    }
+
+    /**
+     * Method will check if mirrored file with given name exists in folder
+     * @param folderUUID UUID of folder
+     * @param fileName File name
+     * @return <code>TRUE</code> if mirrored file row exists
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public boolean mirroredFileExistsDB(String folderUUID, String fileName) throws InternalErrorException {
+	return !queryService.executeQueryAndReturnList(GET_MIRRORED_FILE_QUERY,
+			Utils.getParametersList(uuidCodec.toDatabase(folderUUID), fileName,
+					StorageLayout.MIRROR.name()), Object.class).isEmpty();
+    }
+
+    /**
+     * Method will rewrite paths of all files under renamed or moved folder, one update per folder of subtree sent in
+     * JDBC batches. Files are selected by their folder UUID, never by path prefix. Should be called inside
+     * transaction.
+     * @param subtree Moved folder with its descendants
+     * @param oldFolderPath Previous path of folder
+     * @param newFolderPath New path of folder
+     * @return Number of moved files, as reported by driver
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public int moveFilesDB(List<FolderNode> subtree, String oldFolderPath, String newFolderPath)
+		    throws InternalErrorException {
+	String oldPrefix = Utils.buildString(oldFolderPath, File.separator);
+	String newPrefix = Utils.buildString(newFolderPath, File.separator);
+	List<Object[]> rows = new ArrayList<>(subtree.size());
+	for (FolderNode folder : subtree) {
+	    rows.add(new Object[] { newPrefix, oldPrefix, uuidCodec.toDatabase(folder.getFolderUUID()) });
+	}
+	int files = 0;
+	try {
+	    for (int count : queryService.executeBatchUpdate(MOVE_FILES_QUERY, rows)) {
+		files += Math.max(count, 0);
+	    }
+	}
+	catch (ObjectExistsException e) {
+	    throw new InternalErrorException(e.getMessage(), e);
+	}
+	return files;
+    }
+
+    /**
+     * Method will get batch of files of given folders
+     * @param folderUUIDs UUIDs of folders, at least one
+     * @param limit Maximum number of files
+     * @return Files of folders
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FileRecord> getFilesInDB(List<String> folderUUIDs, int limit) throws InternalErrorException {
+	List<Object> params = toFolderParameters(folderUUIDs);
+	params.add(limit);
+	return queryService.executeQueryAndReturnList(Utils.buildString(GET_FILES_IN_QUERY,
+			QueryService.toPlaceholders(folderUUIDs.size()), ") LIMIT ?"), params, fileMapper);
+    }
+
+    /**
+     * Method will count files of given folders
+     * @param folderUUIDs UUIDs of folders, at least one
+     * @return Number of files
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public long countFilesInDB(List<String> folderUUIDs) throws InternalErrorException {
+	List<Long> count = queryService.executeQueryAndReturnList(Utils.buildString(COUNT_FILES_IN_QUERY,
+			QueryService.toPlaceholders(folderUUIDs.size()), ")"), toFolderParameters(folderUUIDs),
+			Long.class);
+	return count.isEmpty() ? 0 : count.get(0);
+    }
+
+    /**
+     * Method will convert folder UUIDs to query parameters
+     * @param folderUUIDs UUIDs of folders
+     * @return Query parameters
+     */
+    private List<Object> toFolderParameters(List<String> folderUUIDs) {
+	List<Object> params = new ArrayList<>(folderUUIDs.size() + 1);
+	for (String folderUUID : folderUUIDs) {
+	    params.add(uuidCodec.toDatabase(folderUUID));
+	}
+	return params;
+    }
+
+    /**
+     * Method will remove files with their custom properties using JDBC batches. Should be called inside transaction.
+     * @param fileUUIDs UUIDs of files
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public void deleteFilesDB(List<String> fileUUIDs) throws InternalErrorException {
+	List<Object[]> rows = new ArrayList<>(fileUUIDs.size());
+	for (String fileUUID : fileUUIDs) {
+	    rows.add(new Object[] { uuidCodec.toDatabase(fileUUID) });
+	}
+	try {
+	    queryService.executeBatchUpdate(DELETE_FILE_PROPERTIES_QUERY, rows);
+	    queryService.executeBatchUpdate(DELETE_FILE_QUERY, rows);
+	}
+	catch (ObjectExistsException e) {
+	    throw new InternalErrorException(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Method will change layout of mirrored file
+     * @param fileUUID UUID of file
+     * @param layout New layout
+     * @param volumeId ID of volume holding file
+     * @return <code>TRUE</code> if file was changed, <code>FALSE</code> if it was removed or isn't mirrored anymore
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public boolean updateMirroredLayoutDB(String fileUUID, StorageLayout layout, String volumeId)
+		    throws InternalErrorException {
+	return queryService.executeDatabaseUpdate(UPDATE_MIRRORED_LAYOUT_QUERY,
+			Utils.getParametersList(layout.name(), volumeId, uuidCodec.toDatabase(fileUUID),
+					StorageLayout.MIRROR.name())) > 0;
+    }
+
+    /**
+     * Method will get folder path for given UUID from folder cache
      * @param folderUUID UUD of folder
      * @param personUUID UUID of person
      * @return Folder path
      * @throws ObjectNotFoundException thrown if object is not found
      * @throws InternalErrorException thrown if some internal error happens
      */
-    private String getFolderPath(String folderUUID, String personUUID)
+    public String getFolderPath(String folderUUID, String personUUID)
 		    throws ObjectNotFoundException, InternalErrorException {
-	String query = Utils.buildString("SELECT ", DBConstants.COMMON_PATH, " FROM ", DBConstants.FOLDER_TABLE,
-			" WHERE ", DBConstants.COMMON_USER_UUID, "=? AND ", DBConstants.COMMON_FOLDER_UUID, "=?");
-	return queryService.executeQueryAndReturnObject(query, Utils.getParametersList(personUUID, folderUUID), String.class);
+	return folderCacheService.getFolder(personUUID, folderUUID).getPath();
     }
 }
@@ -1,6 +1,8 @@
 package rs.marko.lalic.safe.core.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import rs.marko.lalic.safe.core.UUIDCodec;
 import rs.marko.lalic.safe.core.UUIDGenerator;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.constants.DBConstants;
@@ -10,9 +12,11 @@ import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
 import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * Service used for file databased operations
@@ -20,12 +24,98 @@ import java.util.Map;
  */
 public class DBFolderService {
 
+    /**
+     * Columns set when folder is created
+     */
+    private static final String[] INSERT_COLUMNS = { DBConstants.COMMON_FOLDER_UUID, DBConstants.COMMON_USER_UUID,
+		    DBConstants.FOLDER_FOL_FOLDER_ID, DBConstants.COMMON_NAME, DBConstants.COMMON_PATH,
+		    DBConstants.COMMON_CREATED_ON };
+    /**
+     * Query selecting batch of all folders, ordered by UUID
+     */
+    private static final String GET_FOLDERS_QUERY = Utils.buildString("SELECT ", DBConstants.COMMON_FOLDER_UUID, ", ",
+		    DBConstants.FOLDER_FOL_FOLDER_ID, ", ", DBConstants.COMMON_NAME, ", ", DBConstants.COMMON_PATH,
+		    " FROM ", DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_FOLDER_UUID, ">? ORDER BY ",
+		    DBConstants.COMMON_FOLDER_UUID, " LIMIT ?");
+    /**
+     * Query changing parent, name and path of folder
+     */
+    private static final String MOVE_FOLDER_QUERY = Utils.buildString("UPDATE ", DBConstants.FOLDER_TABLE, " SET ",
+		    DBConstants.FOLDER_FOL_FOLDER_ID, "=?, ", DBConstants.COMMON_NAME, "=?, ", DBConstants.COMMON_PATH,
+		    "=? WHERE ", DBConstants.COMMON_FOLDER_UUID, "=? AND ", DBConstants.COMMON_USER_UUID, "=?");
+    /**
+     * Query changing path of descendant folder
+     */
+    private static final String MOVE_DESCENDANT_QUERY = Utils.buildString("UPDATE ", DBConstants.FOLDER_TABLE,
+		    " SET ", DBConstants.COMMON_PATH, "=? WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+    /**
+     * Columns read into folder node
+     */
+    private static final String SELECT_COLUMNS = Utils.buildString(DBConstants.COMMON_FOLDER_UUID, ", ",
+		    DBConstants.FOLDER_FOL_FOLDER_ID, ", ", DBConstants.COMMON_NAME, ", ", DBConstants.COMMON_PATH);
+    /**
+     * Query marking folder of person as deleted
+     */
+    private static final String MARK_DELETED_QUERY = Utils.buildString("UPDATE ", DBConstants.FOLDER_TABLE, " SET ",
+		    DBConstants.FOLDER_DELETED_ON, "=? WHERE ", DBConstants.COMMON_FOLDER_UUID, "=? AND ",
+		    DBConstants.COMMON_USER_UUID, "=? AND ", DBConstants.FOLDER_DELETED_ON, " IS NULL");
+    /**
+     * Start of query selecting children of folders, list of parent UUIDs and closing bracket are appended
+     */
+    private static final String GET_CHILDREN_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.FOLDER_FOL_FOLDER_ID, " IN (");
+    /**
+     * Query selecting persons having folders marked as deleted
+     */
+    private static final String GET_DELETING_PERSONS_QUERY = Utils.buildString("SELECT DISTINCT ",
+		    DBConstants.COMMON_USER_UUID, " FROM ", DBConstants.FOLDER_TABLE, " WHERE ",
+		    DBConstants.FOLDER_DELETED_ON, " IS NOT NULL");
+    /**
+     * Query selecting folders of person marked as deleted
+     */
+    private static final String GET_DELETED_FOLDERS_QUERY = Utils.buildString("SELECT ", SELECT_COLUMNS, " FROM ",
+		    DBConstants.FOLDER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID, "=? AND ",
+		    DBConstants.FOLDER_DELETED_ON, " IS NOT NULL");
+    /**
+     * Query removing shares of folder
+     */
+    private static final String DELETE_SHARES_QUERY = Utils.buildString("DELETE FROM ", DBConstants.SHARED_TABLE,
+		    " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+    /**
+     * Query removing folder
+     */
+    private static final String DELETE_FOLDER_QUERY = Utils.buildString("DELETE FROM ", DBConstants.FOLDER_TABLE,
+		    " WHERE ", DBConstants.COMMON_FOLDER_UUID, "=?");
+    /**
+     * Mapper for folder rows
+     */
+    private final RowMapper<FolderNode> folderMapper = new RowMapper<FolderNode>() {
+	@Override
+	public FolderNode mapRow(ResultSet rs, int rowNum) throws SQLException {
+	    return new FolderNode(uuidCodec.fromDatabase(rs, DBConstants.COMMON_FOLDER_UUID),
+			    uuidCodec.fromDatabase(rs, DBConstants.FOLDER_FOL_FOLDER_ID),
+			    rs.getString(DBConstants.COMMON_NAME), rs.getString(DBConstants.COMMON_PATH));
+	}
+    };
+
     /**
      * QueryService instance
      */
     @Autowired
     private QueryService queryService;
 
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+
+    /**
+     * UUIDCodec instance
+     */
+    @Autowired
+    private UUIDCodec uuidCodec;
+
     /**
      * Empty construct
      */
@@ -39,35 +129,188 @@ public class DBFolderService {
      * @param personUUID     UUID of person
      * @param folderName     Folder name
      * @param isRoot         <code>TRUE</code> if folder is root
+     * @return Created folder, which should be added to folder cache once transaction is committed
      * @throws ObjectExistsException   thrown if folder already exists
      * @throws InternalErrorException  thrown if some internal error happens
      * @throws ObjectNotFoundException thrown if root folder is not found
      * @throws InvalidRequestException thrown if root folder is not directory
      */
-    public void createFolderDB(String rootFolderPath, String personUUID, String folderName, boolean isRoot)
+    public FolderNode createFolderDB(String rootFolderPath, String personUUID, String folderName, boolean isRoot)
 		    throws ObjectExistsException, InternalErrorException, ObjectNotFoundException,
 		    InvalidRequestException {
 	String rootFolderUUID = null;
 	if (!isRoot) {
+	    // Parent is checked in folder tree only, since in hashed layout folders don't exist on disk
 	    File rootFolder = new File(rootFolderPath);
-	    if (!rootFolder.isDirectory()) {
-		throw new InvalidRequestException(Utils.buildString("Parent folder invalid. Path: ", rootFolderPath));
+	    try {
+		rootFolderUUID = getFolderByName(rootFolder.getPath(), rootFolder.getName(), personUUID);
+	    }
+	    catch (ObjectNotFoundException e) {
+		throw new InvalidRequestException(Utils.buildString("Parent folder invalid. Path: ", rootFolderPath),
+				e);
 	    }
-	    rootFolderUUID = getFolderByName(rootFolder.getPath(), rootFolder.getName(), personUUID);
 	}
-	Map<String, Object> params = new HashMap<>();
 	String folderId = UUIDGenerator.generateUUID();
-	params.put(DBConstants.COMMON_USER_UUID, personUUID);
-	params.put(DBConstants.COMMON_FOLDER_UUID, folderId);
-	params.put(DBConstants.COMMON_CREATED_ON, new Date());
-	params.put(DBConstants.COMMON_PATH, Utils.buildString(rootFolderPath, File.separator, folderName));
-	params.put(DBConstants.COMMON_NAME, folderName);
-	params.put(DBConstants.FOLDER_FOL_FOLDER_ID, rootFolderUUID);
-	queryService.insertRecordInDatabase(params, DBConstants.FOLDER_TABLE);
+	String path = Utils.buildString(rootFolderPath, File.separator, folderName);
+	queryService.insertRecord(DBConstants.FOLDER_TABLE, INSERT_COLUMNS, uuidCodec.toDatabase(folderId),
+			uuidCodec.toDatabase(personUUID), uuidCodec.toDatabase(rootFolderUUID), folderName, path, new Date());
+	return new FolderNode(folderId, rootFolderUUID, folderName, path);
     }
 
     /**
-     * Method will get folder UUID for
+     * Method will get batch of all folders, used for walking whole table without holding it in memory
+     *
+     * @param afterFolderUUID UUID of last folder of previous batch, or <code>null</code> for first batch
+     * @param limit           Maximum number of folders
+     * @return Folders, ordered by UUID
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FolderNode> getFoldersDB(String afterFolderUUID, int limit) throws InternalErrorException {
+	Object after = afterFolderUUID == null ? (uuidCodec.isBinary() ? new byte[0] : "") :
+			uuidCodec.toDatabase(afterFolderUUID);
+	return queryService.executeQueryAndReturnList(GET_FOLDERS_QUERY, Utils.getParametersList(after, limit),
+			folderMapper);
+    }
+
+    /**
+     * Method will mark folder and its descendants as deleted by UUID, descendants using JDBC batches. Marked folders
+     * are hidden from folder tree, and stay marked until deletion removes them, so interrupted deletion can be
+     * resumed. Should be called inside transaction.
+     *
+     * @param subtree    Folder with its descendants from folder tree, starting with folder
+     * @param personUUID UUID of person
+     * @return Number of marked folders, <code>0</code> if folder was already deleted
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public int markDeletedDB(List<FolderNode> subtree, String personUUID) throws InternalErrorException {
+	Date deletedOn = new Date();
+	Object person = uuidCodec.toDatabase(personUUID);
+	Object folder = uuidCodec.toDatabase(subtree.get(0).getFolderUUID());
+	int marked = queryService.executeDatabaseUpdate(MARK_DELETED_QUERY,
+			Utils.getParametersList(deletedOn, folder, person));
+	if (marked == 0) {
+	    return 0;
+	}
+	List<Object[]> rows = new ArrayList<>(subtree.size() - 1);
+	for (FolderNode descendant : subtree.subList(1, subtree.size())) {
+	    rows.add(new Object[] { deletedOn, uuidCodec.toDatabase(descendant.getFolderUUID()), person });
+	}
+	try {
+	    queryService.executeBatchUpdate(MARK_DELETED_QUERY, rows);
+	}
+	catch (ObjectExistsException e) {
+	    throw new InternalErrorException(e.getMessage(), e);
+	}
+	return subtree.size();
+    }
+
+    /**
+     * Method will get children of folders, read from database so folders hidden from folder tree are included
+     *
+     * @param parentUUIDs UUIDs of parent folders, at least one
+     * @return Children of folders, in no particular order
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FolderNode> getChildrenDB(List<String> parentUUIDs) throws InternalErrorException {
+	List<Object> params = new ArrayList<>(parentUUIDs.size());
+	for (String parentUUID : parentUUIDs) {
+	    params.add(uuidCodec.toDatabase(parentUUID));
+	}
+	return queryService.executeQueryAndReturnList(Utils.buildString(GET_CHILDREN_QUERY,
+			QueryService.toPlaceholders(parentUUIDs.size()), ")"), params, folderMapper);
+    }
+
+    /**
+     * Method will get UUIDs of persons which have folders marked as deleted
+     *
+     * @return UUIDs of persons
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<String> getDeletingPersonsDB() throws InternalErrorException {
+	return queryService.executeQueryAndReturnList(GET_DELETING_PERSONS_QUERY, new RowMapper<String>() {
+	    @Override
+	    public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+		return uuidCodec.fromDatabase(rs, DBConstants.COMMON_USER_UUID);
+	    }
+	});
+    }
+
+    /**
+     * Method will get folders of person marked as deleted
+     *
+     * @param personUUID UUID of person
+     * @return Marked folders
+     * @throws InternalErrorException thrown if some internal error happens
+     */
+    public List<FolderNode> getDeletedFoldersDB(String personUUID) throws InternalErrorException {
+	return queryService.executeQueryAndReturnList(GET_DELETED_FOLDERS_QUERY,
+			Utils.getParametersList(uuidCodec.toDatabase(personUUID)), folderMapper);
+    }
+
+    /**
+     * Method will remove folders with their shares using JDBC batches. Folders are removed in given order, so
+     * children must come before their parents. Should be called inside transaction.
+     *
+     * @param folderUUIDs UUIDs of folders, children first
+     * @throws InternalErrorException thrown if folder still has files or children, or some internal error happens
+     */
+    public void deleteFoldersDB(List<String> folderUUIDs) throws InternalErrorException {
+	List<Object[]> rows = new ArrayList<>(folderUUIDs.size());
+	for (String folderUUID : folderUUIDs) {
+	    rows.add(new Object[] { uuidCodec.toDatabase(folderUUID) });
+	}
+	try {
+	    queryService.executeBatchUpdate(DELETE_SHARES_QUERY, rows);
+	    queryService.executeBatchUpdate(DELETE_FOLDER_QUERY, rows);
+	}
+	catch (ObjectExistsException e) {
+	    throw new InternalErrorException(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Method will rename folder or move it under another parent. Descendant folders are taken from folder tree and
+     * their paths are rewritten by UUID in JDBC batches, so folders of other subtrees are never matched by path,
+     * whatever collation database compares paths with. Should be called inside transaction.
+     *
+     * @param folderUUID UUID of folder
+     * @param parentUUID UUID of new parent folder
+     * @param name       New name of folder
+     * @param oldPath    Current path of folder
+     * @param newPath    New path of folder
+     * @param subtree    Folder with its descendants from folder tree, starting with folder
+     * @param personUUID UUID of person
+     * @return Number of descendant folders
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public int moveFolderDB(String folderUUID, String parentUUID, String name, String oldPath, String newPath,
+		    List<FolderNode> subtree, String personUUID)
+		    throws ObjectNotFoundException, InternalErrorException {
+	int rows = queryService.executeDatabaseUpdate(MOVE_FOLDER_QUERY,
+			Utils.getParametersList(uuidCodec.toDatabase(parentUUID), name, newPath,
+					uuidCodec.toDatabase(folderUUID), uuidCodec.toDatabase(personUUID)));
+	if (rows == 0) {
+	    throw new ObjectNotFoundException(Utils.buildString("Folder not found. Folder UUID: ", folderUUID));
+	}
+	List<Object[]> descendants = new ArrayList<>(subtree.size());
+	for (FolderNode descendant : subtree) {
+	    if (!descendant.getFolderUUID().equals(folderUUID)) {
+		String path = Utils.buildString(newPath, descendant.getPath().substring(oldPath.length()));
+		descendants.add(new Object[] { path, uuidCodec.toDatabase(descendant.getFolderUUID()) });
+	    }
+	}
+	try {
+	    queryService.executeBatchUpdate(MOVE_DESCENDANT_QUERY, descendants);
+	}
+	catch (ObjectExistsException e) {
+	    throw new InternalErrorException(e.getMessage(), e);
+	}
+	return descendants.size();
+    }
+
+    /**
+     * Method will get folder UUID from folder cache
      *
      * @param path       Path of folder
      * @param name       Name of folder
@@ -78,10 +321,11 @@ public class DBFolderService {
      */
     private String getFolderByName(String path, String name, String personUUID)
 		    throws ObjectNotFoundException, InternalErrorException {
-	String query = Utils.buildString("SELECT ", DBConstants.COMMON_FOLDER_UUID, " FROM ", DBConstants.FOLDER_TABLE,
-			" WHERE ", DBConstants.COMMON_NAME, "=? AND ", DBConstants.COMMON_PATH, "=? AND ",
-			DBConstants.COMMON_USER_UUID, "=?");
-	return queryService.executeQueryAndReturnObject(query, Utils.getParametersList(name, path, personUUID),
-			String.class);
+	FolderNode folder = folderCacheService.getFolderByPath(personUUID, path);
+	if (!folder.getName().equals(name)) {
+	    throw new ObjectNotFoundException(
+			    Utils.buildString("Folder not found. Path: ", path, ". Name: [", name, "]"));
+	}
+	return folder.getFolderUUID();
     }
 }
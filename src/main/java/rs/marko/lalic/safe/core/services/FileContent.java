@@ -0,0 +1,113 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Content of stored file, kept either in local file or as object of storage backend. Local file is exposed, so it
+ * can be sent with zero-copy transfer, and all content can be read by ranges.
+ */
+public class FileContent {
+
+    /**
+     * Local file holding content, or <code>null</code> if content is kept by remote backend
+     */
+    private final File file;
+    /**
+     * Storage backend holding content, or <code>null</code> if content is local file
+     */
+    private final StorageBackend backend;
+    /**
+     * Key of object in storage backend
+     */
+    private final String key;
+    /**
+     * Length of content in bytes
+     */
+    private final long length;
+
+    /**
+     * Construct for content kept in local file
+     *
+     * @param file Local file
+     */
+    public FileContent(File file) {
+	this.file = file;
+	this.backend = null;
+	this.key = null;
+	this.length = file.length();
+    }
+
+    /**
+     * Construct for content kept by remote storage backend
+     *
+     * @param backend Storage backend
+     * @param key     Key of object
+     * @param length  Length of object in bytes
+     */
+    public FileContent(StorageBackend backend, String key, long length) {
+	this.file = null;
+	this.backend = backend;
+	this.key = key;
+	this.length = length;
+    }
+
+    /**
+     * Getter for file
+     *
+     * @return Local file holding content, or <code>null</code> if content is kept by remote backend
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Getter for length
+     *
+     * @return Length of content in bytes
+     */
+    public long getLength() {
+	return length;
+    }
+
+    /**
+     * Method will open range of content for reading
+     *
+     * @param offset First byte to read
+     * @param count  Number of bytes to read
+     * @return Stream of requested bytes, which must be closed by caller
+     * @throws IOException thrown if content can't be opened
+     */
+    public InputStream open(long offset, long count) throws IOException {
+	if (file != null) {
+	    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	    channel.position(offset);
+	    return new BoundedInputStream(Channels.newInputStream(channel), count);
+	}
+	try {
+	    return backend.get(key, offset, count);
+	}
+	catch (BaseException e) {
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Method will describe where content is kept
+     *
+     * @return Path of file, or location of object
+     */
+    @Override
+    public String toString() {
+	return file != null ? file.getAbsolutePath() : Utils.buildString(backend.getLocation(), "/", key);
+    }
+}
@@ -0,0 +1,153 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.util.Date;
+
+/**
+ * File row as stored in database
+ */
+public class FileRecord {
+
+    /**
+     * UUID of file
+     */
+    private final String fileUUID;
+    /**
+     * UUID of folder holding file
+     */
+    private final String folderUUID;
+    /**
+     * Name of file
+     */
+    private final String name;
+    /**
+     * Path of file
+     */
+    private final String path;
+    /**
+     * Size of file in bytes
+     */
+    private final long size;
+    /**
+     * Hex encoded SHA-256 checksum of content, <code>null</code> for files added before checksums were kept
+     */
+    private final String checksum;
+    /**
+     * Layout in which content is stored
+     */
+    private final StorageLayout layout;
+    /**
+     * ID of volume holding file in hashed layout, <code>null</code> for other layouts or primary volume
+     */
+    private final String volumeId;
+    /**
+     * Time when file was added
+     */
+    private final Date createdOn;
+
+    /**
+     * Construct for file record
+     *
+     * @param fileUUID   UUID of file
+     * @param folderUUID UUID of folder holding file
+     * @param name       Name of file
+     * @param path       Path of file
+     * @param size       Size of file in bytes
+     * @param checksum   Hex encoded SHA-256 checksum of content
+     * @param layout     Layout in which content is stored
+     * @param volumeId   ID of volume holding file, <code>null</code> for primary volume
+     * @param createdOn  Time when file was added
+     */
+    public FileRecord(String fileUUID, String folderUUID, String name, String path, long size, String checksum,
+		    StorageLayout layout, String volumeId, Date createdOn) {
+	this.fileUUID = fileUUID;
+	this.folderUUID = folderUUID;
+	this.name = name;
+	this.path = path;
+	this.size = size;
+	this.checksum = checksum;
+	this.layout = layout;
+	this.volumeId = volumeId;
+	this.createdOn = createdOn;
+    }
+
+    /**
+     * Getter for file UUID
+     *
+     * @return UUID of file
+     */
+    public String getFileUUID() {
+	return fileUUID;
+    }
+
+    /**
+     * Getter for folder UUID
+     *
+     * @return UUID of folder holding file
+     */
+    public String getFolderUUID() {
+	return folderUUID;
+    }
+
+    /**
+     * Getter for name
+     *
+     * @return Name of file
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Getter for path
+     *
+     * @return Path of file
+     */
+    public String getPath() {
+	return path;
+    }
+
+    /**
+     * Getter for size
+     *
+     * @return Size of file in bytes
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * Getter for checksum
+     *
+     * @return Hex encoded SHA-256 checksum of content, <code>null</code> if it is not known
+     */
+    public String getChecksum() {
+	return checksum;
+    }
+
+    /**
+     * Getter for layout
+     *
+     * @return Layout in which content is stored
+     */
+    public StorageLayout getLayout() {
+	return layout;
+    }
+
+    /**
+     * Getter for volume ID
+     *
+     * @return ID of volume holding file, <code>null</code> for primary volume
+     */
+    public String getVolumeId() {
+	return volumeId;
+    }
+
+    /**
+     * Getter for created on
+     *
+     * @return Time when file was added
+     */
+    public Date getCreatedOn() {
+	return createdOn;
+    }
+}
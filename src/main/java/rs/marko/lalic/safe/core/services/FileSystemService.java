@@ -1,12 +1,21 @@
 package rs.marko.lalic.safe.core.services;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
 
 /**
  * Service used for file system operations
@@ -14,11 +23,33 @@ import java.io.IOException;
  */
 public class FileSystemService {
 
+    /**
+     * Size of buffer used when streaming content to disk
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Digest algorithm used for content checksum
+     */
+    public static final String CHECKSUM_ALGORITHM = "SHA-256";
+    /**
+     * Name of folder, inside root folder, where uploaded content is staged
+     */
+    public static final String STAGING_FOLDER = ".staging";
+    /**
+     * Name of folder, inside root folder, where files of hashed layout are kept
+     */
+    public static final String OBJECTS_FOLDER = ".objects";
+
     /**
      * Root folder loaded on startup
      */
     private File rootFolder;
 
+    /**
+     * Layout used for storing new files
+     */
+    private StorageLayout layout = StorageLayout.MIRROR;
+
     /**
      * Empty construct
      */
@@ -47,6 +78,47 @@ public class FileSystemService {
 	return rootFolder;
     }
 
+    /**
+     * Method will set layout used for storing new files
+     * @param layout Layout name
+     */
+    public void setLayout(String layout) {
+	this.layout = StorageLayout.fromValue(layout);
+    }
+
+    /**
+     * Method will get layout used for storing new files
+     * @return Storage layout
+     */
+    public StorageLayout getLayout() {
+	return layout;
+    }
+
+    /**
+     * Method will get key of hashed layout object for given file UUID. Objects are spread over two levels of 256
+     * folders by hash of UUID, so no folder grows beyond a few thousand entries.
+     * @param fileUUID UUID of file
+     * @return Key of object
+     */
+    public String getHashedKey(String fileUUID) {
+	UUID uuid = UUID.fromString(fileUUID);
+	// SplitMix64 finalizer, spreads sequential time based UUIDs evenly over fan-out
+	long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+	hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+	hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+	hash = hash ^ (hash >>> 31);
+	return Utils.buildString(OBJECTS_FOLDER, "/", String.format("%02x", (hash >>> 56) & 0xff), "/",
+			String.format("%02x", (hash >>> 48) & 0xff), "/", fileUUID);
+    }
+
+    /**
+     * Method will check if folders are created on disk. In hashed layout folder tree exists only in database.
+     * @return <code>TRUE</code> if folders are created on disk
+     */
+    public boolean isFolderTreeOnDisk() {
+	return layout != StorageLayout.HASHED;
+    }
+
     /**
      * Method will create folder in file systemon given destination with given name
      * @param destinationFolderPath Destination folder path
@@ -56,6 +128,9 @@ public class FileSystemService {
      */
     public File createFolder(String destinationFolderPath, String name) throws InvalidRequestException {
 	File destinationFolder = new File(destinationFolderPath);
+	if (!isFolderTreeOnDisk()) {
+	    return new File(destinationFolder, name);
+	}
 	if (!destinationFolder.isDirectory()) {
 	    throw new InvalidRequestException(Utils.buildString("Invalid path provided. Path: ", destinationFolder));
 	}
@@ -72,6 +147,9 @@ public class FileSystemService {
      * @throws InvalidRequestException thrown if some invalid request happens
      */
     public File createFolder(File destinationFolder, String name) throws InvalidRequestException {
+	if (!isFolderTreeOnDisk()) {
+	    return new File(destinationFolder, name);
+	}
 	if (!destinationFolder.isDirectory()) {
 	    throw new InvalidRequestException(Utils.buildString("Invalid path provided. Path: ", destinationFolder));
 	}
@@ -81,14 +159,25 @@ public class FileSystemService {
     }
 
     /**
-     * Method will rename folder
-     * @param folder folder
-     * @param newName New name
-     * @return Renamed folder
+     * Method will rename or move folder with all its content using single atomic rename
+     * @param folder Folder to move
+     * @param target New location of folder, which must not exist
+     * @throws InvalidRequestException thrown if target already exists
+     * @throws InternalErrorException thrown if folder can't be moved
      */
-    public File renameFolder(File folder, String newName) {
-	folder.renameTo(new File(folder.getParentFile(), newName));
-	return folder;
+    public void moveFolder(File folder, File target) throws InvalidRequestException, InternalErrorException {
+	if (target.exists()) {
+	    throw new InvalidRequestException(Utils.buildString("Folder already exists. Path: ", target));
+	}
+	try {
+	    Files.move(folder.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Error occurred while trying to move folder. Source: ",
+					    folder.getAbsolutePath(), ". Destination: ", target.getAbsolutePath(),
+					    ". Message: ", e.getMessage()), e);
+	}
     }
 
     /**
@@ -100,24 +189,137 @@ public class FileSystemService {
     }
 
     /**
-     * Method will add file to folder
+     * Method will return staging file for given name. Staging folder is inside root folder, so staged files can be
+     * moved to their final location with atomic rename.
+     *
+     * @param name Name of staging file
+     * @return Staging file, which doesn't exist yet
+     * @throws InternalErrorException thrown if staging folder can't be created
+     */
+    public File getStagingFile(String name) throws InternalErrorException {
+	File folder = new File(rootFolder, STAGING_FOLDER);
+	if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+	    throw new InternalErrorException(Utils.buildString("Failed to create staging folder. Path: ", folder));
+	}
+	return new File(folder, name);
+    }
+
+    /**
+     * Method will get file in folder, failing if folder doesn't exist or file already exists
+     *
      * @param folderPath Folder path
-     * @param file File
-     * @param name Name of file
-     * @throws InvalidRequestException thrown if creating file in folder fails
-     * @throws InternalErrorException thrown if some internal error happens
-     */
-    public void addFileToFolder(String folderPath, File file, String name)
-		    throws InvalidRequestException, InternalErrorException {
-	File folder = getFolderByPath(folderPath);
-	File newFile = new File(folder, name);
+     * @param name       Name of file
+     * @return File in folder, which doesn't exist yet
+     * @throws InvalidRequestException thrown if folder path is invalid or file already exists
+     */
+    public File getNewFileInFolder(String folderPath, String name) throws InvalidRequestException {
+	File newFile = new File(getFolderByPath(folderPath), name);
+	if (newFile.exists()) {
+	    throw new InvalidRequestException(Utils.buildString("File already exists. Path: ", newFile));
+	}
+	return newFile;
+    }
+
+    /**
+     * Method will write content to given file, calculating length and checksum while writing
+     *
+     * @param file    Destination file
+     * @param content Content to write
+     * @return Stored file with its size and checksum
+     * @throws InternalErrorException thrown if writing fails
+     */
+    public StoredFile writeFile(File file, InputStream content) throws InternalErrorException {
+	MessageDigest digest = createDigest();
+	byte[] buffer = new byte[BUFFER_SIZE];
+	long size = 0;
+	OutputStream out = null;
+	try {
+	    out = new FileOutputStream(file);
+	    int read;
+	    while ((read = content.read(buffer)) != -1) {
+		out.write(buffer, 0, read);
+		digest.update(buffer, 0, read);
+		size += read;
+	    }
+	    out.close();
+	    return new StoredFile(file, size, Utils.toHex(digest.digest()));
+	}
+	catch (IOException e) {
+	    IOUtils.closeQuietly(out);
+	    file.delete();
+	    throw new InternalErrorException(
+			    Utils.buildString("Error occurred while trying to write file. Path: ", file.getAbsolutePath(),
+					    ". Written bytes: ", size, ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will read file once and calculate its size and checksum
+     *
+     * @param file File to read
+     * @return Stored file with its size and checksum
+     * @throws InternalErrorException thrown if reading fails
+     */
+    public StoredFile describeFile(File file) throws InternalErrorException {
+	MessageDigest digest = createDigest();
+	byte[] buffer = new byte[BUFFER_SIZE];
+	long size = 0;
+	InputStream in = null;
 	try {
-	    FileUtils.copyFile(file, newFile);
+	    in = new FileInputStream(file);
+	    int read;
+	    while ((read = in.read(buffer)) != -1) {
+		digest.update(buffer, 0, read);
+		size += read;
+	    }
+	    return new StoredFile(file, size, Utils.toHex(digest.digest()));
 	}
 	catch (IOException e) {
 	    throw new InternalErrorException(
-			    Utils.buildString("Error occurred while trying to create new file. Temp file: ",
-					    file.getAbsolutePath(), ". New file name: ", name));
+			    Utils.buildString("Error occurred while trying to read file. Path: ", file.getAbsolutePath(),
+					    ". Message: ", e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    /**
+     * Method will move file to target location, creating parent folders if needed. Move is done as atomic rename,
+     * so file appears at target location only when it is complete.
+     *
+     * @param file   File to move
+     * @param target Target location
+     * @throws InternalErrorException thrown if moving fails
+     */
+    public void moveFile(File file, File target) throws InternalErrorException {
+	File parent = target.getParentFile();
+	try {
+	    if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+		throw new IOException(Utils.buildString("Failed to create folder ", parent));
+	    }
+	    Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Error occurred while trying to move file. Source: ", file.getAbsolutePath(),
+					    ". Destination: ", target.getAbsolutePath(), ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will create message digest used for calculating content checksum
+     *
+     * @return Message digest
+     * @throws InternalErrorException thrown if digest algorithm is not available
+     */
+    public MessageDigest createDigest() throws InternalErrorException {
+	try {
+	    return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+	}
+	catch (NoSuchAlgorithmException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Checksum algorithm not available: ", CHECKSUM_ALGORITHM), e);
 	}
     }
 
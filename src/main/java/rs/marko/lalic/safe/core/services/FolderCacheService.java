@@ -0,0 +1,218 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.queries.QueryCatalog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of folder trees, used for resolving folder paths and UUIDs without querying database. Tree of person is
+ * loaded with single query on first access, and kept current by processors which create folders. Trees of different
+ * persons are looked up without shared lock. Number of cached trees is bounded, and when it is exceeded trees which
+ * were accessed least recently are evicted, by time of last access recorded on each tree.
+ */
+public class FolderCacheService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(FolderCacheService.class);
+    /**
+     * Default maximum number of cached trees
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    /**
+     * Cached trees mapped by UUID of person
+     */
+    private final ConcurrentMap<String, FolderTree> trees = new ConcurrentHashMap<>();
+    /**
+     * QueryService instance
+     */
+    @Autowired
+    private QueryService queryService;
+    /**
+     * Maximum number of cached trees
+     */
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Empty construct
+     */
+    public FolderCacheService() {
+    }
+
+    /**
+     * Setter for maximum number of cached trees
+     *
+     * @param maxSize Maximum number of cached trees
+     */
+    public void setMaxSize(int maxSize) {
+	this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * Method will get folder of person by its UUID
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of folder
+     * @return Folder
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if tree can't be loaded
+     */
+    public FolderNode getFolder(String personUUID, String folderUUID)
+		    throws ObjectNotFoundException, InternalErrorException {
+	FolderNode folder = getTree(personUUID).getByUUID(folderUUID);
+	if (folder == null) {
+	    throw new ObjectNotFoundException(
+			    Utils.buildString("Folder not found. UUID: ", folderUUID, ". Person UUID: ", personUUID));
+	}
+	return folder;
+    }
+
+    /**
+     * Method will get folder of person with all folders below it, walking tree by parent folder UUID
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of root folder of subtree
+     * @return Folders of subtree in pre-order, starting with given folder
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if tree can't be loaded
+     */
+    public List<FolderNode> getSubtree(String personUUID, String folderUUID)
+		    throws ObjectNotFoundException, InternalErrorException {
+	return getTree(personUUID).getSubtree(getFolder(personUUID, folderUUID));
+    }
+
+    /**
+     * Method will get folder of person by its path
+     *
+     * @param personUUID UUID of person
+     * @param path       Path of folder
+     * @return Folder
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InternalErrorException  thrown if tree can't be loaded
+     */
+    public FolderNode getFolderByPath(String personUUID, String path)
+		    throws ObjectNotFoundException, InternalErrorException {
+	FolderNode folder = getTree(personUUID).getByPath(path);
+	if (folder == null) {
+	    throw new ObjectNotFoundException(
+			    Utils.buildString("Folder not found. Path: ", path, ". Person UUID: ", personUUID));
+	}
+	return folder;
+    }
+
+    /**
+     * Method will add folder to cached tree of person. Should be called after folder is committed. If tree is not
+     * cached, nothing is done, since folder will be read when tree is loaded.
+     *
+     * @param personUUID UUID of person
+     * @param folder     Created folder
+     */
+    public void addFolder(String personUUID, FolderNode folder) {
+	FolderTree tree = trees.get(personUUID);
+	if (tree != null) {
+	    tree.add(folder);
+	}
+    }
+
+    /**
+     * Method will update cached tree of person after folder was renamed or moved. Should be called after move is
+     * committed. If tree is not cached, nothing is done.
+     *
+     * @param personUUID UUID of person
+     * @param folder     Folder with new parent, name and path
+     */
+    public void moveFolder(String personUUID, FolderNode folder) {
+	FolderTree tree = trees.get(personUUID);
+	if (tree != null) {
+	    tree.move(folder);
+	}
+    }
+
+    /**
+     * Method will remove folder with all its descendants from cached tree of person. Should be called after folders
+     * are marked as deleted. If tree is not cached, nothing is done.
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of removed folder
+     */
+    public void removeFolder(String personUUID, String folderUUID) {
+	FolderTree tree = trees.get(personUUID);
+	if (tree != null) {
+	    tree.remove(folderUUID);
+	}
+    }
+
+    /**
+     * Method will remove tree of person from cache
+     *
+     * @param personUUID UUID of person
+     */
+    public void evict(String personUUID) {
+	trees.remove(personUUID);
+    }
+
+    /**
+     * Method will get tree of person, loading it if needed. Tree is put in cache before it is loaded, so folders
+     * committed during load are added after load finishes and are not lost.
+     *
+     * @param personUUID UUID of person
+     * @return Loaded tree
+     * @throws InternalErrorException thrown if tree can't be loaded
+     */
+    private FolderTree getTree(String personUUID) throws InternalErrorException {
+	FolderTree tree = trees.get(personUUID);
+	if (tree == null) {
+	    FolderTree created = new FolderTree();
+	    tree = trees.putIfAbsent(personUUID, created);
+	    if (tree == null) {
+		tree = created;
+		evictLeastRecentlyUsed();
+	    }
+	}
+	tree.touch();
+	synchronized (tree) {
+	    if (!tree.isLoaded()) {
+		List<FolderNode> folders = queryService.executeNamedQuery(QueryCatalog.FOLDERS_BY_PERSON, personUUID);
+		for (FolderNode folder : folders) {
+		    tree.add(folder);
+		}
+		tree.markLoaded();
+		if (LOGGER.isDebugEnabled()) {
+		    LOGGER.debug(Utils.buildString("Folder tree loaded. Person UUID: ", personUUID, ". Folders: ",
+				    folders.size()));
+		}
+	    }
+	}
+	return tree;
+    }
+
+    /**
+     * Method will evict trees accessed least recently while there are more trees than allowed. Trees are scanned
+     * without lock, so under concurrent access order of eviction is approximate.
+     */
+    private void evictLeastRecentlyUsed() {
+	while (trees.size() > maxSize) {
+	    Map.Entry<String, FolderTree> eldest = null;
+	    for (Map.Entry<String, FolderTree> entry : trees.entrySet()) {
+		if (eldest == null || entry.getValue().getLastAccess() < eldest.getValue().getLastAccess()) {
+		    eldest = entry;
+		}
+	    }
+	    if (eldest == null) {
+		return;
+	    }
+	    if (trees.remove(eldest.getKey(), eldest.getValue()) && LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Folder tree evicted. Person UUID: ", eldest.getKey()));
+	    }
+	}
+    }
+}
@@ -0,0 +1,721 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletion of folders with all their content on background thread. Folder and its descendants are marked as deleted
+ * by UUID in one transaction, so they disappear at once, and deletion job then removes their files and rows in
+ * batches. Subtree is always selected by folder UUIDs, never by path prefix.
+ * Content of each batch is removed in parallel first, then its rows are removed in short transaction, files before
+ * folders and deepest folders first, so foreign keys hold at every step and interrupted job can simply be run again.
+ * Jobs left unfinished by restart are resumed on startup. All storage operations go through shared rate limiter.
+ */
+public class FolderDeletionService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(FolderDeletionService.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Maximum number of jobs kept for status
+     */
+    private static final int MAX_KEPT_JOBS = 1000;
+    /**
+     * Number of times files are removed again if files were added to folder while it was deleted
+     */
+    private static final int MAX_ATTEMPTS = 3;
+    /**
+     * Default number of threads removing content
+     */
+    public static final int DEFAULT_THREADS = 4;
+    /**
+     * Default number of rows removed in one transaction
+     */
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    /**
+     * Status of job waiting for previous jobs
+     */
+    public static final String STATUS_QUEUED = "QUEUED";
+    /**
+     * Status of running job
+     */
+    public static final String STATUS_RUNNING = "RUNNING";
+    /**
+     * Status of finished job
+     */
+    public static final String STATUS_FINISHED = "FINISHED";
+    /**
+     * Status of failed job, which is run again on next startup
+     */
+    public static final String STATUS_FAILED = "FAILED";
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * DBFolderService instance
+     */
+    @Autowired
+    private DBFolderService dBFolderService;
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * QuotaService instance
+     */
+    @Autowired
+    private QuotaService quotaService;
+    /**
+     * TransactionTemplate instance
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    /**
+     * Number of threads removing content
+     */
+    private int threads = DEFAULT_THREADS;
+    /**
+     * Maximum number of storage operations per second, <code>0</code> for no limit
+     */
+    private long ioRate;
+    /**
+     * Number of rows removed in one transaction
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Jobs mapped by their ID, oldest first
+     */
+    private final Map<String, DeletionJob> jobs = new LinkedHashMap<String, DeletionJob>() {
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<String, DeletionJob> eldest) {
+	    return size() > MAX_KEPT_JOBS;
+	}
+    };
+    /**
+     * Thread running jobs one by one
+     */
+    private ExecutorService jobExecutor;
+    /**
+     * Threads removing content of jobs
+     */
+    private ExecutorService workers;
+    /**
+     * Rate limiter shared by all jobs
+     */
+    private RateLimiter limiter;
+
+    /**
+     * Empty construct
+     */
+    public FolderDeletionService() {
+    }
+
+    /**
+     * Setter for number of threads removing content
+     *
+     * @param threads Number of threads
+     */
+    public void setThreads(int threads) {
+	this.threads = threads > 0 ? threads : DEFAULT_THREADS;
+    }
+
+    /**
+     * Setter for I/O rate limit
+     *
+     * @param ioRate Maximum number of storage operations per second, <code>0</code> for no limit
+     */
+    public void setIoRate(long ioRate) {
+	this.ioRate = Math.max(ioRate, 0);
+    }
+
+    /**
+     * Setter for batch size
+     *
+     * @param batchSize Number of rows removed in one transaction
+     */
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Method will start threads and resume deletions left unfinished by previous run. Only topmost marked folders
+     * are deleted, since their jobs remove marked descendants as well.
+     *
+     * @throws InternalErrorException thrown if marked folders can't be read
+     */
+    public void init() throws InternalErrorException {
+	jobExecutor = Executors.newSingleThreadExecutor();
+	workers = Executors.newFixedThreadPool(threads);
+	limiter = new RateLimiter(ioRate);
+	for (String personUUID : dBFolderService.getDeletingPersonsDB()) {
+	    List<FolderNode> folders = dBFolderService.getDeletedFoldersDB(personUUID);
+	    Set<String> folderUUIDs = new HashSet<>();
+	    for (FolderNode folder : folders) {
+		folderUUIDs.add(folder.getFolderUUID());
+	    }
+	    for (FolderNode folder : folders) {
+		if (!folderUUIDs.contains(folder.getParentUUID())) {
+		    LOGGER.info(Utils.buildString("Resuming folder deletion. Folder UUID: ", folder.getFolderUUID(),
+				    ". Person UUID: ", personUUID));
+		    submit(new DeletionJob(personUUID, folder));
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method will stop running job. Its folders stay marked, so it is resumed on next startup.
+     */
+    public void stop() {
+	if (jobExecutor != null) {
+	    jobExecutor.shutdownNow();
+	    workers.shutdownNow();
+	}
+    }
+
+    /**
+     * Method will hide folder with all its descendants and start job deleting them
+     *
+     * @param folderUUID UUID of folder
+     * @param personUUID UUID of person
+     * @return Job status
+     * @throws ObjectNotFoundException thrown if folder is not found
+     * @throws InvalidRequestException thrown if folder is root folder of person
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public ObjectNode delete(String folderUUID, String personUUID) throws BaseException {
+	FolderNode folder = folderCacheService.getFolder(personUUID, folderUUID);
+	if (folder.getParentUUID() == null) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Root folder of person can't be deleted. Folder UUID: ", folderUUID));
+	}
+	List<FolderNode> subtree = folderCacheService.getSubtree(personUUID, folderUUID);
+	int marked;
+	try {
+	    marked = (Integer) transactionTemplate.execute(new MarkDeletedTransaction(subtree, personUUID));
+	}
+	catch (RuntimeException e) {
+	    throw toInternalError(e);
+	}
+	if (marked == 0) {
+	    throw new ObjectNotFoundException(Utils.buildString("Folder not found. Folder UUID: ", folderUUID));
+	}
+	folderCacheService.removeFolder(personUUID, folderUUID);
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Folder marked as deleted. Folder UUID: ", folderUUID, ". Folders: ",
+			    marked));
+	}
+	DeletionJob job = new DeletionJob(personUUID, folder);
+	submit(job);
+	return getStatus(job);
+    }
+
+    /**
+     * Method will return status of deletion job
+     *
+     * @param jobId      ID of job
+     * @param personUUID UUID of person who started job
+     * @return Job status
+     * @throws ObjectNotFoundException thrown if job is not found, or was started by another person
+     */
+    public ObjectNode getJob(String jobId, String personUUID) throws ObjectNotFoundException {
+	DeletionJob job;
+	synchronized (jobs) {
+	    job = jobs.get(jobId);
+	}
+	if (job == null || !job.personUUID.equals(personUUID)) {
+	    throw new ObjectNotFoundException(Utils.buildString("Folder deletion not found. Job ID: ", jobId));
+	}
+	return getStatus(job);
+    }
+
+    /**
+     * Method will keep job for status and queue it for running
+     *
+     * @param job Deletion job
+     */
+    private void submit(final DeletionJob job) {
+	synchronized (jobs) {
+	    jobs.put(job.jobId, job);
+	}
+	jobExecutor.execute(new Runnable() {
+	    @Override
+	    public void run() {
+		runJob(job);
+	    }
+	});
+    }
+
+    /**
+     * Method will build status of job
+     *
+     * @param job Deletion job
+     * @return Job status
+     */
+    private ObjectNode getStatus(DeletionJob job) {
+	ObjectNode status = MAPPER.createObjectNode();
+	status.put(JsonConstants.FIELD_JOB_ID, job.jobId);
+	status.put(JsonConstants.FIELD_FOLDER_UUID, job.folder.getFolderUUID());
+	status.put(JsonConstants.FIELD_STATUS, job.status);
+	status.put(JsonConstants.FIELD_TOTAL_FILES, job.totalFiles);
+	status.put(JsonConstants.FIELD_DELETED_FILES, job.deletedFiles.get());
+	status.put(JsonConstants.FIELD_TOTAL_FOLDERS, job.totalFolders);
+	status.put(JsonConstants.FIELD_DELETED_FOLDERS, job.deletedFolders.get());
+	status.put(JsonConstants.FIELD_FAILED, job.failed.get());
+	if (job.startedOn > 0) {
+	    status.put(JsonConstants.FIELD_STARTED_ON, job.startedOn);
+	}
+	if (job.finishedOn > 0) {
+	    status.put(JsonConstants.FIELD_FINISHED_ON, job.finishedOn);
+	}
+	if (job.message != null) {
+	    status.put(JsonConstants.FIELD_MESSAGE, job.message);
+	}
+	return status;
+    }
+
+    /**
+     * Method will delete files and then folders of job. Files uploaded or folders created just before folder was
+     * marked can still be committed after content was removed, in which case folders can't be removed and subtree
+     * is read and removed again.
+     *
+     * @param job Deletion job
+     */
+    private void runJob(DeletionJob job) {
+	job.status = STATUS_RUNNING;
+	job.startedOn = System.currentTimeMillis();
+	try {
+	    for (int attempt = 1; ; attempt++) {
+		List<FolderNode> folders = getSubtree(job);
+		List<String> folderUUIDs = new ArrayList<>(folders.size());
+		for (FolderNode folder : folders) {
+		    folderUUIDs.add(folder.getFolderUUID());
+		}
+		job.totalFolders = folders.size();
+		if (attempt == 1) {
+		    job.totalFiles = countFiles(folderUUIDs);
+		}
+		deleteFiles(job, folderUUIDs);
+		// Subtree is read level by level, so in reversed order children come before their parents
+		Collections.reverse(folders);
+		try {
+		    deleteFolders(job, folders);
+		    break;
+		}
+		catch (InternalErrorException e) {
+		    if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException(e.getMessage());
+		    }
+		    if (attempt == MAX_ATTEMPTS) {
+			throw e;
+		    }
+		    LOGGER.warn(Utils.buildString("Folders couldn't be removed, removing files added meanwhile. ",
+				    "Folder UUID: ", job.folder.getFolderUUID(), ". Message: ", e.getMessage()));
+		}
+	    }
+	    job.status = STATUS_FINISHED;
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    job.status = STATUS_FAILED;
+	    job.message = "Folder deletion stopped, it will be resumed on next startup.";
+	    LOGGER.warn(Utils.buildString(job.message, " Folder UUID: ", job.folder.getFolderUUID()));
+	}
+	catch (BaseException | ExecutionException e) {
+	    job.status = STATUS_FAILED;
+	    job.message = e.getMessage();
+	    LOGGER.error(Utils.buildString("Folder deletion failed. Folder UUID: ", job.folder.getFolderUUID(),
+			    ". Message: ", e.getMessage()), e);
+	}
+	finally {
+	    job.finishedOn = System.currentTimeMillis();
+	}
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Folder deletion ", job.status, ". Folder UUID: ", job.folder.getFolderUUID(),
+			    ". Files: ", job.deletedFiles.get(), ". Folders: ", job.deletedFolders.get(), ". Failed: ",
+			    job.failed.get()));
+	}
+    }
+
+    /**
+     * Method will read folder of job with all its descendants from database, walking them by parent folder UUID
+     * level by level, so folders hidden from folder tree are included
+     *
+     * @param job Deletion job
+     * @return Folders of subtree, each after its parent
+     * @throws InternalErrorException thrown if folders can't be read
+     */
+    private List<FolderNode> getSubtree(DeletionJob job) throws InternalErrorException {
+	List<FolderNode> folders = new ArrayList<>();
+	folders.add(job.folder);
+	for (int start = 0; start < folders.size(); start += batchSize) {
+	    List<String> parentUUIDs = new ArrayList<>(batchSize);
+	    for (FolderNode folder : folders.subList(start, Math.min(start + batchSize, folders.size()))) {
+		parentUUIDs.add(folder.getFolderUUID());
+	    }
+	    folders.addAll(dBFolderService.getChildrenDB(parentUUIDs));
+	}
+	return folders;
+    }
+
+    /**
+     * Method will count files of folders, batch of folders at a time
+     *
+     * @param folderUUIDs UUIDs of folders
+     * @return Number of files
+     * @throws InternalErrorException thrown if files can't be counted
+     */
+    private long countFiles(List<String> folderUUIDs) throws InternalErrorException {
+	long files = 0;
+	for (int start = 0; start < folderUUIDs.size(); start += batchSize) {
+	    files += dBFileService.countFilesInDB(
+			    folderUUIDs.subList(start, Math.min(start + batchSize, folderUUIDs.size())));
+	}
+	return files;
+    }
+
+    /**
+     * Method will remove files of folders batch by batch, until none is left. Content of batch is removed first, so
+     * rows are never removed while their content is still on disk.
+     *
+     * @param job         Deletion job
+     * @param folderUUIDs UUIDs of folders of job
+     * @throws InterruptedException   thrown if job is stopped
+     * @throws ExecutionException     thrown if content removal fails unexpectedly
+     * @throws InternalErrorException thrown if rows can't be read or removed
+     * @throws BaseException          thrown if quota of person can't be loaded
+     */
+    private void deleteFiles(DeletionJob job, List<String> folderUUIDs)
+		    throws InterruptedException, ExecutionException, BaseException {
+	for (int start = 0; start < folderUUIDs.size(); start += batchSize) {
+	    List<String> chunk = folderUUIDs.subList(start, Math.min(start + batchSize, folderUUIDs.size()));
+	    List<FileRecord> batch;
+	    do {
+		batch = dBFileService.getFilesInDB(chunk, batchSize);
+		deleteBatch(job, batch);
+	    }
+	    while (batch.size() == batchSize);
+	}
+    }
+
+    /**
+     * Method will remove content of batch of files in parallel, then their rows in one transaction
+     *
+     * @param job   Deletion job
+     * @param batch Files to remove
+     * @throws InterruptedException   thrown if job is stopped
+     * @throws ExecutionException     thrown if content removal fails unexpectedly
+     * @throws InternalErrorException thrown if rows can't be removed
+     * @throws BaseException          thrown if quota of person can't be loaded
+     */
+    private void deleteBatch(DeletionJob job, List<FileRecord> batch)
+		    throws InterruptedException, ExecutionException, BaseException {
+	List<Callable<Boolean>> tasks = new ArrayList<>(batch.size());
+	long size = 0;
+	for (final FileRecord record : batch) {
+	    size += record.getSize();
+	    if (record.getLayout() == StorageLayout.CONTENT) {
+		// Blob may be shared, it is removed by garbage collection once references are released
+		continue;
+	    }
+	    tasks.add(new Callable<Boolean>() {
+		@Override
+		public Boolean call() throws InterruptedException {
+		    limiter.acquire();
+		    return removeContent(record);
+		}
+	    });
+	}
+	for (Future<Boolean> result : workers.invokeAll(tasks)) {
+	    if (!result.get()) {
+		job.failed.incrementAndGet();
+	    }
+	}
+	try {
+	    transactionTemplate.execute(new DeleteFilesTransaction(batch));
+	}
+	catch (RuntimeException e) {
+	    throw toInternalError(e);
+	}
+	quotaService.free(job.personUUID, size);
+	job.deletedFiles.addAndGet(batch.size());
+    }
+
+    /**
+     * Method will remove folders of job in batches, children first. Folders left on disk are removed before their
+     * rows, together with any files no row points to.
+     *
+     * @param job     Deletion job
+     * @param folders Folders of job, children first
+     * @throws InterruptedException   thrown if job is stopped
+     * @throws InternalErrorException thrown if some folder still has files, or rows can't be removed
+     */
+    private void deleteFolders(DeletionJob job, List<FolderNode> folders)
+		    throws InterruptedException, InternalErrorException {
+	job.deletedFolders.set(0);
+	for (int start = 0; start < folders.size(); start += batchSize) {
+	    List<FolderNode> batch = folders.subList(start, Math.min(start + batchSize, folders.size()));
+	    List<String> folderUUIDs = new ArrayList<>(batch.size());
+	    for (FolderNode folder : batch) {
+		removeFolderOnDisk(job, new File(folder.getPath()));
+		folderUUIDs.add(folder.getFolderUUID());
+	    }
+	    try {
+		transactionTemplate.execute(new DeleteFoldersTransaction(folderUUIDs));
+	    }
+	    catch (RuntimeException e) {
+		throw toInternalError(e);
+	    }
+	    job.deletedFolders.addAndGet(batch.size());
+	}
+    }
+
+    /**
+     * Method will unwrap error thrown by transaction
+     *
+     * @param e Error thrown by transaction
+     * @return Internal error
+     */
+    private InternalErrorException toInternalError(RuntimeException e) {
+	if (e.getCause() instanceof InternalErrorException) {
+	    return (InternalErrorException) e.getCause();
+	}
+	return new InternalErrorException(Utils.buildString("Transaction failed. Message: ", e.getMessage()), e);
+    }
+
+    /**
+     * Method will remove content of file kept in mirrored or hashed layout. Content which is already gone is
+     * treated as removed, so batch can be removed again after interruption.
+     *
+     * @param record File to remove
+     * @return <code>TRUE</code> if content was removed
+     */
+    private boolean removeContent(FileRecord record) {
+	try {
+	    if (record.getLayout() == StorageLayout.HASHED) {
+		volumePoolService.getVolume(record.getVolumeId()).getBackend()
+				.delete(fileSystemService.getHashedKey(record.getFileUUID()));
+	    }
+	    else {
+		Files.deleteIfExists(new File(record.getPath()).toPath());
+	    }
+	    return true;
+	}
+	catch (IOException | InternalErrorException e) {
+	    LOGGER.warn(Utils.buildString("Failed to remove content of deleted file. File UUID: ", record.getFileUUID(),
+			    ". Message: ", e.getMessage()));
+	    return false;
+	}
+    }
+
+    /**
+     * Method will remove folder from disk if it is there. Folder holds only files without rows at this point, such
+     * as leftovers of failed uploads, so they are removed with it.
+     *
+     * @param job    Deletion job
+     * @param folder Folder to remove
+     * @throws InterruptedException thrown if job is stopped
+     */
+    private void removeFolderOnDisk(DeletionJob job, File folder) throws InterruptedException {
+	limiter.acquire();
+	if (!folder.isDirectory()) {
+	    return;
+	}
+	File[] files = folder.listFiles();
+	try {
+	    if (files != null) {
+		for (File file : files) {
+		    if (file.isFile()) {
+			limiter.acquire();
+			Files.deleteIfExists(file.toPath());
+		    }
+		}
+	    }
+	    Files.deleteIfExists(folder.toPath());
+	}
+	catch (DirectoryNotEmptyException e) {
+	    job.failed.incrementAndGet();
+	    LOGGER.warn(Utils.buildString("Deleted folder is not empty, it is kept on disk. Path: ", folder));
+	}
+	catch (IOException e) {
+	    job.failed.incrementAndGet();
+	    LOGGER.warn(Utils.buildString("Failed to remove deleted folder from disk. Path: ", folder, ". Message: ",
+			    e.getMessage()));
+	}
+    }
+
+    /**
+     * Deletion of one folder with its content
+     */
+    private static class DeletionJob {
+	private final String jobId = UUIDGenerator.generateUUID();
+	private final String personUUID;
+	private final FolderNode folder;
+	private volatile String status = STATUS_QUEUED;
+	private volatile String message;
+	private volatile long totalFiles;
+	private volatile long totalFolders;
+	private final AtomicLong deletedFiles = new AtomicLong();
+	private final AtomicLong deletedFolders = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile long startedOn;
+	private volatile long finishedOn;
+
+	/**
+	 * Construct for deletion job
+	 *
+	 * @param personUUID UUID of person owning folder
+	 * @param folder     Deleted folder
+	 */
+	public DeletionJob(String personUUID, FolderNode folder) {
+	    this.personUUID = personUUID;
+	    this.folder = folder;
+	}
+    }
+
+    /**
+     * Transaction marking folder and its descendants as deleted
+     */
+    private class MarkDeletedTransaction implements TransactionCallback {
+	private List<FolderNode> subtree;
+	private String personUUID;
+
+	/**
+	 * Construct for mark deleted transaction
+	 *
+	 * @param subtree    Folder with its descendants, starting with folder
+	 * @param personUUID UUID of person
+	 */
+	public MarkDeletedTransaction(List<FolderNode> subtree, String personUUID) {
+	    this.subtree = subtree;
+	    this.personUUID = personUUID;
+	}
+
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		return dBFolderService.markDeletedDB(subtree, personUUID);
+	    }
+	    catch (InternalErrorException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+
+    /**
+     * Transaction removing rows of batch of files and releasing their blob references
+     */
+    private class DeleteFilesTransaction implements TransactionCallback {
+	private List<FileRecord> batch;
+
+	/**
+	 * Construct for delete files transaction
+	 *
+	 * @param batch Files to remove
+	 */
+	public DeleteFilesTransaction(List<FileRecord> batch) {
+	    this.batch = batch;
+	}
+
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		List<String> fileUUIDs = new ArrayList<>(batch.size());
+		for (FileRecord record : batch) {
+		    if (record.getLayout() == StorageLayout.CONTENT) {
+			contentStoreService.releaseReference(record.getChecksum());
+		    }
+		    fileUUIDs.add(record.getFileUUID());
+		}
+		dBFileService.deleteFilesDB(fileUUIDs);
+		return null;
+	    }
+	    catch (InternalErrorException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+
+    /**
+     * Transaction removing rows of batch of folders
+     */
+    private class DeleteFoldersTransaction implements TransactionCallback {
+	private List<String> folderUUIDs;
+
+	/**
+	 * Construct for delete folders transaction
+	 *
+	 * @param folderUUIDs UUIDs of folders to remove, children first
+	 */
+	public DeleteFoldersTransaction(List<String> folderUUIDs) {
+	    this.folderUUIDs = folderUUIDs;
+	}
+
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		dBFolderService.deleteFoldersDB(folderUUIDs);
+		return null;
+	    }
+	    catch (InternalErrorException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+}
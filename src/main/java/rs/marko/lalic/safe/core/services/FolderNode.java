@@ -0,0 +1,75 @@
+package rs.marko.lalic.safe.core.services;
+
+/**
+ * Folder row kept in folder tree cache
+ */
+public class FolderNode {
+
+    /**
+     * UUID of folder
+     */
+    private final String folderUUID;
+    /**
+     * UUID of parent folder, <code>null</code> for root folder of person
+     */
+    private final String parentUUID;
+    /**
+     * Name of folder
+     */
+    private final String name;
+    /**
+     * Path of folder
+     */
+    private final String path;
+
+    /**
+     * Construct for folder node
+     *
+     * @param folderUUID UUID of folder
+     * @param parentUUID UUID of parent folder, <code>null</code> for root folder of person
+     * @param name       Name of folder
+     * @param path       Path of folder
+     */
+    public FolderNode(String folderUUID, String parentUUID, String name, String path) {
+	this.folderUUID = folderUUID;
+	this.parentUUID = parentUUID;
+	this.name = name;
+	this.path = path;
+    }
+
+    /**
+     * Getter for folder UUID
+     *
+     * @return UUID of folder
+     */
+    public String getFolderUUID() {
+	return folderUUID;
+    }
+
+    /**
+     * Getter for parent UUID
+     *
+     * @return UUID of parent folder, <code>null</code> for root folder of person
+     */
+    public String getParentUUID() {
+	return parentUUID;
+    }
+
+    /**
+     * Getter for name
+     *
+     * @return Name of folder
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Getter for path
+     *
+     * @return Path of folder
+     */
+    public String getPath() {
+	return path;
+    }
+}
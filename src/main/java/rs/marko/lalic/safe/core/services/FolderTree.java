@@ -0,0 +1,192 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folder tree of one person, indexed by folder UUID and by path. Tree is created empty and loaded once, all access
+ * to folders is synchronized on tree, so folders added while tree is being loaded wait for load to finish. Time of
+ * last access is kept apart from folders, so it is updated without lock.
+ */
+class FolderTree {
+
+    /**
+     * Folders mapped by their UUID
+     */
+    private final Map<String, FolderNode> byUUID = new HashMap<>();
+    /**
+     * Folders mapped by their normalized path
+     */
+    private final Map<String, FolderNode> byPath = new HashMap<>();
+    /**
+     * UUIDs of child folders mapped by UUID of their parent
+     */
+    private final Map<String, Set<String>> children = new HashMap<>();
+    /**
+     * Flag if tree was loaded from database
+     */
+    private boolean loaded;
+    /**
+     * Time in milliseconds tree was last accessed
+     */
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Method will record access to tree
+     */
+    void touch() {
+	lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Getter for time of last access
+     *
+     * @return Time in milliseconds tree was last accessed
+     */
+    long getLastAccess() {
+	return lastAccess;
+    }
+
+    /**
+     * Getter for loaded flag
+     *
+     * @return <code>TRUE</code> if tree was loaded from database
+     */
+    synchronized boolean isLoaded() {
+	return loaded;
+    }
+
+    /**
+     * Method will mark tree as loaded
+     */
+    synchronized void markLoaded() {
+	loaded = true;
+    }
+
+    /**
+     * Method will add folder to tree, replacing folder with same UUID
+     *
+     * @param folder Folder to add
+     */
+    synchronized void add(FolderNode folder) {
+	FolderNode previous = byUUID.put(folder.getFolderUUID(), folder);
+	if (previous != null) {
+	    byPath.remove(normalize(previous.getPath()));
+	    Set<String> siblings = children.get(previous.getParentUUID());
+	    if (siblings != null) {
+		siblings.remove(previous.getFolderUUID());
+	    }
+	}
+	byPath.put(normalize(folder.getPath()), folder);
+	if (folder.getParentUUID() != null) {
+	    Set<String> siblings = children.get(folder.getParentUUID());
+	    if (siblings == null) {
+		siblings = new LinkedHashSet<>();
+		children.put(folder.getParentUUID(), siblings);
+	    }
+	    siblings.add(folder.getFolderUUID());
+	}
+    }
+
+    /**
+     * Method will replace folder with its renamed or moved version, and rebuild paths of all its descendants
+     *
+     * @param folder Folder with new parent, name and path
+     */
+    synchronized void move(FolderNode folder) {
+	FolderNode previous = byUUID.get(folder.getFolderUUID());
+	if (previous == null) {
+	    add(folder);
+	    return;
+	}
+	List<FolderNode> subtree = getSubtree(previous);
+	add(folder);
+	// Subtree is in pre-order, so parent of each descendant already has its new path
+	for (int i = 1; i < subtree.size(); i++) {
+	    FolderNode descendant = subtree.get(i);
+	    FolderNode parent = byUUID.get(descendant.getParentUUID());
+	    add(new FolderNode(descendant.getFolderUUID(), descendant.getParentUUID(), descendant.getName(),
+			    new File(parent.getPath(), descendant.getName()).getPath()));
+	}
+    }
+
+    /**
+     * Method will remove folder with all its descendants from tree
+     *
+     * @param folderUUID UUID of folder
+     */
+    synchronized void remove(String folderUUID) {
+	FolderNode folder = byUUID.get(folderUUID);
+	if (folder == null) {
+	    return;
+	}
+	for (FolderNode removed : getSubtree(folder)) {
+	    byUUID.remove(removed.getFolderUUID());
+	    byPath.remove(normalize(removed.getPath()));
+	    children.remove(removed.getFolderUUID());
+	}
+	Set<String> siblings = children.get(folder.getParentUUID());
+	if (siblings != null) {
+	    siblings.remove(folderUUID);
+	}
+    }
+
+    /**
+     * Method will get folder by UUID
+     *
+     * @param folderUUID UUID of folder
+     * @return Folder, or <code>null</code> if it is not in tree
+     */
+    synchronized FolderNode getByUUID(String folderUUID) {
+	return byUUID.get(folderUUID);
+    }
+
+    /**
+     * Method will get subtree of folder, in pre-order, so every folder comes before its children
+     *
+     * @param folder Root folder of subtree
+     * @return Folders of subtree, starting with given folder
+     */
+    synchronized List<FolderNode> getSubtree(FolderNode folder) {
+	List<FolderNode> subtree = new ArrayList<>();
+	List<FolderNode> stack = new ArrayList<>();
+	stack.add(folder);
+	while (!stack.isEmpty()) {
+	    FolderNode current = stack.remove(stack.size() - 1);
+	    subtree.add(current);
+	    Set<String> childUUIDs = children.get(current.getFolderUUID());
+	    if (childUUIDs != null) {
+		List<String> ordered = new ArrayList<>(childUUIDs);
+		for (int i = ordered.size() - 1; i >= 0; i--) {
+		    stack.add(byUUID.get(ordered.get(i)));
+		}
+	    }
+	}
+	return subtree;
+    }
+
+    /**
+     * Method will get folder by path
+     *
+     * @param path Path of folder
+     * @return Folder, or <code>null</code> if it is not in tree
+     */
+    synchronized FolderNode getByPath(String path) {
+	return byPath.get(normalize(path));
+    }
+
+    /**
+     * Method will normalize path, so redundant and trailing separators don't affect lookup
+     *
+     * @param path Path of folder
+     * @return Normalized path
+     */
+    private static String normalize(String path) {
+	return new File(path).getPath();
+    }
+}
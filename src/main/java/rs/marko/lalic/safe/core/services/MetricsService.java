@@ -0,0 +1,198 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import rs.marko.lalic.safe.core.metrics.MonitoredDataSource;
+import rs.marko.lalic.safe.core.metrics.PrometheusWriter;
+import rs.marko.lalic.safe.core.metrics.TimedSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency metrics of audited requests, kept per event and HTTP status in lock free histograms. Recording takes no
+ * locks and allocates nothing once series exists. Quantiles and throughput cover time window of one to two rotation
+ * intervals, while counts and sums are totals since start. Metrics of requests, database queries and connection pool
+ * are exposed together in Prometheus text format.
+ */
+public class MetricsService {
+
+    /**
+     * Highest HTTP status kept in its own series, other statuses are recorded as <code>0</code>
+     */
+    private static final int MAX_STATUS = 599;
+    /**
+     * Reported quantiles
+     */
+    public static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    /**
+     * Name of request latency metric
+     */
+    private static final String REQUEST_DURATION = "safe_request_duration_seconds";
+    /**
+     * Name of highest request latency metric
+     */
+    private static final String REQUEST_DURATION_MAX = "safe_request_duration_max_seconds";
+    /**
+     * Name of request throughput metric
+     */
+    private static final String REQUEST_THROUGHPUT = "safe_request_throughput";
+    /**
+     * Name of dropped audit records metric
+     */
+    private static final String AUDIT_DROPPED = "safe_audit_dropped_total";
+
+    /**
+     * Metrics of every event mapped by event name
+     */
+    private final ConcurrentMap<String, EventMetrics> events = new ConcurrentHashMap<>();
+    /**
+     * AuditService instance
+     */
+    @Autowired
+    private AuditService auditService;
+    /**
+     * QueryService instance
+     */
+    @Autowired
+    private QueryService queryService;
+    /**
+     * DataSource instance
+     */
+    @Autowired
+    private MonitoredDataSource dataSource;
+
+    /**
+     * Empty construct
+     */
+    public MetricsService() {
+    }
+
+    /**
+     * Method will record latency of finished request. Safe to call from any thread.
+     *
+     * @param event   Event name
+     * @param status  HTTP status of response
+     * @param latency Latency in nanoseconds
+     */
+    public void record(String event, int status, long latency) {
+	EventMetrics eventMetrics = events.get(event);
+	if (eventMetrics == null) {
+	    EventMetrics created = new EventMetrics();
+	    eventMetrics = events.putIfAbsent(event, created);
+	    if (eventMetrics == null) {
+		eventMetrics = created;
+	    }
+	}
+	eventMetrics.get(status >= 0 && status <= MAX_STATUS ? status : 0).record(latency);
+    }
+
+    /**
+     * Method will start new time window of quantiles and throughput, dropping oldest one
+     */
+    @Scheduled(fixedRateString = "${metrics.window}")
+    public void rotate() {
+	long now = System.nanoTime();
+	for (EventMetrics eventMetrics : events.values()) {
+	    for (int status = 0; status <= MAX_STATUS; status++) {
+		TimedSeries series = eventMetrics.byStatus.get(status);
+		if (series != null) {
+		    series.rotate(now);
+		}
+	    }
+	}
+	queryService.getStatistics().rotate(now);
+	dataSource.rotate(now);
+    }
+
+    /**
+     * Method will write all metrics in Prometheus text format
+     *
+     * @return Metrics text
+     */
+    public String getMetrics() {
+	long now = System.nanoTime();
+	List<Series> series = new ArrayList<>();
+	for (Map.Entry<String, EventMetrics> entry : new TreeMap<>(events).entrySet()) {
+	    for (int status = 0; status <= MAX_STATUS; status++) {
+		TimedSeries timedSeries = entry.getValue().byStatus.get(status);
+		if (timedSeries != null) {
+		    series.add(new Series(entry.getKey(), String.valueOf(status), timedSeries, now));
+		}
+	    }
+	}
+	PrometheusWriter writer = new PrometheusWriter();
+	writer.header(REQUEST_DURATION, "summary", "Latency of audited requests by event and status");
+	for (Series current : series) {
+	    writer.summary(REQUEST_DURATION, current.series, current.sample, QUANTILES, "event", current.event,
+			    "status", current.status);
+	}
+	writer.header(REQUEST_DURATION_MAX, "gauge", "Highest latency of audited requests since start");
+	for (Series current : series) {
+	    writer.sample(REQUEST_DURATION_MAX, PrometheusWriter.toSeconds(current.series.getHistogram().getMax()),
+			    "event", current.event, "status", current.status);
+	}
+	writer.header(REQUEST_THROUGHPUT, "gauge", "Audited requests per second in last time window");
+	for (Series current : series) {
+	    writer.sample(REQUEST_THROUGHPUT, current.sample.getRate(), "event", current.event, "status",
+			    current.status);
+	}
+	writer.header(AUDIT_DROPPED, "counter", "Audit records dropped because buffer was full or write failed");
+	writer.sample(AUDIT_DROPPED, auditService.getDropped());
+	queryService.getStatistics().writeMetrics(writer, now);
+	dataSource.writeMetrics(writer, now);
+	return writer.toString();
+    }
+
+    /**
+     * Metrics of one event, with series of every status created on first request
+     */
+    private static class EventMetrics {
+	private final AtomicReferenceArray<TimedSeries> byStatus = new AtomicReferenceArray<>(MAX_STATUS + 1);
+
+	/**
+	 * Method will get series of status, creating it if needed
+	 *
+	 * @param status HTTP status
+	 * @return Series of status
+	 */
+	private TimedSeries get(int status) {
+	    TimedSeries series = byStatus.get(status);
+	    if (series == null) {
+		byStatus.compareAndSet(status, null, new TimedSeries());
+		series = byStatus.get(status);
+	    }
+	    return series;
+	}
+    }
+
+    /**
+     * Values of one series read for output
+     */
+    private static class Series {
+	private final String event;
+	private final String status;
+	private final TimedSeries series;
+	private final TimedSeries.Sample sample;
+
+	/**
+	 * Construct for series
+	 *
+	 * @param event  Event name
+	 * @param status HTTP status
+	 * @param series Latency series of event and status
+	 * @param now    Current time in {@link System#nanoTime()} units
+	 */
+	private Series(String event, String status, TimedSeries series, long now) {
+	    this.event = event;
+	    this.status = status;
+	    this.series = series;
+	    this.sample = series.sample(now);
+	}
+    }
+}
@@ -1,9 +1,12 @@
 package rs.marko.lalic.safe.core.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import rs.marko.lalic.safe.core.UUIDCodec;
 import rs.marko.lalic.safe.core.UUIDGenerator;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.constants.DBConstants;
@@ -13,9 +16,15 @@ import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
 import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
 import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.queries.QueryCatalog;
+import rs.marko.lalic.safe.core.requests.PersonRequest;
+import rs.marko.lalic.safe.core.requests.RequestReader;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.*;
 
 /**
@@ -26,29 +35,81 @@ public class PersonService {
      * JSON Mapper
      */
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Columns set when person is registered
+     */
+    private static final String[] INSERT_COLUMNS = { DBConstants.COMMON_USER_UUID, DBConstants.USER_EMAIL,
+		    DBConstants.USER_PASSWORD, DBConstants.COMMON_ROLE_ID, DBConstants.USER_REGISTRED_ON,
+		    DBConstants.USER_LAST_LOGIN, DBConstants.USER_DISABLED };
+    /**
+     * Number of persons returned in one page if limit is not given
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Maximum number of persons returned in one page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Separator between registration time and UUID in page cursor
+     */
+    private static final char CURSOR_SEPARATOR = '_';
+    /**
+     * Columns returned when listing persons
+     */
+    private static final String LIST_COLUMNS = Utils.buildString(DBConstants.COMMON_USER_UUID, ", ",
+		    DBConstants.USER_EMAIL, ", ", DBConstants.COMMON_ROLE_ID, ", ", DBConstants.USER_REGISTRED_ON, ", ",
+		    DBConstants.USER_LAST_LOGIN, ", ", DBConstants.USER_DISABLED);
+    /**
+     * Query selecting first page of persons
+     */
+    private static final String FIRST_PAGE_QUERY = Utils.buildString("SELECT ", LIST_COLUMNS, " FROM ",
+		    DBConstants.USER_TABLE, " ORDER BY ", DBConstants.USER_REGISTRED_ON, ", ", DBConstants.COMMON_USER_UUID,
+		    " LIMIT ?");
+    /**
+     * Query selecting page of persons after given registration time and UUID
+     */
+    private static final String NEXT_PAGE_QUERY = Utils.buildString("SELECT ", LIST_COLUMNS, " FROM ",
+		    DBConstants.USER_TABLE, " WHERE ", DBConstants.USER_REGISTRED_ON, " > ? OR (",
+		    DBConstants.USER_REGISTRED_ON, " = ? AND ", DBConstants.COMMON_USER_UUID, " > ?) ORDER BY ",
+		    DBConstants.USER_REGISTRED_ON, ", ", DBConstants.COMMON_USER_UUID, " LIMIT ?");
+    /**
+     * Query selecting all persons for streaming
+     */
+    private static final String STREAM_QUERY = Utils.buildString("SELECT ", LIST_COLUMNS, " FROM ",
+		    DBConstants.USER_TABLE, " ORDER BY ", DBConstants.USER_REGISTRED_ON, ", ",
+		    DBConstants.COMMON_USER_UUID);
 
     @Autowired
     private QueryService queryService;
 
+    @Autowired
+    private UUIDCodec uuidCodec;
+
     public String addPerson(ObjectNode json) throws InternalErrorException, InvalidRequestException {
-	if (!json.has(JsonConstants.FIELD_EMAIL) || !json.has(JsonConstants.FIELD_PASSWORD)) {
+	return addPerson(RequestReader.read(json, new PersonRequest()));
+    }
+
+    /**
+     * Method will record new person in database
+     *
+     * @param request Request with email and password of person
+     * @return UUID of person
+     * @throws InvalidRequestException thrown if email or password is missing or invalid, or email is taken
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public String addPerson(PersonRequest request) throws InternalErrorException, InvalidRequestException {
+	if (request.getEmail() == null || request.getPassword() == null) {
 	    throw new InvalidRequestException(
-			    Utils.buildString("JSON from request is missing required fields. Json: ", json.toString()));
+			    Utils.buildString("JSON from request is missing required fields. Request: ", request));
 	}
-	String email = json.get(JsonConstants.FIELD_EMAIL).asText();
-	String pass = json.get(JsonConstants.FIELD_PASSWORD).asText();
+	String email = request.getEmail();
+	String pass = request.getPassword();
 	validateRegistrationData(email, pass);
-	Map<String, Object> params = new HashMap<>();
 	String personUUID = UUIDGenerator.generateUUID();
-	params.put(DBConstants.COMMON_USER_UUID, personUUID);
-	params.put(DBConstants.USER_EMAIL, email);
-	params.put(DBConstants.USER_PASSWORD, Utils.getSecurePassword(pass));
-	params.put(DBConstants.COMMON_ROLE_ID, Roles.ROLE_ID_USER);
-	params.put(DBConstants.USER_REGISTRED_ON, new Date());
-	params.put(DBConstants.USER_LAST_LOGIN, new Date());
-	params.put(DBConstants.USER_DISABLED, false);
+	Date now = new Date();
 	try {
-	    queryService.insertRecordInDatabase(params, DBConstants.USER_TABLE);
+	    queryService.insertRecord(DBConstants.USER_TABLE, INSERT_COLUMNS, uuidCodec.toDatabase(personUUID), email,
+			    Utils.getSecurePassword(pass), Roles.ROLE_ID_USER, now, now, false);
 	}
 	catch (ObjectExistsException e) {
 	    throw new InternalErrorException(e);
@@ -58,21 +119,34 @@ public class PersonService {
 
     public void updatePerson(ObjectNode json, String personUUID)
 		    throws InvalidRequestException, InternalErrorException {
+	updatePerson(RequestReader.read(json, new PersonRequest()), personUUID);
+    }
+
+    /**
+     * Method will update fields of person which are sent in request
+     *
+     * @param request    Request with fields to update
+     * @param personUUID UUID of person
+     * @throws InvalidRequestException thrown if no field is sent, or field is invalid
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public void updatePerson(PersonRequest request, String personUUID)
+		    throws InvalidRequestException, InternalErrorException {
 	StringBuilder queryBuilder = new StringBuilder();
 	Utils.appendToBuffer(queryBuilder, "UPDATE ", DBConstants.USER_TABLE, " SET ");
 	List<Object> params = new ArrayList<>();
-	if (json.has(JsonConstants.FIELD_EMAIL)) {
-	    String email = json.get(JsonConstants.FIELD_EMAIL).asText();
+	if (request.getEmail() != null) {
+	    String email = request.getEmail();
 	    if (!Utils.isEmailValid(email)) {
-		throw new InvalidRequestException(Utils.buildString("Invalid email. Json: ", json.toString()));
+		throw new InvalidRequestException(Utils.buildString("Invalid email. Request: ", request));
 	    }
 	    Utils.appendToBuffer(queryBuilder, DBConstants.USER_EMAIL, "=? ");
 	    params.add(email);
 	}
-	if (json.has(JsonConstants.FIELD_PASSWORD)) {
-	    String sifra = json.get(JsonConstants.FIELD_PASSWORD).asText();
+	if (request.getPassword() != null) {
+	    String sifra = request.getPassword();
 	    if (!Utils.isPassValid(sifra)) {
-		throw new InvalidRequestException(Utils.buildString("Invalid password. Json: ", json.toString()));
+		throw new InvalidRequestException(Utils.buildString("Invalid password. Request: ", request));
 	    }
 	    if (!params.isEmpty()) {
 		Utils.appendToBuffer(queryBuilder, ", ");
@@ -80,10 +154,10 @@ public class PersonService {
 	    Utils.appendToBuffer(queryBuilder, DBConstants.USER_PASSWORD, "=? ");
 	    params.add(sifra);
 	}
-	if (json.has(JsonConstants.FIELD_ROLE)) {
-	    String rola = json.get(JsonConstants.FIELD_ROLE).asText();
+	if (request.getRole() != null) {
+	    String rola = request.getRole();
 	    if (!Roles.ROLES.containsKey(rola)) {
-		throw new InvalidRequestException(Utils.buildString("Invalid role. Json: ", json.toString()));
+		throw new InvalidRequestException(Utils.buildString("Invalid role. Request: ", request));
 	    }
 	    if (!params.isEmpty()) {
 		Utils.appendToBuffer(queryBuilder, ", ");
@@ -91,8 +165,8 @@ public class PersonService {
 	    Utils.appendToBuffer(queryBuilder, DBConstants.COMMON_ROLE_ID, "=? ");
 	    params.add(rola);
 	}
-	if (json.has(JsonConstants.FIELD_IS_DISABLED)) {
-	    boolean iskljucen = json.get(JsonConstants.FIELD_IS_DISABLED).asBoolean();
+	if (request.getDisabled() != null) {
+	    boolean iskljucen = request.getDisabled();
 	    if (!params.isEmpty()) {
 		Utils.appendToBuffer(queryBuilder, ", ");
 	    }
@@ -101,23 +175,97 @@ public class PersonService {
 	}
 	if (params.isEmpty()) {
 	    throw new InvalidRequestException(
-			    Utils.buildString("Invalid json, no fields to insert. Json: ", json.toString()));
+			    Utils.buildString("Invalid json, no fields to insert. Request: ", request));
 	}
 	Utils.appendToBuffer(queryBuilder, " WHERE ", DBConstants.COMMON_USER_UUID, "=? ");
-	params.add(personUUID);
+	params.add(uuidCodec.toDatabase(personUUID));
 	queryService.executeDatabaseUpdate(queryBuilder.toString(), params);
     }
 
     public ObjectNode getPerson(String personUUID) throws InternalErrorException, ObjectNotFoundException {
-	String query = Utils
-			.buildString("SELECT * FROM ", DBConstants.USER_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID,
-					"=?");
-	return queryService.executeQueryAndReturnObject(query, Utils.getParametersList(personUUID), new PersonMapper());
+	return queryService.executeNamedQueryForObject(QueryCatalog.PERSON_BY_UUID, personUUID);
+    }
+
+    /**
+     * Method will get one page of persons ordered by registration time and UUID. Page is located by keyset of last
+     * returned person, so every page costs the same regardless of how deep it is.
+     *
+     * @param cursor Cursor returned with previous page, or <code>null</code> for first page
+     * @param limit  Maximum number of persons in page, or <code>null</code> for default
+     * @return JSON with persons, and cursor of next page if there may be more persons
+     * @throws InvalidRequestException thrown if cursor or limit is invalid
+     * @throws InternalErrorException  thrown if some internal error happens
+     */
+    public ObjectNode getPersons(String cursor, Integer limit) throws InvalidRequestException, InternalErrorException {
+	int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+	if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Invalid page limit [", limit, "]. Maximum: ", MAX_PAGE_SIZE));
+	}
+	PersonMapper mapper = new PersonMapper();
+	List<ObjectNode> persons;
+	if (cursor == null || cursor.isEmpty()) {
+	    persons = queryService.executeQueryAndReturnJsonList(FIRST_PAGE_QUERY, Utils.getParametersList(pageSize),
+			    mapper);
+	}
+	else {
+	    int separator = cursor.indexOf(CURSOR_SEPARATOR);
+	    Timestamp registredOn;
+	    try {
+		registredOn = new Timestamp(Long.parseLong(cursor.substring(0, Math.max(separator, 0))));
+	    }
+	    catch (NumberFormatException e) {
+		throw new InvalidRequestException(Utils.buildString("Invalid page cursor [", cursor, "]"), e);
+	    }
+	    Object personUUID;
+	    try {
+		personUUID = uuidCodec.toDatabase(cursor.substring(separator + 1));
+	    }
+	    catch (IllegalArgumentException e) {
+		throw new InvalidRequestException(Utils.buildString("Invalid page cursor [", cursor, "]"), e);
+	    }
+	    persons = queryService.executeQueryAndReturnJsonList(NEXT_PAGE_QUERY,
+			    Utils.getParametersList(registredOn, registredOn, personUUID, pageSize), mapper);
+	}
+	ObjectNode page = MAPPER.createObjectNode();
+	page.putArray(JsonConstants.FIELD_PERSONS).addAll(persons);
+	if (persons.size() == pageSize) {
+	    page.put(JsonConstants.FIELD_CURSOR,
+			    Utils.buildString(mapper.lastRegistredOn.getTime(), CURSOR_SEPARATOR, mapper.lastPersonUUID));
+	}
+	return page;
     }
 
-    public List<ObjectNode> getPersons() throws InternalErrorException {
-	String query = Utils.buildString("SELECT * FROM ", DBConstants.USER_TABLE);
-	return queryService.executeQueryAndReturnJsonList(query, new PersonMapper());
+    /**
+     * Method will write all persons to output as JSON array. Rows are read from forward only result set and
+     * written as they arrive, so memory used doesn't depend on number of persons.
+     *
+     * @param out Output stream
+     * @throws InternalErrorException thrown if reading or writing fails
+     */
+    public void streamPersons(OutputStream out) throws InternalErrorException {
+	try {
+	    final JsonGenerator generator = MAPPER.getFactory().createGenerator(out);
+	    generator.writeStartArray();
+	    queryService.executeQueryAndStream(STREAM_QUERY, Collections.emptyList(), new RowCallbackHandler() {
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+		    try {
+			writePerson(generator, rs);
+		    }
+		    catch (IOException e) {
+			throw new SQLException(Utils.buildString("Failed to write person. Message: ", e.getMessage()),
+					e);
+		    }
+		}
+	    });
+	    generator.writeEndArray();
+	    generator.flush();
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to write persons. Message: ", e.getMessage()), e);
+	}
     }
 
     private void validateRegistrationData(String email, String pass)
@@ -128,10 +276,8 @@ public class PersonService {
 	if (!Utils.isPassValid(pass)) {
 	    throw new InvalidRequestException(Utils.buildString("Invalid password. Password: ", pass));
 	}
-	String query = Utils.buildString("SELECT ", DBConstants.COMMON_USER_UUID, " FROM ", DBConstants.USER_TABLE,
-			" WHERE ", DBConstants.USER_EMAIL, "=?");
 	try {
-	    queryService.executeQueryAndReturnObject(query, Utils.getParametersList(email), String.class);
+	    queryService.executeNamedQueryForObject(QueryCatalog.PERSON_UUID_BY_EMAIL, email);
 	    throw new InvalidRequestException(Utils.buildString("Person exists with given email. Email: ", email));
 	}
 	catch (ObjectNotFoundException e) {
@@ -140,19 +286,37 @@ public class PersonService {
     }
 
     /**
-     * {@link RowMapper} implementation, used when fetching person metadata
+     * Method will write person from current row as JSON object, with same fields as {@link PersonMapper}
+     *
+     * @param generator JSON generator
+     * @param rs        Result set positioned on person row
+     * @throws SQLException thrown if row can't be read
+     * @throws IOException  thrown if writing fails
+     */
+    private void writePerson(JsonGenerator generator, ResultSet rs) throws SQLException, IOException {
+	generator.writeStartObject();
+	generator.writeStringField(DBConstants.COMMON_USER_UUID, uuidCodec.fromDatabase(rs, DBConstants.COMMON_USER_UUID));
+	generator.writeStringField(DBConstants.USER_EMAIL, rs.getString(DBConstants.USER_EMAIL));
+	generator.writeStringField(DBConstants.COMMON_ROLE_ID, rs.getString(DBConstants.COMMON_ROLE_ID));
+	generator.writeNumberField(DBConstants.USER_REGISTRED_ON, rs.getDate(DBConstants.USER_REGISTRED_ON).getTime());
+	generator.writeNumberField(DBConstants.USER_LAST_LOGIN, rs.getDate(DBConstants.USER_LAST_LOGIN).getTime());
+	generator.writeBooleanField(DBConstants.USER_DISABLED, rs.getBoolean(DBConstants.USER_DISABLED));
+	generator.writeEndObject();
+    }
+
+    /**
+     * {@link RowMapper} implementation, used when fetching person metadata. Keeps key of last mapped row, which is
+     * used as cursor of next page.
      */
-    private class PersonMapper implements RowMapper<ObjectNode> {
+    class PersonMapper implements RowMapper<ObjectNode> {
+	private Timestamp lastRegistredOn;
+	private String lastPersonUUID;
 
 	@Override
 	public ObjectNode mapRow(ResultSet rs, int i) throws SQLException {
-	    ObjectNode person = MAPPER.createObjectNode();
-	    person.put(DBConstants.COMMON_USER_UUID, rs.getString(DBConstants.COMMON_USER_UUID));
-	    person.put(DBConstants.USER_EMAIL, rs.getString(DBConstants.USER_EMAIL));
-	    person.put(DBConstants.COMMON_ROLE_ID, rs.getString(DBConstants.COMMON_ROLE_ID));
-	    person.put(DBConstants.USER_REGISTRED_ON, rs.getDate(DBConstants.USER_REGISTRED_ON).getTime());
-	    person.put(DBConstants.USER_LAST_LOGIN, rs.getDate(DBConstants.USER_LAST_LOGIN).getTime());
-	    person.put(DBConstants.USER_DISABLED, rs.getBoolean(DBConstants.USER_DISABLED));
+	    ObjectNode person = QueryCatalog.PERSON_MAPPER.map(rs, uuidCodec);
+	    lastRegistredOn = rs.getTimestamp(DBConstants.USER_REGISTRED_ON);
+	    lastPersonUUID = person.get(DBConstants.COMMON_USER_UUID).asText();
 	    return person;
 	}
     }
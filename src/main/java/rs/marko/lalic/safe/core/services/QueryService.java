@@ -6,16 +6,37 @@ import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import rs.marko.lalic.safe.core.UUIDCodec;
 import rs.marko.lalic.safe.core.Utils;
 import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
 import rs.marko.lalic.safe.core.exceptions.ObjectExistsException;
 import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.metrics.QueryStatistics;
+import rs.marko.lalic.safe.core.queries.NamedQuery;
+import rs.marko.lalic.safe.core.queries.QueryCatalog;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Service for query related operations
@@ -31,6 +52,14 @@ public class QueryService {
      * Lock object for thread safe instancing
      */
     private static final String[] INSTANCE_MUTEX = new String[0];
+    /**
+     * Default number of rows sent to database in one batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * Default fetch size for streamed queries. MySQL driver streams rows one by one only with this fetch size.
+     */
+    public static final int DEFAULT_STREAM_FETCH_SIZE = Integer.MIN_VALUE;
     /**
      * Singleton instance
      */
@@ -40,6 +69,31 @@ public class QueryService {
      */
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    /**
+     * UUIDCodec instance, passed to binders and mappers of named queries
+     */
+    @Autowired
+    private UUIDCodec uuidCodec;
+    /**
+     * Compiled {@link SimpleJdbcInsert} objects, so table metadata is looked up only once per insert shape
+     */
+    private final ConcurrentMap<StatementKey, SimpleJdbcInsert> compiledInserts = new ConcurrentHashMap<>();
+    /**
+     * Insert statements used by typed insert API, built once per insert shape
+     */
+    private final ConcurrentMap<StatementKey, String> insertStatements = new ConcurrentHashMap<>();
+    /**
+     * Number of rows sent to database in one batch
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Fetch size used for streamed queries
+     */
+    private int streamFetchSize = DEFAULT_STREAM_FETCH_SIZE;
+    /**
+     * Timing, row and error counts of executed statements
+     */
+    private final QueryStatistics statistics = new QueryStatistics();
 
     /**
      * Hidden constructor
@@ -63,6 +117,130 @@ public class QueryService {
 	return instance;
     }
 
+    /**
+     * Method will build comma separated list of placeholders, used as values of <code>IN</code> clause
+     *
+     * @param count Number of placeholders, at least one
+     * @return Placeholders
+     */
+    public static String toPlaceholders(int count) {
+	StringBuilder placeholders = new StringBuilder(count * 3);
+	for (int i = 0; i < count; i++) {
+	    placeholders.append(i == 0 ? "?" : ", ?");
+	}
+	return placeholders.toString();
+    }
+
+    /**
+     * Setter for batch size
+     *
+     * @param batchSize Number of rows sent to database in one batch
+     */
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Setter for stream fetch size
+     *
+     * @param streamFetchSize Fetch size used for streamed queries
+     */
+    public void setStreamFetchSize(int streamFetchSize) {
+	this.streamFetchSize = streamFetchSize;
+    }
+
+    /**
+     * Setter for slow query threshold
+     *
+     * @param slowQueryThreshold Time in milliseconds after statement is logged as slow, <code>0</code> to disable
+     */
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+	statistics.setSlowQueryThreshold(slowQueryThreshold);
+    }
+
+    /**
+     * Getter for statistics of executed statements
+     *
+     * @return Query statistics
+     */
+    public QueryStatistics getStatistics() {
+	return statistics;
+    }
+
+    /**
+     * Method will validate every query of {@link QueryCatalog} against database schema, and label its metrics with
+     * query ID. Executed on startup.
+     *
+     * @throws InternalErrorException thrown if one of queries doesn't match schema
+     */
+    public void init() throws InternalErrorException {
+	for (NamedQuery<?, ?> query : QueryCatalog.QUERIES) {
+	    validateQuery(query);
+	    statistics.register(query.getId(), query.getSql());
+	}
+	LOGGER.info(Utils.buildString("Named queries validated: ", QueryCatalog.QUERIES.size()));
+    }
+
+    /**
+     * Executes named query and returns all mapped rows
+     *
+     * @param query      Named query
+     * @param parameters Parameters passed to binder of query
+     * @return List of results
+     * @throws InternalErrorException Thrown in case query execution fails
+     */
+    public <P, R> List<R> executeNamedQuery(NamedQuery<P, R> query, P parameters) throws InternalErrorException {
+	long start = System.nanoTime();
+	try {
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Executing named query [", query.getId(), "]"));
+	    }
+	    List<R> result = jdbcTemplate.query(query.getSql(), toSetter(query, parameters), toRowMapper(query));
+	    statistics.record(query.getSql(), start, result.size(), false, null);
+	    return result;
+	}
+	catch (Exception e) {
+	    statistics.record(query.getSql(), start, 0, true, null);
+	    String err = Utils.buildString("Failed to execute named query [", query.getId(), "] Message: ",
+			    e.getMessage());
+	    throw new InternalErrorException(err, e);
+	}
+    }
+
+    /**
+     * Executes named query which returns exactly one row
+     *
+     * @param query      Named query
+     * @param parameters Parameters passed to binder of query
+     * @return Mapped row
+     * @throws InternalErrorException  Thrown in case query execution fails, or query returns more than one row
+     * @throws ObjectNotFoundException Thrown in case query returns no results
+     */
+    public <P, R> R executeNamedQueryForObject(NamedQuery<P, R> query, P parameters)
+		    throws InternalErrorException, ObjectNotFoundException {
+	long start = System.nanoTime();
+	try {
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Querying for object. Named query [", query.getId(), "]"));
+	    }
+	    R result = DataAccessUtils.requiredSingleResult(
+			    jdbcTemplate.query(query.getSql(), toSetter(query, parameters), toRowMapper(query)));
+	    statistics.record(query.getSql(), start, 1, false, null);
+	    return result;
+	}
+	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query.getSql(), start, 0, false, null);
+	    String err = Utils.buildString("No results found! Named query: ", query.getId());
+	    throw new ObjectNotFoundException(err, e);
+	}
+	catch (Exception e) {
+	    statistics.record(query.getSql(), start, 0, true, null);
+	    String err = Utils.buildString("Failed to execute named query [", query.getId(), "] Message: ",
+			    e.getMessage());
+	    throw new InternalErrorException(err, e);
+	}
+    }
+
     /**
      * Executes search based on provided query and {@link RowMapper<ObjectNode>}, and returns list of JSON Object.
      * Method assumes that provided input is valid, and it will not validate it.
@@ -74,13 +252,17 @@ public class QueryService {
      */
     public List<ObjectNode> executeQueryAndReturnJsonList(String query, RowMapper<ObjectNode> rowMapper)
 		    throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query: ", query));
 	    }
-	    return jdbcTemplate.query(query, rowMapper);
+	    List<ObjectNode> result = jdbcTemplate.query(query, rowMapper);
+	    statistics.record(query, start, result.size(), false, null);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
 	}
@@ -98,13 +280,17 @@ public class QueryService {
      */
     public List<ObjectNode> executeQueryAndReturnJsonList(String query, List<Object> params,
 		    RowMapper<ObjectNode> rowMapper) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query [", query, "] Parameters: ", params));
 	    }
-	    return jdbcTemplate.query(query, params.toArray(), rowMapper);
+	    List<ObjectNode> result = jdbcTemplate.query(query, params.toArray(), rowMapper);
+	    statistics.record(query, start, result.size(), false, params);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Parameters: [", params, "] Message: ",
 			    e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -122,13 +308,17 @@ public class QueryService {
      */
     public List<Map<String, Object>> executeQueryAndReturnMapList(String query, List<Object> params)
 		    throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query [", query, "] Parameters: ", params));
 	    }
-	    return jdbcTemplate.queryForList(query, params.toArray());
+	    List<Map<String, Object>> result = jdbcTemplate.queryForList(query, params.toArray());
+	    statistics.record(query, start, result.size(), false, params);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Parameters: [", params, "] Message: ",
 			    e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -144,13 +334,17 @@ public class QueryService {
      * @throws InternalErrorException Thrown in case query execution fails
      */
     public List<Map<String, Object>> executeQueryAndReturnMapList(String query) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query: ", query));
 	    }
-	    return jdbcTemplate.queryForList(query);
+	    List<Map<String, Object>> result = jdbcTemplate.queryForList(query);
+	    statistics.record(query, start, result.size(), false, null);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
 	}
@@ -166,13 +360,17 @@ public class QueryService {
      * @throws InternalErrorException Thrown in case query execution fails
      */
     public <T> List<T> executeQueryAndReturnList(String query, RowMapper<T> type) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query for list: ", query));
 	    }
-	    return jdbcTemplate.query(query, type);
+	    List<T> result = jdbcTemplate.query(query, type);
+	    statistics.record(query, start, result.size(), false, null);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Expected type [", type, "] Message: ",
 			    e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -191,13 +389,17 @@ public class QueryService {
      */
     public <T> List<T> executeQueryAndReturnList(String query, List<Object> params, RowMapper<T> type)
 		    throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query for list: ", query));
 	    }
-	    return jdbcTemplate.query(query, params.toArray(), type);
+	    List<T> result = jdbcTemplate.query(query, params.toArray(), type);
+	    statistics.record(query, start, result.size(), false, params);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Parameters [ ", params,
 			    " ] Expected type [", type, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -214,13 +416,17 @@ public class QueryService {
      * @throws InternalErrorException Thrown in case query execution fails
      */
     public <T> List<T> executeQueryAndReturnList(String query, Class<T> type) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query for list: ", query));
 	    }
-	    return jdbcTemplate.queryForList(query, type);
+	    List<T> result = jdbcTemplate.queryForList(query, type);
+	    statistics.record(query, start, result.size(), false, null);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Expected type [", type, "] Message: ",
 			    e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -239,13 +445,17 @@ public class QueryService {
      */
     public <T> List<T> executeQueryAndReturnList(String query, List<Object> params, Class<T> type)
 		    throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query for list [", query, "] Parameters: ", params));
 	    }
-	    return jdbcTemplate.queryForList(query, params.toArray(), type);
+	    List<T> result = jdbcTemplate.queryForList(query, params.toArray(), type);
+	    statistics.record(query, start, result.size(), false, params);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Parameters: [", params,
 			    "] Expected type [", type, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -261,13 +471,17 @@ public class QueryService {
      * @throws InternalErrorException Thrown in case query execution fails
      */
     public List<Map<String, Object>> executeQueryAndReturnList(String query) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing query for list [", query, "]"));
 	    }
-	    return jdbcTemplate.queryForList(query);
+	    List<Map<String, Object>> result = jdbcTemplate.queryForList(query);
+	    statistics.record(query, start, result.size(), false, null);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
 	}
@@ -285,17 +499,22 @@ public class QueryService {
      */
     public <T> T executeQueryAndReturnObject(String query, Class<T> type)
 		    throws InternalErrorException, ObjectNotFoundException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Querying for object: ", query));
 	    }
-	    return jdbcTemplate.queryForObject(query, type);
+	    T result = jdbcTemplate.queryForObject(query, type);
+	    statistics.record(query, start, 1, false, null);
+	    return result;
 	}
 	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query, start, 0, false, null);
 	    String err = Utils.buildString("No results found! Query: ", query);
 	    throw new ObjectNotFoundException(err, e);
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, null);
 	    String err = Utils.buildString("Failed to execute query [", query, "] RequiredType: [", type, "] Message: ",
 			    e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -315,19 +534,24 @@ public class QueryService {
      */
     public <T> T executeQueryAndReturnObject(String query, List<Object> parameters, Class<T> type)
 		    throws InternalErrorException, ObjectNotFoundException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils
 				.buildString("Querying for object. Query [", query, "] ExpectedType [", type.toString(),
 						"] Parameters ", parameters));
 	    }
-	    return jdbcTemplate.queryForObject(query, parameters.toArray(), type);
+	    T result = jdbcTemplate.queryForObject(query, parameters.toArray(), type);
+	    statistics.record(query, start, 1, false, parameters);
+	    return result;
 	}
 	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query, start, 0, false, parameters);
 	    String err = Utils.buildString("No results found! Query: ", query);
 	    throw new ObjectNotFoundException(err, e);
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, parameters);
 	    String err = Utils.buildString("Failed to execute query [", query, "] Parameters ", parameters,
 			    " RequiredType: [", type, "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -347,17 +571,22 @@ public class QueryService {
      */
     public <T> T executeQueryAndReturnObject(String query, List<Object> parameters, RowMapper<T> mapper)
 		    throws InternalErrorException, ObjectNotFoundException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Querying for object. Query [", query, "] Parameters ", parameters));
 	    }
-	    return jdbcTemplate.queryForObject(query, parameters.toArray(), mapper);
+	    T result = jdbcTemplate.queryForObject(query, parameters.toArray(), mapper);
+	    statistics.record(query, start, 1, false, parameters);
+	    return result;
 	}
 	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query, start, 0, false, parameters);
 	    String err = Utils.buildString("No results found! Query: ", query);
 	    throw new ObjectNotFoundException(err, e);
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, parameters);
 	    String err = Utils
 			    .buildString("Failed to execute query [", query, "] Parameters ", parameters, " Message: ",
 					    e.getMessage());
@@ -377,17 +606,22 @@ public class QueryService {
      */
     public Map<String, Object> executeQueryAndReturnMap(String query, List<Object> parameters)
 		    throws InternalErrorException, ObjectNotFoundException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Querying for map. Query [", query, "] Parameters ", parameters));
 	    }
-	    return jdbcTemplate.queryForMap(query, parameters.toArray());
+	    Map<String, Object> result = jdbcTemplate.queryForMap(query, parameters.toArray());
+	    statistics.record(query, start, 1, false, parameters);
+	    return result;
 	}
 	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query, start, 0, false, parameters);
 	    String err = Utils.buildString("No results found! Query: ", query);
 	    throw new ObjectNotFoundException(err, e);
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, parameters);
 	    String err = Utils
 			    .buildString("Failed to execute query [", query, "] Parameters ", parameters, " Message: ",
 					    e.getMessage());
@@ -395,6 +629,52 @@ public class QueryService {
 	}
     }
 
+    /**
+     * Executes query on forward only, read only result set, and passes every row to handler as it is read. Rows are
+     * not collected, so memory used doesn't depend on number of rows. Recorded time includes time spent in handler.
+     * Method assumes that provided input is valid, and it will not validate it.
+     *
+     * @param query   Query to be executed
+     * @param params  List of query parameters
+     * @param handler Handler called for every row
+     * @throws InternalErrorException Thrown in case query execution or handler fails
+     */
+    public void executeQueryAndStream(final String query, final List<Object> params,
+		    final RowCallbackHandler handler) throws InternalErrorException {
+	final long[] rows = new long[1];
+	long start = System.nanoTime();
+	try {
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Executing streamed query: ", query));
+	    }
+	    jdbcTemplate.query(new PreparedStatementCreator() {
+		@Override
+		public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+		    PreparedStatement ps = con
+				    .prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		    ps.setFetchSize(streamFetchSize);
+		    for (int i = 0; i < params.size(); i++) {
+			ps.setObject(i + 1, params.get(i));
+		    }
+		    return ps;
+		}
+	    }, new RowCallbackHandler() {
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+		    rows[0]++;
+		    handler.processRow(rs);
+		}
+	    });
+	    statistics.record(query, start, rows[0], false, params);
+	}
+	catch (Exception e) {
+	    statistics.record(query, start, rows[0], true, params);
+	    String err = Utils.buildString("Failed to execute streamed query [", query, "] Parameters [ ", params,
+			    " ] Message: ", e.getMessage());
+	    throw new InternalErrorException(err, e);
+	}
+    }
+
     /**
      * This method will execute database update
      *
@@ -404,14 +684,18 @@ public class QueryService {
      */
 
     public int executeDatabaseUpdate(String query, List<Object> params) throws InternalErrorException {
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing database update. Query [", query, "]. Params [",
 				params.toString(), "]"));
 	    }
-	    return jdbcTemplate.update(query, params.toArray());
+	    int result = jdbcTemplate.update(query, params.toArray());
+	    statistics.record(query, start, result, false, params);
+	    return result;
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    throw new InternalErrorException(
 			    Utils.buildString("Failed to execute database update. Query [", query, "]. Params [",
 					    params.toString(), "]. Reason: [ ", e.getMessage(), " ]."), e);
@@ -428,27 +712,27 @@ public class QueryService {
      */
     public int insertRecordInDatabase(Map<String, Object> params, String tableName, List<String> columns)
 		    throws InternalErrorException, ObjectExistsException {
+	SimpleJdbcInsert insert = null;
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing database insert. Table name [ ", tableName, " ]. Columns: [ ",
 				columns.toString(), " ]. Params: [ ", params, " ]."));
 	    }
-	    String[] cols = new String[columns.size()];
-	    for (int i = 0; i < columns.size(); i++) {
-		cols[i] = columns.get(i);
-	    }
-	    SimpleJdbcInsert insert = new SimpleJdbcInsert(jdbcTemplate);
-	    insert.withTableName(tableName);
-	    insert.usingColumns(cols);
-	    return insert.execute(params);
+	    insert = getCompiledInsert(tableName, columns.toArray(new String[columns.size()]), null);
+	    int result = insert.execute(params);
+	    statistics.record(insert.getInsertString(), start, result, false, params);
+	    return result;
 	}
 	catch (DuplicateKeyException e) {
+	    recordFailedInsert(insert, tableName, start, params);
 	    String err = Utils.buildString("Failed to execute insert on database. Row already exists. Table name [ ",
 			    tableName, " ]. Columns: [ ", columns.toString(), " ]. Params: [ ", params, " ] Reason: ",
 			    e.getMessage());
 	    throw new ObjectExistsException(err, e);
 	}
 	catch (Exception e) {
+	    recordFailedInsert(insert, tableName, start, params);
 	    String err = Utils.buildString("Failed to execute insert on database. Table name [ ", tableName,
 			    " ]. Columns: [ ", columns.toString(), " ]. Params: [ ", params, " ] Reason: ",
 			    e.getMessage());
@@ -466,27 +750,33 @@ public class QueryService {
      */
     public long insertRecordInDatabase(Map<String, Object> params, String tableName, String generatedKeyColumn)
 		    throws InternalErrorException, ObjectExistsException {
+	SimpleJdbcInsert insert = null;
+	long start = System.nanoTime();
 	try {
 	    if (LOGGER.isDebugEnabled()) {
 		LOGGER.debug(Utils.buildString("Executing database insert. Table name [ ", tableName, " ] Params: ",
 				params));
 	    }
-	    SimpleJdbcInsert insert = new SimpleJdbcInsert(jdbcTemplate);
-	    insert.withTableName(tableName);
+	    long result;
 	    if (!StringUtils.isEmpty(generatedKeyColumn)) {
-		insert.usingGeneratedKeyColumns(generatedKeyColumn);
-		return insert.executeAndReturnKey(params).longValue();
+		insert = getCompiledInsert(tableName, null, generatedKeyColumn);
+		result = insert.executeAndReturnKey(params).longValue();
 	    }
 	    else {
-		return insert.execute(params);
+		insert = getCompiledInsert(tableName, null, null);
+		result = insert.execute(params);
 	    }
+	    statistics.record(insert.getInsertString(), start, 1, false, params);
+	    return result;
 	}
 	catch (DuplicateKeyException e) {
+	    recordFailedInsert(insert, tableName, start, params);
 	    String err = Utils.buildString("Failed to execute insert on database. Row already exists. Table name [ ",
 			    tableName, " ]. Params: [ ", params, " ] Reason: ", e.getMessage());
 	    throw new ObjectExistsException(err, e);
 	}
 	catch (Exception e) {
+	    recordFailedInsert(insert, tableName, start, params);
 	    String err = Utils.buildString("Failed to execute insert on database. Table name [ ", tableName,
 			    " ] Params: ", params, " Reason: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
@@ -506,7 +796,368 @@ public class QueryService {
     }
 
     /**
-     * Method retrieves column value from the database, based on specified arguments
+     * This method is executing database insert of one row, where values are given in the same order as columns.
+     * Insert statement is built once per table and column set, and no table metadata is looked up.
+     *
+     * @param tableName - Table name
+     * @param columns   - Table columns
+     * @param values    - Values of columns, in the same order as columns
+     * @return number of rows affected with insert
+     * @throws ObjectExistsException  - thrown if row already exists
+     * @throws InternalErrorException - thrown if inserting fails
+     */
+    public int insertRecord(String tableName, String[] columns, Object... values)
+		    throws InternalErrorException, ObjectExistsException {
+	String insert = getInsertStatement(tableName, columns);
+	long start = System.nanoTime();
+	try {
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Executing database insert. Table name [ ", tableName, " ]. Columns: ",
+				Arrays.toString(columns), ". Values: ", Arrays.toString(values)));
+	    }
+	    int result = jdbcTemplate.update(insert, values);
+	    statistics.record(insert, start, result, false, values);
+	    return result;
+	}
+	catch (DuplicateKeyException e) {
+	    statistics.record(insert, start, 0, true, values);
+	    String err = Utils.buildString("Failed to execute insert on database. Row already exists. Table name [ ",
+			    tableName, " ]. Columns: ", Arrays.toString(columns), ". Values: ", Arrays.toString(values),
+			    " Reason: ", e.getMessage());
+	    throw new ObjectExistsException(err, e);
+	}
+	catch (Exception e) {
+	    statistics.record(insert, start, 0, true, values);
+	    String err = Utils.buildString("Failed to execute insert on database. Table name [ ", tableName,
+			    " ]. Columns: ", Arrays.toString(columns), ". Values: ", Arrays.toString(values), " Reason: ",
+			    e.getMessage());
+	    throw new InternalErrorException(err, e);
+	}
+    }
+
+    /**
+     * This method is executing database insert of one row, where values are given in the same order as columns,
+     * and returns value of auto-generated key column.
+     *
+     * @param tableName          - Table name
+     * @param columns            - Table columns
+     * @param generatedKeyColumn - Name of the auto-generated key column
+     * @param values             - Values of columns, in the same order as columns
+     * @return generated key
+     * @throws ObjectExistsException  - thrown if row already exists
+     * @throws InternalErrorException - thrown if inserting fails
+     */
+    public long insertRecordAndReturnKey(String tableName, String[] columns, final String generatedKeyColumn,
+		    final Object... values) throws InternalErrorException, ObjectExistsException {
+	final String insert = getInsertStatement(tableName, columns);
+	long start = System.nanoTime();
+	try {
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Executing database insert. Table name [ ", tableName, " ]. Columns: ",
+				Arrays.toString(columns), ". Values: ", Arrays.toString(values)));
+	    }
+	    KeyHolder keyHolder = new GeneratedKeyHolder();
+	    jdbcTemplate.update(new PreparedStatementCreator() {
+		@Override
+		public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+		    PreparedStatement ps = con.prepareStatement(insert, new String[] { generatedKeyColumn });
+		    for (int i = 0; i < values.length; i++) {
+			ps.setObject(i + 1, values[i]);
+		    }
+		    return ps;
+		}
+	    }, keyHolder);
+	    statistics.record(insert, start, 1, false, values);
+	    return keyHolder.getKey().longValue();
+	}
+	catch (DuplicateKeyException e) {
+	    statistics.record(insert, start, 0, true, values);
+	    String err = Utils.buildString("Failed to execute insert on database. Row already exists. Table name [ ",
+			    tableName, " ]. Columns: ", Arrays.toString(columns), ". Values: ", Arrays.toString(values),
+			    " Reason: ", e.getMessage());
+	    throw new ObjectExistsException(err, e);
+	}
+	catch (Exception e) {
+	    statistics.record(insert, start, 0, true, values);
+	    String err = Utils.buildString("Failed to execute insert on database. Table name [ ", tableName,
+			    " ]. Columns: ", Arrays.toString(columns), ". Values: ", Arrays.toString(values), " Reason: ",
+			    e.getMessage());
+	    throw new InternalErrorException(err, e);
+	}
+    }
+
+    /**
+     * This method will execute same update statement for every row of parameters, using JDBC batching. Rows are
+     * sent to database in chunks of configured batch size. Should be called inside transaction, so that failure
+     * doesn't leave part of the rows applied.
+     *
+     * @param query - Query
+     * @param rows  - Parameters for every execution of query
+     * @return Number of rows affected by every execution
+     * @throws ObjectExistsException  - thrown if one of the rows violates unique constraint
+     * @throws InternalErrorException - thrown if batch execution fails
+     */
+    public int[] executeBatchUpdate(String query, List<Object[]> rows)
+		    throws InternalErrorException, ObjectExistsException {
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Executing batch update. Query [", query, "]. Rows: ", rows.size(),
+			    ". Batch size: ", batchSize));
+	}
+	int[] result = new int[rows.size()];
+	for (int start = 0; start < rows.size(); start += batchSize) {
+	    List<Object[]> chunk = rows.subList(start, Math.min(start + batchSize, rows.size()));
+	    long chunkStart = System.nanoTime();
+	    try {
+		int[] counts = jdbcTemplate.batchUpdate(query, chunk);
+		System.arraycopy(counts, 0, result, start, counts.length);
+		statistics.record(query, chunkStart, countRows(counts), false, chunk);
+	    }
+	    catch (DuplicateKeyException e) {
+		statistics.record(query, chunkStart, 0, true, chunk);
+		throw new ObjectExistsException(Utils.buildString("Failed to execute batch update. Row already exists. ",
+				describeFailedRows(e, start, chunk), " Query [", query, "]. Reason: ", e.getMessage()), e);
+	    }
+	    catch (Exception e) {
+		statistics.record(query, chunkStart, 0, true, chunk);
+		throw new InternalErrorException(
+				Utils.buildString("Failed to execute batch update. Query [", query, "]. Rows [", start,
+						" - ", start + chunk.size() - 1, "]. Reason: ", e.getMessage()), e);
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * This method is executing database insert of many rows using JDBC batching, where values of every row are
+     * given in the same order as columns.
+     *
+     * @param tableName - Table name
+     * @param columns   - Table columns
+     * @param rows      - Values of every row, in the same order as columns
+     * @return Number of rows affected by every insert
+     * @throws ObjectExistsException  - thrown if one of the rows already exists
+     * @throws InternalErrorException - thrown if inserting fails
+     */
+    public int[] insertRecords(String tableName, String[] columns, List<Object[]> rows)
+		    throws InternalErrorException, ObjectExistsException {
+	return executeBatchUpdate(getInsertStatement(tableName, columns), rows);
+    }
+
+    /**
+     * This method is executing database insert of many rows using JDBC batching
+     *
+     * @param rows      - Parameters of every row
+     * @param tableName - Table name
+     * @param columns   - Table columns
+     * @return Number of rows affected by every insert
+     * @throws ObjectExistsException  - thrown if one of the rows already exists
+     * @throws InternalErrorException - thrown if inserting fails
+     */
+    public int[] insertRecordsInDatabase(List<Map<String, Object>> rows, String tableName, List<String> columns)
+		    throws InternalErrorException, ObjectExistsException {
+	String[] cols = columns.toArray(new String[columns.size()]);
+	List<Object[]> values = new ArrayList<>(rows.size());
+	for (Map<String, Object> row : rows) {
+	    Object[] rowValues = new Object[cols.length];
+	    for (int i = 0; i < cols.length; i++) {
+		rowValues[i] = row.get(cols[i]);
+	    }
+	    values.add(rowValues);
+	}
+	return insertRecords(tableName, cols, values);
+    }
+
+    /**
+     * Method will count rows changed by batch. Drivers which don't know count of a statement report
+     * {@link Statement#SUCCESS_NO_INFO}, which is counted as one row.
+     *
+     * @param counts Number of rows affected by every statement of batch
+     * @return Number of changed rows
+     */
+    private static long countRows(int[] counts) {
+	long rows = 0;
+	for (int count : counts) {
+	    rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+	}
+	return rows;
+    }
+
+    /**
+     * Method will record failed insert. Insert which failed before compiling is recorded by its table.
+     *
+     * @param insert    Insert, may be <code>null</code> or not compiled
+     * @param tableName Table name
+     * @param start     Time when insert started, in {@link System#nanoTime()} units
+     * @param params    Parameters of insert
+     */
+    private void recordFailedInsert(SimpleJdbcInsert insert, String tableName, long start,
+		    Map<String, Object> params) {
+	String statement = insert != null && insert.isCompiled() ?
+			insert.getInsertString() :
+			Utils.buildString("INSERT INTO ", tableName);
+	statistics.record(statement, start, 0, true, params);
+    }
+
+    /**
+     * Method will describe which rows of failed batch violated unique constraint. Driver either stops at first
+     * failed row, reporting counts of rows before it, or continues and marks failed rows. Rewritten MySQL batches
+     * are executed as one statement, so for them only whole chunk can be reported.
+     *
+     * @param e     Duplicate key exception
+     * @param start Index of first row of chunk
+     * @param chunk Rows of chunk
+     * @return Description of failed rows
+     */
+    private String describeFailedRows(DuplicateKeyException e, int start, List<Object[]> chunk) {
+	int[] counts = e.getCause() instanceof BatchUpdateException ?
+			((BatchUpdateException) e.getCause()).getUpdateCounts() :
+			null;
+	if (counts != null && counts.length < chunk.size()) {
+	    return Utils.buildString("Row [", start + counts.length, "] Values ",
+			    Arrays.toString(chunk.get(counts.length)), ".");
+	}
+	if (counts != null) {
+	    StringBuilder failed = new StringBuilder();
+	    int failedCount = 0;
+	    for (int i = 0; i < counts.length; i++) {
+		if (counts[i] == Statement.EXECUTE_FAILED) {
+		    Utils.appendToBuffer(failed, "Row [", start + i, "] Values ", Arrays.toString(chunk.get(i)), ". ");
+		    failedCount++;
+		}
+	    }
+	    // When every row is marked as failed, batch was executed as one statement and failed row is unknown
+	    if (failedCount > 0 && (failedCount < counts.length || counts.length == 1)) {
+		return failed.toString().trim();
+	    }
+	}
+	return Utils.buildString("One of rows [", start, " - ", start + chunk.size() - 1, "].");
+    }
+
+    /**
+     * Method will prepare named query and check that its placeholders and result columns match database schema.
+     * Driver checks referenced tables and columns when result metadata is requested.
+     *
+     * @param query Named query
+     * @throws InternalErrorException thrown if query can't be prepared or has wrong number of placeholders
+     */
+    private void validateQuery(final NamedQuery<?, ?> query) throws InternalErrorException {
+	String error;
+	try {
+	    error = jdbcTemplate.execute(new ConnectionCallback<String>() {
+		@Override
+		public String doInConnection(Connection con) throws SQLException {
+		    try (PreparedStatement ps = con.prepareStatement(query.getSql())) {
+			int count = ps.getParameterMetaData().getParameterCount();
+			if (count != query.getParameterCount()) {
+			    return Utils.buildString("Statement has ", count, " placeholders, declared ",
+					    query.getParameterCount());
+			}
+			if (ps.getMetaData() == null) {
+			    return "Statement returns no result set";
+			}
+			return null;
+		    }
+		}
+	    });
+	}
+	catch (Exception e) {
+	    error = e.getMessage();
+	}
+	if (error != null) {
+	    throw new InternalErrorException(Utils.buildString("Invalid named query [", query.getId(), "] Query [",
+			    query.getSql(), "] Reason: ", error));
+	}
+    }
+
+    /**
+     * Method will adapt binder of named query to {@link PreparedStatementSetter}
+     *
+     * @param query      Named query
+     * @param parameters Parameters passed to binder
+     * @return Statement setter
+     */
+    private <P> PreparedStatementSetter toSetter(final NamedQuery<P, ?> query, final P parameters) {
+	return new PreparedStatementSetter() {
+	    @Override
+	    public void setValues(PreparedStatement ps) throws SQLException {
+		query.getBinder().bind(ps, parameters, uuidCodec);
+	    }
+	};
+    }
+
+    /**
+     * Method will adapt mapper of named query to {@link RowMapper}
+     *
+     * @param query Named query
+     * @return Row mapper
+     */
+    private <R> RowMapper<R> toRowMapper(final NamedQuery<?, R> query) {
+	return new RowMapper<R>() {
+	    @Override
+	    public R mapRow(ResultSet rs, int rowNum) throws SQLException {
+		return query.getMapper().map(rs, uuidCodec);
+	    }
+	};
+    }
+
+    /**
+     * Method will return compiled {@link SimpleJdbcInsert} for given insert shape, compiling and caching it on
+     * first use. Compiled inserts are thread safe.
+     *
+     * @param tableName          Table name
+     * @param columns            Columns used by insert, or <code>null</code> for all table columns
+     * @param generatedKeyColumn Name of the auto-generated key column, or <code>null</code>
+     * @return Compiled insert
+     */
+    private SimpleJdbcInsert getCompiledInsert(String tableName, String[] columns, String generatedKeyColumn) {
+	StatementKey key = new StatementKey(tableName, columns, generatedKeyColumn);
+	SimpleJdbcInsert insert = compiledInserts.get(key);
+	if (insert == null) {
+	    insert = new SimpleJdbcInsert(jdbcTemplate);
+	    insert.withTableName(tableName);
+	    if (columns != null) {
+		insert.usingColumns(columns);
+	    }
+	    if (generatedKeyColumn != null) {
+		insert.usingGeneratedKeyColumns(generatedKeyColumn);
+	    }
+	    insert.compile();
+	    SimpleJdbcInsert existing = compiledInserts.putIfAbsent(key, insert);
+	    if (existing != null) {
+		insert = existing;
+	    }
+	}
+	return insert;
+    }
+
+    /**
+     * Method will return insert statement for given table and columns, building and caching it on first use
+     *
+     * @param tableName Table name
+     * @param columns   Table columns
+     * @return Insert statement with one placeholder per column
+     */
+    private String getInsertStatement(String tableName, String[] columns) {
+	StatementKey key = new StatementKey(tableName, columns, null);
+	String statement = insertStatements.get(key);
+	if (statement == null) {
+	    StringBuilder builder = Utils.appendToBuffer(new StringBuilder(), "INSERT INTO ", tableName, " (");
+	    for (int i = 0; i < columns.length; i++) {
+		Utils.appendToBuffer(builder, i == 0 ? "" : ", ", columns[i]);
+	    }
+	    Utils.appendToBuffer(builder, ") VALUES (");
+	    for (int i = 0; i < columns.length; i++) {
+		Utils.appendToBuffer(builder, i == 0 ? "?" : ", ?");
+	    }
+	    statement = Utils.appendToBuffer(builder, ")").toString();
+	    insertStatements.putIfAbsent(key, statement);
+	}
+	return statement;
+    }
+
+    /**
+     * Method retrieves column value from the database, based on specified arguments. Statement is built on every
+     * call, so lookups on request paths are declared in {@link QueryCatalog} instead.
      *
      * @param tableName      Name of the table to be queried
      * @param fieldName      Name of the column which will be retrieved
@@ -520,24 +1171,73 @@ public class QueryService {
     public <T> T getColumnValue(String tableName, String fieldName, String criteriaColumn, Object criteriaValue,
 		    Class<T> requiredType) throws ObjectNotFoundException, InternalErrorException {
 	String query = Utils.buildString("SELECT ", fieldName, " FROM ", tableName, " WHERE ", criteriaColumn, " = ?");
+	Object[] params = { criteriaValue };
 
 	if (LOGGER.isDebugEnabled()) {
 	    LOGGER.debug(Utils.buildString("Getting column value. Query [", query, "] Param [", criteriaValue, "]"));
 	}
+	long start = System.nanoTime();
 	try {
-	    return jdbcTemplate.queryForObject(query, new Object[] { criteriaValue }, requiredType);
+	    T result = jdbcTemplate.queryForObject(query, params, requiredType);
+	    statistics.record(query, start, 1, false, params);
+	    return result;
 	}
 	catch (EmptyResultDataAccessException e) {
+	    statistics.record(query, start, 0, false, params);
 	    String err = Utils.buildString("Unable to find column value. Query [", query, "] Param [", criteriaValue,
 			    "]");
 	    throw new ObjectNotFoundException(err, e);
 	}
 	catch (Exception e) {
+	    statistics.record(query, start, 0, true, params);
 	    String err = Utils.buildString("Failed to get column value. Query [", query, "] Param [", criteriaValue,
 			    "] Message: ", e.getMessage());
 	    throw new InternalErrorException(err, e);
 	}
     }
 
+    /**
+     * Key identifying insert shape: table, used columns and generated key column
+     */
+    private static class StatementKey {
+	private final String tableName;
+	private final String[] columns;
+	private final String keyColumn;
+	private final int hash;
 
-}
\ No newline at end of file
+	/**
+	 * Construct for statement key
+	 *
+	 * @param tableName Table name
+	 * @param columns   Columns used by statement, or <code>null</code> for all table columns
+	 * @param keyColumn Name of the auto-generated key column, or <code>null</code>
+	 */
+	StatementKey(String tableName, String[] columns, String keyColumn) {
+	    this.tableName = tableName;
+	    this.columns = columns == null ? null : columns.clone();
+	    this.keyColumn = keyColumn;
+	    int h = tableName.hashCode();
+	    h = 31 * h + Arrays.hashCode(this.columns);
+	    h = 31 * h + (keyColumn == null ? 0 : keyColumn.hashCode());
+	    this.hash = h;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (this == o) {
+		return true;
+	    }
+	    if (!(o instanceof StatementKey)) {
+		return false;
+	    }
+	    StatementKey other = (StatementKey) o;
+	    return tableName.equals(other.tableName) && Arrays.equals(columns, other.columns)
+			    && StringUtils.equals(keyColumn, other.keyColumn);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+    }
+}
@@ -0,0 +1,61 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Space reserved for one upload in storage quota of person. Reservation is finished exactly once, either committed
+ * with actual size of stored file or released, so finishing it again is ignored.
+ */
+public class QuotaReservation {
+
+    /**
+     * UUID of person
+     */
+    private final String personUUID;
+    /**
+     * Reserved space in bytes
+     */
+    private final long bytes;
+    /**
+     * Flag set when reservation is committed or released
+     */
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * Construct for quota reservation
+     *
+     * @param personUUID UUID of person
+     * @param bytes      Reserved space in bytes
+     */
+    QuotaReservation(String personUUID, long bytes) {
+	this.personUUID = personUUID;
+	this.bytes = bytes;
+    }
+
+    /**
+     * Getter for person UUID
+     *
+     * @return UUID of person
+     */
+    public String getPersonUUID() {
+	return personUUID;
+    }
+
+    /**
+     * Getter for reserved space
+     *
+     * @return Reserved space in bytes
+     */
+    public long getBytes() {
+	return bytes;
+    }
+
+    /**
+     * Method will mark reservation as finished
+     *
+     * @return <code>TRUE</code> if reservation wasn't finished before
+     */
+    boolean finish() {
+	return finished.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,305 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import rs.marko.lalic.safe.core.UUIDCodec;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.DBConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.exceptions.QuotaExceededException;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Storage quota of persons, kept in memory so uploads don't touch <code>USER</code> row. Space is reserved before
+ * upload content is received, using its declared size, and reservation is committed with actual size once file is
+ * stored, or released if upload fails. Changes of occupied space are added up per person and flushed to database
+ * periodically as increments, in one transaction.
+ */
+public class QuotaService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(QuotaService.class);
+    /**
+     * Query selecting quota and occupied space of person
+     */
+    private static final String LOAD_QUERY = Utils.buildString("SELECT ", DBConstants.USER_MAX_SPACE, ", ",
+		    DBConstants.USER_SPACE_OCCUPIED, " FROM ", DBConstants.USER_TABLE, " WHERE ",
+		    DBConstants.COMMON_USER_UUID, "=?");
+    /**
+     * Query summing sizes of all files of person
+     */
+    private static final String SUM_FILES_QUERY = Utils.buildString("SELECT COALESCE(SUM(", DBConstants.FILE_SIZE,
+		    "), 0) FROM ", DBConstants.FILE_TABLE, " WHERE ", DBConstants.COMMON_USER_UUID, "=?");
+    /**
+     * Query adding change to occupied space of person
+     */
+    private static final String FLUSH_QUERY = Utils.buildString("UPDATE ", DBConstants.USER_TABLE, " SET ",
+		    DBConstants.USER_SPACE_OCCUPIED, "=COALESCE(", DBConstants.USER_SPACE_OCCUPIED, ", 0) + ? WHERE ",
+		    DBConstants.COMMON_USER_UUID, "=?");
+    /**
+     * Mapper for quota rows. Occupied space is <code>-1</code> if it was never counted.
+     */
+    private final RowMapper<PersonQuota> quotaMapper = new RowMapper<PersonQuota>() {
+	@Override
+	public PersonQuota mapRow(ResultSet rs, int rowNum) throws SQLException {
+	    BigDecimal maxSpace = rs.getBigDecimal(DBConstants.USER_MAX_SPACE);
+	    BigDecimal occupied = rs.getBigDecimal(DBConstants.USER_SPACE_OCCUPIED);
+	    return new PersonQuota(maxSpace != null && maxSpace.signum() > 0 ? maxSpace.longValue() : defaultMaxSpace,
+			    occupied != null ? occupied.longValue() : -1);
+	}
+    };
+    /**
+     * Quotas of persons mapped by their UUID
+     */
+    private final ConcurrentMap<String, PersonQuota> quotas = new ConcurrentHashMap<>();
+    /**
+     * QueryService instance
+     */
+    @Autowired
+    private QueryService queryService;
+    /**
+     * TransactionTemplate instance
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    /**
+     * UUIDCodec instance
+     */
+    @Autowired
+    private UUIDCodec uuidCodec;
+    /**
+     * Quota in bytes of persons without their own quota, <code>0</code> for no limit
+     */
+    private long defaultMaxSpace;
+
+    /**
+     * Empty construct
+     */
+    public QuotaService() {
+    }
+
+    /**
+     * Setter for default quota
+     *
+     * @param defaultMaxSpace Quota in bytes of persons without their own quota, <code>0</code> for no limit
+     */
+    public void setDefaultMaxSpace(long defaultMaxSpace) {
+	this.defaultMaxSpace = Math.max(defaultMaxSpace, 0);
+    }
+
+    /**
+     * Method will reserve space for upload, before any of its content is received
+     *
+     * @param personUUID UUID of person
+     * @param bytes      Declared size of upload, <code>-1</code> if it is unknown
+     * @return Reservation, which must be committed or released
+     * @throws QuotaExceededException  thrown if upload doesn't fit into quota
+     * @throws InvalidRequestException thrown if size is unknown and person has limited quota
+     * @throws ObjectNotFoundException thrown if person is not found
+     * @throws InternalErrorException  thrown if quota can't be loaded
+     */
+    public QuotaReservation reserve(String personUUID, long bytes) throws BaseException {
+	PersonQuota quota = getQuota(personUUID);
+	synchronized (quota) {
+	    if (quota.maxSpace > 0) {
+		if (bytes < 0) {
+		    throw new InvalidRequestException("Size of upload must be declared when storage quota is limited.");
+		}
+		if (quota.occupied + quota.reserved + bytes > quota.maxSpace) {
+		    throw new QuotaExceededException(
+				    Utils.buildString("Storage quota exceeded. Person UUID: ", personUUID, ". Quota: ",
+						    quota.maxSpace, ". Occupied: ", quota.occupied, ". Reserved: ",
+						    quota.reserved, ". Requested: ", bytes));
+		}
+	    }
+	    long reserved = Math.max(bytes, 0);
+	    quota.reserved += reserved;
+	    return new QuotaReservation(personUUID, reserved);
+	}
+    }
+
+    /**
+     * Method will commit reservation once file is stored, counting actual size of file as occupied. Does nothing if
+     * reservation is <code>null</code> or already finished.
+     *
+     * @param reservation Reservation of upload
+     * @param size        Actual size of stored file in bytes
+     */
+    public void commit(QuotaReservation reservation, long size) {
+	if (reservation == null || !reservation.finish()) {
+	    return;
+	}
+	PersonQuota quota = quotas.get(reservation.getPersonUUID());
+	synchronized (quota) {
+	    quota.reserved -= reservation.getBytes();
+	    quota.occupied += size;
+	    quota.pending += size;
+	}
+    }
+
+    /**
+     * Method will release reservation of failed upload. Does nothing if reservation is <code>null</code> or already
+     * finished, so it can be called after upload in any case.
+     *
+     * @param reservation Reservation of upload
+     */
+    public void release(QuotaReservation reservation) {
+	if (reservation == null || !reservation.finish()) {
+	    return;
+	}
+	PersonQuota quota = quotas.get(reservation.getPersonUUID());
+	synchronized (quota) {
+	    quota.reserved -= reservation.getBytes();
+	}
+    }
+
+    /**
+     * Method will free space of removed files
+     *
+     * @param personUUID UUID of person
+     * @param size       Total size of removed files in bytes
+     * @throws ObjectNotFoundException thrown if person is not found
+     * @throws InternalErrorException  thrown if quota can't be loaded
+     */
+    public void free(String personUUID, long size) throws ObjectNotFoundException, InternalErrorException {
+	PersonQuota quota = getQuota(personUUID);
+	synchronized (quota) {
+	    quota.occupied -= size;
+	    quota.pending -= size;
+	}
+    }
+
+    /**
+     * Method will write changes of occupied space to database in one transaction. If transaction fails, changes are
+     * kept and written with next flush.
+     */
+    @Scheduled(fixedDelayString = "${quota.flush.interval}")
+    public void flush() {
+	List<String> personUUIDs = new ArrayList<>();
+	List<Long> deltas = new ArrayList<>();
+	List<Object[]> rows = new ArrayList<>();
+	for (Map.Entry<String, PersonQuota> entry : quotas.entrySet()) {
+	    PersonQuota quota = entry.getValue();
+	    long delta;
+	    synchronized (quota) {
+		delta = quota.pending;
+		quota.pending = 0;
+	    }
+	    if (delta != 0) {
+		personUUIDs.add(entry.getKey());
+		deltas.add(delta);
+		rows.add(new Object[] { delta, uuidCodec.toDatabase(entry.getKey()) });
+	    }
+	}
+	if (rows.isEmpty()) {
+	    return;
+	}
+	try {
+	    transactionTemplate.execute(new FlushTransaction(rows));
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug(Utils.buildString("Occupied space flushed. Persons: ", rows.size()));
+	    }
+	}
+	catch (RuntimeException e) {
+	    LOGGER.error(Utils.buildString("Failed to flush occupied space, it will be retried. Persons: ", rows.size(),
+			    ". Message: ", e.getMessage()), e);
+	    for (int i = 0; i < personUUIDs.size(); i++) {
+		PersonQuota quota = quotas.get(personUUIDs.get(i));
+		synchronized (quota) {
+		    quota.pending += deltas.get(i);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method will get quota of person, loading it on first access. Occupied space which was never counted is summed
+     * from files of person, and written with next flush.
+     *
+     * @param personUUID UUID of person
+     * @return Quota of person
+     * @throws ObjectNotFoundException thrown if person is not found
+     * @throws InternalErrorException  thrown if quota can't be loaded
+     */
+    private PersonQuota getQuota(String personUUID) throws ObjectNotFoundException, InternalErrorException {
+	PersonQuota quota = quotas.get(personUUID);
+	if (quota != null) {
+	    return quota;
+	}
+	List<Object> parameters = Utils.getParametersList(uuidCodec.toDatabase(personUUID));
+	quota = queryService.executeQueryAndReturnObject(LOAD_QUERY, parameters, quotaMapper);
+	if (quota.occupied < 0) {
+	    quota.occupied = queryService.executeQueryAndReturnObject(SUM_FILES_QUERY, parameters, Long.class);
+	    quota.pending = quota.occupied;
+	}
+	PersonQuota loaded = quotas.putIfAbsent(personUUID, quota);
+	return loaded != null ? loaded : quota;
+    }
+
+    /**
+     * Quota of one person, all fields are guarded by its monitor
+     */
+    private static class PersonQuota {
+	private final long maxSpace;
+	private long occupied;
+	private long reserved;
+	private long pending;
+
+	/**
+	 * Construct for person quota
+	 *
+	 * @param maxSpace Quota in bytes, <code>0</code> for no limit
+	 * @param occupied Occupied space in bytes
+	 */
+	public PersonQuota(long maxSpace, long occupied) {
+	    this.maxSpace = maxSpace;
+	    this.occupied = occupied;
+	}
+    }
+
+    /**
+     * Transaction adding changes of occupied space to persons
+     */
+    private class FlushTransaction implements TransactionCallback {
+	private List<Object[]> rows;
+
+	/**
+	 * Construct for flush transaction
+	 *
+	 * @param rows Change and UUID of every person
+	 */
+	public FlushTransaction(List<Object[]> rows) {
+	    this.rows = rows;
+	}
+
+	@Override
+	public Object doInTransaction(TransactionStatus status) {
+	    try {
+		queryService.executeBatchUpdate(FLUSH_QUERY, rows);
+		return null;
+	    }
+	    catch (BaseException e) {
+		status.setRollbackOnly();
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+}
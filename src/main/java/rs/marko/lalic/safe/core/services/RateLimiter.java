@@ -0,0 +1,51 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limiter spacing operations evenly in time, shared by threads of background jobs so they don't compete with requests
+ * for disk or object store. Each operation takes next free slot, and caller waits until its slot comes.
+ */
+public class RateLimiter {
+
+    /**
+     * Time between two operations in nanoseconds, <code>0</code> if rate is not limited
+     */
+    private final long interval;
+    /**
+     * Time of next free slot, in {@link System#nanoTime()} units
+     */
+    private long nextSlot;
+
+    /**
+     * Construct for rate limiter
+     *
+     * @param operationsPerSecond Maximum number of operations per second, <code>0</code> or less for no limit
+     */
+    public RateLimiter(long operationsPerSecond) {
+	this.interval = operationsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / operationsPerSecond : 0;
+	this.nextSlot = System.nanoTime();
+    }
+
+    /**
+     * Method will wait until next operation is allowed
+     *
+     * @throws InterruptedException thrown if thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+	if (interval == 0) {
+	    return;
+	}
+	long wait;
+	synchronized (this) {
+	    long now = System.nanoTime();
+	    // Idle time isn't saved up, so rate can't burst after pause
+	    long slot = Math.max(nextSlot, now);
+	    nextSlot = slot + interval;
+	    wait = slot - now;
+	}
+	if (wait > 0) {
+	    TimeUnit.NANOSECONDS.sleep(wait);
+	}
+    }
+}
@@ -0,0 +1,1028 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+import rs.marko.lalic.safe.core.storage.StoredObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reconciliation of stored content with database. Storage is walked in parallel and its entries are kept in memory,
+ * then file, blob and folder rows are read in batches and matched against them. Rows without content are reported as
+ * missing, and entries without rows, older than grace period, are reported as orphans. In repair mode orphans are
+ * removed and missing folders are created again, while missing files are only reported since their content is lost.
+ * Every entry is checked again right before it is reported, so uploads and migrations running in the meantime aren't
+ * mistaken for drift. All storage operations go through shared rate limiter.
+ */
+public class ReconciliationService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(ReconciliationService.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Number of rows read from database in one batch
+     */
+    private static final int BATCH_SIZE = 500;
+    /**
+     * Number of objects listed from remote backend in one request
+     */
+    private static final int LIST_PAGE_SIZE = 1000;
+    /**
+     * Maximum number of issues kept for status
+     */
+    private static final int MAX_REPORTED_ISSUES = 100;
+    /**
+     * Default number of threads walking storage
+     */
+    public static final int DEFAULT_THREADS = 4;
+    /**
+     * Issue of mirrored file without row
+     */
+    public static final String ISSUE_ORPHAN_FILE = "ORPHAN_FILE";
+    /**
+     * Issue of folder without row
+     */
+    public static final String ISSUE_ORPHAN_FOLDER = "ORPHAN_FOLDER";
+    /**
+     * Issue of object of hashed layout without row
+     */
+    public static final String ISSUE_ORPHAN_OBJECT = "ORPHAN_OBJECT";
+    /**
+     * Issue of blob without row
+     */
+    public static final String ISSUE_ORPHAN_BLOB = "ORPHAN_BLOB";
+    /**
+     * Issue of file row without content
+     */
+    public static final String ISSUE_MISSING_FILE = "MISSING_FILE";
+    /**
+     * Issue of folder row without folder on disk
+     */
+    public static final String ISSUE_MISSING_FOLDER = "MISSING_FOLDER";
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * DBFolderService instance
+     */
+    @Autowired
+    private DBFolderService dBFolderService;
+    /**
+     * FolderCacheService instance
+     */
+    @Autowired
+    private FolderCacheService folderCacheService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * Number of threads walking storage
+     */
+    private int threads = DEFAULT_THREADS;
+    /**
+     * Maximum number of storage operations per second, <code>0</code> for no limit
+     */
+    private long ioRate;
+    /**
+     * Time in milliseconds entry must exist before it can be treated as orphan
+     */
+    private long grace;
+    /**
+     * Thread running current reconciliation, <code>null</code> if reconciliation is not running
+     */
+    private Thread reconciliationThread;
+    /**
+     * Flag set when running reconciliation should stop
+     */
+    private volatile boolean stopRequested;
+    /**
+     * Flag if last reconciliation repairs found issues
+     */
+    private volatile boolean repair;
+    /**
+     * Number of storage entries walked in last reconciliation
+     */
+    private final AtomicLong scannedEntries = new AtomicLong();
+    /**
+     * Number of database rows checked in last reconciliation
+     */
+    private final AtomicLong scannedRows = new AtomicLong();
+    /**
+     * Number of orphans found in last reconciliation
+     */
+    private final AtomicLong orphans = new AtomicLong();
+    /**
+     * Number of missing files and folders found in last reconciliation
+     */
+    private final AtomicLong missing = new AtomicLong();
+    /**
+     * Number of issues repaired in last reconciliation
+     */
+    private final AtomicLong repaired = new AtomicLong();
+    /**
+     * Number of bytes released by removed orphans in last reconciliation
+     */
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    /**
+     * Number of storage operations which failed in last reconciliation
+     */
+    private final AtomicLong failed = new AtomicLong();
+    /**
+     * First issues found in last reconciliation
+     */
+    private final List<ObjectNode> issues = Collections.synchronizedList(new ArrayList<ObjectNode>());
+    /**
+     * Time when last reconciliation was started, <code>0</code> if it wasn't started
+     */
+    private volatile long startedOn;
+    /**
+     * Time when last reconciliation finished, <code>0</code> if it is running or wasn't started
+     */
+    private volatile long finishedOn;
+
+    /**
+     * Empty construct
+     */
+    public ReconciliationService() {
+    }
+
+    /**
+     * Setter for number of threads walking storage
+     *
+     * @param threads Number of threads
+     */
+    public void setThreads(int threads) {
+	this.threads = threads > 0 ? threads : DEFAULT_THREADS;
+    }
+
+    /**
+     * Setter for I/O rate limit
+     *
+     * @param ioRate Maximum number of storage operations per second, <code>0</code> for no limit
+     */
+    public void setIoRate(long ioRate) {
+	this.ioRate = Math.max(ioRate, 0);
+    }
+
+    /**
+     * Setter for grace period
+     *
+     * @param grace Time in milliseconds entry must exist before it can be treated as orphan
+     */
+    public void setGrace(long grace) {
+	this.grace = Math.max(grace, 0);
+    }
+
+    /**
+     * Method will start reconciliation on background thread
+     *
+     * @param repair <code>TRUE</code> if found issues should be repaired, otherwise they are only reported
+     * @return Reconciliation status
+     * @throws InvalidRequestException thrown if reconciliation is already running
+     */
+    public synchronized ObjectNode start(boolean repair) throws InvalidRequestException {
+	if (reconciliationThread != null && reconciliationThread.isAlive()) {
+	    throw new InvalidRequestException("Storage reconciliation is already running.");
+	}
+	this.repair = repair;
+	stopRequested = false;
+	scannedEntries.set(0);
+	scannedRows.set(0);
+	orphans.set(0);
+	missing.set(0);
+	repaired.set(0);
+	reclaimedBytes.set(0);
+	failed.set(0);
+	issues.clear();
+	startedOn = System.currentTimeMillis();
+	finishedOn = 0;
+	reconciliationThread = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		reconcile();
+	    }
+	}, "storage-reconciliation");
+	reconciliationThread.setDaemon(true);
+	reconciliationThread.start();
+	return getStatus();
+    }
+
+    /**
+     * Method will stop running reconciliation. Issues already repaired stay repaired.
+     */
+    public synchronized void stop() {
+	stopRequested = true;
+	if (reconciliationThread != null) {
+	    reconciliationThread.interrupt();
+	}
+    }
+
+    /**
+     * Method will return status of last reconciliation, with first issues it found
+     *
+     * @return Reconciliation status
+     */
+    public synchronized ObjectNode getStatus() {
+	ObjectNode status = MAPPER.createObjectNode();
+	status.put(JsonConstants.FIELD_RUNNING, reconciliationThread != null && reconciliationThread.isAlive());
+	status.put(JsonConstants.FIELD_REPAIR, repair);
+	status.put(JsonConstants.FIELD_SCANNED_ENTRIES, scannedEntries.get());
+	status.put(JsonConstants.FIELD_SCANNED_ROWS, scannedRows.get());
+	status.put(JsonConstants.FIELD_ORPHANS, orphans.get());
+	status.put(JsonConstants.FIELD_MISSING, missing.get());
+	status.put(JsonConstants.FIELD_REPAIRED, repaired.get());
+	status.put(JsonConstants.FIELD_RECLAIMED_BYTES, reclaimedBytes.get());
+	status.put(JsonConstants.FIELD_FAILED, failed.get());
+	if (startedOn > 0) {
+	    status.put(JsonConstants.FIELD_STARTED_ON, startedOn);
+	}
+	if (finishedOn > 0) {
+	    status.put(JsonConstants.FIELD_FINISHED_ON, finishedOn);
+	}
+	ArrayNode issueArray = status.putArray(JsonConstants.FIELD_ISSUES);
+	synchronized (issues) {
+	    issueArray.addAll(issues);
+	}
+	return status;
+    }
+
+    /**
+     * Method will periodically start reconciliation which only reports issues, unless one is already running
+     */
+    @Scheduled(fixedDelayString = "${storage.reconcile.interval}", initialDelayString = "${storage.reconcile.interval}")
+    public synchronized void reconcilePeriodically() {
+	if (reconciliationThread == null || !reconciliationThread.isAlive()) {
+	    try {
+		start(false);
+	    }
+	    catch (InvalidRequestException e) {
+		LOGGER.warn(e.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * Method will walk storage, match it against database and handle found issues
+     */
+    private void reconcile() {
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Storage reconciliation started. Repair: ", repair, ". Threads: ", threads,
+			    ". I/O rate: ", ioRate));
+	}
+	// Entries created after this moment minus grace period are never orphans, since their rows may be pending
+	long orphanedBefore = System.currentTimeMillis() - grace;
+	RateLimiter limiter = new RateLimiter(ioRate);
+	Snapshot snapshot = new Snapshot(fileSystemService.getRootFolder().getAbsoluteFile().toPath());
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	try {
+	    walkStorage(pool, limiter, snapshot);
+	    checkFiles(limiter, snapshot);
+	    checkBlobs(snapshot);
+	    checkFolders(limiter, snapshot);
+	    handleOrphanFiles(limiter, snapshot, orphanedBefore);
+	    handleOrphanFolders(limiter, snapshot, orphanedBefore);
+	    handleOrphanObjects(limiter, snapshot, orphanedBefore);
+	    if (handleOrphanBlobs(snapshot, orphanedBefore)) {
+		contentStoreService.collectGarbage();
+	    }
+	}
+	catch (InterruptedException e) {
+	    LOGGER.warn("Storage reconciliation stopped.");
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(Utils.buildString("Storage reconciliation failed. Message: ", e.getMessage()), e);
+	}
+	finally {
+	    pool.shutdownNow();
+	    finishedOn = System.currentTimeMillis();
+	}
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Storage reconciliation finished. Entries: ", scannedEntries.get(),
+			    ". Rows: ", scannedRows.get(), ". Orphans: ", orphans.get(), ". Missing: ", missing.get(),
+			    ". Repaired: ", repaired.get(), ". Reclaimed bytes: ", reclaimedBytes.get()));
+	}
+    }
+
+    /**
+     * Method will walk mirrored folder tree, blobs and objects of all healthy volumes in parallel. Volumes kept on
+     * disk are walked folder by folder, remote volumes are listed page by page.
+     *
+     * @param pool     Pool of walking threads
+     * @param limiter  Storage rate limiter
+     * @param snapshot Snapshot filled with found entries
+     * @throws InterruptedException thrown if reconciliation is stopped
+     */
+    private void walkStorage(ForkJoinPool pool, RateLimiter limiter, Snapshot snapshot) throws InterruptedException {
+	Path root = snapshot.root;
+	List<ForkJoinTask<?>> tasks = new ArrayList<>();
+	tasks.add(new WalkTask(root, EntryKind.MIRROR, null, null, limiter, snapshot));
+	File blobs = new File(root.toFile(), ContentStoreService.BLOBS_FOLDER);
+	if (blobs.isDirectory()) {
+	    tasks.add(new WalkTask(blobs.toPath(), EntryKind.BLOB, null, null, limiter, snapshot));
+	}
+	for (Volume volume : volumePoolService.getVolumes()) {
+	    if (!volume.isHealthy()) {
+		LOGGER.warn(Utils.buildString("Volume is not healthy, its files are not reconciled. Volume ID: ",
+				volume.getVolumeId()));
+		continue;
+	    }
+	    ConcurrentMap<String, StorageEntry> objects = new ConcurrentHashMap<>();
+	    snapshot.objects.put(volume.getVolumeId(), objects);
+	    File local = volume.getBackend().getLocalFile(FileSystemService.OBJECTS_FOLDER);
+	    if (local == null) {
+		tasks.add(new ListTask(volume.getBackend(), limiter, objects));
+	    }
+	    else if (local.isDirectory()) {
+		tasks.add(new WalkTask(local.toPath(), EntryKind.OBJECT, objects,
+				Utils.buildString(FileSystemService.OBJECTS_FOLDER, "/"), limiter, snapshot));
+	    }
+	}
+	for (ForkJoinTask<?> task : tasks) {
+	    pool.execute(task);
+	}
+	for (ForkJoinTask<?> task : tasks) {
+	    task.join();
+	}
+	if (stopRequested) {
+	    throw new InterruptedException();
+	}
+    }
+
+    /**
+     * Method will match file rows against walked storage and report files without content
+     *
+     * @param limiter  Storage rate limiter
+     * @param snapshot Walked storage, matched entries are removed from it
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void checkFiles(RateLimiter limiter, Snapshot snapshot)
+		    throws InterruptedException, InternalErrorException {
+	String lastFileUUID = null;
+	List<FileRecord> batch;
+	do {
+	    checkStopped();
+	    batch = dBFileService.getFilesDB(lastFileUUID, BATCH_SIZE);
+	    for (FileRecord record : batch) {
+		scannedRows.incrementAndGet();
+		lastFileUUID = record.getFileUUID();
+		if (record.getLayout() == StorageLayout.HASHED) {
+		    checkObject(record, limiter, snapshot);
+		}
+		else if (record.getLayout() == StorageLayout.CONTENT) {
+		    if (!snapshot.blobs.containsKey(record.getChecksum())) {
+			limiter.acquire();
+			File blob = contentStoreService.getBlobFile(record.getChecksum());
+			if (!blob.isFile()) {
+			    reportMissing(ISSUE_MISSING_FILE, blob.getPath());
+			}
+		    }
+		}
+		else if (snapshot.files.remove(record.getPath()) == null) {
+		    limiter.acquire();
+		    if (!new File(record.getPath()).isFile()) {
+			reportMissing(ISSUE_MISSING_FILE, record.getPath());
+		    }
+		}
+	    }
+	}
+	while (batch.size() == BATCH_SIZE);
+    }
+
+    /**
+     * Method will match file row in hashed layout against objects of its volume, and report it if object is missing
+     *
+     * @param record   File row
+     * @param limiter  Storage rate limiter
+     * @param snapshot Walked storage, matched object is removed from it
+     * @throws InterruptedException thrown if reconciliation is stopped
+     */
+    private void checkObject(FileRecord record, RateLimiter limiter, Snapshot snapshot) throws InterruptedException {
+	ConcurrentMap<String, StorageEntry> objects = record.getVolumeId() == null ?
+			null :
+			snapshot.objects.get(record.getVolumeId());
+	if (objects == null) {
+	    // Volume is not healthy or not configured, its objects weren't walked
+	    return;
+	}
+	String key = fileSystemService.getHashedKey(record.getFileUUID());
+	if (objects.remove(key) != null) {
+	    return;
+	}
+	// Object may have been stored after its folder was walked
+	limiter.acquire();
+	try {
+	    StorageBackend backend = volumePoolService.getVolume(record.getVolumeId()).getBackend();
+	    if (backend.stat(key) == null) {
+		reportMissing(ISSUE_MISSING_FILE, Utils.buildString(backend.getLocation(), "/", key));
+	    }
+	}
+	catch (InternalErrorException e) {
+	    failed.incrementAndGet();
+	    LOGGER.warn(Utils.buildString("Failed to check object. Key: ", key, ". Message: ", e.getMessage()));
+	}
+    }
+
+    /**
+     * Method will match blob rows against walked blobs. Rows without blobs are already reported by files using them.
+     *
+     * @param snapshot Walked storage, matched blobs are removed from it
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void checkBlobs(Snapshot snapshot) throws InterruptedException, InternalErrorException {
+	String lastChecksum = null;
+	List<String> batch;
+	do {
+	    checkStopped();
+	    batch = contentStoreService.getChecksums(lastChecksum, BATCH_SIZE);
+	    for (String checksum : batch) {
+		scannedRows.incrementAndGet();
+		snapshot.blobs.remove(checksum);
+		lastChecksum = checksum;
+	    }
+	}
+	while (batch.size() == BATCH_SIZE);
+    }
+
+    /**
+     * Method will match folder rows against walked folders, and report or create folders missing on disk. In hashed
+     * layout folders exist only in database, so they are never missing.
+     *
+     * @param limiter  Storage rate limiter
+     * @param snapshot Walked storage, matched folders are removed from it
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void checkFolders(RateLimiter limiter, Snapshot snapshot)
+		    throws InterruptedException, InternalErrorException {
+	boolean onDisk = fileSystemService.isFolderTreeOnDisk();
+	String lastFolderUUID = null;
+	List<FolderNode> batch;
+	do {
+	    checkStopped();
+	    batch = dBFolderService.getFoldersDB(lastFolderUUID, BATCH_SIZE);
+	    for (FolderNode folder : batch) {
+		scannedRows.incrementAndGet();
+		lastFolderUUID = folder.getFolderUUID();
+		if (snapshot.folders.remove(folder.getPath()) != null || !onDisk) {
+		    continue;
+		}
+		limiter.acquire();
+		File directory = new File(folder.getPath());
+		if (directory.isDirectory()) {
+		    continue;
+		}
+		reportMissing(ISSUE_MISSING_FOLDER, folder.getPath());
+		if (repair) {
+		    if (directory.mkdirs() || directory.isDirectory()) {
+			repaired.incrementAndGet();
+		    }
+		    else {
+			failed.incrementAndGet();
+			LOGGER.warn(Utils.buildString("Failed to create missing folder. Path: ", directory));
+		    }
+		}
+	    }
+	}
+	while (batch.size() == BATCH_SIZE);
+    }
+
+    /**
+     * Method will report, and in repair mode remove, mirrored files without rows
+     *
+     * @param limiter        Storage rate limiter
+     * @param snapshot       Walked storage, holding only unmatched entries
+     * @param orphanedBefore Only files modified before this time are orphans
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void handleOrphanFiles(RateLimiter limiter, Snapshot snapshot, long orphanedBefore)
+		    throws InterruptedException, InternalErrorException {
+	for (Map.Entry<String, StorageEntry> entry : snapshot.files.entrySet()) {
+	    checkStopped();
+	    if (entry.getValue().lastModified >= orphanedBefore) {
+		continue;
+	    }
+	    limiter.acquire();
+	    File file = new File(entry.getKey());
+	    if (!file.isFile() || isMirroredFileKnown(file)) {
+		continue;
+	    }
+	    reportOrphan(ISSUE_ORPHAN_FILE, file.getPath());
+	    if (repair) {
+		limiter.acquire();
+		deleteLocal(file, entry.getValue().size);
+	    }
+	}
+    }
+
+    /**
+     * Method will report, and in repair mode remove, folders without rows. Deepest folders are handled first, so
+     * nested orphans are empty when they are removed. Folders which still hold anything are kept.
+     *
+     * @param limiter        Storage rate limiter
+     * @param snapshot       Walked storage, holding only unmatched entries
+     * @param orphanedBefore Only folders modified before this time are orphans
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void handleOrphanFolders(RateLimiter limiter, Snapshot snapshot, long orphanedBefore)
+		    throws InterruptedException, InternalErrorException {
+	List<String> paths = new ArrayList<>();
+	for (Map.Entry<String, StorageEntry> entry : snapshot.folders.entrySet()) {
+	    if (entry.getValue().lastModified < orphanedBefore) {
+		paths.add(entry.getKey());
+	    }
+	}
+	Collections.sort(paths, new Comparator<String>() {
+	    @Override
+	    public int compare(String first, String second) {
+		return Integer.compare(second.length(), first.length());
+	    }
+	});
+	for (String path : paths) {
+	    checkStopped();
+	    limiter.acquire();
+	    File folder = new File(path);
+	    if (!folder.isDirectory() || isFolderKnown(folder)) {
+		continue;
+	    }
+	    reportOrphan(ISSUE_ORPHAN_FOLDER, path);
+	    if (repair) {
+		limiter.acquire();
+		try {
+		    Files.delete(folder.toPath());
+		    repaired.incrementAndGet();
+		}
+		catch (DirectoryNotEmptyException e) {
+		    LOGGER.warn(Utils.buildString("Orphan folder is not empty, it is kept. Path: ", path));
+		}
+		catch (IOException e) {
+		    failed.incrementAndGet();
+		    LOGGER.warn(Utils.buildString("Failed to remove orphan folder. Path: ", path, ". Message: ",
+				    e.getMessage()));
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method will report, and in repair mode remove, objects of hashed layout without rows
+     *
+     * @param limiter        Storage rate limiter
+     * @param snapshot       Walked storage, holding only unmatched entries
+     * @param orphanedBefore Only objects modified before this time are orphans
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private void handleOrphanObjects(RateLimiter limiter, Snapshot snapshot, long orphanedBefore)
+		    throws InterruptedException, InternalErrorException {
+	for (Map.Entry<String, ConcurrentMap<String, StorageEntry>> volumeObjects : snapshot.objects.entrySet()) {
+	    StorageBackend backend = volumePoolService.getVolume(volumeObjects.getKey()).getBackend();
+	    for (Map.Entry<String, StorageEntry> entry : volumeObjects.getValue().entrySet()) {
+		checkStopped();
+		if (entry.getValue().lastModified >= orphanedBefore || isObjectKnown(entry.getKey())) {
+		    continue;
+		}
+		reportOrphan(ISSUE_ORPHAN_OBJECT, Utils.buildString(backend.getLocation(), "/", entry.getKey()));
+		if (repair) {
+		    limiter.acquire();
+		    try {
+			backend.delete(entry.getKey());
+			repaired.incrementAndGet();
+			reclaimedBytes.addAndGet(entry.getValue().size);
+		    }
+		    catch (InternalErrorException e) {
+			failed.incrementAndGet();
+			LOGGER.warn(Utils.buildString("Failed to remove orphan object. Key: ", entry.getKey(),
+					". Message: ", e.getMessage()));
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method will report blobs without rows, and in repair mode register them as blobs without references, so they
+     * are removed by garbage collection under lock protecting them from concurrent uploads
+     *
+     * @param snapshot       Walked storage, holding only unmatched entries
+     * @param orphanedBefore Only blobs modified before this time are orphans
+     * @return <code>TRUE</code> if any blob was registered for removal
+     * @throws InterruptedException   thrown if reconciliation is stopped
+     * @throws InternalErrorException thrown if blob can't be registered
+     */
+    private boolean handleOrphanBlobs(Snapshot snapshot, long orphanedBefore)
+		    throws InterruptedException, InternalErrorException {
+	boolean adopted = false;
+	for (Map.Entry<String, StorageEntry> entry : snapshot.blobs.entrySet()) {
+	    checkStopped();
+	    if (entry.getValue().lastModified >= orphanedBefore) {
+		continue;
+	    }
+	    reportOrphan(ISSUE_ORPHAN_BLOB, contentStoreService.getBlobFile(entry.getKey()).getPath());
+	    if (repair && contentStoreService.adoptBlob(entry.getKey(), entry.getValue().size)) {
+		adopted = true;
+		repaired.incrementAndGet();
+		reclaimedBytes.addAndGet(entry.getValue().size);
+	    }
+	}
+	return adopted;
+    }
+
+    /**
+     * Method will check again if mirrored file has row, since it may have been added after rows were read
+     *
+     * @param file Mirrored file
+     * @return <code>TRUE</code> if file has row
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private boolean isMirroredFileKnown(File file) throws InternalErrorException {
+	String personUUID = getPersonUUID(file);
+	if (personUUID == null) {
+	    return false;
+	}
+	try {
+	    FolderNode folder = folderCacheService.getFolderByPath(personUUID, file.getParent());
+	    return dBFileService.mirroredFileExistsDB(folder.getFolderUUID(), file.getName());
+	}
+	catch (ObjectNotFoundException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Method will check again if folder has row, since it may have been added after rows were read
+     *
+     * @param folder Folder on disk
+     * @return <code>TRUE</code> if folder has row
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private boolean isFolderKnown(File folder) throws InternalErrorException {
+	String personUUID = getPersonUUID(folder);
+	if (personUUID == null) {
+	    return false;
+	}
+	try {
+	    folderCacheService.getFolderByPath(personUUID, folder.getPath());
+	    return true;
+	}
+	catch (ObjectNotFoundException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Method will check again if object has row. Objects with invalid names, or not at location of their UUID, can't
+     * be reached and never have row.
+     *
+     * @param key Key of object
+     * @return <code>TRUE</code> if object has row
+     * @throws InternalErrorException thrown if rows can't be read
+     */
+    private boolean isObjectKnown(String key) throws InternalErrorException {
+	String fileUUID = key.substring(key.lastIndexOf('/') + 1);
+	try {
+	    if (!key.equals(fileSystemService.getHashedKey(fileUUID))) {
+		return false;
+	    }
+	}
+	catch (IllegalArgumentException e) {
+	    return false;
+	}
+	return dBFileService.fileExists(fileUUID);
+    }
+
+    /**
+     * Method will get UUID of person owning mirrored entry, which is name of its top folder under root folder
+     *
+     * @param file Mirrored file or folder
+     * @return UUID of person, or <code>null</code> if top folder isn't named by UUID
+     */
+    private String getPersonUUID(File file) {
+	Path relative = fileSystemService.getRootFolder().getAbsoluteFile().toPath().relativize(file.toPath());
+	String personUUID = relative.getName(0).toString();
+	try {
+	    UUID.fromString(personUUID);
+	    return personUUID;
+	}
+	catch (IllegalArgumentException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Method will remove orphan file from disk
+     *
+     * @param file File to remove
+     * @param size Size of file in bytes
+     */
+    private void deleteLocal(File file, long size) {
+	try {
+	    Files.delete(file.toPath());
+	    repaired.incrementAndGet();
+	    reclaimedBytes.addAndGet(size);
+	}
+	catch (IOException e) {
+	    failed.incrementAndGet();
+	    LOGGER.warn(Utils.buildString("Failed to remove orphan file. Path: ", file, ". Message: ",
+			    e.getMessage()));
+	}
+    }
+
+    /**
+     * Method will count and report orphan
+     *
+     * @param type     Type of issue
+     * @param location Path or location of orphan
+     */
+    private void reportOrphan(String type, String location) {
+	orphans.incrementAndGet();
+	report(type, location);
+    }
+
+    /**
+     * Method will count and report missing file or folder
+     *
+     * @param type     Type of issue
+     * @param location Path or location where content was expected
+     */
+    private void reportMissing(String type, String location) {
+	missing.incrementAndGet();
+	report(type, location);
+    }
+
+    /**
+     * Method will log issue, and keep it for status if limit of kept issues isn't reached
+     *
+     * @param type     Type of issue
+     * @param location Path or location of issue
+     */
+    private void report(String type, String location) {
+	LOGGER.warn(Utils.buildString("Storage reconciliation found issue. Type: ", type, ". Location: ", location));
+	synchronized (issues) {
+	    if (issues.size() < MAX_REPORTED_ISSUES) {
+		ObjectNode issue = MAPPER.createObjectNode();
+		issue.put(JsonConstants.FIELD_TYPE, type);
+		issue.put(JsonConstants.FIELD_PATH, location);
+		issues.add(issue);
+	    }
+	}
+    }
+
+    /**
+     * Method will check if reconciliation should stop
+     *
+     * @throws InterruptedException thrown if reconciliation is stopped
+     */
+    private void checkStopped() throws InterruptedException {
+	if (stopRequested || Thread.currentThread().isInterrupted()) {
+	    throw new InterruptedException();
+	}
+    }
+
+    /**
+     * Kind of walked storage entries
+     */
+    private enum EntryKind {
+	MIRROR,
+	BLOB,
+	OBJECT
+    }
+
+    /**
+     * Size and modification time of walked entry
+     */
+    private static class StorageEntry {
+	private final long size;
+	private final long lastModified;
+
+	/**
+	 * Construct for storage entry
+	 *
+	 * @param size         Size in bytes
+	 * @param lastModified Modification time in milliseconds
+	 */
+	public StorageEntry(long size, long lastModified) {
+	    this.size = size;
+	    this.lastModified = lastModified;
+	}
+    }
+
+    /**
+     * Entries found by walk, mapped by path, checksum or key. Entries matched by rows are removed, so only orphans
+     * are left at the end.
+     */
+    private static class Snapshot {
+	private final Path root;
+	private final ConcurrentMap<String, StorageEntry> files = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, StorageEntry> folders = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, StorageEntry> blobs = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ConcurrentMap<String, StorageEntry>> objects = new ConcurrentHashMap<>();
+
+	/**
+	 * Construct for snapshot
+	 *
+	 * @param root Root folder of mirrored tree
+	 */
+	public Snapshot(Path root) {
+	    this.root = root;
+	}
+    }
+
+    /**
+     * Task walking one folder, which forks task for each of its subfolders
+     */
+    private class WalkTask extends RecursiveAction {
+	private final Path folder;
+	private final EntryKind kind;
+	private final ConcurrentMap<String, StorageEntry> objects;
+	private final String keyPrefix;
+	private final RateLimiter limiter;
+	private final Snapshot snapshot;
+
+	/**
+	 * Construct for walk task
+	 *
+	 * @param folder    Folder to walk
+	 * @param kind      Kind of entries in folder
+	 * @param objects   Objects of walked volume, used for objects only
+	 * @param keyPrefix Key of folder ending with slash, used for objects only
+	 * @param limiter   Storage rate limiter
+	 * @param snapshot  Snapshot filled with found entries
+	 */
+	public WalkTask(Path folder, EntryKind kind, ConcurrentMap<String, StorageEntry> objects, String keyPrefix,
+			RateLimiter limiter, Snapshot snapshot) {
+	    this.folder = folder;
+	    this.kind = kind;
+	    this.objects = objects;
+	    this.keyPrefix = keyPrefix;
+	    this.limiter = limiter;
+	    this.snapshot = snapshot;
+	}
+
+	@Override
+	protected void compute() {
+	    if (stopRequested) {
+		return;
+	    }
+	    // Hidden folders of root folder hold blobs, objects and service files, not mirrored tree
+	    boolean root = kind == EntryKind.MIRROR && folder.equals(snapshot.root);
+	    List<WalkTask> subfolders = new ArrayList<>();
+	    try {
+		limiter.acquire();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+		    for (Path entry : entries) {
+			String name = entry.getFileName().toString();
+			if (root && name.startsWith(".")) {
+			    continue;
+			}
+			limiter.acquire();
+			BasicFileAttributes attributes = Files
+					.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			scannedEntries.incrementAndGet();
+			StorageEntry found = new StorageEntry(attributes.size(),
+					attributes.lastModifiedTime().toMillis());
+			if (attributes.isDirectory()) {
+			    if (kind == EntryKind.MIRROR) {
+				snapshot.folders.put(entry.toString(), found);
+			    }
+			    subfolders.add(new WalkTask(entry, kind, objects,
+					    keyPrefix == null ? null : Utils.buildString(keyPrefix, name, "/"), limiter,
+					    snapshot));
+			}
+			else if (attributes.isRegularFile()) {
+			    add(entry, name, found);
+			}
+		    }
+		}
+	    }
+	    catch (InterruptedException e) {
+		stopRequested = true;
+		return;
+	    }
+	    catch (IOException e) {
+		failed.incrementAndGet();
+		LOGGER.warn(Utils.buildString("Failed to walk folder. Path: ", folder, ". Message: ", e.getMessage()));
+	    }
+	    invokeAll(subfolders);
+	}
+
+	/**
+	 * Method will add found file to snapshot
+	 *
+	 * @param path  Path of file
+	 * @param name  Name of file
+	 * @param found Size and modification time of file
+	 */
+	private void add(Path path, String name, StorageEntry found) {
+	    if (kind == EntryKind.MIRROR) {
+		snapshot.files.put(path.toString(), found);
+	    }
+	    else if (kind == EntryKind.OBJECT) {
+		objects.put(Utils.buildString(keyPrefix, name), found);
+	    }
+	    else if (ContentStoreService.CHECKSUM.matcher(name).matches()) {
+		snapshot.blobs.put(name, found);
+	    }
+	}
+    }
+
+    /**
+     * Task listing objects of remote volume page by page
+     */
+    private class ListTask extends RecursiveAction {
+	private final StorageBackend backend;
+	private final RateLimiter limiter;
+	private final ConcurrentMap<String, StorageEntry> objects;
+
+	/**
+	 * Construct for list task
+	 *
+	 * @param backend Backend of volume
+	 * @param limiter Storage rate limiter
+	 * @param objects Objects of volume, filled with listed objects
+	 */
+	public ListTask(StorageBackend backend, RateLimiter limiter, ConcurrentMap<String, StorageEntry> objects) {
+	    this.backend = backend;
+	    this.limiter = limiter;
+	    this.objects = objects;
+	}
+
+	@Override
+	protected void compute() {
+	    String prefix = Utils.buildString(FileSystemService.OBJECTS_FOLDER, "/");
+	    String startAfter = null;
+	    List<StoredObject> page;
+	    try {
+		do {
+		    limiter.acquire();
+		    page = backend.list(prefix, startAfter, LIST_PAGE_SIZE);
+		    for (StoredObject object : page) {
+			scannedEntries.incrementAndGet();
+			objects.put(object.getKey(), new StorageEntry(object.getSize(), object.getLastModified()));
+			startAfter = object.getKey();
+		    }
+		}
+		while (page.size() == LIST_PAGE_SIZE && !stopRequested);
+	    }
+	    catch (InterruptedException e) {
+		stopRequested = true;
+	    }
+	    catch (InternalErrorException e) {
+		failed.incrementAndGet();
+		LOGGER.warn(Utils.buildString("Failed to list objects. Location: ", backend.getLocation(),
+				". Message: ", e.getMessage()));
+	    }
+	}
+    }
+}
@@ -0,0 +1,35 @@
+package rs.marko.lalic.safe.core.services;
+
+/**
+ * Layouts in which file content can be kept on disk. Layout used for each file is recorded in its database row, so
+ * files stored before layout was changed stay readable.
+ */
+public enum StorageLayout {
+
+    /**
+     * Physical file is kept in folder tree mirroring user's folders, under its logical path
+     */
+    MIRROR,
+    /**
+     * Content is kept once per distinct SHA-256 checksum in blob store, and referenced by file rows
+     */
+    CONTENT,
+    /**
+     * Physical file is kept under its UUID in fixed depth hash fan-out, and folder tree exists only in database
+     */
+    HASHED;
+
+    /**
+     * Method will parse layout from configuration or database value. Empty value is treated as {@link #MIRROR},
+     * which is layout of files stored before layouts were introduced.
+     *
+     * @param value Layout name, case insensitive
+     * @return Storage layout
+     */
+    public static StorageLayout fromValue(String value) {
+	if (value == null || value.isEmpty()) {
+	    return MIRROR;
+	}
+	return valueOf(value.trim().toUpperCase());
+    }
+}
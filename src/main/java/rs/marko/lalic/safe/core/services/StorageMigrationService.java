@@ -0,0 +1,250 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Online migration of mirrored files to hashed layout. Files are moved in batches by pool of worker threads while
+ * service keeps running. Each file is first linked at its hashed location, then its row is switched to hashed
+ * layout, and only then mirrored copy is removed, so readers always find file at location recorded in its row.
+ */
+public class StorageMigrationService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(StorageMigrationService.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Number of files read from database in one batch
+     */
+    private static final int BATCH_SIZE = 500;
+    /**
+     * Default number of worker threads
+     */
+    public static final int DEFAULT_THREADS = 4;
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * Default number of worker threads
+     */
+    private int threads = DEFAULT_THREADS;
+    /**
+     * Thread running current migration, <code>null</code> if migration is not running
+     */
+    private Thread migrationThread;
+    /**
+     * Number of migrated files in last migration
+     */
+    private final AtomicLong migrated = new AtomicLong();
+    /**
+     * Number of files which failed to migrate in last migration
+     */
+    private final AtomicLong failed = new AtomicLong();
+    /**
+     * Time when last migration was started, <code>0</code> if it wasn't started
+     */
+    private volatile long startedOn;
+    /**
+     * Time when last migration finished, <code>0</code> if it is running or wasn't started
+     */
+    private volatile long finishedOn;
+
+    /**
+     * Empty construct
+     */
+    public StorageMigrationService() {
+    }
+
+    /**
+     * Setter for default number of worker threads
+     *
+     * @param threads Number of worker threads
+     */
+    public void setThreads(int threads) {
+	this.threads = threads > 0 ? threads : DEFAULT_THREADS;
+    }
+
+    /**
+     * Method will start migration of all mirrored files to hashed layout on background thread
+     *
+     * @param workers Number of worker threads, or <code>null</code> for default
+     * @return Migration status
+     * @throws InvalidRequestException thrown if migration is already running, or number of workers is invalid
+     */
+    public synchronized ObjectNode start(Integer workers) throws InvalidRequestException {
+	if (migrationThread != null && migrationThread.isAlive()) {
+	    throw new InvalidRequestException("Storage migration is already running.");
+	}
+	if (workers != null && workers <= 0) {
+	    throw new InvalidRequestException(Utils.buildString("Invalid number of threads: ", workers));
+	}
+	final int poolSize = workers == null ? threads : workers;
+	migrated.set(0);
+	failed.set(0);
+	startedOn = System.currentTimeMillis();
+	finishedOn = 0;
+	migrationThread = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		migrate(poolSize);
+	    }
+	}, "storage-migration");
+	migrationThread.setDaemon(true);
+	migrationThread.start();
+	return getStatus();
+    }
+
+    /**
+     * Method will stop running migration. Files already migrated stay in hashed layout.
+     */
+    public synchronized void stop() {
+	if (migrationThread != null) {
+	    migrationThread.interrupt();
+	}
+    }
+
+    /**
+     * Method will return status of last migration
+     *
+     * @return Migration status
+     */
+    public synchronized ObjectNode getStatus() {
+	ObjectNode status = MAPPER.createObjectNode();
+	status.put(JsonConstants.FIELD_RUNNING, migrationThread != null && migrationThread.isAlive());
+	status.put(JsonConstants.FIELD_MIGRATED, migrated.get());
+	status.put(JsonConstants.FIELD_FAILED, failed.get());
+	if (startedOn > 0) {
+	    status.put(JsonConstants.FIELD_STARTED_ON, startedOn);
+	}
+	if (finishedOn > 0) {
+	    status.put(JsonConstants.FIELD_FINISHED_ON, finishedOn);
+	}
+	return status;
+    }
+
+    /**
+     * Method will migrate mirrored files batch by batch, until none is left or migration is stopped
+     *
+     * @param poolSize Number of worker threads
+     */
+    private void migrate(int poolSize) {
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Storage migration started. Threads: ", poolSize));
+	}
+	ExecutorService workers = Executors.newFixedThreadPool(poolSize);
+	try {
+	    String lastFileUUID = null;
+	    List<FileRecord> batch;
+	    do {
+		batch = dBFileService.getMirroredFilesDB(lastFileUUID, BATCH_SIZE);
+		List<Callable<Boolean>> tasks = new ArrayList<>(batch.size());
+		for (final FileRecord record : batch) {
+		    tasks.add(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+			    return migrateFile(record);
+			}
+		    });
+		    lastFileUUID = record.getFileUUID();
+		}
+		for (Future<Boolean> result : workers.invokeAll(tasks)) {
+		    if (Boolean.TRUE.equals(result.get())) {
+			migrated.incrementAndGet();
+		    }
+		    else {
+			failed.incrementAndGet();
+		    }
+		}
+	    }
+	    while (batch.size() == BATCH_SIZE && !Thread.currentThread().isInterrupted());
+	}
+	catch (InterruptedException e) {
+	    LOGGER.warn("Storage migration stopped.");
+	}
+	catch (InternalErrorException | ExecutionException e) {
+	    LOGGER.error(Utils.buildString("Storage migration failed. Message: ", e.getMessage()), e);
+	}
+	finally {
+	    workers.shutdownNow();
+	    finishedOn = System.currentTimeMillis();
+	}
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Storage migration finished. Migrated: ", migrated.get(), ". Failed: ",
+			    failed.get()));
+	}
+    }
+
+    /**
+     * Method will migrate one file to hashed layout
+     *
+     * @param record Mirrored file
+     * @return <code>TRUE</code> if file was migrated, or was removed in the meantime
+     */
+    private boolean migrateFile(FileRecord record) {
+	File source = new File(record.getPath());
+	// Mirrored files are on primary volume, where local backend links them without copying data
+	Volume volume = volumePoolService.getPrimaryVolume();
+	StorageBackend backend = volume.getBackend();
+	String key = fileSystemService.getHashedKey(record.getFileUUID());
+	try {
+	    if (source.isFile()) {
+		backend.putFile(key, source);
+	    }
+	    else if (backend.stat(key) == null) {
+		LOGGER.error(Utils.buildString("File to migrate is missing. UUID: ", record.getFileUUID(), ". Path: ",
+				source));
+		return false;
+	    }
+	    if (dBFileService
+			    .updateMirroredLayoutDB(record.getFileUUID(), StorageLayout.HASHED, volume.getVolumeId())) {
+		Files.deleteIfExists(source.toPath());
+	    }
+	    else {
+		// File was removed or changed while it was migrated
+		backend.delete(key);
+	    }
+	    return true;
+	}
+	catch (IOException | InternalErrorException e) {
+	    LOGGER.error(Utils.buildString("Failed to migrate file. UUID: ", record.getFileUUID(), ". Path: ", source,
+			    ". Message: ", e.getMessage()), e);
+	    return false;
+	}
+    }
+}
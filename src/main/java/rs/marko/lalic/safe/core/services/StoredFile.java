@@ -0,0 +1,63 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.io.File;
+
+/**
+ * Result of writing file content to the file system. Holds stored file together with the length and
+ * SHA-256 checksum calculated while content was being written.
+ */
+public class StoredFile {
+
+    /**
+     * Stored file
+     */
+    private final File file;
+    /**
+     * Number of bytes written
+     */
+    private final long size;
+    /**
+     * Hex encoded SHA-256 checksum of content
+     */
+    private final String checksum;
+
+    /**
+     * Construct for stored file
+     *
+     * @param file     Stored file
+     * @param size     Number of bytes written
+     * @param checksum Hex encoded SHA-256 checksum of content
+     */
+    public StoredFile(File file, long size, String checksum) {
+	this.file = file;
+	this.size = size;
+	this.checksum = checksum;
+    }
+
+    /**
+     * Getter for stored file
+     *
+     * @return Stored file
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Getter for size
+     *
+     * @return Number of bytes written
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * Getter for checksum
+     *
+     * @return Hex encoded SHA-256 checksum
+     */
+    public String getChecksum() {
+	return checksum;
+    }
+}
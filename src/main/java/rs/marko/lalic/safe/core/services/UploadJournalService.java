@@ -0,0 +1,393 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Journal of uploads which are between metadata commit and final rename. Before metadata transaction is started,
+ * intent holding staged file and its final location is written and synced to disk. Intent is removed once staged
+ * file is in place. On startup, remaining intents are rolled forward if file row was committed, or cleaned up if it
+ * wasn't. In hashed layout content is stored as object of storage backend before metadata transaction, so intent
+ * holds key of object, which is removed on startup if file row wasn't committed.
+ */
+public class UploadJournalService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(UploadJournalService.class);
+    /**
+     * Name of folder, inside root folder, where intents are kept
+     */
+    public static final String JOURNAL_FOLDER = ".journal";
+    /**
+     * Extension of intent files
+     */
+    private static final String INTENT_EXTENSION = ".intent";
+    /**
+     * Extension of staged files
+     */
+    private static final String STAGED_EXTENSION = ".part";
+    /**
+     * Intent property holding UUID of file
+     */
+    private static final String PROPERTY_FILE_UUID = "fileUUID";
+    /**
+     * Intent property holding path of staged file
+     */
+    private static final String PROPERTY_STAGED = "staged";
+    /**
+     * Intent property holding final path of file
+     */
+    private static final String PROPERTY_TARGET = "target";
+    /**
+     * Intent property holding checksum of content
+     */
+    private static final String PROPERTY_CHECKSUM = "checksum";
+    /**
+     * Intent property holding storage layout
+     */
+    private static final String PROPERTY_LAYOUT = "layout";
+    /**
+     * Intent property holding ID of volume where object is stored
+     */
+    private static final String PROPERTY_VOLUME = "volume";
+    /**
+     * Intent property holding key of stored object
+     */
+    private static final String PROPERTY_KEY = "key";
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * ContentStoreService instance
+     */
+    @Autowired
+    private ContentStoreService contentStoreService;
+    /**
+     * DBFileService instance
+     */
+    @Autowired
+    private DBFileService dBFileService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+
+    /**
+     * Empty construct
+     */
+    public UploadJournalService() {
+    }
+
+    /**
+     * Method will return name of staging file for given file UUID
+     *
+     * @param fileUUID UUID of file
+     * @return Name of staging file
+     */
+    public static String getStagingName(String fileUUID) {
+	return Utils.buildString(fileUUID, STAGED_EXTENSION);
+    }
+
+    /**
+     * Method will write intent to move staged file to its final location, and sync it to disk
+     *
+     * @param fileUUID   UUID of file
+     * @param storedFile Staged file
+     * @param target     Final location of file
+     * @param layout     Storage layout
+     * @return Intent file
+     * @throws InternalErrorException thrown if intent can't be written
+     */
+    public File writeIntent(String fileUUID, StoredFile storedFile, File target, StorageLayout layout)
+		    throws InternalErrorException {
+	Properties intent = new Properties();
+	intent.setProperty(PROPERTY_FILE_UUID, fileUUID);
+	intent.setProperty(PROPERTY_STAGED, storedFile.getFile().getAbsolutePath());
+	intent.setProperty(PROPERTY_TARGET, target.getAbsolutePath());
+	intent.setProperty(PROPERTY_CHECKSUM, storedFile.getChecksum());
+	intent.setProperty(PROPERTY_LAYOUT, layout.name());
+	return storeIntent(fileUUID, intent);
+    }
+
+    /**
+     * Method will write intent to store object of hashed layout, and sync it to disk. Intent is written before
+     * object is stored, so object is removed on startup if upload is interrupted before metadata is committed.
+     *
+     * @param fileUUID UUID of file
+     * @param volumeId ID of volume where object is stored
+     * @param key      Key of object
+     * @return Intent file
+     * @throws InternalErrorException thrown if intent can't be written
+     */
+    public File writeObjectIntent(String fileUUID, String volumeId, String key) throws InternalErrorException {
+	Properties intent = new Properties();
+	intent.setProperty(PROPERTY_FILE_UUID, fileUUID);
+	intent.setProperty(PROPERTY_VOLUME, volumeId);
+	intent.setProperty(PROPERTY_KEY, key);
+	intent.setProperty(PROPERTY_LAYOUT, StorageLayout.HASHED.name());
+	return storeIntent(fileUUID, intent);
+    }
+
+    /**
+     * Method will write intent to journal folder and sync it to disk
+     *
+     * @param fileUUID UUID of file
+     * @param intent   Intent properties
+     * @return Intent file
+     * @throws InternalErrorException thrown if intent can't be written
+     */
+    private File storeIntent(String fileUUID, Properties intent) throws InternalErrorException {
+	File intentFile = new File(getJournalFolder(), Utils.buildString(fileUUID, INTENT_EXTENSION));
+	FileOutputStream out = null;
+	try {
+	    out = new FileOutputStream(intentFile);
+	    intent.store(out, null);
+	    out.getFD().sync();
+	    out.close();
+	    return intentFile;
+	}
+	catch (IOException e) {
+	    IOUtils.closeQuietly(out);
+	    intentFile.delete();
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to write upload intent. Path: ", intentFile, ". Message: ",
+					    e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will complete intent after metadata was committed, moving staged file to its final location and
+     * removing intent. If move fails, intent is kept, so it is rolled forward on next startup.
+     *
+     * @param intentFile Intent file
+     * @param storedFile Staged file
+     * @param target     Final location of file
+     * @param layout     Storage layout
+     * @throws InternalErrorException thrown if staged file can't be moved
+     */
+    public void complete(File intentFile, StoredFile storedFile, File target, StorageLayout layout)
+		    throws InternalErrorException {
+	moveToTarget(storedFile.getFile(), target, storedFile.getChecksum(), layout);
+	removeFile(intentFile);
+    }
+
+    /**
+     * Method will complete object intent after metadata was committed, removing intent
+     *
+     * @param intentFile Intent file
+     */
+    public void completeObject(File intentFile) {
+	removeFile(intentFile);
+    }
+
+    /**
+     * Method will discard object intent after object couldn't be stored or metadata transaction failed, removing
+     * object and intent. If object can't be removed, intent is kept, so it is cleaned up on next startup.
+     *
+     * @param intentFile Intent file
+     * @param volume     Volume where object is stored
+     * @param key        Key of object
+     */
+    public void discardObject(File intentFile, Volume volume, String key) {
+	try {
+	    volume.getBackend().delete(key);
+	    removeFile(intentFile);
+	}
+	catch (InternalErrorException e) {
+	    LOGGER.error(Utils.buildString("Failed to remove object of failed upload. Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will discard intent after metadata transaction failed, removing staged file and intent
+     *
+     * @param intentFile Intent file, or <code>null</code> if it wasn't written
+     * @param storedFile Staged file
+     * @param layout     Storage layout
+     */
+    public void discard(File intentFile, StoredFile storedFile, StorageLayout layout) {
+	if (layout == StorageLayout.CONTENT) {
+	    contentStoreService.removeStaged(storedFile);
+	}
+	else if (storedFile != null) {
+	    removeFile(storedFile.getFile());
+	}
+	if (intentFile != null) {
+	    removeFile(intentFile);
+	}
+    }
+
+    /**
+     * Recovery pass executed on startup. Every remaining intent is rolled forward if its file row exists, or
+     * cleaned up if it doesn't. Staged files without intent belong to uploads interrupted before metadata
+     * transaction, and are removed.
+     */
+    public void recover() {
+	File[] intents = getJournalFolderQuietly().listFiles();
+	int rolledForward = 0;
+	int cleaned = 0;
+	if (intents != null) {
+	    for (File intentFile : intents) {
+		if (!intentFile.getName().endsWith(INTENT_EXTENSION)) {
+		    continue;
+		}
+		try {
+		    if (recoverIntent(intentFile)) {
+			rolledForward++;
+		    }
+		    else {
+			cleaned++;
+		    }
+		}
+		catch (BaseException e) {
+		    LOGGER.error(Utils.buildString("Failed to recover upload intent [", intentFile, "]. Message: ",
+				    e.getMessage()), e);
+		}
+	    }
+	}
+	// Upload sessions are kept in memory, so their staging files are orphaned after restart as well
+	String[] stagingFolders = new String[] { FileSystemService.STAGING_FOLDER, UploadSessionService.UPLOADS_FOLDER };
+	Set<File> folders = new LinkedHashSet<>();
+	for (String folder : stagingFolders) {
+	    folders.add(new File(fileSystemService.getRootFolder(), folder).getAbsoluteFile());
+	    for (Volume volume : volumePoolService.getVolumes()) {
+		// Remote backends keep no staging files
+		File local = volume.getBackend().getLocalFile(folder);
+		if (local != null) {
+		    folders.add(local.getAbsoluteFile());
+		}
+	    }
+	}
+	for (File folder : folders) {
+	    File[] staged = folder.listFiles();
+	    if (staged != null) {
+		for (File file : staged) {
+		    if (file.getName().endsWith(STAGED_EXTENSION)) {
+			removeFile(file);
+			cleaned++;
+		    }
+		}
+	    }
+	}
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Upload recovery finished. Rolled forward: ", rolledForward,
+			    ". Cleaned up: ", cleaned));
+	}
+    }
+
+    /**
+     * Method will recover one intent
+     *
+     * @param intentFile Intent file
+     * @return <code>TRUE</code> if intent was rolled forward, <code>FALSE</code> if it was cleaned up
+     * @throws BaseException thrown if intent can't be read or recovered
+     */
+    private boolean recoverIntent(File intentFile) throws BaseException {
+	Properties intent = new Properties();
+	InputStream in = null;
+	try {
+	    in = new FileInputStream(intentFile);
+	    intent.load(in);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to read upload intent. Path: ", intentFile, ". Message: ",
+					    e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+	boolean committed = dBFileService.fileExists(intent.getProperty(PROPERTY_FILE_UUID));
+	if (intent.getProperty(PROPERTY_KEY) != null) {
+	    if (!committed) {
+		volumePoolService.getVolume(intent.getProperty(PROPERTY_VOLUME)).getBackend()
+				.delete(intent.getProperty(PROPERTY_KEY));
+	    }
+	    removeFile(intentFile);
+	    return committed;
+	}
+	File staged = new File(intent.getProperty(PROPERTY_STAGED));
+	StorageLayout layout = StorageLayout.fromValue(intent.getProperty(PROPERTY_LAYOUT));
+	if (committed && staged.exists()) {
+	    moveToTarget(staged, new File(intent.getProperty(PROPERTY_TARGET)), intent.getProperty(PROPERTY_CHECKSUM),
+			    layout);
+	}
+	else if (!committed && staged.exists() && !(layout == StorageLayout.CONTENT && staged
+			.equals(contentStoreService.getBlobFile(intent.getProperty(PROPERTY_CHECKSUM))))) {
+	    removeFile(staged);
+	}
+	removeFile(intentFile);
+	return committed;
+    }
+
+    /**
+     * Method will move staged file to its final location
+     *
+     * @param staged   Staged file
+     * @param target   Final location of file
+     * @param checksum Checksum of content
+     * @param layout   Storage layout
+     * @throws InternalErrorException thrown if moving fails
+     */
+    private void moveToTarget(File staged, File target, String checksum, StorageLayout layout)
+		    throws InternalErrorException {
+	if (layout == StorageLayout.CONTENT) {
+	    contentStoreService.storeBlob(staged, checksum);
+	}
+	else {
+	    fileSystemService.moveFile(staged, target);
+	}
+    }
+
+    /**
+     * Method will get journal folder, creating it if needed
+     *
+     * @return Journal folder
+     * @throws InternalErrorException thrown if folder can't be created
+     */
+    private File getJournalFolder() throws InternalErrorException {
+	File folder = getJournalFolderQuietly();
+	if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+	    throw new InternalErrorException(Utils.buildString("Failed to create journal folder. Path: ", folder));
+	}
+	return folder;
+    }
+
+    /**
+     * Method will get journal folder without creating it
+     *
+     * @return Journal folder
+     */
+    private File getJournalFolderQuietly() {
+	return new File(fileSystemService.getRootFolder(), JOURNAL_FOLDER);
+    }
+
+    /**
+     * Method will remove file, logging failure
+     *
+     * @param file File to remove
+     */
+    private void removeFile(File file) {
+	if (file.exists() && !file.delete()) {
+	    LOGGER.warn(Utils.buildString("Failed to remove file. Path: ", file));
+	}
+    }
+}
@@ -0,0 +1,321 @@
+package rs.marko.lalic.safe.core.services;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of one resumable upload. Content is written into preallocated staging file through positional writes, so
+ * chunks can be received in any order and over several connections at once. Received ranges are kept merged,
+ * which allows client to ask which parts are still missing. Session can be committed, aborted or expired only while
+ * it is open and no chunk is being written.
+ */
+public class UploadSession {
+
+    /**
+     * UUID of upload session
+     */
+    private final String uploadUUID;
+    /**
+     * UUID of person who owns upload
+     */
+    private final String personUUID;
+    /**
+     * UUID of destination folder
+     */
+    private final String folderUUID;
+    /**
+     * Name of file
+     */
+    private final String name;
+    /**
+     * Declared size of file
+     */
+    private final long size;
+    /**
+     * Preallocated staging file
+     */
+    private final File stagingFile;
+    /**
+     * Volume chosen for file in hashed layout, <code>null</code> otherwise
+     */
+    private final Volume volume;
+    /**
+     * Channel used for positional writes into staging file
+     */
+    private final FileChannel channel;
+    /**
+     * Space reserved for upload in quota of person
+     */
+    private final QuotaReservation reservation;
+    /**
+     * Received ranges, start offset mapped to exclusive end offset
+     */
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    /**
+     * Time of last access in milliseconds
+     */
+    private volatile long lastAccess = System.currentTimeMillis();
+    /**
+     * Lifecycle state of session
+     */
+    private final AtomicReference<UploadSessionState> state = new AtomicReference<>(UploadSessionState.OPEN);
+    /**
+     * Number of chunk writes in progress
+     */
+    private final AtomicInteger writes = new AtomicInteger();
+
+    /**
+     * Construct for upload session
+     *
+     * @param uploadUUID  UUID of upload session
+     * @param personUUID  UUID of person
+     * @param folderUUID  UUID of destination folder
+     * @param name        Name of file
+     * @param size        Declared size of file
+     * @param stagingFile Preallocated staging file
+     * @param volume      Volume chosen for file in hashed layout, <code>null</code> otherwise
+     * @param channel     Channel opened for writing into staging file
+     * @param reservation Space reserved for upload in quota of person
+     */
+    public UploadSession(String uploadUUID, String personUUID, String folderUUID, String name, long size,
+		    File stagingFile, Volume volume, FileChannel channel, QuotaReservation reservation) {
+	this.uploadUUID = uploadUUID;
+	this.personUUID = personUUID;
+	this.folderUUID = folderUUID;
+	this.name = name;
+	this.size = size;
+	this.stagingFile = stagingFile;
+	this.volume = volume;
+	this.channel = channel;
+	this.reservation = reservation;
+    }
+
+    /**
+     * Method will record received range and merge it with adjacent or overlapping ranges
+     *
+     * @param start Start offset, inclusive
+     * @param end   End offset, exclusive
+     */
+    public synchronized void addRange(long start, long end) {
+	if (end <= start) {
+	    return;
+	}
+	Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+	if (floor != null && floor.getValue() >= start) {
+	    start = floor.getKey();
+	    end = Math.max(end, floor.getValue());
+	}
+	Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+	while (next != null && next.getKey() <= end) {
+	    end = Math.max(end, next.getValue());
+	    ranges.remove(next.getKey());
+	    next = ranges.ceilingEntry(start);
+	}
+	ranges.put(start, end);
+    }
+
+    /**
+     * Method will return copy of received ranges. Each range is array containing start offset and exclusive end
+     * offset.
+     *
+     * @return Received ranges ordered by offset
+     */
+    public synchronized List<long[]> getRanges() {
+	List<long[]> result = new ArrayList<>(ranges.size());
+	for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+	    result.add(new long[] { range.getKey(), range.getValue() });
+	}
+	return result;
+    }
+
+    /**
+     * Method will return number of received bytes
+     *
+     * @return Number of received bytes
+     */
+    public synchronized long getReceived() {
+	long received = 0;
+	for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+	    received += range.getValue() - range.getKey();
+	}
+	return received;
+    }
+
+    /**
+     * Method will check if whole file was received
+     *
+     * @return <code>TRUE</code> if all bytes are received
+     */
+    public synchronized boolean isComplete() {
+	if (size == 0) {
+	    return true;
+	}
+	Map.Entry<Long, Long> first = ranges.firstEntry();
+	return first != null && first.getKey() == 0 && first.getValue() == size;
+    }
+
+    /**
+     * Method will register chunk write. Write is counted before state is checked, so session can't leave
+     * {@link UploadSessionState#OPEN} state unnoticed while chunk is being written.
+     *
+     * @return <code>TRUE</code> if session is open and write can start, <code>FALSE</code> otherwise
+     */
+    public boolean beginWrite() {
+	writes.incrementAndGet();
+	touch();
+	if (state.get() != UploadSessionState.OPEN) {
+	    writes.decrementAndGet();
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Method will unregister chunk write started by {@link #beginWrite()}
+     */
+    public void endWrite() {
+	touch();
+	writes.decrementAndGet();
+    }
+
+    /**
+     * Method will move session out of {@link UploadSessionState#OPEN} state. Transition is undone if chunk write
+     * is in progress.
+     *
+     * @param next New state
+     * @return <code>TRUE</code> if this call moved session to new state
+     */
+    public boolean leaveOpen(UploadSessionState next) {
+	if (!state.compareAndSet(UploadSessionState.OPEN, next)) {
+	    return false;
+	}
+	if (writes.get() > 0) {
+	    state.set(UploadSessionState.OPEN);
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Method will move session from expected state to new state
+     *
+     * @param expected Expected current state
+     * @param next     New state
+     * @return <code>TRUE</code> if this call moved session to new state
+     */
+    public boolean changeState(UploadSessionState expected, UploadSessionState next) {
+	return state.compareAndSet(expected, next);
+    }
+
+    /**
+     * Getter for lifecycle state
+     *
+     * @return Lifecycle state of session
+     */
+    public UploadSessionState getState() {
+	return state.get();
+    }
+
+    /**
+     * Marks session as accessed
+     */
+    public void touch() {
+	lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Getter for UUID of upload session
+     *
+     * @return UUID of upload session
+     */
+    public String getUploadUUID() {
+	return uploadUUID;
+    }
+
+    /**
+     * Getter for UUID of person who owns upload
+     *
+     * @return UUID of person who owns upload
+     */
+    public String getPersonUUID() {
+	return personUUID;
+    }
+
+    /**
+     * Getter for UUID of destination folder
+     *
+     * @return UUID of destination folder
+     */
+    public String getFolderUUID() {
+	return folderUUID;
+    }
+
+    /**
+     * Getter for name of file
+     *
+     * @return Name of file
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Getter for declared size of file
+     *
+     * @return Declared size of file
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * Getter for staging file
+     *
+     * @return Staging file
+     */
+    public File getStagingFile() {
+	return stagingFile;
+    }
+
+    /**
+     * Getter for volume
+     *
+     * @return Volume chosen for file in hashed layout, <code>null</code> otherwise
+     */
+    public Volume getVolume() {
+	return volume;
+    }
+
+    /**
+     * Getter for channel for positional writes
+     *
+     * @return Channel for positional writes
+     */
+    public FileChannel getChannel() {
+	return channel;
+    }
+
+    /**
+     * Getter for quota reservation
+     *
+     * @return Space reserved for upload in quota of person
+     */
+    public QuotaReservation getReservation() {
+	return reservation;
+    }
+
+    /**
+     * Getter for time of last access in milliseconds
+     *
+     * @return Time of last access in milliseconds
+     */
+    public long getLastAccess() {
+	return lastAccess;
+    }
+}
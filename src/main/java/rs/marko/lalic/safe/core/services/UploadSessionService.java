@@ -0,0 +1,313 @@
+package rs.marko.lalic.safe.core.services;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.InvalidRequestException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.exceptions.UnauthorizedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service used for keeping resumable upload sessions and writing received chunks into staging files
+ */
+public class UploadSessionService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(UploadSessionService.class);
+    /**
+     * Name of folder, inside root folder, where staging files are kept
+     */
+    public static final String UPLOADS_FOLDER = ".uploads";
+    /**
+     * Active upload sessions mapped by their UUID
+     */
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    /**
+     * FileSystemService instance
+     */
+    @Autowired
+    private FileSystemService fileSystemService;
+    /**
+     * VolumePoolService instance
+     */
+    @Autowired
+    private VolumePoolService volumePoolService;
+    /**
+     * QuotaService instance
+     */
+    @Autowired
+    private QuotaService quotaService;
+    /**
+     * Time in milliseconds after inactive session expires
+     */
+    private long sessionExpiry;
+
+    /**
+     * Empty construct
+     */
+    public UploadSessionService() {
+    }
+
+    /**
+     * Setter for session expiry
+     *
+     * @param sessionExpiry Time in milliseconds after inactive session expires
+     */
+    public void setSessionExpiry(long sessionExpiry) {
+	this.sessionExpiry = sessionExpiry;
+    }
+
+    /**
+     * Method will create new upload session with preallocated staging file of given size. In hashed layout volume
+     * for file is chosen up front, and staging file is created on its disk when its backend is local, so it is later
+     * linked into place without copying.
+     *
+     * @param personUUID UUID of person
+     * @param folderUUID UUID of destination folder
+     * @param name       Name of file
+     * @param size       Size of file in bytes
+     * @param reservation Space reserved for file in quota of person, released when session is aborted or expires
+     * @return New upload session
+     * @throws InternalErrorException thrown if staging file can't be created
+     */
+    public UploadSession createSession(String personUUID, String folderUUID, String name, long size,
+		    QuotaReservation reservation) throws InternalErrorException {
+	String uploadUUID = UUIDGenerator.generateUUID();
+	Volume volume = fileSystemService.getLayout() == StorageLayout.HASHED ? volumePoolService.select() : null;
+	File uploadsFolder = volume == null ? null : volume.getBackend().getLocalFile(UPLOADS_FOLDER);
+	if (uploadsFolder == null) {
+	    uploadsFolder = new File(fileSystemService.getRootFolder(), UPLOADS_FOLDER);
+	}
+	File stagingFile = new File(getUploadsFolder(uploadsFolder), Utils.buildString(uploadUUID, ".part"));
+	RandomAccessFile raf = null;
+	try {
+	    raf = new RandomAccessFile(stagingFile, "rw");
+	    raf.setLength(size);
+	    UploadSession session = new UploadSession(uploadUUID, personUUID, folderUUID, name, size, stagingFile,
+			    volume, raf.getChannel(), reservation);
+	    sessions.put(uploadUUID, session);
+	    return session;
+	}
+	catch (IOException e) {
+	    IOUtils.closeQuietly(raf);
+	    stagingFile.delete();
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to create staging file for upload. Path: ", stagingFile,
+					    ". Size: ", size, ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will get upload session owned by given person
+     *
+     * @param uploadUUID UUID of upload session
+     * @param personUUID UUID of person
+     * @return Upload session
+     * @throws ObjectNotFoundException thrown if session doesn't exist or has expired
+     * @throws UnauthorizedException   thrown if session is owned by another person
+     */
+    public UploadSession getSession(String uploadUUID, String personUUID)
+		    throws ObjectNotFoundException, UnauthorizedException {
+	UploadSession session = sessions.get(uploadUUID);
+	if (session == null) {
+	    throw new ObjectNotFoundException(Utils.buildString("Upload session not found. UUID: ", uploadUUID));
+	}
+	if (!session.getPersonUUID().equals(personUUID)) {
+	    throw new UnauthorizedException(
+			    Utils.buildString("Upload session [", uploadUUID, "] is not owned by person [", personUUID,
+					    "]"));
+	}
+	session.touch();
+	return session;
+    }
+
+    /**
+     * Method will write chunk at given offset of staging file. Bytes written before failure are still recorded as
+     * received, so client can resume from the last written byte. Chunks are accepted only while session is open.
+     *
+     * @param session Upload session
+     * @param offset  Offset of chunk
+     * @param content Chunk content
+     * @return Number of written bytes
+     * @throws InvalidRequestException thrown if session is not open or chunk exceeds declared file size
+     * @throws InternalErrorException  thrown if writing fails
+     */
+    public long writeChunk(UploadSession session, long offset, InputStream content)
+		    throws InvalidRequestException, InternalErrorException {
+	if (offset < 0 || offset > session.getSize()) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Invalid chunk offset [", offset, "]. File size: ", session.getSize()));
+	}
+	if (!session.beginWrite()) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Upload session is not open. UUID: ", session.getUploadUUID(),
+					    ". State: ", session.getState()));
+	}
+	FileChannel channel = session.getChannel();
+	ByteBuffer buffer = ByteBuffer.allocate(FileSystemService.BUFFER_SIZE);
+	long position = offset;
+	try {
+	    int read;
+	    while ((read = content.read(buffer.array())) != -1) {
+		if (position + read > session.getSize()) {
+		    throw new InvalidRequestException(
+				    Utils.buildString("Chunk exceeds declared file size. Offset: ", offset, ". Size: ",
+						    session.getSize()));
+		}
+		buffer.clear();
+		buffer.limit(read);
+		while (buffer.hasRemaining()) {
+		    position += channel.write(buffer, position);
+		}
+	    }
+	    return position - offset;
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to write chunk of upload [", session.getUploadUUID(), "]. Offset: ",
+					    offset, ". Written: ", position - offset, ". Message: ", e.getMessage()), e);
+	}
+	finally {
+	    session.addRange(offset, position);
+	    session.endWrite();
+	}
+    }
+
+    /**
+     * Method will start commit of upload session. Only one caller can start commit, and only while session is open,
+     * no chunk is being written and whole file is received.
+     *
+     * @param session Upload session
+     * @throws InvalidRequestException thrown if session is not open, chunk is being written or file is not complete
+     */
+    public void beginCommit(UploadSession session) throws InvalidRequestException {
+	if (!session.leaveOpen(UploadSessionState.COMMITTING)) {
+	    throw new InvalidRequestException(
+			    Utils.buildString("Upload session can't be committed while it is written, committed or ",
+					    "aborted. UUID: ", session.getUploadUUID(), ". State: ",
+					    session.getState()));
+	}
+	if (!session.isComplete()) {
+	    session.changeState(UploadSessionState.COMMITTING, UploadSessionState.OPEN);
+	    throw new InvalidRequestException(
+			    Utils.buildString("Upload is not complete. UUID: ", session.getUploadUUID(), ". Received: ",
+					    session.getReceived(), " of ", session.getSize(), " bytes."));
+	}
+    }
+
+    /**
+     * Method will mark commit of upload session as finished
+     *
+     * @param session Upload session
+     */
+    public void completeCommit(UploadSession session) {
+	session.changeState(UploadSessionState.COMMITTING, UploadSessionState.DONE);
+    }
+
+    /**
+     * Method will abort upload session whose commit failed, remove its staging file and release its quota
+     * reservation
+     *
+     * @param session Upload session
+     */
+    public void abortCommit(UploadSession session) {
+	if (session.changeState(UploadSessionState.COMMITTING, UploadSessionState.DONE)) {
+	    release(session);
+	}
+    }
+
+    /**
+     * Method will close upload session being committed and release its channel. Staging file is left in place,
+     * caller is responsible for moving or removing it.
+     *
+     * @param session Upload session
+     * @throws InternalErrorException thrown if staging data can't be flushed to disk
+     */
+    public void closeSession(UploadSession session) throws InternalErrorException {
+	sessions.remove(session.getUploadUUID());
+	try {
+	    session.getChannel().force(true);
+	    session.getChannel().close();
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(
+			    Utils.buildString("Failed to close upload [", session.getUploadUUID(), "]. Message: ",
+					    e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will abort upload session, remove its staging file and release its quota reservation. Session is
+     * aborted only if it is open and no chunk is being written.
+     *
+     * @param session Upload session
+     * @return <code>TRUE</code> if session was aborted by this call
+     */
+    public boolean abortSession(UploadSession session) {
+	if (!session.leaveOpen(UploadSessionState.DONE)) {
+	    return false;
+	}
+	release(session);
+	return true;
+    }
+
+    /**
+     * Method will abort sessions that were inactive longer than configured expiry. Sessions which are being
+     * committed or written are skipped.
+     */
+    @Scheduled(fixedDelayString = "${upload.session.sweep.interval}")
+    public void removeExpiredSessions() {
+	long expiredBefore = System.currentTimeMillis() - sessionExpiry;
+	Iterator<UploadSession> iterator = sessions.values().iterator();
+	while (iterator.hasNext()) {
+	    UploadSession session = iterator.next();
+	    if (session.getLastAccess() < expiredBefore && abortSession(session) && LOGGER.isInfoEnabled()) {
+		LOGGER.info(Utils.buildString("Upload session expired. UUID: ", session.getUploadUUID()));
+	    }
+	}
+    }
+
+    /**
+     * Method will remove session, release its quota reservation and remove its staging file
+     *
+     * @param session Upload session which this call moved to {@link UploadSessionState#DONE} state
+     */
+    private void release(UploadSession session) {
+	sessions.remove(session.getUploadUUID());
+	quotaService.release(session.getReservation());
+	IOUtils.closeQuietly(session.getChannel());
+	if (session.getStagingFile().exists() && !session.getStagingFile().delete()) {
+	    LOGGER.warn(Utils.buildString("Failed to remove staging file. Path: ", session.getStagingFile()));
+	}
+    }
+
+    /**
+     * Method will get folder for staging files, creating it if needed
+     *
+     * @param folder Uploads folder
+     * @return Uploads folder
+     * @throws InternalErrorException thrown if folder can't be created
+     */
+    private File getUploadsFolder(File folder) throws InternalErrorException {
+	if (!folder.isDirectory() && !folder.mkdirs()) {
+	    throw new InternalErrorException(Utils.buildString("Failed to create uploads folder. Path: ", folder));
+	}
+	return folder;
+    }
+}
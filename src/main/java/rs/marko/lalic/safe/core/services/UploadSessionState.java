@@ -0,0 +1,21 @@
+package rs.marko.lalic.safe.core.services;
+
+/**
+ * Lifecycle states of upload session. Session moves only forward, from {@link #OPEN} to {@link #DONE}, and each
+ * transition is done by compare and set, so exactly one caller commits or aborts session.
+ */
+public enum UploadSessionState {
+
+    /**
+     * Session accepts chunks, and can be committed, aborted or expired
+     */
+    OPEN,
+    /**
+     * Received file is being added to folder, chunks and other commits are rejected
+     */
+    COMMITTING,
+    /**
+     * Session is committed or aborted, and its staging file is moved or removed
+     */
+    DONE
+}
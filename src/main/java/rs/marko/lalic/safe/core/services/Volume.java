@@ -0,0 +1,139 @@
+package rs.marko.lalic.safe.core.services;
+
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage volume, one storage backend such as root folder on its own disk or bucket of object store. Free space and
+ * health are refreshed by periodic check, and number of writes in progress is tracked so placement can avoid busy
+ * volumes.
+ */
+public class Volume {
+
+    /**
+     * ID of volume, kept in marker object inside volume so it doesn't depend on mount point or endpoint
+     */
+    private final String volumeId;
+    /**
+     * Storage backend of volume
+     */
+    private final StorageBackend backend;
+    /**
+     * Number of writes in progress
+     */
+    private final AtomicInteger activeWrites = new AtomicInteger();
+    /**
+     * Usable space in bytes, as of last check
+     */
+    private volatile long usableSpace;
+    /**
+     * Total space in bytes, as of last check
+     */
+    private volatile long totalSpace;
+    /**
+     * Flag if volume passed last check
+     */
+    private volatile boolean healthy = true;
+
+    /**
+     * Construct for volume
+     *
+     * @param volumeId ID of volume
+     * @param backend  Storage backend of volume
+     */
+    public Volume(String volumeId, StorageBackend backend) {
+	this.volumeId = volumeId;
+	this.backend = backend;
+    }
+
+    /**
+     * Getter for volume ID
+     *
+     * @return ID of volume
+     */
+    public String getVolumeId() {
+	return volumeId;
+    }
+
+    /**
+     * Getter for backend
+     *
+     * @return Storage backend of volume
+     */
+    public StorageBackend getBackend() {
+	return backend;
+    }
+
+    /**
+     * Method will record start of write
+     */
+    public void beginWrite() {
+	activeWrites.incrementAndGet();
+    }
+
+    /**
+     * Method will record end of write
+     */
+    public void endWrite() {
+	activeWrites.decrementAndGet();
+    }
+
+    /**
+     * Getter for active writes
+     *
+     * @return Number of writes in progress
+     */
+    public int getActiveWrites() {
+	return activeWrites.get();
+    }
+
+    /**
+     * Getter for usable space
+     *
+     * @return Usable space in bytes, as of last check
+     */
+    public long getUsableSpace() {
+	return usableSpace;
+    }
+
+    /**
+     * Getter for total space
+     *
+     * @return Total space in bytes, as of last check
+     */
+    public long getTotalSpace() {
+	return totalSpace;
+    }
+
+    /**
+     * Method will return used part of volume
+     *
+     * @return Used space in percent, as of last check
+     */
+    public double getFill() {
+	return totalSpace > 0 ? 100.0 * (totalSpace - Math.min(usableSpace, totalSpace)) / totalSpace : 0;
+    }
+
+    /**
+     * Getter for healthy flag
+     *
+     * @return <code>TRUE</code> if volume can be written to
+     */
+    public boolean isHealthy() {
+	return healthy;
+    }
+
+    /**
+     * Method will update state of volume after check
+     *
+     * @param healthy     Flag if volume passed check
+     * @param usableSpace Usable space in bytes
+     * @param totalSpace  Total space in bytes
+     */
+    void update(boolean healthy, long usableSpace, long totalSpace) {
+	this.usableSpace = usableSpace;
+	this.totalSpace = totalSpace;
+	this.healthy = healthy;
+    }
+}
@@ -0,0 +1,299 @@
+package rs.marko.lalic.safe.core.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.constants.JsonConstants;
+import rs.marko.lalic.safe.core.exceptions.BaseException;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.storage.LocalStorageBackend;
+import rs.marko.lalic.safe.core.storage.StorageBackend;
+import rs.marko.lalic.safe.core.storage.StoredObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pool of storage volumes used by hashed layout. Configured storage backend is always first volume, additional
+ * local volumes are configured by their paths. New files are placed on healthy volume with enough free space, chosen
+ * randomly with weight proportional to free space and inversely proportional to number of writes in progress, so
+ * concurrent uploads spread over all disks and busy or full ones get less traffic.
+ */
+public class VolumePoolService {
+
+    /**
+     * Class logger
+     */
+    private static final Logger LOGGER = Logger.getLogger(VolumePoolService.class);
+    /**
+     * JSON Mapper
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Key of marker object holding ID of volume
+     */
+    private static final String MARKER_KEY = ".volume";
+    /**
+     * Key of object written by health check
+     */
+    private static final String PROBE_KEY = ".probe";
+    /**
+     * Storage backend of primary volume
+     */
+    @Autowired
+    private StorageBackend storageBackend;
+    /**
+     * Volumes mapped by their ID, in configuration order
+     */
+    private final Map<String, Volume> volumes = new LinkedHashMap<>();
+    /**
+     * Paths of additional volumes
+     */
+    private List<String> volumePaths = Collections.emptyList();
+    /**
+     * Minimum usable space in bytes for volume to receive new files
+     */
+    private long minFreeSpace;
+
+    /**
+     * Empty construct
+     */
+    public VolumePoolService() {
+    }
+
+    /**
+     * Setter for paths of additional volumes
+     *
+     * @param volumePaths Comma separated paths, may be empty
+     */
+    public void setVolumePaths(String volumePaths) {
+	List<String> paths = new ArrayList<>();
+	if (volumePaths != null) {
+	    for (String path : volumePaths.split(",")) {
+		if (!path.trim().isEmpty()) {
+		    paths.add(path.trim());
+		}
+	    }
+	}
+	this.volumePaths = paths;
+    }
+
+    /**
+     * Setter for minimum free space
+     *
+     * @param minFreeSpace Minimum usable space in bytes for volume to receive new files
+     */
+    public void setMinFreeSpace(long minFreeSpace) {
+	this.minFreeSpace = minFreeSpace;
+    }
+
+    /**
+     * Method will open all volumes, creating their marker objects if needed, and check them. Executed on startup.
+     *
+     * @throws InternalErrorException thrown if volume is invalid or its ID can't be read
+     */
+    public synchronized void init() throws InternalErrorException {
+	List<StorageBackend> backends = new ArrayList<>();
+	backends.add(storageBackend);
+	for (String path : volumePaths) {
+	    backends.add(new LocalStorageBackend(new File(path)));
+	}
+	for (StorageBackend backend : backends) {
+	    Volume volume = new Volume(readVolumeId(backend), backend);
+	    if (volumes.containsKey(volume.getVolumeId())) {
+		Volume existing = volumes.get(volume.getVolumeId());
+		throw new InternalErrorException(Utils.buildString("Volume [", backend.getLocation(),
+				"] has same ID as volume [", existing.getBackend().getLocation(), "]. ID: ",
+				volume.getVolumeId()));
+	    }
+	    volumes.put(volume.getVolumeId(), volume);
+	}
+	checkVolumes();
+	if (LOGGER.isInfoEnabled()) {
+	    LOGGER.info(Utils.buildString("Storage volumes opened: ", volumes.size()));
+	}
+    }
+
+    /**
+     * Method will get volume holding root folder
+     *
+     * @return Primary volume
+     */
+    public synchronized Volume getPrimaryVolume() {
+	return volumes.values().iterator().next();
+    }
+
+    /**
+     * Method will get all volumes
+     *
+     * @return Volumes in configuration order
+     */
+    public synchronized List<Volume> getVolumes() {
+	return new ArrayList<>(volumes.values());
+    }
+
+    /**
+     * Method will get volume by ID. Files stored before volumes were introduced have no volume and are on primary
+     * volume.
+     *
+     * @param volumeId ID of volume, or <code>null</code>
+     * @return Volume
+     * @throws InternalErrorException thrown if volume is not in pool
+     */
+    public synchronized Volume getVolume(String volumeId) throws InternalErrorException {
+	if (volumeId == null) {
+	    return getPrimaryVolume();
+	}
+	Volume volume = volumes.get(volumeId);
+	if (volume == null) {
+	    throw new InternalErrorException(Utils.buildString("Storage volume not configured. ID: ", volumeId));
+	}
+	return volume;
+    }
+
+    /**
+     * Method will choose volume for new file
+     *
+     * @return Chosen volume
+     * @throws InternalErrorException thrown if no volume is healthy with enough free space
+     */
+    public Volume select() throws InternalErrorException {
+	List<Volume> candidates = getVolumes();
+	double[] weights = new double[candidates.size()];
+	double total = 0;
+	for (int i = 0; i < candidates.size(); i++) {
+	    Volume volume = candidates.get(i);
+	    long free = volume.getUsableSpace() - minFreeSpace;
+	    if (volume.isHealthy() && free > 0) {
+		weights[i] = (double) free / (1 + volume.getActiveWrites());
+		total += weights[i];
+	    }
+	}
+	if (total <= 0) {
+	    throw new InternalErrorException("No storage volume is available for writing.");
+	}
+	double pick = ThreadLocalRandom.current().nextDouble(total);
+	for (int i = 0; i < candidates.size(); i++) {
+	    pick -= weights[i];
+	    if (weights[i] > 0 && pick < 0) {
+		return candidates.get(i);
+	    }
+	}
+	return candidates.get(candidates.size() - 1);
+    }
+
+    /**
+     * Method will check volume after failed write. Write may fail because client disconnected, so volume is
+     * excluded only if it can't be written to.
+     *
+     * @param volume Volume
+     * @param cause  Failure
+     */
+    public void reportFailure(Volume volume, Exception cause) {
+	if (LOGGER.isDebugEnabled()) {
+	    LOGGER.debug(Utils.buildString("Write to storage volume failed. ID: ", volume.getVolumeId(),
+			    ". Message: ", cause.getMessage()));
+	}
+	checkVolume(volume);
+    }
+
+    /**
+     * Method will check all volumes
+     */
+    @Scheduled(fixedDelayString = "${storage.volume.check.interval}")
+    public void checkVolumes() {
+	List<Volume> current = getVolumes();
+	for (Volume volume : current) {
+	    checkVolume(volume);
+	}
+    }
+
+    /**
+     * Method will check volume. Free space is refreshed, and small object is written and removed to verify that
+     * volume can be written to. Unhealthy volume receives no new files until next check passes.
+     *
+     * @param volume Volume
+     */
+    private void checkVolume(Volume volume) {
+	StorageBackend backend = volume.getBackend();
+	boolean healthy;
+	try {
+	    backend.put(PROBE_KEY, new ByteArrayInputStream(volume.getVolumeId().getBytes(StandardCharsets.UTF_8)));
+	    backend.delete(PROBE_KEY);
+	    healthy = true;
+	}
+	catch (InternalErrorException e) {
+	    healthy = false;
+	}
+	if (volume.isHealthy() != healthy) {
+	    LOGGER.warn(Utils.buildString("Storage volume is ", healthy ? "healthy" : "unhealthy", ". ID: ",
+			    volume.getVolumeId(), ". Location: ", backend.getLocation()));
+	}
+	volume.update(healthy, backend.getUsableSpace(), backend.getTotalSpace());
+    }
+
+    /**
+     * Method will return state of all volumes
+     *
+     * @return JSON with volumes
+     */
+    public ObjectNode getStatus() {
+	List<Volume> current = getVolumes();
+	ObjectNode status = MAPPER.createObjectNode();
+	ArrayNode array = status.putArray(JsonConstants.FIELD_VOLUMES);
+	for (Volume volume : current) {
+	    ObjectNode node = array.addObject();
+	    node.put(JsonConstants.FIELD_VOLUME_ID, volume.getVolumeId());
+	    node.put(JsonConstants.FIELD_PATH, volume.getBackend().getLocation());
+	    node.put(JsonConstants.FIELD_HEALTHY, volume.isHealthy());
+	    node.put(JsonConstants.FIELD_USABLE_SPACE, volume.getUsableSpace());
+	    node.put(JsonConstants.FIELD_TOTAL_SPACE, volume.getTotalSpace());
+	    node.put(JsonConstants.FIELD_FILL, volume.getFill());
+	    node.put(JsonConstants.FIELD_ACTIVE_WRITES, volume.getActiveWrites());
+	}
+	return status;
+    }
+
+    /**
+     * Method will read ID of volume from its marker object, creating marker with new ID if it doesn't exist
+     *
+     * @param backend Storage backend of volume
+     * @return ID of volume
+     * @throws InternalErrorException thrown if marker can't be read or written
+     */
+    private String readVolumeId(StorageBackend backend) throws InternalErrorException {
+	StoredObject marker = backend.stat(MARKER_KEY);
+	if (marker == null) {
+	    String volumeId = UUIDGenerator.generateUUID();
+	    backend.put(MARKER_KEY, new ByteArrayInputStream(volumeId.getBytes(StandardCharsets.UTF_8)));
+	    return volumeId;
+	}
+	InputStream in = null;
+	try {
+	    in = backend.get(MARKER_KEY, 0, marker.getSize());
+	    return IOUtils.toString(in, StandardCharsets.UTF_8).trim();
+	}
+	catch (BaseException | IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to read volume ID. Location: ",
+			    backend.getLocation(), ". Message: ", e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+}
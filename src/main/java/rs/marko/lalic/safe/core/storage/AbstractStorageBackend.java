@@ -0,0 +1,59 @@
+package rs.marko.lalic.safe.core.storage;
+
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Base of storage backends, with validation of keys and checksum calculation shared by all of them
+ */
+public abstract class AbstractStorageBackend implements StorageBackend {
+
+    /**
+     * Separator of key segments
+     */
+    public static final String KEY_SEPARATOR = "/";
+
+    /**
+     * Method will check that key is relative and doesn't leave storage
+     *
+     * @param key Key of object
+     * @throws InternalErrorException thrown if key is invalid
+     */
+    protected void checkKey(String key) throws InternalErrorException {
+	if (key == null || key.isEmpty() || key.startsWith(KEY_SEPARATOR) || key.endsWith(KEY_SEPARATOR)
+			|| key.contains("\\")
+			|| Utils.buildString(KEY_SEPARATOR, key, KEY_SEPARATOR).contains("/../")) {
+	    throw new InternalErrorException(Utils.buildString("Invalid object key: [", key, "]"));
+	}
+    }
+
+    /**
+     * Method will create message digest used for calculating content checksum
+     *
+     * @return Message digest
+     * @throws InternalErrorException thrown if digest algorithm is not available
+     */
+    protected MessageDigest createDigest() throws InternalErrorException {
+	try {
+	    return MessageDigest.getInstance(FileSystemService.CHECKSUM_ALGORITHM);
+	}
+	catch (NoSuchAlgorithmException e) {
+	    throw new InternalErrorException(Utils.buildString("Checksum algorithm not available: ",
+			    FileSystemService.CHECKSUM_ALGORITHM), e);
+	}
+    }
+
+    /**
+     * Method will return location of storage
+     *
+     * @return Location of storage
+     */
+    @Override
+    public String toString() {
+	return getLocation();
+    }
+}
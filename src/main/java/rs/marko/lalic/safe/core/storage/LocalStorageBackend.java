@@ -0,0 +1,275 @@
+package rs.marko.lalic.safe.core.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import rs.marko.lalic.safe.core.UUIDGenerator;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Storage backend keeping objects as files under root folder, key being path relative to root. Content is written
+ * into staging folder of same root and renamed into place, so partially written objects are never visible.
+ */
+public class LocalStorageBackend extends AbstractStorageBackend {
+
+    /**
+     * Root folder of storage
+     */
+    private final File root;
+
+    /**
+     * Construct for local storage backend
+     *
+     * @param root Root folder of storage
+     * @throws InternalErrorException thrown if root folder is invalid
+     */
+    public LocalStorageBackend(File root) throws InternalErrorException {
+	if (!root.isDirectory()) {
+	    throw new InternalErrorException(Utils.buildString("Storage folder invalid. Check configuration. Path: ",
+			    root));
+	}
+	this.root = root;
+    }
+
+    /**
+     * Getter for root
+     *
+     * @return Root folder of storage
+     */
+    public File getRoot() {
+	return root;
+    }
+
+    @Override
+    public String getLocation() {
+	return root.getAbsolutePath();
+    }
+
+    @Override
+    public StoredObject put(String key, InputStream content) throws InternalErrorException {
+	File target = getFile(key);
+	File staging = getStagingFile();
+	MessageDigest digest = createDigest();
+	byte[] buffer = new byte[FileSystemService.BUFFER_SIZE];
+	long size = 0;
+	OutputStream out = null;
+	try {
+	    out = new FileOutputStream(staging);
+	    int read;
+	    while ((read = content.read(buffer)) != -1) {
+		out.write(buffer, 0, read);
+		digest.update(buffer, 0, read);
+		size += read;
+	    }
+	    out.close();
+	    Files.createDirectories(target.getParentFile().toPath());
+	    Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	    return new StoredObject(key, size, Utils.toHex(digest.digest()), target.lastModified());
+	}
+	catch (IOException e) {
+	    IOUtils.closeQuietly(out);
+	    staging.delete();
+	    throw new InternalErrorException(Utils.buildString("Failed to store object. Path: ", target,
+			    ". Written bytes: ", size, ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will store local file under given key. Hard link is used when possible, so no data is copied.
+     * Otherwise file is copied into staging folder and renamed, so target never holds partial content.
+     *
+     * @param key    Key of object
+     * @param source Local file
+     * @return Stored object with size, checksum is not calculated
+     * @throws InternalErrorException thrown if file can't be stored
+     */
+    @Override
+    public StoredObject putFile(String key, File source) throws InternalErrorException {
+	File target = getFile(key);
+	try {
+	    Files.createDirectories(target.getParentFile().toPath());
+	    if (target.exists()) {
+		if (Files.isSameFile(source.toPath(), target.toPath())) {
+		    return new StoredObject(key, target.length(), null, target.lastModified());
+		}
+		Files.delete(target.toPath());
+	    }
+	    try {
+		Files.createLink(target.toPath(), source.toPath());
+	    }
+	    catch (IOException | UnsupportedOperationException e) {
+		File staging = getStagingFile();
+		try {
+		    Files.copy(source.toPath(), staging.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		    Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+		    Files.deleteIfExists(staging.toPath());
+		}
+	    }
+	    return new StoredObject(key, target.length(), null, target.lastModified());
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to store file as object. Source: ", source,
+			    ". Path: ", target, ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length)
+		    throws ObjectNotFoundException, InternalErrorException {
+	File file = getFile(key);
+	try {
+	    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	    channel.position(offset);
+	    return new BoundedInputStream(Channels.newInputStream(channel), length);
+	}
+	catch (NoSuchFileException e) {
+	    throw new ObjectNotFoundException(Utils.buildString("Object not found. Path: ", file));
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to read object. Path: ", file, ". Message: ",
+			    e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public void delete(String key) throws InternalErrorException {
+	File file = getFile(key);
+	try {
+	    Files.deleteIfExists(file.toPath());
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to remove object. Path: ", file,
+			    ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    /**
+     * Method will list objects in key order. Folders are walked depth first with their files sorted, and folders
+     * which can't hold keys of requested page are skipped without being read. Staging folder is never listed.
+     *
+     * @param prefix     Prefix of listed keys, empty for all objects
+     * @param startAfter Last key of previous page, or <code>null</code> for first page
+     * @param limit      Maximum number of listed objects
+     * @return Objects without checksum
+     */
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) {
+	List<StoredObject> objects = new ArrayList<>();
+	listFolder(root, "", prefix == null ? "" : prefix, startAfter, limit, objects);
+	return objects;
+    }
+
+    @Override
+    public StoredObject stat(String key) throws InternalErrorException {
+	File file = getFile(key);
+	if (!file.isFile()) {
+	    return null;
+	}
+	return new StoredObject(key, file.length(), null, file.lastModified());
+    }
+
+    @Override
+    public File getLocalFile(String key) {
+	return new File(root, key.replace(KEY_SEPARATOR, File.separator));
+    }
+
+    @Override
+    public long getUsableSpace() {
+	return root.getUsableSpace();
+    }
+
+    @Override
+    public long getTotalSpace() {
+	return root.getTotalSpace();
+    }
+
+    /**
+     * Method will get file of object after key is checked
+     *
+     * @param key Key of object
+     * @return File, which may not exist
+     * @throws InternalErrorException thrown if key is invalid
+     */
+    private File getFile(String key) throws InternalErrorException {
+	checkKey(key);
+	return getLocalFile(key);
+    }
+
+    /**
+     * Method will get new file in staging folder, creating folder if needed
+     *
+     * @return Staging file, which doesn't exist yet
+     * @throws InternalErrorException thrown if staging folder can't be created
+     */
+    private File getStagingFile() throws InternalErrorException {
+	File folder = new File(root, FileSystemService.STAGING_FOLDER);
+	if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+	    throw new InternalErrorException(Utils.buildString("Failed to create staging folder. Path: ", folder));
+	}
+	return new File(folder, Utils.buildString(UUIDGenerator.generateUUID(), ".part"));
+    }
+
+    /**
+     * Method will add objects of folder and its subfolders to page
+     *
+     * @param folder     Folder to list
+     * @param folderKey  Key prefix of folder, empty or ending with separator
+     * @param prefix     Prefix of listed keys
+     * @param startAfter Last key of previous page, or <code>null</code>
+     * @param limit      Maximum number of listed objects
+     * @param objects    Page being filled
+     */
+    private void listFolder(File folder, String folderKey, String prefix, String startAfter, int limit,
+		    List<StoredObject> objects) {
+	File[] files = folder.listFiles();
+	if (files == null) {
+	    return;
+	}
+	// Separator is appended to folder names, so folder is placed exactly where its keys are
+	TreeMap<String, File> segments = new TreeMap<>();
+	for (File file : files) {
+	    segments.put(file.isDirectory() ? Utils.buildString(file.getName(), KEY_SEPARATOR) : file.getName(), file);
+	}
+	for (Map.Entry<String, File> segment : segments.entrySet()) {
+	    if (objects.size() >= limit) {
+		return;
+	    }
+	    File file = segment.getValue();
+	    String key = Utils.buildString(folderKey, segment.getKey());
+	    if (folderKey.isEmpty() && key.equals(Utils.buildString(FileSystemService.STAGING_FOLDER, KEY_SEPARATOR))) {
+		continue;
+	    }
+	    if (key.endsWith(KEY_SEPARATOR)) {
+		// Folder holds only keys starting with its key, so it is skipped if all of them are before page
+		boolean afterStart = startAfter == null || startAfter.startsWith(key) || key.compareTo(startAfter) > 0;
+		if (afterStart && (key.startsWith(prefix) || prefix.startsWith(key))) {
+		    listFolder(file, key, prefix, startAfter, limit, objects);
+		}
+	    }
+	    else if (key.startsWith(prefix) && (startAfter == null || key.compareTo(startAfter) > 0)) {
+		objects.add(new StoredObject(key, file.length(), null, file.lastModified()));
+	    }
+	}
+    }
+}
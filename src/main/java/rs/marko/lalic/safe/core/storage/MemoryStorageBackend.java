@@ -0,0 +1,165 @@
+package rs.marko.lalic.safe.core.storage;
+
+import org.apache.commons.io.IOUtils;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+import rs.marko.lalic.safe.core.services.FileSystemService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Storage backend keeping objects in heap. Objects are lost on restart, so backend is meant for tests and for
+ * benchmarking rest of upload pipeline without disk noise.
+ */
+public class MemoryStorageBackend extends AbstractStorageBackend {
+
+    /**
+     * Objects mapped by their key, in key order
+     */
+    private final ConcurrentNavigableMap<String, MemoryObject> objects = new ConcurrentSkipListMap<>();
+
+    @Override
+    public String getLocation() {
+	return "memory";
+    }
+
+    @Override
+    public StoredObject put(String key, InputStream content) throws InternalErrorException {
+	checkKey(key);
+	MessageDigest digest = createDigest();
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[FileSystemService.BUFFER_SIZE];
+	try {
+	    int read;
+	    while ((read = content.read(buffer)) != -1) {
+		out.write(buffer, 0, read);
+		digest.update(buffer, 0, read);
+	    }
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to read content of object [", key,
+			    "]. Read bytes: ", out.size(), ". Message: ", e.getMessage()), e);
+	}
+	MemoryObject object = new MemoryObject(out.toByteArray(), System.currentTimeMillis());
+	objects.put(key, object);
+	return new StoredObject(key, object.content.length, Utils.toHex(digest.digest()), object.lastModified);
+    }
+
+    @Override
+    public StoredObject putFile(String key, File source) throws InternalErrorException {
+	checkKey(key);
+	InputStream in = null;
+	try {
+	    in = new FileInputStream(source);
+	    MemoryObject object = new MemoryObject(IOUtils.toByteArray(in), System.currentTimeMillis());
+	    objects.put(key, object);
+	    return new StoredObject(key, object.content.length, null, object.lastModified);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to store file as object. Source: ", source,
+			    ". Key: ", key, ". Message: ", e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length)
+		    throws ObjectNotFoundException, InternalErrorException {
+	checkKey(key);
+	MemoryObject object = objects.get(key);
+	if (object == null) {
+	    throw new ObjectNotFoundException(Utils.buildString("Object not found. Key: ", key));
+	}
+	int start = (int) Math.min(offset, object.content.length);
+	return new ByteArrayInputStream(object.content, start, (int) Math.min(length, object.content.length - start));
+    }
+
+    @Override
+    public void delete(String key) throws InternalErrorException {
+	checkKey(key);
+	objects.remove(key);
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) {
+	String from = prefix == null ? "" : prefix;
+	ConcurrentNavigableMap<String, MemoryObject> tail = startAfter != null && startAfter.compareTo(from) >= 0 ?
+			objects.tailMap(startAfter, false) :
+			objects.tailMap(from, true);
+	List<StoredObject> page = new ArrayList<>();
+	for (Map.Entry<String, MemoryObject> entry : tail.entrySet()) {
+	    if (page.size() >= limit || !entry.getKey().startsWith(from)) {
+		break;
+	    }
+	    page.add(new StoredObject(entry.getKey(), entry.getValue().content.length, null,
+			    entry.getValue().lastModified));
+	}
+	return page;
+    }
+
+    @Override
+    public StoredObject stat(String key) throws InternalErrorException {
+	checkKey(key);
+	MemoryObject object = objects.get(key);
+	return object == null ? null : new StoredObject(key, object.content.length, null, object.lastModified);
+    }
+
+    @Override
+    public File getLocalFile(String key) {
+	return null;
+    }
+
+    /**
+     * Method will get heap space which is still free
+     *
+     * @return Usable space in bytes
+     */
+    @Override
+    public long getUsableSpace() {
+	Runtime runtime = Runtime.getRuntime();
+	return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Method will get maximum heap size
+     *
+     * @return Total space in bytes
+     */
+    @Override
+    public long getTotalSpace() {
+	return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Content of object with its modification time
+     */
+    private static class MemoryObject {
+	private final byte[] content;
+	private final long lastModified;
+
+	/**
+	 * Construct for memory object
+	 *
+	 * @param content      Content of object
+	 * @param lastModified Time when object was stored
+	 */
+	public MemoryObject(byte[] content, long lastModified) {
+	    this.content = content;
+	    this.lastModified = lastModified;
+	}
+    }
+}
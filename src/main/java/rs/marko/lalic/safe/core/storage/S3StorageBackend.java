@@ -0,0 +1,653 @@
+package rs.marko.lalic.safe.core.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import rs.marko.lalic.safe.core.Utils;
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Storage backend keeping objects in bucket of S3 compatible object store, addressed in path style so it works with
+ * self hosted stores as well. Requests are signed with AWS Signature Version 4, with unsigned payload so content is
+ * streamed without being read twice. Content longer than one part is sent as multipart upload, so memory used per
+ * upload is bounded by part size.
+ */
+public class S3StorageBackend extends AbstractStorageBackend {
+
+    /**
+     * Signing algorithm
+     */
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    /**
+     * Payload hash sent when payload is not signed
+     */
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    /**
+     * Headers included in signature
+     */
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    /**
+     * Smallest part accepted by S3 in multipart upload, except for last part
+     */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    /**
+     * Maximum number of keys S3 returns in one listing
+     */
+    private static final int MAX_LIST_KEYS = 1000;
+    /**
+     * Timeout in milliseconds for establishing connection
+     */
+    private static final int CONNECT_TIMEOUT = 10000;
+    /**
+     * Timeout in milliseconds for reading response
+     */
+    private static final int READ_TIMEOUT = 60000;
+    /**
+     * Maximum number of characters of error response included in exception message
+     */
+    private static final int MAX_ERROR_LENGTH = 512;
+    /**
+     * Endpoint URL, without trailing slash
+     */
+    private final String endpoint;
+    /**
+     * Region used in signature
+     */
+    private final String region;
+    /**
+     * Name of bucket
+     */
+    private final String bucket;
+    /**
+     * Access key ID
+     */
+    private final String accessKey;
+    /**
+     * Secret access key
+     */
+    private final String secretKey;
+    /**
+     * Size of parts of multipart upload in bytes
+     */
+    private int partSize = 8 * 1024 * 1024;
+
+    /**
+     * Construct for S3 storage backend
+     *
+     * @param endpoint  Endpoint URL
+     * @param region    Region used in signature
+     * @param bucket    Name of bucket
+     * @param accessKey Access key ID
+     * @param secretKey Secret access key
+     * @throws InternalErrorException thrown if endpoint or bucket is not configured
+     */
+    public S3StorageBackend(String endpoint, String region, String bucket, String accessKey, String secretKey)
+		    throws InternalErrorException {
+	if (endpoint == null || endpoint.trim().isEmpty() || bucket == null || bucket.trim().isEmpty()) {
+	    throw new InternalErrorException("S3 endpoint and bucket must be configured. Check configuration.");
+	}
+	this.endpoint = endpoint.trim().endsWith("/") ?
+			endpoint.trim().substring(0, endpoint.trim().length() - 1) :
+			endpoint.trim();
+	this.region = region;
+	this.bucket = bucket.trim();
+	this.accessKey = accessKey;
+	this.secretKey = secretKey;
+    }
+
+    /**
+     * Setter for part size
+     *
+     * @param partSize Size of parts of multipart upload in bytes, at least 5 MB
+     */
+    public void setPartSize(int partSize) {
+	this.partSize = Math.max(partSize, MIN_PART_SIZE);
+    }
+
+    @Override
+    public String getLocation() {
+	return Utils.buildString(endpoint, "/", bucket);
+    }
+
+    /**
+     * Method will store content under given key. Content fitting in one part is sent with single request, longer
+     * content is sent as multipart upload, which is aborted if any part fails.
+     *
+     * @param key     Key of object
+     * @param content Content to store
+     * @return Stored object with size and checksum
+     * @throws InternalErrorException thrown if content can't be read or stored
+     */
+    @Override
+    public StoredObject put(String key, InputStream content) throws InternalErrorException {
+	checkKey(key);
+	MessageDigest digest = createDigest();
+	byte[] buffer = new byte[partSize];
+	long size = 0;
+	try {
+	    int filled = readPart(content, buffer, digest);
+	    size += filled;
+	    if (filled < buffer.length) {
+		HttpURLConnection connection = send("PUT", key, Collections.<String, String>emptyMap(), buffer, filled);
+		checkResponse(connection, "PUT", key);
+		release(connection);
+		return new StoredObject(key, size, Utils.toHex(digest.digest()), System.currentTimeMillis());
+	    }
+	    String uploadId = createMultipartUpload(key);
+	    try {
+		List<String> eTags = new ArrayList<>();
+		while (filled > 0) {
+		    eTags.add(uploadPart(key, uploadId, eTags.size() + 1, buffer, filled));
+		    filled = readPart(content, buffer, digest);
+		    size += filled;
+		}
+		completeMultipartUpload(key, uploadId, eTags);
+		return new StoredObject(key, size, Utils.toHex(digest.digest()), System.currentTimeMillis());
+	    }
+	    catch (IOException | InternalErrorException e) {
+		abortMultipartUpload(key, uploadId);
+		throw e;
+	    }
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to store object [", key, "] in ",
+			    getLocation(), ". Read bytes: ", size, ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public StoredObject putFile(String key, File source) throws InternalErrorException {
+	InputStream in = null;
+	try {
+	    in = new FileInputStream(source);
+	    return put(key, in);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to read file. Path: ", source, ". Message: ",
+			    e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length)
+		    throws ObjectNotFoundException, InternalErrorException {
+	checkKey(key);
+	if (length <= 0) {
+	    return new ByteArrayInputStream(new byte[0]);
+	}
+	try {
+	    HttpURLConnection connection = open("GET", key, Collections.<String, String>emptyMap());
+	    connection.setRequestProperty("Range", Utils.buildString("bytes=", offset, "-", offset + length - 1));
+	    if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+		release(connection);
+		throw new ObjectNotFoundException(Utils.buildString("Object not found. Key: ", key));
+	    }
+	    checkResponse(connection, "GET", key);
+	    InputStream in = connection.getInputStream();
+	    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK && offset > 0) {
+		// Store ignored range and sent whole object
+		IOUtils.skipFully(in, offset);
+	    }
+	    return new BoundedInputStream(in, length);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to read object [", key, "] from ",
+			    getLocation(), ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public void delete(String key) throws InternalErrorException {
+	checkKey(key);
+	try {
+	    HttpURLConnection connection = open("DELETE", key, Collections.<String, String>emptyMap());
+	    if (connection.getResponseCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+		checkResponse(connection, "DELETE", key);
+	    }
+	    release(connection);
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to remove object [", key, "] from ",
+			    getLocation(), ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) throws InternalErrorException {
+	List<StoredObject> page = new ArrayList<>();
+	String after = startAfter;
+	boolean truncated = true;
+	try {
+	    while (truncated && page.size() < limit) {
+		Map<String, String> query = new TreeMap<>();
+		query.put("list-type", "2");
+		query.put("max-keys", String.valueOf(Math.min(MAX_LIST_KEYS, limit - page.size())));
+		if (prefix != null && !prefix.isEmpty()) {
+		    query.put("prefix", prefix);
+		}
+		if (after != null) {
+		    query.put("start-after", after);
+		}
+		HttpURLConnection connection = open("GET", null, query);
+		checkResponse(connection, "LIST", prefix);
+		Document result = parse(connection);
+		NodeList contents = result.getElementsByTagName("Contents");
+		for (int i = 0; i < contents.getLength(); i++) {
+		    Element object = (Element) contents.item(i);
+		    after = getText(object, "Key");
+		    page.add(new StoredObject(after, Long.parseLong(getText(object, "Size")), null,
+				    Instant.parse(getText(object, "LastModified")).toEpochMilli()));
+		}
+		truncated = contents.getLength() > 0 && "true".equals(getText(result.getDocumentElement(),
+				"IsTruncated"));
+	    }
+	    return page;
+	}
+	catch (IOException | RuntimeException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to list objects with prefix [", prefix,
+			    "] in ", getLocation(), ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public StoredObject stat(String key) throws InternalErrorException {
+	checkKey(key);
+	try {
+	    HttpURLConnection connection = open("HEAD", key, Collections.<String, String>emptyMap());
+	    if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+		release(connection);
+		return null;
+	    }
+	    checkResponse(connection, "HEAD", key);
+	    StoredObject object = new StoredObject(key, connection.getContentLengthLong(), null,
+			    connection.getLastModified());
+	    release(connection);
+	    return object;
+	}
+	catch (IOException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to check object [", key, "] in ",
+			    getLocation(), ". Message: ", e.getMessage()), e);
+	}
+    }
+
+    @Override
+    public File getLocalFile(String key) {
+	return null;
+    }
+
+    /**
+     * Method will return unlimited space, bucket has no fixed capacity
+     *
+     * @return {@link Long#MAX_VALUE}
+     */
+    @Override
+    public long getUsableSpace() {
+	return Long.MAX_VALUE;
+    }
+
+    /**
+     * Method will return unknown total space, bucket has no fixed capacity
+     *
+     * @return <code>0</code>
+     */
+    @Override
+    public long getTotalSpace() {
+	return 0;
+    }
+
+    /**
+     * Method will start multipart upload
+     *
+     * @param key Key of object
+     * @return ID of upload
+     * @throws IOException            thrown if request fails
+     * @throws InternalErrorException thrown if store rejects request
+     */
+    private String createMultipartUpload(String key) throws IOException, InternalErrorException {
+	HttpURLConnection connection = send("POST", key, Collections.singletonMap("uploads", ""), new byte[0], 0);
+	checkResponse(connection, "POST", key);
+	return getText(parse(connection).getDocumentElement(), "UploadId");
+    }
+
+    /**
+     * Method will send one part of multipart upload
+     *
+     * @param key        Key of object
+     * @param uploadId   ID of upload
+     * @param partNumber Number of part, starting with <code>1</code>
+     * @param buffer     Content of part
+     * @param length     Number of bytes in buffer
+     * @return Entity tag of part
+     * @throws IOException            thrown if request fails
+     * @throws InternalErrorException thrown if store rejects part
+     */
+    private String uploadPart(String key, String uploadId, int partNumber, byte[] buffer, int length)
+		    throws IOException, InternalErrorException {
+	Map<String, String> query = new TreeMap<>();
+	query.put("partNumber", String.valueOf(partNumber));
+	query.put("uploadId", uploadId);
+	HttpURLConnection connection = send("PUT", key, query, buffer, length);
+	checkResponse(connection, "PUT", key);
+	String eTag = connection.getHeaderField("ETag");
+	release(connection);
+	return eTag;
+    }
+
+    /**
+     * Method will complete multipart upload, which makes object visible
+     *
+     * @param key      Key of object
+     * @param uploadId ID of upload
+     * @param eTags    Entity tags of parts, in part order
+     * @throws IOException            thrown if request fails
+     * @throws InternalErrorException thrown if store rejects upload
+     */
+    private void completeMultipartUpload(String key, String uploadId, List<String> eTags)
+		    throws IOException, InternalErrorException {
+	StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+	for (int i = 0; i < eTags.size(); i++) {
+	    body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+			    .append(eTags.get(i).replace("\"", "&quot;")).append("</ETag></Part>");
+	}
+	body.append("</CompleteMultipartUpload>");
+	byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+	HttpURLConnection connection = send("POST", key, Collections.singletonMap("uploadId", uploadId), content,
+			content.length);
+	checkResponse(connection, "POST", key);
+	// Store may answer with error inside successful response, after completion took long
+	Document result = parse(connection);
+	if ("Error".equals(result.getDocumentElement().getNodeName())) {
+	    throw new InternalErrorException(Utils.buildString("Failed to complete upload of object [", key,
+			    "]. Code: ", getText(result.getDocumentElement(), "Code")));
+	}
+    }
+
+    /**
+     * Method will abort multipart upload, so store can release received parts. Failure is ignored, store removes
+     * incomplete uploads by its lifecycle rules.
+     *
+     * @param key      Key of object
+     * @param uploadId ID of upload
+     */
+    private void abortMultipartUpload(String key, String uploadId) {
+	try {
+	    HttpURLConnection connection = open("DELETE", key, Collections.singletonMap("uploadId", uploadId));
+	    release(connection);
+	}
+	catch (IOException | InternalErrorException e) {
+	    // Ignored, upload is left for lifecycle rules of store
+	}
+    }
+
+    /**
+     * Method will read content until buffer is full or content ends
+     *
+     * @param content Content to read
+     * @param buffer  Buffer to fill
+     * @param digest  Digest updated with read bytes
+     * @return Number of read bytes
+     * @throws IOException thrown if content can't be read
+     */
+    private int readPart(InputStream content, byte[] buffer, MessageDigest digest) throws IOException {
+	int filled = 0;
+	int read;
+	while (filled < buffer.length && (read = content.read(buffer, filled, buffer.length - filled)) != -1) {
+	    digest.update(buffer, filled, read);
+	    filled += read;
+	}
+	return filled;
+    }
+
+    /**
+     * Method will send request with body
+     *
+     * @param method HTTP method
+     * @param key    Key of object
+     * @param query  Query parameters
+     * @param body   Body of request
+     * @param length Number of bytes of body
+     * @return Connection with sent request
+     * @throws IOException            thrown if request can't be sent
+     * @throws InternalErrorException thrown if request can't be signed
+     */
+    private HttpURLConnection send(String method, String key, Map<String, String> query, byte[] body, int length)
+		    throws IOException, InternalErrorException {
+	HttpURLConnection connection = open(method, key, query);
+	connection.setDoOutput(true);
+	connection.setFixedLengthStreamingMode(length);
+	OutputStream out = connection.getOutputStream();
+	try {
+	    out.write(body, 0, length);
+	}
+	finally {
+	    out.close();
+	}
+	return connection;
+    }
+
+    /**
+     * Method will open signed connection for request
+     *
+     * @param method HTTP method
+     * @param key    Key of object, or <code>null</code> for request on bucket
+     * @param query  Query parameters
+     * @return Connection, request is sent once its response is read
+     * @throws IOException            thrown if connection can't be opened
+     * @throws InternalErrorException thrown if request can't be signed
+     */
+    private HttpURLConnection open(String method, String key, Map<String, String> query)
+		    throws IOException, InternalErrorException {
+	String path = key == null ?
+			Utils.buildString("/", encode(bucket, false)) :
+			Utils.buildString("/", encode(bucket, false), "/", encode(key, true));
+	StringBuilder canonicalQuery = new StringBuilder();
+	for (Map.Entry<String, String> parameter : new TreeMap<>(query).entrySet()) {
+	    if (canonicalQuery.length() > 0) {
+		canonicalQuery.append('&');
+	    }
+	    canonicalQuery.append(encode(parameter.getKey(), false)).append('=')
+			    .append(encode(parameter.getValue(), false));
+	}
+	URL url = new URL(Utils.buildString(endpoint, path, canonicalQuery.length() > 0 ? "?" : "", canonicalQuery));
+	String host = url.getPort() == -1 || url.getPort() == url.getDefaultPort() ?
+			url.getHost() :
+			Utils.buildString(url.getHost(), ":", url.getPort());
+	SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+	format.setTimeZone(TimeZone.getTimeZone("UTC"));
+	String amzDate = format.format(new Date());
+	String scope = Utils.buildString(amzDate.substring(0, 8), "/", region, "/s3/aws4_request");
+	String canonicalRequest = Utils.buildString(method, "\n", path, "\n", canonicalQuery, "\n", "host:", host,
+			"\n", "x-amz-content-sha256:", UNSIGNED_PAYLOAD, "\n", "x-amz-date:", amzDate, "\n\n",
+			SIGNED_HEADERS, "\n", UNSIGNED_PAYLOAD);
+	String stringToSign = Utils.buildString(ALGORITHM, "\n", amzDate, "\n", scope, "\n",
+			Utils.toHex(sha256(canonicalRequest)));
+	byte[] signingKey = hmac(Utils.buildString("AWS4", secretKey).getBytes(StandardCharsets.UTF_8),
+			amzDate.substring(0, 8));
+	signingKey = hmac(hmac(hmac(signingKey, region), "s3"), "aws4_request");
+	HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+	connection.setRequestMethod(method);
+	connection.setConnectTimeout(CONNECT_TIMEOUT);
+	connection.setReadTimeout(READ_TIMEOUT);
+	connection.setRequestProperty("x-amz-date", amzDate);
+	connection.setRequestProperty("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+	connection.setRequestProperty("Authorization", Utils.buildString(ALGORITHM, " Credential=", accessKey, "/",
+			scope, ", SignedHeaders=", SIGNED_HEADERS, ", Signature=",
+			Utils.toHex(hmac(signingKey, stringToSign))));
+	return connection;
+    }
+
+    /**
+     * Method will check that request succeeded
+     *
+     * @param connection Connection of request
+     * @param method     HTTP method, for message
+     * @param key        Key of object, for message
+     * @throws IOException            thrown if response can't be read
+     * @throws InternalErrorException thrown if store answered with error
+     */
+    private void checkResponse(HttpURLConnection connection, String method, String key)
+		    throws IOException, InternalErrorException {
+	int status = connection.getResponseCode();
+	if (status >= 200 && status < 300) {
+	    return;
+	}
+	String error = "";
+	InputStream in = connection.getErrorStream();
+	if (in != null) {
+	    try {
+		error = IOUtils.toString(in, StandardCharsets.UTF_8);
+	    }
+	    finally {
+		IOUtils.closeQuietly(in);
+	    }
+	}
+	connection.disconnect();
+	throw new InternalErrorException(Utils.buildString("Object store rejected request. Method: ", method,
+			". Key: ", key, ". Status: ", status, ". Response: ",
+			error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error));
+    }
+
+    /**
+     * Method will read rest of response and close it, so connection can be reused for next request
+     *
+     * @param connection Connection of request
+     */
+    private void release(HttpURLConnection connection) {
+	InputStream in = null;
+	try {
+	    in = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ?
+			    connection.getInputStream() :
+			    connection.getErrorStream();
+	    if (in != null) {
+		IOUtils.skip(in, Long.MAX_VALUE);
+	    }
+	}
+	catch (IOException e) {
+	    connection.disconnect();
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    /**
+     * Method will parse XML response. Document type declarations are rejected, so response can't reference
+     * external entities.
+     *
+     * @param connection Connection of request
+     * @return Parsed document
+     * @throws IOException thrown if response can't be read or parsed
+     */
+    private Document parse(HttpURLConnection connection) throws IOException {
+	InputStream in = connection.getInputStream();
+	try {
+	    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+	    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+	    DocumentBuilder builder = factory.newDocumentBuilder();
+	    return builder.parse(in);
+	}
+	catch (ParserConfigurationException | SAXException e) {
+	    throw new IOException(Utils.buildString("Invalid response of object store. Message: ", e.getMessage()), e);
+	}
+	finally {
+	    IOUtils.closeQuietly(in);
+	}
+    }
+
+    /**
+     * Method will get text of first child element with given name
+     *
+     * @param parent Parent element
+     * @param name   Name of child element
+     * @return Text of element, or <code>null</code> if there is no such element
+     */
+    private String getText(Element parent, String name) {
+	NodeList elements = parent.getElementsByTagName(name);
+	return elements.getLength() == 0 ? null : elements.item(0).getTextContent();
+    }
+
+    /**
+     * Method will encode value as required by signature, keeping only unreserved characters
+     *
+     * @param value     Value to encode
+     * @param keepSlash Flag if slashes are kept, used for object keys in path
+     * @return Encoded value
+     */
+    private String encode(String value, boolean keepSlash) {
+	StringBuilder encoded = new StringBuilder();
+	for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+	    char c = (char) (b & 0xff);
+	    if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+			    || c == '.' || c == '~' || (keepSlash && c == '/')) {
+		encoded.append(c);
+	    }
+	    else {
+		encoded.append('%').append(String.format("%02X", b & 0xff));
+	    }
+	}
+	return encoded.toString();
+    }
+
+    /**
+     * Method will calculate SHA-256 of text
+     *
+     * @param text Text
+     * @return Hash
+     * @throws InternalErrorException thrown if algorithm is not available
+     */
+    private byte[] sha256(String text) throws InternalErrorException {
+	return createDigest().digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method will calculate HMAC-SHA256 of text
+     *
+     * @param key  Key
+     * @param text Text
+     * @return Message authentication code
+     * @throws InternalErrorException thrown if algorithm is not available
+     */
+    private byte[] hmac(byte[] key, String text) throws InternalErrorException {
+	try {
+	    Mac mac = Mac.getInstance("HmacSHA256");
+	    mac.init(new SecretKeySpec(key, "HmacSHA256"));
+	    return mac.doFinal(text.getBytes(StandardCharsets.UTF_8));
+	}
+	catch (GeneralSecurityException e) {
+	    throw new InternalErrorException(Utils.buildString("Failed to sign request. Message: ", e.getMessage()), e);
+	}
+    }
+}
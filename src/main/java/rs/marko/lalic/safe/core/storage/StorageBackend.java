@@ -0,0 +1,107 @@
+package rs.marko.lalic.safe.core.storage;
+
+import rs.marko.lalic.safe.core.exceptions.InternalErrorException;
+import rs.marko.lalic.safe.core.exceptions.ObjectNotFoundException;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Storage backend keeping file content as objects under string keys. Keys are relative, use <code>/</code> as
+ * separator, and never contain <code>..</code> segments. Content is always streamed, so objects of any size can be
+ * stored and read without buffering them whole.
+ */
+public interface StorageBackend {
+
+    /**
+     * Method will describe where objects are kept, for status and logs
+     *
+     * @return Path or URL of storage
+     */
+    String getLocation();
+
+    /**
+     * Method will store content under given key, calculating size and SHA-256 checksum while it is stored. Object
+     * becomes visible only after whole content is stored, and replaces existing object with same key.
+     *
+     * @param key     Key of object
+     * @param content Content to store
+     * @return Stored object with size and checksum
+     * @throws InternalErrorException thrown if content can't be read or stored
+     */
+    StoredObject put(String key, InputStream content) throws InternalErrorException;
+
+    /**
+     * Method will store content of local file under given key. Source file is left in place. Backends keeping
+     * objects on same disk link it instead of copying data.
+     *
+     * @param key    Key of object
+     * @param source Local file
+     * @return Stored object with size, checksum may not be calculated
+     * @throws InternalErrorException thrown if file can't be stored
+     */
+    StoredObject putFile(String key, File source) throws InternalErrorException;
+
+    /**
+     * Method will open range of object for reading
+     *
+     * @param key    Key of object
+     * @param offset First byte to read
+     * @param length Number of bytes to read
+     * @return Stream of requested bytes, which must be closed by caller
+     * @throws ObjectNotFoundException thrown if object doesn't exist
+     * @throws InternalErrorException  thrown if object can't be read
+     */
+    InputStream get(String key, long offset, long length) throws ObjectNotFoundException, InternalErrorException;
+
+    /**
+     * Method will remove object, doing nothing if it doesn't exist
+     *
+     * @param key Key of object
+     * @throws InternalErrorException thrown if object can't be removed
+     */
+    void delete(String key) throws InternalErrorException;
+
+    /**
+     * Method will list objects in key order, one page at a time
+     *
+     * @param prefix     Prefix of listed keys, empty for all objects
+     * @param startAfter Last key of previous page, or <code>null</code> for first page
+     * @param limit      Maximum number of listed objects
+     * @return Objects without checksum, fewer than limit only on last page
+     * @throws InternalErrorException thrown if objects can't be listed
+     */
+    List<StoredObject> list(String prefix, String startAfter, int limit) throws InternalErrorException;
+
+    /**
+     * Method will get size and modification time of object
+     *
+     * @param key Key of object
+     * @return Object without checksum, or <code>null</code> if it doesn't exist
+     * @throws InternalErrorException thrown if object can't be checked
+     */
+    StoredObject stat(String key) throws InternalErrorException;
+
+    /**
+     * Method will get local file holding object, so it can be sent with zero-copy transfer
+     *
+     * @param key Key of object
+     * @return File, which may not exist, or <code>null</code> if backend doesn't keep objects on local disk
+     */
+    File getLocalFile(String key);
+
+    /**
+     * Method will get space available for new objects
+     *
+     * @return Usable space in bytes, {@link Long#MAX_VALUE} if storage is not limited
+     */
+    long getUsableSpace();
+
+    /**
+     * Method will get total space of storage
+     *
+     * @return Total space in bytes, <code>0</code> if storage is not limited
+     */
+    long getTotalSpace();
+}
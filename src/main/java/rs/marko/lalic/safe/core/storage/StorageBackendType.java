@@ -0,0 +1,33 @@
+package rs.marko.lalic.safe.core.storage;
+
+/**
+ * Storage backends which can be configured for deployment
+ */
+public enum StorageBackendType {
+
+    /**
+     * Objects are kept as files under root folder
+     */
+    LOCAL,
+    /**
+     * Objects are kept in heap, and lost on restart. Used for tests and benchmarks without disk noise.
+     */
+    MEMORY,
+    /**
+     * Objects are kept in bucket of S3 compatible object store
+     */
+    S3;
+
+    /**
+     * Method will parse backend type from configuration value. Empty value is treated as {@link #LOCAL}.
+     *
+     * @param value Backend name, case insensitive
+     * @return Storage backend type
+     */
+    public static StorageBackendType fromValue(String value) {
+	if (value == null || value.trim().isEmpty()) {
+	    return LOCAL;
+	}
+	return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,75 @@
+package rs.marko.lalic.safe.core.storage;
+
+/**
+ * Object kept by storage backend, with its size and, when it was calculated while storing, its checksum
+ */
+public class StoredObject {
+
+    /**
+     * Key of object
+     */
+    private final String key;
+    /**
+     * Size of object in bytes
+     */
+    private final long size;
+    /**
+     * Hex encoded SHA-256 checksum of content, or <code>null</code> if it wasn't calculated
+     */
+    private final String checksum;
+    /**
+     * Time of last modification in milliseconds
+     */
+    private final long lastModified;
+
+    /**
+     * Construct for stored object
+     *
+     * @param key          Key of object
+     * @param size         Size of object in bytes
+     * @param checksum     Hex encoded SHA-256 checksum of content, or <code>null</code>
+     * @param lastModified Time of last modification in milliseconds
+     */
+    public StoredObject(String key, long size, String checksum, long lastModified) {
+	this.key = key;
+	this.size = size;
+	this.checksum = checksum;
+	this.lastModified = lastModified;
+    }
+
+    /**
+     * Getter for key
+     *
+     * @return Key of object
+     */
+    public String getKey() {
+	return key;
+    }
+
+    /**
+     * Getter for size
+     *
+     * @return Size of object in bytes
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * Getter for checksum
+     *
+     * @return Hex encoded SHA-256 checksum of content, or <code>null</code> if it wasn't calculated
+     */
+    public String getChecksum() {
+	return checksum;
+    }
+
+    /**
+     * Getter for last modified
+     *
+     * @return Time of last modification in milliseconds
+     */
+    public long getLastModified() {
+	return lastModified;
+    }
+}